@@ -0,0 +1,129 @@
+package com.example.cameramlkit;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.graphics.Color;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.activity.EdgeToEdge;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.view.LifecycleCameraController;
+import androidx.core.content.ContextCompat;
+import androidx.core.graphics.Insets;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+
+import com.example.cameramlkit.camera.CameraPipeline;
+import com.example.cameramlkit.camera.CaptureService;
+import com.example.cameramlkit.camera.DetectorClients;
+import com.example.cameramlkit.camera.DetectorSpec;
+import com.example.cameramlkit.camera.FusedDetectorStage;
+import com.example.cameramlkit.capture.BestFrameSelector;
+import com.example.cameramlkit.databinding.ActivityCameraFusedBinding;
+import com.example.cameramlkit.overlay.BoxBuffer;
+import com.example.cameramlkit.overlay.BoxModelBuilder;
+import com.example.cameramlkit.overlay.LabelFormatter;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.RecognizedText;
+
+public class CameraFusedActivity extends AppCompatActivity {
+
+    ActivityCameraFusedBinding binding;
+    CameraSelector lensFacingPosition = CameraSelector.DEFAULT_BACK_CAMERA;
+    CameraPipeline cameraPipeline;
+    LifecycleCameraController cameraController;
+    CaptureService captureService;
+    final StringBuilder labelText = new StringBuilder();
+
+    ActivityResultLauncher<String> activityResultLauncher = registerForActivityResult(new ActivityResultContracts.RequestPermission(), result -> {
+        if (result) {
+            initCameraProvider();
+        }
+    });
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        EdgeToEdge.enable(this);
+        binding = ActivityCameraFusedBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+        ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
+            Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
+            v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
+            return insets;
+        });
+
+        if (ContextCompat.checkSelfPermission(CameraFusedActivity.this, android.Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            activityResultLauncher.launch(Manifest.permission.CAMERA);
+        } else {
+            initCameraProvider();
+        }
+
+        binding.imageButton.setOnClickListener(view -> takePhoto());
+
+        binding.btnSwitchCamera.setOnClickListener(view -> changeCameraLens());
+    }
+
+    void initCameraProvider() {
+        DetectorClients clients = DetectorClients.getInstance();
+
+        // objects on every frame, the slower detectors in between
+        FusedDetectorStage detector = new FusedDetectorStage.Builder()
+                .addObjects(clients.acquire(DetectorSpec.OBJECTS), 1)
+                .addObjects(clients.acquire(DetectorSpec.CUSTOM_OBJECTS), 2)
+                .addLabels(clients.acquire(DetectorSpec.LABELS), 3)
+                .addText(clients.acquire(DetectorSpec.TEXT), 4)
+                .build();
+
+        cameraPipeline = new CameraPipeline.Builder(this, binding.cameraPreview)
+                .setBestFrameCriterion(BestFrameSelector.Criterion.DETECTION)
+                .setCameraSelector(lensFacingPosition)
+                .setStaticSceneRefreshMillis(1000)
+                .setDetector(detector)
+                .setLatencyBudgetMillis(150)
+                .setUiSink(this::processResult)
+                .setErrorListener(e -> Log.e("info", e.getMessage()))
+                .build();
+        cameraController = cameraPipeline.getCameraController();
+        captureService = new CaptureService.Builder(this, cameraController, binding.cameraPreview)
+                .setOverlay(binding.boxOverlay)
+                .setResults(cameraPipeline::getLatestResult)
+                .setBestFrameSelector(cameraPipeline.getBestFrameSelector())
+                .build();
+        binding.imageButton.setOnLongClickListener(view -> captureService.captureBest(CaptureService.DEFAULT_BURST_SHOTS));
+
+        binding.metricsHud.setMetrics(cameraPipeline.getMetrics(), "fused");
+        binding.btnSwitchCamera.setOnLongClickListener(view -> binding.metricsHud.toggle());
+    }
+
+    private void processResult(DetectionResult result) {
+        BoxBuffer boxes = binding.boxOverlay.beginFrame(result.getTimestampNanos());
+        BoxModelBuilder.addObjects(boxes, result.getObjects(), Color.RED, Color.BLACK);
+        RecognizedText text = result.getText();
+        if (text != null) {
+            BoxModelBuilder.addTextElements(boxes, text, element -> Color.YELLOW, Color.BLUE);
+        }
+        binding.boxOverlay.publish();
+
+        binding.textView.setText(LabelFormatter.format(result.getLabels(), labelText));
+    }
+
+    public void changeCameraLens() {
+        lensFacingPosition = lensFacingPosition == CameraSelector.DEFAULT_BACK_CAMERA ?
+                CameraSelector.DEFAULT_FRONT_CAMERA :
+                CameraSelector.DEFAULT_BACK_CAMERA;
+        // detectors and views stay, only what was shown of the previous lens goes
+        cameraPipeline.switchLens(lensFacingPosition);
+        binding.boxOverlay.clear();
+        labelText.setLength(0);
+        binding.textView.setText(labelText);
+    }
+
+    public void takePhoto() {
+        captureService.capture();
+    }
+}
@@ -1,49 +1,47 @@
 package com.example.cameramlkit;
 
 import android.Manifest;
-import android.content.ContentValues;
 import android.content.pm.PackageManager;
-import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
-import android.provider.MediaStore;
 import android.util.Log;
-import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
-import androidx.camera.core.ImageCapture;
-import androidx.camera.core.ImageCaptureException;
 import androidx.camera.lifecycle.ProcessCameraProvider;
-import androidx.camera.mlkit.vision.MlKitAnalyzer;
 import androidx.camera.view.LifecycleCameraController;
 import androidx.core.content.ContextCompat;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
+import com.example.cameramlkit.camera.CameraPipeline;
+import com.example.cameramlkit.camera.CaptureService;
+import com.example.cameramlkit.camera.DetectorClients;
+import com.example.cameramlkit.camera.DetectorSpec;
+import com.example.cameramlkit.camera.MlKitDetectorStage;
+import com.example.cameramlkit.capture.BestFrameSelector;
 import com.example.cameramlkit.databinding.ActivityCameraLabelBinding;
+import com.example.cameramlkit.overlay.LabelFormatter;
+import com.example.cameramlkit.pipeline.LabelAggregator;
+import com.example.cameramlkit.pipeline.ScoredLabel;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.mlkit.vision.label.ImageLabel;
 import com.google.mlkit.vision.label.ImageLabeler;
-import com.google.mlkit.vision.label.ImageLabeling;
-import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class CameraLabelActivity extends AppCompatActivity {
 
     ActivityCameraLabelBinding binding;
     CameraSelector lensFacingPosition = CameraSelector.DEFAULT_BACK_CAMERA;
-    ExecutorService cameraExecutor = Executors.newSingleThreadExecutor();
+    CameraPipeline cameraPipeline;
+    List<ScoredLabel> shownLabels;
+    final StringBuilder showingText = new StringBuilder();
     LifecycleCameraController cameraController;
+    CaptureService captureService;
 
     ActivityResultLauncher<String> activityResultLauncher = registerForActivityResult(new ActivityResultContracts.RequestPermission(), result -> {
         if (result) {
@@ -77,49 +75,37 @@ public class CameraLabelActivity extends AppCompatActivity {
 
     void initCameraProvider() {
 
-        cameraController = new LifecycleCameraController(binding.getRoot().getContext());
-        cameraController.setCameraSelector(lensFacingPosition);
-
-        ImageLabeler labeler = ImageLabeling.getClient(ImageLabelerOptions.DEFAULT_OPTIONS);
-
-        cameraController.setImageAnalysisBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST);
-        cameraController.setImageAnalysisAnalyzer(cameraExecutor,
-                new MlKitAnalyzer(
-                        List.of(labeler),
-                        ImageAnalysis.COORDINATE_SYSTEM_VIEW_REFERENCED,
-                        cameraExecutor,
-                        result -> {
-                            List<ImageLabel> labels = result.getValue(labeler);
-                            if (labels != null)
-                                processLabels(labels);
-                        }
-                )
-        );
-
-        cameraController.bindToLifecycle(this);
-        binding.cameraPreview.setController(cameraController);
+        DetectorClients.Lease<ImageLabeler> labeler = DetectorClients.getInstance().acquire(DetectorSpec.LABELS);
+
+        cameraPipeline = new CameraPipeline.Builder(this, binding.cameraPreview)
+                .setBestFrameCriterion(BestFrameSelector.Criterion.DETECTION)
+                .setCameraSelector(lensFacingPosition)
+                .setStaticSceneRefreshMillis(2000)
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .setDetector(MlKitDetectorStage.forLabels(labeler))
+                .addProcessor(new LabelAggregator(5, 400, 0.5f, 0.35f))
+                .setUiSink(result -> processLabels(result.getLabels()))
+                .setErrorListener(e -> Log.e("info", e.getMessage()))
+                .build();
+        cameraController = cameraPipeline.getCameraController();
+        captureService = new CaptureService.Builder(this, cameraController, binding.cameraPreview)
+                .setResults(cameraPipeline::getLatestResult)
+                .setBestFrameSelector(cameraPipeline.getBestFrameSelector())
+                .build();
+        binding.imageButton.setOnLongClickListener(view -> captureService.captureBest(CaptureService.DEFAULT_BURST_SHOTS));
+
+        binding.metricsHud.setMetrics(cameraPipeline.getMetrics(), "labels");
+        binding.btnSwitchCamera.setOnLongClickListener(view -> binding.metricsHud.toggle());
     }
 
-    public void processLabels(List<ImageLabel> labels) {
-        StringBuilder showingText = new StringBuilder();
-        for (ImageLabel label : labels) {
-            String text = label.getText();
-            float confidence = label.getConfidence();
-
-            showingText.append("Elem: ")
-                    .append(text)
-                    .append(" | Conf: ")
-                    .append(Math.round(confidence * 10000) / 100.f)
-                    .append("% \n");
+    public void processLabels(List<ScoredLabel> labels) {
+        // the aggregated list only changes when the ranked labels do, skip the layout otherwise
+        if (LabelAggregator.sameLabels(labels, shownLabels)) {
+            return;
         }
-        Log.d("infoAA", showingText.toString());
-        String finalShowingText = showingText.toString();
-        runOnUiThread(() -> {
-            // Update UI elements here
-            binding.textView.setText("");
-            binding.textView.setText(finalShowingText);
-        });
-        Log.d("infoAA", "--------------------");
+        shownLabels = labels;
+        // called on the UI thread, once per display frame at most; setText copies the builder
+        binding.textView.setText(LabelFormatter.format(labels, showingText));
     }
 
 
@@ -127,41 +113,14 @@ public class CameraLabelActivity extends AppCompatActivity {
         lensFacingPosition = lensFacingPosition == CameraSelector.DEFAULT_BACK_CAMERA ?
                 CameraSelector.DEFAULT_FRONT_CAMERA :
                 CameraSelector.DEFAULT_BACK_CAMERA;
-        cameraController.setCameraSelector(lensFacingPosition);
+        // detectors and views stay, only what was shown of the previous lens goes
+        cameraPipeline.switchLens(lensFacingPosition);
+        shownLabels = null;
+        binding.textView.setText("");
     }
 
     public void takePhoto() {
-        long timestamp = System.currentTimeMillis();
-
-        ImageCapture.OutputFileOptions outputFileOptions = getOutputFileOptions(timestamp);
-
-        cameraController.takePicture(outputFileOptions,
-                ContextCompat.getMainExecutor(binding.getRoot().getContext()),
-                new ImageCapture.OnImageSavedCallback() {
-                    @Override
-                    public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
-                        Toast.makeText(CameraLabelActivity.this, "Photo taken correctly", Toast.LENGTH_SHORT).show();
-                    }
-
-                    @Override
-                    public void onError(@NonNull ImageCaptureException exception) {
-                        Log.e("info", exception.getMessage());
-                    }
-                });
-    }
-
-    private ImageCapture.OutputFileOptions getOutputFileOptions(long timestamp) {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, timestamp);
-        contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            contentValues.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_DCIM);
-        }
-
-        return new ImageCapture.OutputFileOptions.Builder(binding.getRoot().getContext().getContentResolver(),
-                MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                contentValues)
-                .build();
+        captureService.capture();
     }
 
 
@@ -1,51 +1,78 @@
 package com.example.cameramlkit;
 
 import android.Manifest;
-import android.content.ContentValues;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
-import android.graphics.Rect;
-import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
-import android.provider.MediaStore;
 import android.util.Log;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
-import androidx.camera.core.ImageAnalysis;
-import androidx.camera.core.ImageCapture;
-import androidx.camera.core.ImageCaptureException;
-import androidx.camera.mlkit.vision.MlKitAnalyzer;
 import androidx.camera.view.LifecycleCameraController;
 import androidx.core.content.ContextCompat;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
+import com.example.cameramlkit.camera.AssetModelSource;
+import com.example.cameramlkit.camera.CameraPipeline;
+import com.example.cameramlkit.camera.CaptureService;
+import com.example.cameramlkit.camera.DetectorClients;
+import com.example.cameramlkit.camera.DetectorSpec;
+import com.example.cameramlkit.camera.MlKitDetectorStage;
+import com.example.cameramlkit.camera.SwappableDetectorStage;
+import com.example.cameramlkit.camera.TfliteDetectorStage;
 import com.example.cameramlkit.databinding.ActivityCameraMyObjRecBinding;
-import com.example.cameramlkit.helpers.BoundingBoxDrawing;
-import com.google.mlkit.common.model.LocalModel;
-import com.google.mlkit.vision.objects.DetectedObject;
-import com.google.mlkit.vision.objects.ObjectDetection;
-import com.google.mlkit.vision.objects.ObjectDetector;
-import com.google.mlkit.vision.objects.custom.CustomObjectDetectorOptions;
+import com.example.cameramlkit.models.DirectoryModelSource;
+import com.example.cameramlkit.models.ModelFile;
+import com.example.cameramlkit.models.ModelRegistry;
+import com.example.cameramlkit.overlay.TrackingOverlay;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.DetectorStage;
+import com.example.cameramlkit.tracking.ObjectTracker;
+
+import java.io.File;
+import java.util.Arrays;
 
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class CameraMyObjRecActivity extends AppCompatActivity {
 
+    /**
+     * Runs the model through the TFLite Interpreter instead of ML Kit, to compare the backends.
+     */
+    public static final String EXTRA_TFLITE = "com.example.cameramlkit.extra.TFLITE";
+    /**
+     * File name of the model to start with, see {@link ModelRegistry}; long pressing the capture
+     * button switches to the next model.
+     */
+    public static final String EXTRA_MODEL = "com.example.cameramlkit.extra.MODEL";
+    /**
+     * Interpreter instances of the TFLite backend (default 1); with more, frames are converted
+     * while earlier ones are in inference.
+     */
+    public static final String EXTRA_TFLITE_INTERPRETERS = "com.example.cameramlkit.extra.TFLITE_INTERPRETERS";
+    /**
+     * Threads per interpreter (default: the cores left over, split between the interpreters).
+     */
+    public static final String EXTRA_TFLITE_THREADS = "com.example.cameramlkit.extra.TFLITE_THREADS";
+
+    private static final String DEFAULT_MODEL = "1.tflite";
+
     ActivityCameraMyObjRecBinding binding;
     CameraSelector lensFacingPosition = CameraSelector.DEFAULT_BACK_CAMERA;
-    ExecutorService cameraExecutor = Executors.newSingleThreadExecutor();
+    CameraPipeline cameraPipeline;
+    TrackingOverlay trackingOverlay;
     LifecycleCameraController cameraController;
+    CaptureService captureService;
+    ModelRegistry modelRegistry;
+    SwappableDetectorStage detector;
+    SwappableDetectorStage fastDetector;
+    boolean useTflite;
+    String currentModel;
 
     ActivityResultLauncher<String> activityResultLauncher = registerForActivityResult(new ActivityResultContracts.RequestPermission(), result -> {
         if (result) {
@@ -77,99 +104,131 @@ public class CameraMyObjRecActivity extends AppCompatActivity {
     }
 
     void initCameraProvider() {
-        cameraController = new LifecycleCameraController(binding.getRoot().getContext());
-        cameraController.setCameraSelector(lensFacingPosition);
-
-        LocalModel localModel = new LocalModel.Builder()
-                .setAssetFilePath("1.tflite")
+        // boxes follow the tracker at display rate rather than jumping from result to result
+        trackingOverlay = new TrackingOverlay(this, binding.boxOverlay, new ObjectTracker.Builder().build(),
+                Color.RED, Color.BLACK);
+
+        // models in app storage override the bundled ones of the same name
+        modelRegistry = new ModelRegistry(Arrays.asList(
+                new AssetModelSource(getAssets()),
+                new DirectoryModelSource("files", new File(getFilesDir(), "models"))));
+        modelRegistry.refresh();
+        for (String error : modelRegistry.getErrors()) {
+            Log.e("info", "model skipped: " + error);
+        }
+        Log.d("info", modelRegistry.toString());
+
+        // the stages are loaded in the background and swapped in, the camera stays bound
+        useTflite = getIntent().getBooleanExtra(EXTRA_TFLITE, false);
+        detector = new SwappableDetectorStage();
+        CameraPipeline.Builder builder = new CameraPipeline.Builder(this, binding.cameraPreview)
+                .setCameraSelector(lensFacingPosition)
+                .setDetector(detector)
+                .setLatencyBudgetMillis(66)
+                .setUiSink(this::processObjs)
+                .setErrorListener(e -> Log.e("info", e.getMessage()));
+        if (!useTflite) {
+            fastDetector = new SwappableDetectorStage();
+            builder.setFastDetector(fastDetector);
+        }
+        cameraPipeline = builder.build();
+        cameraController = cameraPipeline.getCameraController();
+        captureService = new CaptureService.Builder(this, cameraController, binding.cameraPreview)
+                .setOverlay(binding.boxOverlay)
+                .setResults(cameraPipeline::getLatestResult)
                 .build();
 
-        CustomObjectDetectorOptions customObjectDetectorOptions = new CustomObjectDetectorOptions.Builder(localModel)
-                .setDetectorMode(CustomObjectDetectorOptions.STREAM_MODE)
-                .enableClassification()
-                .setClassificationConfidenceThreshold(0.5f)
-                .setMaxPerObjectLabelCount(3)
-                .enableMultipleObjects()
-                .build();
+        binding.metricsHud.setMetrics(cameraPipeline.getMetrics(), useTflite ? "custom-objects-tflite" : "custom-objects");
+        binding.btnSwitchCamera.setOnLongClickListener(view -> binding.metricsHud.toggle());
 
-        ObjectDetector objectDetector = ObjectDetection.getClient(customObjectDetectorOptions);
-
-        cameraController.setImageAnalysisAnalyzer(cameraExecutor,
-                new MlKitAnalyzer(
-                        List.of(objectDetector),
-                        ImageAnalysis.COORDINATE_SYSTEM_VIEW_REFERENCED,
-                        cameraExecutor,
-                        result -> {
-                            List<DetectedObject> detectedObjects = result.getValue(objectDetector);
-                            if (detectedObjects != null)
-                                processObjs(detectedObjects);
-                        }
-                )
-        );
-
-        cameraController.bindToLifecycle(this);
-        binding.cameraPreview.setController(cameraController);
+        String requested = getIntent().getStringExtra(EXTRA_MODEL);
+        ModelFile model = modelRegistry.get(requested != null ? requested : DEFAULT_MODEL);
+        if (model == null) {
+            model = modelRegistry.next(null);
+        }
+        if (model != null) {
+            switchModel(model);
+        }
+        binding.imageButton.setOnLongClickListener(view -> {
+            ModelFile next = modelRegistry.next(currentModel);
+            if (next == null || next.getName().equals(currentModel)) {
+                return false;
+            }
+            switchModel(next);
+            return true;
+        });
     }
 
-    private void processObjs(List<DetectedObject> detectedObjects) {
-        binding.cameraPreview.getOverlay().clear();
-
-        for (DetectedObject detectedObject : detectedObjects) {
-            Rect boundingBox = detectedObject.getBoundingBox();
-            for (DetectedObject.Label label : detectedObject.getLabels()) {
-                String text = label.getText();
-                float confidence = label.getConfidence();
-
-                String showingText = text + ": " + (Math.round(confidence * 10000) / 100.f) + "%";
-                Log.d("info", "boundingBox: " + boundingBox.flattenToString() + "| " + showingText);
+    /**
+     * Loads {@code model} next to the running one and switches over once it is warm.
+     */
+    void switchModel(ModelFile model) {
+        currentModel = model.getName();
+        if (useTflite) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int interpreters = Math.max(1, getIntent().getIntExtra(EXTRA_TFLITE_INTERPRETERS, 1));
+            int threads = getIntent().getIntExtra(EXTRA_TFLITE_THREADS, Math.max(1, Math.min(4, (cores - 1) / interpreters)));
+            detector.swap(() -> new TfliteDetectorStage.Builder(model)
+                    .setInterpreters(interpreters)
+                    .setInterpreterThreads(threads)
+                    .build(), new ModelSwapListener(model));
+        } else {
+            DetectorClients clients = DetectorClients.getInstance();
+            detector.swap(() -> MlKitDetectorStage.forObjects(clients.acquireWarm(DetectorSpec.customObjects(model, true))),
+                    new ModelSwapListener(model));
+            fastDetector.swap(() -> MlKitDetectorStage.forObjects(clients.acquireWarm(DetectorSpec.customObjects(model, false))),
+                    new ModelSwapListener(null));
+        }
+    }
 
-                BoundingBoxDrawing boundBoxDraw = new BoundingBoxDrawing(boundingBox, Color.RED, showingText, Color.BLACK);
+    private final class ModelSwapListener implements SwappableDetectorStage.Listener {
+        private final ModelFile model;
 
-                binding.cameraPreview.getOverlay().add(boundBoxDraw);
+        /**
+         * @param model reported to the user and the metrics; null for the fast stage
+         */
+        ModelSwapListener(ModelFile model) {
+            this.model = model;
+        }
 
+        @Override
+        public void onSwapped(DetectorStage stage, long loadNanos) {
+            if (model == null) {
+                return;
+            }
+            long footprint = stage instanceof TfliteDetectorStage
+                    ? ((TfliteDetectorStage) stage).getFootprintBytes() : model.getMappedBytes();
+            Log.d("info", "model " + model.getName() + ": mapped in " + model.getLoadNanos() / 1_000_000
+                    + " ms, warm in " + loadNanos / 1_000_000 + " ms, " + footprint / 1024 + " KB");
+            if (stage instanceof TfliteDetectorStage) {
+                cameraPipeline.getMetrics().setBackendTimings(((TfliteDetectorStage) stage).getTimings());
+            } else if (stage instanceof MlKitDetectorStage) {
+                cameraPipeline.getMetrics().setBackendTimings(((MlKitDetectorStage) stage).getTimings());
             }
+            runOnUiThread(() -> Toast.makeText(CameraMyObjRecActivity.this, model.getName(), Toast.LENGTH_SHORT).show());
+        }
+
+        @Override
+        public void onSwapFailed(Exception error) {
+            Log.e("info", "model " + (model != null ? model.getName() : "") + " failed to load: " + error.getMessage());
         }
     }
 
+    private void processObjs(DetectionResult result) {
+        trackingOverlay.onResult(result);
+    }
+
     public void changeCameraLens() {
         lensFacingPosition = lensFacingPosition == CameraSelector.DEFAULT_BACK_CAMERA ?
                 CameraSelector.DEFAULT_FRONT_CAMERA :
                 CameraSelector.DEFAULT_BACK_CAMERA;
-        cameraController.setCameraSelector(lensFacingPosition);
+        // detectors and views stay, only what was shown of the previous lens goes
+        cameraPipeline.switchLens(lensFacingPosition);
+        trackingOverlay.clear();
     }
 
     public void takePhoto() {
-        long timestamp = System.currentTimeMillis();
-
-        ImageCapture.OutputFileOptions outputFileOptions = getOutputFileOptions(timestamp);
-
-        cameraController.takePicture(outputFileOptions,
-                ContextCompat.getMainExecutor(binding.getRoot().getContext()),
-                new ImageCapture.OnImageSavedCallback() {
-                    @Override
-                    public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
-                        Toast.makeText(CameraMyObjRecActivity.this, "Photo taken correctly", Toast.LENGTH_SHORT).show();
-                    }
-
-                    @Override
-                    public void onError(@NonNull ImageCaptureException exception) {
-                        Log.e("info", exception.getMessage());
-                    }
-                });
-    }
-
-    private ImageCapture.OutputFileOptions getOutputFileOptions(long timestamp) {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, timestamp);
-        contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            contentValues.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_DCIM);
-        }
-
-        return new ImageCapture.OutputFileOptions.Builder(binding.getRoot().getContext().getContentResolver(),
-                MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                contentValues)
-                .build();
+        captureService.capture();
     }
 
 }
\ No newline at end of file
@@ -1,65 +1,58 @@
 package com.example.cameramlkit;
 
 import android.Manifest;
-import android.content.ContentValues;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.graphics.Matrix;
-import android.graphics.Rect;
 import android.media.Image;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
-import android.provider.MediaStore;
 import android.util.Log;
-import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
-import androidx.annotation.NonNull;
 import androidx.annotation.OptIn;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraControl;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ExperimentalGetImage;
-import androidx.camera.core.ImageAnalysis;
-import androidx.camera.core.ImageCapture;
-import androidx.camera.core.ImageCaptureException;
 import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.core.UseCaseGroup;
 import androidx.camera.lifecycle.ProcessCameraProvider;
-import androidx.camera.mlkit.vision.MlKitAnalyzer;
 import androidx.camera.view.LifecycleCameraController;
 import androidx.core.content.ContextCompat;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
+import com.example.cameramlkit.camera.CameraPipeline;
+import com.example.cameramlkit.camera.CaptureService;
+import com.example.cameramlkit.camera.DetectorClients;
+import com.example.cameramlkit.camera.DetectorSpec;
+import com.example.cameramlkit.camera.MlKitDetectorStage;
+import com.example.cameramlkit.capture.BestFrameSelector;
 import com.example.cameramlkit.databinding.ActivityCameraObjRecBinding;
-import com.example.cameramlkit.helpers.BoundingBoxDrawing;
+import com.example.cameramlkit.overlay.TrackingOverlay;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.tracking.ObjectTracker;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.objects.DetectedObject;
-import com.google.mlkit.vision.objects.ObjectDetection;
 import com.google.mlkit.vision.objects.ObjectDetector;
-import com.google.mlkit.vision.objects.defaults.ObjectDetectorOptions;
 
-import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class CameraObjRecActivity extends AppCompatActivity {
 
     ActivityCameraObjRecBinding binding;
     CameraSelector lensFacingPosition = CameraSelector.DEFAULT_BACK_CAMERA;
-    ExecutorService cameraExecutor = Executors.newSingleThreadExecutor();
+    CameraPipeline cameraPipeline;
+    TrackingOverlay trackingOverlay;
     LifecycleCameraController cameraController;
+    CaptureService captureService;
 
     ActivityResultLauncher<String> activityResultLauncher = registerForActivityResult(new ActivityResultContracts.RequestPermission(), result -> {
         if (result) {
@@ -92,95 +85,56 @@ public class CameraObjRecActivity extends AppCompatActivity {
 
 
     void initCameraProvider() {
-        cameraController = new LifecycleCameraController(binding.getRoot().getContext());
-        cameraController.setCameraSelector(lensFacingPosition);
-
-        ObjectDetectorOptions options = new ObjectDetectorOptions.Builder()
-                .setDetectorMode(ObjectDetectorOptions.STREAM_MODE)
-                .enableClassification()
-                .enableMultipleObjects()
+        DetectorClients.Lease<ObjectDetector> objectDetector = DetectorClients.getInstance().acquire(DetectorSpec.OBJECTS);
+        DetectorClients.Lease<ObjectDetector> fastObjectDetector = DetectorClients.getInstance().acquire(DetectorSpec.OBJECTS_SINGLE);
+
+        // boxes follow the tracker at display rate rather than jumping from result to result
+        trackingOverlay = new TrackingOverlay(this, binding.boxOverlay, new ObjectTracker.Builder().build(),
+                Color.RED, Color.BLACK);
+
+        cameraPipeline = new CameraPipeline.Builder(this, binding.cameraPreview)
+                .setBestFrameCriterion(BestFrameSelector.Criterion.DETECTION)
+                .setCameraSelector(lensFacingPosition)
+                .setStaticSceneRefreshMillis(1000)
+                .setDetector(MlKitDetectorStage.forObjects(objectDetector))
+                .setFastDetector(MlKitDetectorStage.forObjects(fastObjectDetector))
+                .setLatencyBudgetMillis(66)
+                .setUiSink(this::processObjs)
+                .setErrorListener(e -> Log.e("info", e.getMessage()))
+                .build();
+        cameraController = cameraPipeline.getCameraController();
+        captureService = new CaptureService.Builder(this, cameraController, binding.cameraPreview)
+                .setOverlay(binding.boxOverlay)
+                .setResults(cameraPipeline::getLatestResult)
+                .setBestFrameSelector(cameraPipeline.getBestFrameSelector())
                 .build();
+        binding.imageButton.setOnLongClickListener(view -> captureService.captureBest(CaptureService.DEFAULT_BURST_SHOTS));
 
-        ObjectDetector objectDetector = ObjectDetection.getClient(options);
-
-        cameraController.setImageAnalysisAnalyzer(cameraExecutor,
-                new MlKitAnalyzer(
-                        List.of(objectDetector),
-                        ImageAnalysis.COORDINATE_SYSTEM_VIEW_REFERENCED,
-                        cameraExecutor,
-                        result -> {
-                            List<DetectedObject> detectedObjects = result.getValue(objectDetector);
-                            if (detectedObjects != null)
-                                processObjs(detectedObjects);
-                        }
-                )
-        );
-
-        cameraController.bindToLifecycle(this);
-        binding.cameraPreview.setController(cameraController);
+        binding.metricsHud.setMetrics(cameraPipeline.getMetrics(), "objects");
+        binding.btnSwitchCamera.setOnLongClickListener(view -> binding.metricsHud.toggle());
     }
 
-    private void processObjs(List<DetectedObject> detectedObjects) {
-        binding.cameraPreview.getOverlay().clear();
-
-        for (DetectedObject detectedObject : detectedObjects) {
-            Rect boundingBox = detectedObject.getBoundingBox();
-            for (DetectedObject.Label label : detectedObject.getLabels()) {
-                String text = label.getText();
-                float confidence = label.getConfidence();
-                //Log.d("info", "boundingBox.toString(): " + boundingBox.flattenToString() +  "| trackingId: " + trackingId + " | text: " + text);
-                String showingText = text + ": " + (Math.round(confidence * 10000) / 100.f) + "%";
-                binding.cameraPreview.getOverlay().add(new BoundingBoxDrawing(boundingBox, Color.RED, showingText, Color.BLACK));
-
-                /*only 5 categories
-                    PredefinedCategory.FOOD
-                    PredefinedCategory.FASHION_GOOD
-                    PredefinedCategory.HOME_GOOD
-                    PredefinedCategory.PLACE
-                    PredefinedCategory.PLANT
-                */
-            }
-        }
+    private void processObjs(DetectionResult result) {
+        /*only 5 categories
+            PredefinedCategory.FOOD
+            PredefinedCategory.FASHION_GOOD
+            PredefinedCategory.HOME_GOOD
+            PredefinedCategory.PLACE
+            PredefinedCategory.PLANT
+        */
+        trackingOverlay.onResult(result);
     }
 
     public void changeCameraLens() {
         lensFacingPosition = lensFacingPosition == CameraSelector.DEFAULT_BACK_CAMERA ?
                 CameraSelector.DEFAULT_FRONT_CAMERA :
                 CameraSelector.DEFAULT_BACK_CAMERA;
-        cameraController.setCameraSelector(lensFacingPosition);
+        // detectors and views stay, only what was shown of the previous lens goes
+        cameraPipeline.switchLens(lensFacingPosition);
+        trackingOverlay.clear();
     }
 
     public void takePhoto() {
-        long timestamp = System.currentTimeMillis();
-
-        ImageCapture.OutputFileOptions outputFileOptions = getOutputFileOptions(timestamp);
-
-        cameraController.takePicture(outputFileOptions,
-                ContextCompat.getMainExecutor(binding.getRoot().getContext()),
-                new ImageCapture.OnImageSavedCallback() {
-                    @Override
-                    public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
-                        Toast.makeText(CameraObjRecActivity.this, "Photo taken correctly", Toast.LENGTH_SHORT).show();
-                    }
-
-                    @Override
-                    public void onError(@NonNull ImageCaptureException exception) {
-                        Log.e("info", exception.getMessage());
-                    }
-                });
-    }
-
-    private ImageCapture.OutputFileOptions getOutputFileOptions(long timestamp) {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, timestamp);
-        contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            contentValues.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_DCIM);
-        }
-
-        return new ImageCapture.OutputFileOptions.Builder(binding.getRoot().getContext().getContentResolver(),
-                MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                contentValues)
-                .build();
+        captureService.capture();
     }
 }
\ No newline at end of file
@@ -1,29 +1,21 @@
 package com.example.cameramlkit;
 
 import android.Manifest;
-import android.content.ContentValues;
 import android.content.pm.PackageManager;
-import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
-import android.provider.MediaStore;
-import android.util.Log;
-import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
-import androidx.camera.core.ImageCapture;
-import androidx.camera.core.ImageCaptureException;
 import androidx.camera.view.LifecycleCameraController;
 import androidx.core.content.ContextCompat;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
+import com.example.cameramlkit.camera.CaptureService;
 import com.example.cameramlkit.databinding.ActivityCameraSimpleBinding;
 
 public class CameraSimpleActivity extends AppCompatActivity {
@@ -31,6 +23,7 @@ public class CameraSimpleActivity extends AppCompatActivity {
     ActivityCameraSimpleBinding binding;
     CameraSelector lensFacingPosition = CameraSelector.DEFAULT_BACK_CAMERA;
     LifecycleCameraController cameraController;
+    CaptureService captureService;
 
     ActivityResultLauncher<String> activityResultLauncher = registerForActivityResult(
             new ActivityResultContracts.RequestPermission(),
@@ -68,6 +61,8 @@ public class CameraSimpleActivity extends AppCompatActivity {
         cameraController.setCameraSelector(lensFacingPosition);
         cameraController.bindToLifecycle(this);
         binding.cameraPreview.setController(cameraController);
+        captureService = new CaptureService.Builder(this, cameraController, binding.cameraPreview).build();
+        binding.imageButton.setOnLongClickListener(view -> captureService.burst(CaptureService.DEFAULT_BURST_SHOTS) > 0);
     }
 
     public void changeCameraLens() {
@@ -78,35 +73,6 @@ public class CameraSimpleActivity extends AppCompatActivity {
     }
 
     public void takePhoto() {
-        ImageCapture.OutputFileOptions outputFileOptions = getOutputFileOptions();
-
-        cameraController.takePicture(outputFileOptions,
-                ContextCompat.getMainExecutor(binding.getRoot().getContext()),
-                new ImageCapture.OnImageSavedCallback() {
-                    @Override
-                    public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
-                        Toast.makeText(CameraSimpleActivity.this, "Photo taken correctly", Toast.LENGTH_SHORT).show();
-                    }
-
-                    @Override
-                    public void onError(@NonNull ImageCaptureException exception) {
-                        Log.e("info", exception.getMessage());
-                    }
-                });
-    }
-
-    private ImageCapture.OutputFileOptions getOutputFileOptions() {
-        long timestamp = System.currentTimeMillis();
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, timestamp);
-        contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            contentValues.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_DCIM);
-        }
-
-        return new ImageCapture.OutputFileOptions.Builder(binding.getRoot().getContext().getContentResolver(),
-                MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                contentValues)
-                .build();
+        captureService.capture();
     }
 }
\ No newline at end of file
@@ -1,50 +1,72 @@
 package com.example.cameramlkit;
 
 import android.Manifest;
-import android.content.ContentValues;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
-import android.graphics.Rect;
-import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
-import android.provider.MediaStore;
 import android.util.Log;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
-import androidx.camera.core.ImageAnalysis;
-import androidx.camera.core.ImageCapture;
-import androidx.camera.core.ImageCaptureException;
-import androidx.camera.mlkit.vision.MlKitAnalyzer;
 import androidx.camera.view.LifecycleCameraController;
 import androidx.core.content.ContextCompat;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
+import com.example.cameramlkit.camera.CameraPipeline;
+import com.example.cameramlkit.camera.CaptureIndex;
+import com.example.cameramlkit.camera.CaptureService;
+import com.example.cameramlkit.camera.DetectorClients;
+import com.example.cameramlkit.camera.DetectorSpec;
+import com.example.cameramlkit.camera.MlKitDetectorStage;
+import com.example.cameramlkit.camera.RoiTextDetectorStage;
+import com.example.cameramlkit.capture.BestFrameSelector;
+import com.example.cameramlkit.capture.CaptureSidecar;
 import com.example.cameramlkit.databinding.ActivityCameraTextRecBinding;
-import com.example.cameramlkit.helpers.BoundingBoxDrawing;
-import com.google.mlkit.vision.text.Text;
-import com.google.mlkit.vision.text.TextRecognition;
+import com.example.cameramlkit.document.DocumentTranscript;
+import com.example.cameramlkit.keywords.Highlights;
+import com.example.cameramlkit.keywords.KeywordDictionary;
+import com.example.cameramlkit.keywords.KeywordMatcher;
+import com.example.cameramlkit.keywords.ResultHighlighter;
+import com.example.cameramlkit.overlay.BoxBuffer;
+import com.example.cameramlkit.overlay.BoxModelBuilder;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.RecognizedText;
+import com.example.cameramlkit.pipeline.SwitchingDetectorStage;
+import com.google.mlkit.vision.objects.ObjectDetector;
 import com.google.mlkit.vision.text.TextRecognizer;
-import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
 
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.TimeZone;
+
 
 public class CameraTextRecActivity extends AppCompatActivity {
 
     ActivityCameraTextRecBinding binding;
     CameraSelector lensFacingPosition = CameraSelector.DEFAULT_BACK_CAMERA;
-    ExecutorService cameraExecutor = Executors.newSingleThreadExecutor();
+    CameraPipeline cameraPipeline;
     LifecycleCameraController cameraController;
+    CaptureService captureService;
+
+    // keywords from assets/keywords.txt, highlighted in their category color once loaded;
+    // matched on the analysis thread, the UI thread only colors the boxes
+    final ResultHighlighter highlighter = new ResultHighlighter(Color.YELLOW);
+
+    // document mode: the text of every frame is merged into one transcript, saved with each photo
+    final DocumentTranscript transcript = new DocumentTranscript(2000, 3);
+    volatile boolean documentMode;
 
     ActivityResultLauncher<String> activityResultLauncher = registerForActivityResult(new ActivityResultContracts.RequestPermission(), result -> {
         if (result) {
@@ -78,88 +100,126 @@ public class CameraTextRecActivity extends AppCompatActivity {
 
 
     void initCameraProvider() {
-        cameraController = new LifecycleCameraController(binding.getRoot().getContext());
-        cameraController.setCameraSelector(lensFacingPosition);
-
-        TextRecognizer recognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
-
-        cameraController.setImageAnalysisAnalyzer(cameraExecutor,
-                new MlKitAnalyzer(List.of(recognizer),
-                        ImageAnalysis.COORDINATE_SYSTEM_VIEW_REFERENCED,
-                        cameraExecutor,
-                        result -> {
-                            Text visionText = result.getValue(recognizer);
-                            processText(visionText);
-                        }
-                )
-        );
-
-        cameraController.bindToLifecycle(this);
-        binding.cameraPreview.setController(cameraController);
-    }
+        DetectorClients clients = DetectorClients.getInstance();
+        DetectorClients.Lease<TextRecognizer> recognizer = clients.acquire(DetectorSpec.TEXT);
+        DetectorClients.Lease<ObjectDetector> roiDetector = clients.acquire(DetectorSpec.OBJECTS);
+        DetectorClients.Lease<TextRecognizer> roiRecognizer = clients.acquire(DetectorSpec.TEXT);
+
+        // full frame OCR, or OCR of the detected objects only when the ROI switch is on
+        SwitchingDetectorStage textDetector = new SwitchingDetectorStage(
+                MlKitDetectorStage.forText(recognizer),
+                new RoiTextDetectorStage(roiDetector, roiRecognizer));
+        textDetector.setUseFast(binding.switchRoi.isChecked());
+        binding.switchRoi.setOnCheckedChangeListener((button, checked) -> textDetector.setUseFast(checked));
+
+        cameraPipeline = new CameraPipeline.Builder(this, binding.cameraPreview)
+                .setBestFrameCriterion(BestFrameSelector.Criterion.TEXT)
+                .setCameraSelector(lensFacingPosition)
+                .setStaticSceneRefreshMillis(2000)
+                .setDetector(textDetector)
+                .setLatencyBudgetMillis(150)
+                .setSink(result -> {
+                    if (documentMode) {
+                        transcript.add(result.getText());
+                    }
+                    highlighter.onResult(result);
+                })
+                .setUiSink(this::processText)
+                .setErrorListener(e -> Log.e("info", e.getMessage()))
+                .build();
+        cameraController = cameraPipeline.getCameraController();
+        captureService = new CaptureService.Builder(this, cameraController, binding.cameraPreview)
+                .setOverlay(binding.boxOverlay)
+                .setResults(cameraPipeline::getLatestResult)
+                .setBestFrameSelector(cameraPipeline.getBestFrameSelector())
+                .build();
+        binding.imageButton.setOnLongClickListener(view -> captureService.captureBest(CaptureService.DEFAULT_BURST_SHOTS));
 
-    private void processText(Text visionText) {
-        binding.cameraPreview.getOverlay().clear();
-        if (binding.switchTextRec.isChecked()) {
+        highlighter.setEnabled(binding.switchTextRec.isChecked());
+        binding.switchTextRec.setOnCheckedChangeListener((button, checked) -> highlighter.setEnabled(checked));
 
-            for (Text.TextBlock block : visionText.getTextBlocks()) {
-                for (Text.Line line : block.getLines()) {
-                    for (Text.Element element : line.getElements()) {
-                        String elementText = element.getText();
-                        Rect boundingBox = element.getBoundingBox();
+        binding.switchDocument.setOnCheckedChangeListener((button, checked) -> {
+            // a new document each time the mode is turned on
+            transcript.clear();
+            documentMode = checked;
+        });
 
-                        int rectColor = Color.YELLOW;
-                        int textColor = Color.BLUE;
-                        if (elementText.equalsIgnoreCase("Dulergina")) { //to highlight some element in red bounding box
-                            rectColor = Color.RED;
-                        }
-                        binding.cameraPreview.getOverlay().add(new BoundingBoxDrawing(boundingBox, rectColor, elementText, textColor));
+        binding.metricsHud.setMetrics(cameraPipeline.getMetrics(), "text");
+        binding.btnSwitchCamera.setOnLongClickListener(view -> binding.metricsHud.toggle());
 
-                    }
-                }
+        loadKeywords();
+    }
+
+    private void loadKeywords() {
+        cameraPipeline.getExecutors().getWorkerPool().execute(() -> {
+            try (Reader reader = new InputStreamReader(getAssets().open("keywords.txt"), StandardCharsets.UTF_8)) {
+                highlighter.setMatcher(KeywordMatcher.compile(KeywordDictionary.parse(reader), 2));
+            } catch (IOException e) {
+                Log.e("info", e.getMessage());
             }
+        });
+    }
+
+    private void processText(DetectionResult result) {
+        BoxBuffer boxes = binding.boxOverlay.beginFrame(result.getTimestampNanos());
+        RecognizedText visionText = result.getText();
+        if (visionText != null && binding.switchTextRec.isChecked()) {
+            Highlights highlights = highlighter.get(result);
+            BoxModelBuilder.TextColorizer colorizer = highlights == null
+                    ? element -> Color.YELLOW
+                    : highlights;
+            BoxModelBuilder.addTextElements(boxes, visionText, colorizer, Color.BLUE);
         }
+        binding.boxOverlay.publish();
     }
 
     public void changeCameraLens() {
         lensFacingPosition = lensFacingPosition == CameraSelector.DEFAULT_BACK_CAMERA ?
                 CameraSelector.DEFAULT_FRONT_CAMERA :
                 CameraSelector.DEFAULT_BACK_CAMERA;
-        cameraController.setCameraSelector(lensFacingPosition);
+        // detectors and views stay, only what was shown of the previous lens goes
+        cameraPipeline.switchLens(lensFacingPosition);
+        highlighter.clear();
+        binding.boxOverlay.clear();
     }
 
     public void takePhoto() {
-        long timestamp = System.currentTimeMillis();
-
-        ImageCapture.OutputFileOptions outputFileOptions = getOutputFileOptions(timestamp);
-
-        cameraController.takePicture(outputFileOptions,
-                ContextCompat.getMainExecutor(binding.getRoot().getContext()),
-                new ImageCapture.OnImageSavedCallback() {
-                    @Override
-                    public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
-                        Toast.makeText(CameraTextRecActivity.this, "Photo taken correctly", Toast.LENGTH_SHORT).show();
-                    }
+        captureService.capture();
+        if (documentMode) {
+            exportTranscript();
+        }
+    }
 
-                    @Override
-                    public void onError(@NonNull ImageCaptureException exception) {
-                        Log.e("info", exception.getMessage());
-                    }
-                });
+    /**
+     * Writes the transcript so far as text and JSON to the app's external files under
+     * "documents" and adds it to the {@link CaptureIndex}, off the main thread.
+     */
+    private void exportTranscript() {
+        String name = CaptureSidecar.displayName("DOC", System.currentTimeMillis(), TimeZone.getDefault(), 0);
+        String text = transcript.toText();
+        String json = transcript.toJson();
+        int lines = transcript.getLineCount();
+        File directory = getExternalFilesDir("documents");
+        cameraPipeline.getExecutors().getWorkerPool().execute(() -> {
+            try {
+                if (directory == null || (!directory.isDirectory() && !directory.mkdirs())) {
+                    throw new IOException("No storage for documents");
+                }
+                write(new File(directory, name + ".txt"), text);
+                write(new File(directory, name + ".json"), json);
+                CaptureIndex.get(this).add(name, text);
+                Log.d("info", "transcript " + name + ": " + lines + " lines from " + transcript.getFrames() + " frames");
+                runOnUiThread(() -> Toast.makeText(this, "Transcript saved, " + lines + " lines", Toast.LENGTH_SHORT).show());
+            } catch (IOException e) {
+                Log.e("info", "transcript not saved: " + e.getMessage());
+            }
+        });
     }
 
-    private ImageCapture.OutputFileOptions getOutputFileOptions(long timestamp) {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, timestamp);
-        contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            contentValues.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_DCIM);
+    private static void write(File file, String content) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(content);
         }
-
-        return new ImageCapture.OutputFileOptions.Builder(binding.getRoot().getContext().getContentResolver(),
-                MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                contentValues)
-                .build();
     }
 
 
@@ -0,0 +1,151 @@
+package com.example.cameramlkit;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Environment;
+import android.util.Log;
+
+import androidx.activity.EdgeToEdge;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
+import androidx.core.graphics.Insets;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+
+import com.example.cameramlkit.batch.BatchCheckpoint;
+import com.example.cameramlkit.batch.BatchItem;
+import com.example.cameramlkit.batch.BatchResultWriter;
+import com.example.cameramlkit.batch.BatchRunner;
+import com.example.cameramlkit.cache.ResultCache;
+import com.example.cameramlkit.camera.CaptureIndex;
+import com.example.cameramlkit.camera.GalleryProcessor;
+import com.example.cameramlkit.capture.CaptureSidecar;
+import com.example.cameramlkit.databinding.ActivityGalleryBatchBinding;
+import com.example.cameramlkit.metrics.LatencyHistogram;
+import com.example.cameramlkit.search.TextIndex;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs all detectors over the photos in DCIM. Results are appended to results.jsonl and the
+ * photos' text is added to the {@link CaptureIndex}; progress is checkpointed next to the
+ * results, so a run that is stopped or killed continues where it was when started again.
+ * Results are also kept in a {@link ResultCache}, so a new run over the same photos does not
+ * run the detectors again.
+ */
+public class GalleryBatchActivity extends AppCompatActivity {
+
+    ActivityGalleryBatchBinding binding;
+    volatile BatchRunner runner;
+    Thread thread;
+
+    ActivityResultLauncher<String> activityResultLauncher = registerForActivityResult(
+            new ActivityResultContracts.RequestPermission(),
+            result -> {
+                if (result) {
+                    start();
+                } else {
+                    binding.txtProgress.setText("Needs access to photos");
+                }
+            });
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        EdgeToEdge.enable(this);
+        binding = ActivityGalleryBatchBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+        ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
+            Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
+            v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
+            return insets;
+        });
+
+        binding.btnStart.setOnClickListener(view -> {
+            String permission = Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                    ? Manifest.permission.READ_MEDIA_IMAGES
+                    : Manifest.permission.READ_EXTERNAL_STORAGE;
+            if (ContextCompat.checkSelfPermission(this, permission) != PackageManager.PERMISSION_GRANTED) {
+                activityResultLauncher.launch(permission);
+            } else {
+                start();
+            }
+        });
+
+        binding.btnStop.setOnClickListener(view -> {
+            BatchRunner running = runner;
+            if (running != null) {
+                running.cancel();
+                binding.btnStop.setEnabled(false);
+            }
+        });
+    }
+
+    void start() {
+        if (thread != null && thread.isAlive()) {
+            return;
+        }
+        binding.btnStart.setEnabled(false);
+        binding.btnStop.setEnabled(true);
+        binding.txtProgress.setText("Listing photos…");
+        thread = new Thread(this::runBatch, "gallery-batch");
+        thread.start();
+    }
+
+    // on the batch thread
+    private void runBatch() {
+        String status;
+        File directory = getExternalFilesDir("batch");
+        try (ResultCache cache = new ResultCache.Builder(new File(getCacheDir(), "results")).open();
+             GalleryProcessor processor = new GalleryProcessor(this, cache);
+             BatchResultWriter results = new BatchResultWriter(new File(directory, "results.jsonl"))) {
+            List<BatchItem> items = GalleryProcessor.listImages(this, Environment.DIRECTORY_DCIM);
+            TextIndex index = CaptureIndex.get(this);
+            runner = new BatchRunner.Builder(processor, BatchCheckpoint.load(new File(directory, "checkpoint")))
+                    .addSink(results)
+                    .addSink((item, result) -> {
+                        // captures are indexed when they are taken, from the frame they were taken of
+                        if (index.contains(item.getName())) {
+                            return;
+                        }
+                        String text = CaptureSidecar.indexableText(result);
+                        if (!text.isEmpty()) {
+                            index.add(item.getName(), text);
+                        }
+                    })
+                    .setListener(progress -> runOnUiThread(() -> binding.txtProgress.setText(progress.toString())))
+                    .build();
+            Log.d("info", "batch of " + items.size() + " images on " + runner.getWorkers() + " workers");
+            BatchRunner.Progress progress = runner.run(items);
+            LatencyHistogram.Snapshot latency = runner.getImageLatency().snapshot();
+            status = String.format(Locale.US, "%s\nper image: %.0f ms mean, %.0f ms p95 on %d workers",
+                    progress, latency.getMeanMillis(), latency.getPercentileMillis(95), runner.getWorkers());
+            Log.d("info", "batch " + status + ", cache " + cache);
+        } catch (Exception e) {
+            Log.e("info", "batch failed: " + e.getMessage());
+            status = "Failed: " + e.getMessage();
+        }
+        String finalStatus = status;
+        runOnUiThread(() -> {
+            binding.txtProgress.setText(finalStatus);
+            binding.btnStart.setEnabled(true);
+            binding.btnStop.setEnabled(false);
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // the run stops at the next image and keeps its progress
+        BatchRunner running = runner;
+        if (running != null) {
+            running.cancel();
+        }
+    }
+}
@@ -9,8 +9,12 @@ import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
+import com.example.cameramlkit.camera.DetectorClients;
+import com.example.cameramlkit.camera.DetectorSpec;
 import com.example.cameramlkit.databinding.ActivityMainBinding;
 
+import java.util.Arrays;
+
 public class MainActivity extends AppCompatActivity {
 
     ActivityMainBinding binding;
@@ -27,6 +31,13 @@ public class MainActivity extends AppCompatActivity {
             return insets;
         });
 
+        // load the detector models while the user picks a mode
+        DetectorClients.getInstance().prewarm(Arrays.asList(
+                DetectorSpec.OBJECTS,
+                DetectorSpec.CUSTOM_OBJECTS,
+                DetectorSpec.LABELS,
+                DetectorSpec.TEXT));
+
         binding.btnCameraSimple.setOnClickListener(view -> {
             startActivity(new Intent(MainActivity.this, CameraSimpleActivity.class));
         });
@@ -47,5 +58,13 @@ public class MainActivity extends AppCompatActivity {
         binding.btnCameraMyObjDetec.setOnClickListener(view -> {
             startActivity(new Intent(MainActivity.this, CameraMyObjRecActivity.class));
         });
+
+        binding.btnCameraFused.setOnClickListener(view -> {
+            startActivity(new Intent(MainActivity.this, CameraFusedActivity.class));
+        });
+
+        binding.btnGalleryBatch.setOnClickListener(view -> {
+            startActivity(new Intent(MainActivity.this, GalleryBatchActivity.class));
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.example.cameramlkit.batch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Progress of a batch run, saved so a run that was killed resumes where it stopped. Items are
+ * started in ascending id order, so progress is a watermark (every item up to it is finished)
+ * plus the few finished items above it, those that overtook a slower one still in flight.
+ * <p>
+ * Saved as a properties file, replaced atomically. Not thread safe; the {@link BatchRunner}
+ * guards it.
+ */
+public final class BatchCheckpoint {
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final File file;
+    private long watermark = Long.MIN_VALUE;
+    private final TreeSet<Long> finishedAbove = new TreeSet<>();
+    // submitted, not finished
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+    // highest id started or skipped in this run
+    private long reached = Long.MIN_VALUE;
+    private long processed;
+    private long failed;
+
+    private BatchCheckpoint(File file) {
+        this.file = file;
+    }
+
+    /**
+     * The progress saved in {@code file}, or none if there is no such file.
+     */
+    public static BatchCheckpoint load(File file) throws IOException {
+        BatchCheckpoint checkpoint = new BatchCheckpoint(file);
+        if (!file.isFile()) {
+            return checkpoint;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        try {
+            checkpoint.watermark = Long.parseLong(properties.getProperty("watermark", String.valueOf(Long.MIN_VALUE)));
+            checkpoint.processed = Long.parseLong(properties.getProperty("processed", "0"));
+            checkpoint.failed = Long.parseLong(properties.getProperty("failed", "0"));
+            String finished = properties.getProperty("finished", "").trim();
+            if (!finished.isEmpty()) {
+                for (String id : finished.split(",")) {
+                    checkpoint.finishedAbove.add(Long.parseLong(id.trim()));
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad checkpoint " + file.getName() + ": " + e.getMessage(), e);
+        }
+        return checkpoint;
+    }
+
+    public boolean isFinished(long id) {
+        return id <= watermark || finishedAbove.contains(id);
+    }
+
+    /**
+     * The item {@code id} was handed to a worker; ids must ascend.
+     */
+    void onStarted(long id) {
+        inFlight.add(id);
+        reached = id;
+    }
+
+    void onFinished(long id, boolean success) {
+        inFlight.remove(id);
+        finishedAbove.add(id);
+        if (success) {
+            processed++;
+        } else {
+            failed++;
+        }
+        advance();
+    }
+
+    /**
+     * The item {@code id} was found finished by an earlier run and is not started again.
+     */
+    void onSkipped(long id) {
+        reached = Math.max(reached, id);
+        advance();
+    }
+
+    // every item reached and not in flight is finished, up to the oldest one in flight
+    private void advance() {
+        long limit = inFlight.isEmpty() ? reached : inFlight.first() - 1;
+        Iterator<Long> finished = finishedAbove.iterator();
+        while (finished.hasNext()) {
+            long id = finished.next();
+            if (id <= watermark) {
+                finished.remove();
+            } else if (id <= limit) {
+                watermark = id;
+                finished.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Items processed successfully, over all runs.
+     */
+    public long getProcessed() {
+        return processed;
+    }
+
+    /**
+     * Items that could not be processed, over all runs. They are not retried.
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Writes the progress, synced, in place of the previous file.
+     */
+    public void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("watermark", String.valueOf(watermark));
+        properties.setProperty("processed", String.valueOf(processed));
+        properties.setProperty("failed", String.valueOf(failed));
+        StringBuilder finished = new StringBuilder();
+        for (long id : finishedAbove) {
+            if (finished.length() > 0) {
+                finished.append(',');
+            }
+            finished.append(id);
+        }
+        properties.setProperty("finished", finished.toString());
+        File temporary = new File(file.getPath() + TEMPORARY_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            properties.store(out, "batch progress");
+            out.getFD().sync();
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+}
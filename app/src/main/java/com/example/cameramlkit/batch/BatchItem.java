@@ -0,0 +1,70 @@
+package com.example.cameramlkit.batch;
+
+/**
+ * One image of a batch run, e.g. a MediaStore row. Runs visit items in ascending id order, which
+ * is what lets a {@link BatchCheckpoint} describe progress compactly.
+ */
+public final class BatchItem {
+
+    private final long id;
+    private final String name;
+    private final int width;
+    private final int height;
+    private final int rotationDegrees;
+
+    public BatchItem(long id, String name, int width, int height) {
+        this(id, name, width, height, 0);
+    }
+
+    /**
+     * @param width           upright width in pixels, 0 if unknown
+     * @param height          upright height in pixels, 0 if unknown
+     * @param rotationDegrees clockwise rotation that makes the stored image upright
+     */
+    public BatchItem(long id, String name, int width, int height, int rotationDegrees) {
+        this.id = id;
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = rotationDegrees;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    /**
+     * The largest power of two to decode an image of the given size with (as
+     * {@code BitmapFactory.Options.inSampleSize}) that keeps its long side at least
+     * {@code longSide} pixels, 1 if it is smaller.
+     */
+    public static int sampleSize(int width, int height, int longSide) {
+        int side = Math.max(width, height);
+        int sampleSize = 1;
+        while (side / (sampleSize * 2) >= longSide) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @Override
+    public String toString() {
+        return name + " #" + id;
+    }
+}
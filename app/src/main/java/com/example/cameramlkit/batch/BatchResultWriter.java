@@ -0,0 +1,49 @@
+package com.example.cameramlkit.batch;
+
+import com.example.cameramlkit.capture.CaptureSidecar;
+import com.example.cameramlkit.pipeline.DetectionResult;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Streams batch results to a JSON lines file, one {@link CaptureSidecar} document per image with
+ * the item's id as its only info, so gallery results read like the sidecars of captured photos.
+ * Appends, so a resumed run continues the file of the run it resumes.
+ */
+public final class BatchResultWriter implements BatchRunner.Sink, Closeable {
+
+    private final FileOutputStream stream;
+    private final BufferedWriter writer;
+
+    public BatchResultWriter(File file) throws IOException {
+        stream = new FileOutputStream(file, true);
+        writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    @Override
+    public void accept(BatchItem item, DetectionResult result) throws IOException {
+        Map<String, String> info = Collections.singletonMap("id", String.valueOf(item.getId()));
+        writer.write(CaptureSidecar.toJson(info, item.getName(), item.getWidth(), item.getHeight(), result,
+                bounds -> bounds));
+        writer.write('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+        stream.getFD().sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.cameramlkit.batch;
+
+import com.example.cameramlkit.metrics.LatencyHistogram;
+import com.example.cameramlkit.pipeline.DetectionResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs the detectors over a list of images, e.g. a gallery folder, on a bounded pool of worker
+ * threads. At most two items per worker are in flight, so a run over tens of thousands of
+ * images holds only a few decoded images at a time; results are streamed to the
+ * {@link Sink}s as they come.
+ * <p>
+ * Progress is checkpointed every {@link Builder#setCheckpointInterval interval} items and when
+ * the run ends or is cancelled: the sinks are flushed first, then the {@link BatchCheckpoint}
+ * is saved. A run started again with the same checkpoint skips what was finished; items that
+ * finished after the last checkpoint are processed and written again, so readers of the
+ * results keep the last record of an item.
+ */
+public final class BatchRunner {
+
+    /**
+     * Detects everything in one image; called on the worker threads, may block.
+     */
+    public interface Processor {
+        /**
+         * @return the result, with bounds in the item's full size pixels
+         */
+        DetectionResult process(BatchItem item) throws Exception;
+    }
+
+    /**
+     * Where results go; called by one thread at a time, in completion order.
+     */
+    public interface Sink {
+        void accept(BatchItem item, DetectionResult result) throws IOException;
+
+        /**
+         * Makes everything accepted so far durable; called before each checkpoint.
+         */
+        default void flush() throws IOException {
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called on a worker thread after each checkpoint, and on the thread of {@link #run}
+         * at the end.
+         */
+        void onProgress(Progress progress);
+    }
+
+    /**
+     * A snapshot of the run.
+     */
+    public static final class Progress {
+        private final int total;
+        private final long finished;
+        private final long processed;
+        private final long failed;
+        private final long elapsedNanos;
+        private final boolean done;
+
+        Progress(int total, long finished, long processed, long failed, long elapsedNanos, boolean done) {
+            this.total = total;
+            this.finished = finished;
+            this.processed = processed;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+            this.done = done;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Items finished, including those of earlier runs.
+         */
+        public long getFinished() {
+            return finished;
+        }
+
+        /**
+         * Items processed in this run.
+         */
+        public long getProcessed() {
+            return processed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * Throughput of this run so far.
+         */
+        public double getImagesPerSecond() {
+            return elapsedNanos <= 0 ? 0 : (processed + failed) * 1e9 / elapsedNanos;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d/%d images, %d failed, %.1f images/s%s",
+                    finished, total, failed, getImagesPerSecond(), done ? ", done" : "");
+        }
+    }
+
+    private final Processor processor;
+    private final List<Sink> sinks;
+    private final Listener listener;
+    private final BatchCheckpoint checkpoint;
+    private final int workers;
+    private final int checkpointInterval;
+    private final LongSupplier clock;
+    private final LatencyHistogram imageLatency = new LatencyHistogram();
+    private final Object lock = new Object();
+    // guarded by lock
+    private int total;
+    private long finished;
+    private long processed;
+    private long failed;
+    private long startNanos;
+    private int sinceCheckpoint;
+    private IOException sinkError;
+    private volatile boolean cancelled;
+
+    private BatchRunner(Builder builder) {
+        this.processor = builder.processor;
+        this.sinks = new ArrayList<>(builder.sinks);
+        this.listener = builder.listener;
+        this.checkpoint = builder.checkpoint;
+        this.workers = builder.workers;
+        this.checkpointInterval = builder.checkpointInterval;
+        this.clock = builder.clock;
+    }
+
+    /**
+     * Processes the items not finished yet, in ascending id order, and returns when all are
+     * finished or the run was cancelled. Blocks; not for the main thread.
+     *
+     * @throws IOException when results or progress cannot be stored; the run stops
+     */
+    public Progress run(List<BatchItem> items) throws IOException, InterruptedException {
+        Semaphore slots = new Semaphore(workers * 2);
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "batch-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        synchronized (lock) {
+            total = items.size();
+            startNanos = clock.getAsLong();
+        }
+        try {
+            long previous = Long.MIN_VALUE;
+            for (BatchItem item : items) {
+                if (item.getId() <= previous) {
+                    throw new IllegalArgumentException("Items must be in ascending id order");
+                }
+                previous = item.getId();
+                synchronized (lock) {
+                    throwIfSinkFailed();
+                    if (checkpoint.isFinished(item.getId())) {
+                        checkpoint.onSkipped(item.getId());
+                        finished++;
+                        continue;
+                    }
+                }
+                slots.acquire();
+                if (cancelled) {
+                    slots.release();
+                    break;
+                }
+                synchronized (lock) {
+                    checkpoint.onStarted(item.getId());
+                }
+                pool.execute(() -> {
+                    try {
+                        process(item);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            // items in flight are finished even when cancelled, so their progress is kept
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        synchronized (lock) {
+            throwIfSinkFailed();
+            saveCheckpoint();
+            Progress progress = progress(!cancelled);
+            if (listener != null) {
+                listener.onProgress(progress);
+            }
+            return progress;
+        }
+    }
+
+    /**
+     * Stops starting items; {@link #run} returns once those in flight are finished.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Time from decoding to detection of one image, per worker.
+     */
+    public LatencyHistogram getImageLatency() {
+        return imageLatency;
+    }
+
+    public Progress getProgress() {
+        synchronized (lock) {
+            return progress(false);
+        }
+    }
+
+    /**
+     * Workers for a device: one per core but one, so the UI keeps a core, and no more than
+     * the heap holds when each worker has {@code bytesPerImage} (decoded image and detector
+     * inputs) live and a quarter of the heap stays free.
+     */
+    public static int workersFor(int cores, long maxMemoryBytes, long bytesPerImage) {
+        long byMemory = maxMemoryBytes * 3 / 4 / Math.max(1, bytesPerImage);
+        return (int) Math.max(1, Math.min(cores - 1, byMemory));
+    }
+
+    // worker thread
+    private void process(BatchItem item) {
+        DetectionResult result = null;
+        long start = clock.getAsLong();
+        try {
+            result = processor.process(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // counted as failed below; one unreadable image must not stop the run
+        }
+        imageLatency.recordNanos(clock.getAsLong() - start);
+        synchronized (lock) {
+            if (sinkError != null) {
+                return;
+            }
+            try {
+                if (result != null) {
+                    for (Sink sink : sinks) {
+                        sink.accept(item, result);
+                    }
+                    processed++;
+                } else {
+                    failed++;
+                }
+                finished++;
+                checkpoint.onFinished(item.getId(), result != null);
+                if (++sinceCheckpoint >= checkpointInterval) {
+                    saveCheckpoint();
+                    if (listener != null) {
+                        listener.onProgress(progress(false));
+                    }
+                }
+            } catch (IOException e) {
+                sinkError = e;
+                cancelled = true;
+            }
+        }
+    }
+
+    // with the lock held
+    private void saveCheckpoint() throws IOException {
+        for (Sink sink : sinks) {
+            sink.flush();
+        }
+        checkpoint.save();
+        sinceCheckpoint = 0;
+    }
+
+    private void throwIfSinkFailed() throws IOException {
+        if (sinkError != null) {
+            throw sinkError;
+        }
+    }
+
+    private Progress progress(boolean done) {
+        return new Progress(total, finished, processed, failed, clock.getAsLong() - startNanos, done);
+    }
+
+    public static final class Builder {
+        private final Processor processor;
+        private final BatchCheckpoint checkpoint;
+        private final List<Sink> sinks = new ArrayList<>();
+        private Listener listener;
+        private int workers = workersFor(Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().maxMemory(), 32L * 1024 * 1024);
+        private int checkpointInterval = 50;
+        private LongSupplier clock = System::nanoTime;
+
+        public Builder(Processor processor, BatchCheckpoint checkpoint) {
+            this.processor = processor;
+            this.checkpoint = checkpoint;
+        }
+
+        public Builder addSink(Sink sink) {
+            sinks.add(sink);
+            return this;
+        }
+
+        public Builder setListener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Worker threads; by default {@link #workersFor} this device with 32 MB per image.
+         */
+        public Builder setWorkers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Items between checkpoints, 50 by default: about the work lost when the run is killed.
+         */
+        public Builder setCheckpointInterval(int checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        public Builder setClock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public BatchRunner build() {
+            if (workers < 1 || checkpointInterval < 1) {
+                throw new IllegalStateException("At least one worker and one item per checkpoint");
+            }
+            return new BatchRunner(this);
+        }
+    }
+}
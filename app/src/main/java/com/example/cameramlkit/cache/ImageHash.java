@@ -0,0 +1,61 @@
+package com.example.cameramlkit.cache;
+
+/**
+ * Perceptual 64 bit hash of an image (a difference hash): the image is averaged down to 9 x 8
+ * gray cells and each bit says whether a cell is brighter than its right neighbour. Decoding
+ * the same photo at another sample size, re-encoding it or small changes of exposure keep the
+ * hash, so it identifies a picture rather than a file.
+ */
+public final class ImageHash {
+
+    private static final int COLUMNS = 9;
+    private static final int ROWS = 8;
+
+    private ImageHash() {
+    }
+
+    /**
+     * @param argb {@code width * height} packed ARGB pixels, rows packed
+     */
+    public static long of(int[] argb, int width, int height) {
+        if (width < 1 || height < 1 || argb.length < width * height) {
+            throw new IllegalArgumentException("Expected " + width + " x " + height + " pixels");
+        }
+        long[] cells = new long[COLUMNS * ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            int y0 = row * height / ROWS;
+            int y1 = Math.max(y0 + 1, (row + 1) * height / ROWS);
+            for (int column = 0; column < COLUMNS; column++) {
+                int x0 = column * width / COLUMNS;
+                int x1 = Math.max(x0 + 1, (column + 1) * width / COLUMNS);
+                long sum = 0;
+                for (int y = y0; y < y1; y++) {
+                    int offset = y * width;
+                    for (int x = x0; x < x1; x++) {
+                        sum += gray(argb[offset + x]);
+                    }
+                }
+                // compared with its neighbours only, so scale by the area instead of dividing
+                cells[row * COLUMNS + column] = sum * 65536 / ((long) (y1 - y0) * (x1 - x0));
+            }
+        }
+        long hash = 0;
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS - 1; column++) {
+                hash <<= 1;
+                if (cells[row * COLUMNS + column] > cells[row * COLUMNS + column + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    // BT.601 luma, as camera Y planes have it
+    private static int gray(int argb) {
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        return (77 * r + 150 * g + 29 * b) >> 8;
+    }
+}
@@ -0,0 +1,542 @@
+package com.example.cameramlkit.cache;
+
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.replay.ResultLog;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.zip.CRC32;
+
+/**
+ * Detection results on disk, keyed by what was analyzed: the {@link ImageHash} and size of an
+ * image and the {@link #detectorsKey identity of the detectors}, so analyzing a picture again
+ * with the same detectors and models costs a lookup instead of inference.
+ * <p>
+ * Results are appended to a log in the {@link ResultLog} format, each record with its key and
+ * a checksum. A memory mapped open addressing table maps keys to records and keeps their last
+ * use, so lookups and the recency updates of hits are memory accesses. A record is checked
+ * against its key and checksum when read, so a torn or stale index costs misses, never wrong
+ * results; an index that does not match the log is rebuilt from it on open.
+ * <p>
+ * Once the log exceeds its {@link Builder#setMaxBytes size}, it is compacted to half of it,
+ * keeping the most recently used results. Entries of detectors that changed, e.g. a new model
+ * file, are never hit again and age out the same way. Does I/O; not for the main thread. All
+ * methods are thread safe.
+ */
+public final class ResultCache implements Closeable {
+
+    static final String LOG = "results.log";
+    static final String INDEX = "index";
+    static final long MAGIC = 0x434D4C4B52433031L; // "CMLKRC01"
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 64;
+    static final int SLOT_BYTES = 48;
+    static final int RECORD_HEADER_BYTES = 32;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int SLOTS_OFFSET = 12;
+    private static final int LOG_END_OFFSET = 16;
+    private static final int CLOCK_OFFSET = 24;
+
+    // slot: image hash, detectors, width, height, record position + 1 (0 when empty), last use, length
+    private static final int SLOT_IMAGE = 0;
+    private static final int SLOT_DETECTORS = 8;
+    private static final int SLOT_WIDTH = 16;
+    private static final int SLOT_HEIGHT = 20;
+    private static final int SLOT_POSITION = 24;
+    private static final int SLOT_TICK = 32;
+    private static final int SLOT_LENGTH = 40;
+
+    private static final int MIN_SLOTS = 1024;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+    private RandomAccessFile log;
+    private FileChannel logChannel;
+    private long logEnd;
+    private RandomAccessFile indexFile;
+    private MappedByteBuffer index;
+    private int slots;
+    private int count;
+    private long clock;
+    private long liveBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long compactions;
+    private boolean closed;
+
+    private ResultCache(Builder builder) {
+        this.directory = builder.directory;
+        this.maxBytes = builder.maxBytes;
+    }
+
+    /**
+     * A stable key for a set of detectors, from identities such as their option keys and the
+     * version or checksum of their model files.
+     */
+    public static long detectorsKey(String... identities) {
+        long hash = 0xCBF29CE484222325L;
+        for (String identity : identities) {
+            for (int i = 0; i < identity.length(); i++) {
+                hash = (hash ^ identity.charAt(i)) * 0x100000001B3L;
+            }
+            hash = (hash ^ 0xFFFF) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * The result stored for the image and detectors, or null.
+     *
+     * @param width  size of the image the result's bounds refer to
+     * @param height see {@code width}
+     */
+    public synchronized DetectionResult get(long imageHash, int width, int height, long detectors) throws IOException {
+        checkOpen();
+        int slot = find(imageHash, width, height, detectors);
+        if (slot < 0) {
+            misses++;
+            return null;
+        }
+        int at = HEADER_BYTES + slot * SLOT_BYTES;
+        DetectionResult result = read(index.getLong(at + SLOT_POSITION) - 1, index.getInt(at + SLOT_LENGTH),
+                imageHash, width, height, detectors);
+        if (result == null) {
+            misses++;
+            return null;
+        }
+        index.putLong(at + SLOT_TICK, ++clock);
+        index.putLong(CLOCK_OFFSET, clock);
+        hits++;
+        return result;
+    }
+
+    /**
+     * Stores the result for the image and detectors, in place of an earlier one.
+     */
+    public synchronized void put(long imageHash, int width, int height, long detectors, DetectionResult result)
+            throws IOException {
+        checkOpen();
+        StringBuilder text = new StringBuilder();
+        ResultLog.write(result, text);
+        byte[] payload = text.toString().getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_HEADER_BYTES + payload.length;
+        if (length > maxBytes / 4) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(length);
+        record.putInt((int) crc.getValue());
+        record.putLong(imageHash);
+        record.putLong(detectors);
+        record.putInt(width);
+        record.putInt(height);
+        record.put(payload);
+        record.flip();
+        while (record.hasRemaining()) {
+            logChannel.write(record, logEnd + record.position());
+        }
+        if ((count + 1) * 2 > slots) {
+            installIndex(entries(), slots * 2);
+        }
+        insert(new Entry(imageHash, detectors, width, height, logEnd, length, ++clock));
+        logEnd += length;
+        publish();
+        if (logEnd > maxBytes) {
+            compact();
+        }
+    }
+
+    public synchronized int getEntryCount() {
+        return count;
+    }
+
+    /**
+     * Size of the log, including results that were replaced.
+     */
+    public synchronized long getLogBytes() {
+        return logEnd;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Results dropped by compactions to keep the log within its size.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getCompactions() {
+        return compactions;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        index.force();
+        indexFile.close();
+        log.close();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%d results (%d KB live, %d KB log), %d hits, %d misses, %d evicted",
+                count, liveBytes / 1024, logEnd / 1024, hits, misses, evictions);
+    }
+
+    private void load() throws IOException {
+        log = new RandomAccessFile(new File(directory, LOG), "rw");
+        logChannel = log.getChannel();
+        logEnd = log.length();
+        if (!mapIndex(new File(directory, INDEX))) {
+            rebuild();
+        }
+    }
+
+    // the existing index, if it describes the log as it is
+    private boolean mapIndex(File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_BYTES) {
+            return false;
+        }
+        RandomAccessFile candidate = new RandomAccessFile(file, "rw");
+        MappedByteBuffer map = candidate.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, candidate.length());
+        int slotCount = map.getInt(SLOTS_OFFSET);
+        if (map.getLong(MAGIC_OFFSET) != MAGIC || map.getInt(VERSION_OFFSET) != VERSION
+                || slotCount < MIN_SLOTS || Integer.bitCount(slotCount) != 1
+                || candidate.length() != HEADER_BYTES + (long) slotCount * SLOT_BYTES
+                || map.getLong(LOG_END_OFFSET) != logEnd) {
+            candidate.close();
+            return false;
+        }
+        // slots pointing outside the log, or too many of them for probing to end, mean a torn index
+        int entries = 0;
+        long bytes = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int at = HEADER_BYTES + slot * SLOT_BYTES;
+            long position = map.getLong(at + SLOT_POSITION) - 1;
+            if (position < 0) {
+                continue;
+            }
+            int length = map.getInt(at + SLOT_LENGTH);
+            if (length < RECORD_HEADER_BYTES || position + length > logEnd || ++entries * 2 > slotCount) {
+                candidate.close();
+                return false;
+            }
+            bytes += length;
+        }
+        indexFile = candidate;
+        index = map;
+        slots = slotCount;
+        count = entries;
+        liveBytes = bytes;
+        clock = map.getLong(CLOCK_OFFSET);
+        return true;
+    }
+
+    // indexes the log from its start, cutting off a torn or corrupt tail
+    private void rebuild() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        long position = 0;
+        while (position + RECORD_HEADER_BYTES <= logEnd) {
+            header.clear();
+            readFully(header, position);
+            int length = header.getInt(0);
+            if (length < RECORD_HEADER_BYTES || position + length > logEnd) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length - RECORD_HEADER_BYTES);
+            readFully(payload, position + RECORD_HEADER_BYTES);
+            if (crcOf(payload.array()) != header.getInt(4)) {
+                break;
+            }
+            entries.add(new Entry(header.getLong(8), header.getLong(16), header.getInt(24), header.getInt(28),
+                    position, length, entries.size() + 1));
+            position += length;
+        }
+        if (position < logEnd) {
+            log.setLength(position);
+            logEnd = position;
+        }
+        clock = entries.size();
+        installIndex(entries, slotsFor(entries.size()));
+    }
+
+    // rewrites the log with the most recently used half of the budget
+    private void compact() throws IOException {
+        List<Entry> entries = entries();
+        entries.sort((a, b) -> Long.compare(b.tick, a.tick));
+        long budget = maxBytes / 2;
+        long kept = 0;
+        int keep = 0;
+        while (keep < entries.size() && kept + entries.get(keep).length <= budget) {
+            kept += entries.get(keep).length;
+            keep++;
+        }
+        List<Entry> survivors = new ArrayList<>(entries.subList(0, keep));
+        // oldest first, so a rebuild from the log keeps their order of use
+        survivors.sort((a, b) -> Long.compare(a.tick, b.tick));
+        File temporary = new File(directory, LOG + TEMPORARY_SUFFIX);
+        long position = 0;
+        try (RandomAccessFile out = new RandomAccessFile(temporary, "rw")) {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            for (Entry entry : survivors) {
+                long copied = 0;
+                while (copied < entry.length) {
+                    copied += logChannel.transferTo(entry.position + copied, entry.length - copied, channel);
+                }
+                entry.position = position;
+                position += entry.length;
+            }
+            out.getFD().sync();
+        }
+        log.close();
+        if (!temporary.renameTo(new File(directory, LOG))) {
+            throw new IOException("Cannot replace " + LOG);
+        }
+        log = new RandomAccessFile(new File(directory, LOG), "rw");
+        logChannel = log.getChannel();
+        logEnd = position;
+        evictions += entries.size() - keep;
+        compactions++;
+        installIndex(survivors, slotsFor(survivors.size()));
+    }
+
+    // a new index of the entries, replacing the current one
+    private void installIndex(List<Entry> entries, int slotCount) throws IOException {
+        File temporary = new File(directory, INDEX + TEMPORARY_SUFFIX);
+        RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+        MappedByteBuffer map;
+        try {
+            long size = HEADER_BYTES + (long) slotCount * SLOT_BYTES;
+            file.setLength(0);
+            file.setLength(size);
+            map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        map.putLong(MAGIC_OFFSET, MAGIC);
+        map.putInt(VERSION_OFFSET, VERSION);
+        map.putInt(SLOTS_OFFSET, slotCount);
+        if (indexFile != null) {
+            indexFile.close();
+        }
+        indexFile = file;
+        index = map;
+        slots = slotCount;
+        count = 0;
+        liveBytes = 0;
+        for (Entry entry : entries) {
+            insert(entry);
+        }
+        publish();
+        index.force();
+        if (!temporary.renameTo(new File(directory, INDEX))) {
+            throw new IOException("Cannot replace " + INDEX);
+        }
+    }
+
+    // the header last, so it only vouches for a log whose records are indexed
+    private void publish() {
+        index.putLong(CLOCK_OFFSET, clock);
+        index.putLong(LOG_END_OFFSET, logEnd);
+    }
+
+    private void insert(Entry entry) {
+        int slot = find(entry.imageHash, entry.width, entry.height, entry.detectors);
+        if (slot >= 0) {
+            liveBytes -= index.getInt(HEADER_BYTES + slot * SLOT_BYTES + SLOT_LENGTH);
+        } else {
+            slot = -slot - 1;
+            count++;
+        }
+        int at = HEADER_BYTES + slot * SLOT_BYTES;
+        index.putLong(at + SLOT_IMAGE, entry.imageHash);
+        index.putLong(at + SLOT_DETECTORS, entry.detectors);
+        index.putInt(at + SLOT_WIDTH, entry.width);
+        index.putInt(at + SLOT_HEIGHT, entry.height);
+        index.putLong(at + SLOT_POSITION, entry.position + 1);
+        index.putLong(at + SLOT_TICK, entry.tick);
+        index.putInt(at + SLOT_LENGTH, entry.length);
+        liveBytes += entry.length;
+    }
+
+    /**
+     * The slot holding the key, or {@code -slot - 1} of the empty slot where it would go.
+     */
+    private int find(long imageHash, int width, int height, long detectors) {
+        int mask = slots - 1;
+        long mixed = (imageHash ^ detectors * 0x9E3779B97F4A7C15L ^ ((long) width << 32 | height)) * 0xBF58476D1CE4E5B9L;
+        int slot = (int) (mixed ^ (mixed >>> 32)) & mask;
+        while (true) {
+            int at = HEADER_BYTES + slot * SLOT_BYTES;
+            if (index.getLong(at + SLOT_POSITION) == 0) {
+                return -slot - 1;
+            }
+            if (index.getLong(at + SLOT_IMAGE) == imageHash && index.getLong(at + SLOT_DETECTORS) == detectors
+                    && index.getInt(at + SLOT_WIDTH) == width && index.getInt(at + SLOT_HEIGHT) == height) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(count);
+        for (int slot = 0; slot < slots; slot++) {
+            int at = HEADER_BYTES + slot * SLOT_BYTES;
+            long position = index.getLong(at + SLOT_POSITION);
+            if (position != 0) {
+                entries.add(new Entry(index.getLong(at + SLOT_IMAGE), index.getLong(at + SLOT_DETECTORS),
+                        index.getInt(at + SLOT_WIDTH), index.getInt(at + SLOT_HEIGHT), position - 1,
+                        index.getInt(at + SLOT_LENGTH), index.getLong(at + SLOT_TICK)));
+            }
+        }
+        return entries;
+    }
+
+    // null unless the record is intact and is the key's
+    private DetectionResult read(long position, int length, long imageHash, int width, int height, long detectors)
+            throws IOException {
+        if (position < 0 || length < RECORD_HEADER_BYTES || position + length > logEnd) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(record, position);
+        byte[] payload = new byte[length - RECORD_HEADER_BYTES];
+        record.position(RECORD_HEADER_BYTES);
+        record.get(payload);
+        if (record.getInt(0) != length || record.getInt(4) != crcOf(payload)
+                || record.getLong(8) != imageHash || record.getLong(16) != detectors
+                || record.getInt(24) != width || record.getInt(28) != height) {
+            return null;
+        }
+        NavigableMap<Long, DetectionResult> results;
+        try {
+            results = ResultLog.read(new StringReader(new String(payload, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            return null;
+        }
+        return results.isEmpty() ? null : results.firstEntry().getValue();
+    }
+
+    private void readFully(ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (logChannel.read(target, position + target.position()) < 0) {
+                throw new IOException("Unexpected end of " + LOG);
+            }
+        }
+    }
+
+    private static int crcOf(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    // at most a quarter full, so it takes twice the entries before growing
+    private static int slotsFor(int entries) {
+        int slots = MIN_SLOTS;
+        while (slots < entries * 4L) {
+            slots *= 2;
+        }
+        return slots;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Result cache closed");
+        }
+    }
+
+    private static final class Entry {
+        final long imageHash;
+        final long detectors;
+        final int width;
+        final int height;
+        long position;
+        final int length;
+        final long tick;
+
+        Entry(long imageHash, long detectors, int width, int height, long position, int length, long tick) {
+            this.imageHash = imageHash;
+            this.detectors = detectors;
+            this.width = width;
+            this.height = height;
+            this.position = position;
+            this.length = length;
+            this.tick = tick;
+        }
+    }
+
+    public static final class Builder {
+        private final File directory;
+        private long maxBytes = 64L * 1024 * 1024;
+
+        /**
+         * @param directory where the cache keeps its files, e.g. in the app's cache directory
+         */
+        public Builder(File directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Size the log is compacted at, 64 MB by default; results take about 1 to 4 KB.
+         */
+        public Builder setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public ResultCache open() throws IOException {
+            if (maxBytes < 64 * 1024) {
+                throw new IllegalStateException("maxBytes must be at least 64 KB");
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            ResultCache cache = new ResultCache(this);
+            try {
+                cache.load();
+            } catch (IOException | RuntimeException e) {
+                if (cache.log != null) {
+                    cache.log.close();
+                }
+                if (cache.indexFile != null) {
+                    cache.indexFile.close();
+                }
+                throw e;
+            }
+            return cache;
+        }
+    }
+}
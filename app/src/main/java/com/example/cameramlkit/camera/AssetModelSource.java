@@ -0,0 +1,75 @@
+package com.example.cameramlkit.camera;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import com.example.cameramlkit.models.ModelRegistry;
+import com.example.cameramlkit.models.ModelSource;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Models bundled in the APK's assets. They must be stored uncompressed to be memory mapped.
+ */
+public final class AssetModelSource implements ModelSource {
+
+    private final AssetManager assets;
+
+    public AssetModelSource(AssetManager assets) {
+        this.assets = assets;
+    }
+
+    @Override
+    public String getName() {
+        return "assets";
+    }
+
+    @Override
+    public List<String> list() throws IOException {
+        List<String> models = new ArrayList<>();
+        String[] files = assets.list("");
+        if (files != null) {
+            for (String file : files) {
+                if (file.endsWith(ModelRegistry.MODEL_SUFFIX)) {
+                    models.add(file);
+                }
+            }
+        }
+        return models;
+    }
+
+    @Override
+    public ByteBuffer map(String fileName) throws IOException {
+        try (AssetFileDescriptor descriptor = assets.openFd(fileName);
+             FileInputStream stream = new FileInputStream(descriptor.getFileDescriptor())) {
+            return stream.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getDeclaredLength());
+        }
+    }
+
+    @Override
+    public InputStream openSettings(String fileName) throws IOException {
+        try {
+            return assets.open(fileName + ModelRegistry.SETTINGS_SUFFIX);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isAssets() {
+        return true;
+    }
+
+    @Override
+    public String pathOf(String fileName) {
+        return fileName;
+    }
+}
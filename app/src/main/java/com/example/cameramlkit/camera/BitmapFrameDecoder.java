@@ -0,0 +1,47 @@
+package com.example.cameramlkit.camera;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.replay.FrameDecoder;
+import com.example.cameramlkit.replay.RecordedSequence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Replays folders of JPEG (or PNG) frames on device or under Robolectric: decodes the file
+ * and keeps only its luma, as the camera's Y plane would hold it.
+ */
+public final class BitmapFrameDecoder implements FrameDecoder {
+
+    private int[] pixels = new int[0];
+
+    @Override
+    public Frame.Builder decode(RecordedSequence.Entry entry) throws IOException {
+        if (entry.getFile() == null) {
+            throw new IOException("Frame " + entry.getIndex() + " has no file");
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(entry.getFile().getPath());
+        if (bitmap == null) {
+            throw new IOException("Cannot decode " + entry.getFile());
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+
+        byte[] luma = new byte[width * height];
+        for (int i = 0; i < luma.length; i++) {
+            int argb = pixels[i];
+            // BT.601, as the camera's YUV conversion
+            luma[i] = (byte) ((77 * ((argb >> 16) & 0xFF) + 150 * ((argb >> 8) & 0xFF) + 29 * (argb & 0xFF)) >> 8);
+        }
+        return new Frame.Builder(width, height)
+                .setLuma(ByteBuffer.wrap(luma), width, 1);
+    }
+}
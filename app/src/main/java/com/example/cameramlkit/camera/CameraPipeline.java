@@ -0,0 +1,474 @@
+package com.example.cameramlkit.camera;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
+import androidx.camera.view.LifecycleCameraController;
+import androidx.camera.view.PreviewView;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.example.cameramlkit.capture.BestFrameSelector;
+import com.example.cameramlkit.metrics.FrameMetrics;
+import com.example.cameramlkit.pipeline.AnalysisGovernor;
+import com.example.cameramlkit.pipeline.DetectionPipeline;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.DetectorStage;
+import com.example.cameramlkit.pipeline.LatestResultChannel;
+import com.example.cameramlkit.pipeline.LensSwitchGate;
+import com.example.cameramlkit.pipeline.PipelineExecutors;
+import com.example.cameramlkit.pipeline.ResultProcessor;
+import com.example.cameramlkit.pipeline.ResultSink;
+import com.example.cameramlkit.pipeline.StaticSceneGate;
+import com.example.cameramlkit.pipeline.SwitchingDetectorStage;
+import com.example.cameramlkit.recording.FrameRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * The camera side of a detection screen: owns the LifecycleCameraController, wires its image
+ * analysis use case into a {@link DetectionPipeline} running on the shared
+ * {@link PipelineExecutors}, and tears everything down when the owner is destroyed.
+ * <p>
+ * A sink set with {@link Builder#setSink} runs on the analysis thread; one set with
+ * {@link Builder#setUiSink} runs on the main thread, at most once per display frame and only
+ * with the newest result. Build the pipeline on the main thread.
+ * <p>
+ * An {@link AnalysisGovernor} holds inference latency within the screen's budget by changing
+ * the analysis resolution, skipping frames and, when a fast detector was given, switching to
+ * it; the device's thermal status caps how rich the analysis may be.
+ * <p>
+ * With {@link Builder#setStaticSceneRefreshMillis} a {@link StaticSceneGate} answers frames of
+ * an unchanged scene with the last result instead of running the detector.
+ * <p>
+ * {@link #switchLens} changes camera without rebuilding any of this: a {@link LensSwitchGate}
+ * holds analysis until the new lens' view transform is in and keeps results of the previous
+ * lens away from the sinks.
+ * <p>
+ * Recording is opt-in: with {@link Builder#setRecording} or, for field debugging, when the
+ * screen is started with the {@link #EXTRA_RECORD} extra, analyzed frames and raw detector
+ * results go to a {@link FrameRecorder} log in the app's external files.
+ */
+public final class CameraPipeline implements DefaultLifecycleObserver {
+
+    /**
+     * Boolean intent extra turning recording on, e.g.
+     * {@code adb shell am start -n com.example.cameramlkit/.CameraObjRecActivity --ez com.example.cameramlkit.extra.RECORD true}.
+     */
+    public static final String EXTRA_RECORD = "com.example.cameramlkit.extra.RECORD";
+
+    private static final long DEFAULT_RECORDING_BYTES = 64L * 1024 * 1024;
+    // the new transform usually arrives with the first preview frame of the new lens
+    private static final long LENS_SETTLE_MILLIS = 500;
+
+    private final PipelineExecutors executors;
+    private final LifecycleCameraController cameraController;
+    private final DetectionPipeline pipeline;
+    private final PipelineAnalyzer analyzer;
+    private final LatestResultChannel<DetectionResult> resultChannel;
+    private final FrameMetrics metrics = new FrameMetrics(SystemClock::elapsedRealtimeNanos);
+    private final AnalysisGovernor governor;
+    private final SwitchingDetectorStage switchingDetector;
+    private final ThermalMonitor thermalMonitor;
+    private final FrameRecorder recorder;
+    private final BestFrameSelector bestFrames;
+    private final LensSwitchGate lensGate;
+    private final StaticSceneGate staticScene;
+    private final List<ResultProcessor> processors;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile DetectionResult latestResult;
+    private CameraSelector cameraSelector;
+    private boolean destroyed;
+
+    private CameraPipeline(Builder builder) {
+        executors = PipelineExecutors.acquire();
+
+        switchingDetector = builder.fastDetector == null ? null
+                : new SwitchingDetectorStage(builder.detector, builder.fastDetector);
+        governor = new AnalysisGovernor.Builder(builder.latencyBudgetMillis)
+                .setLevels(AnalysisGovernor.defaultLevels(switchingDetector != null))
+                .setStartLevel(1)
+                .setClock(SystemClock::elapsedRealtimeNanos)
+                .setListener(this::onLevelChanged)
+                .build();
+
+        lensGate = new LensSwitchGate(SystemClock::elapsedRealtimeNanos, LENS_SETTLE_MILLIS, this::onLensSwitched);
+
+        ResultSink uiSink = builder.uiSink;
+        resultChannel = uiSink == null ? null
+                : LatestResultChannel.forResults(new ChoreographerFrameScheduler(), result -> {
+                    if (!lensGate.admit(result)) {
+                        return;
+                    }
+                    uiSink.onResult(result);
+                    metrics.onFramePresented(result.getTimestampNanos());
+                });
+        ResultSink analyzerSink = builder.sink;
+        ResultSink sink;
+        if (resultChannel == null) {
+            sink = result -> {
+                if (!lensGate.admit(result)) {
+                    return;
+                }
+                analyzerSink.onResult(result);
+                metrics.onFramePresented(result.getTimestampNanos());
+            };
+        } else if (analyzerSink == null) {
+            sink = resultChannel::offer;
+        } else {
+            sink = result -> {
+                analyzerSink.onResult(result);
+                resultChannel.offer(result);
+            };
+        }
+
+        ResultSink delivered = sink;
+        DetectionPipeline.Builder pipelineBuilder = new DetectionPipeline.Builder()
+                .setDetector(switchingDetector != null ? switchingDetector : builder.detector)
+                .setSink(result -> {
+                    latestResult = result;
+                    delivered.onResult(result);
+                })
+                .addListener(metrics)
+                .addListener(governor)
+                .addListener(lensGate)
+                // the gate first, so frames it holds back do not count against the governor's stride
+                .setFrameFilter(lensGate.and(governor))
+                .addProcessor(lensGate)
+                .setErrorListener(builder.errorListener);
+        bestFrames = new BestFrameSelector(builder.bestFrameCriterion, executors.getWorkerPool(),
+                executors.getWorkerCount());
+        pipelineBuilder.addListener(bestFrames);
+        staticScene = builder.staticSceneRefreshMillis <= 0 ? null
+                : new StaticSceneGate.Builder()
+                        .setRefreshMillis(builder.staticSceneRefreshMillis)
+                        .setClock(SystemClock::elapsedRealtimeNanos)
+                        .build();
+        if (staticScene != null) {
+            pipelineBuilder.setResultReuse(staticScene).addListener(staticScene);
+        }
+        recorder = openRecorder(builder);
+        if (recorder != null) {
+            pipelineBuilder.addListener(recorder);
+        }
+        processors = new ArrayList<>(builder.processors);
+        for (ResultProcessor processor : processors) {
+            pipelineBuilder.addProcessor(processor);
+        }
+        pipeline = pipelineBuilder.build();
+        analyzer = new PipelineAnalyzer(pipeline, lensGate::onTransformChanged);
+
+        cameraSelector = builder.cameraSelector;
+        cameraController = new LifecycleCameraController(builder.previewView.getContext());
+        cameraController.setCameraSelector(cameraSelector);
+        cameraController.setImageAnalysisBackpressureStrategy(builder.backpressureStrategy);
+        cameraController.setImageAnalysisResolutionSelector(resolutionFor(governor.getLevel()));
+        cameraController.setImageAnalysisAnalyzer(executors.getAnalysisExecutor(), analyzer);
+        cameraController.bindToLifecycle(builder.owner);
+        builder.previewView.setController(cameraController);
+
+        builder.owner.getLifecycle().addObserver(this);
+
+        thermalMonitor = new ThermalMonitor(builder.previewView.getContext());
+        thermalMonitor.start(governor::onThermalStatus);
+    }
+
+    private static FrameRecorder openRecorder(Builder builder) {
+        File file = builder.recordingFile;
+        Context context = builder.previewView.getContext();
+        if (file == null && builder.owner instanceof Activity
+                && ((Activity) builder.owner).getIntent().getBooleanExtra(EXTRA_RECORD, false)) {
+            File directory = context.getExternalFilesDir("recordings");
+            if (directory == null || (!directory.isDirectory() && !directory.mkdirs())) {
+                Log.e("info", "no storage for recordings");
+                return null;
+            }
+            file = new File(directory, builder.owner.getClass().getSimpleName() + "-"
+                    + System.currentTimeMillis() + ".cmlog");
+        }
+        if (file == null) {
+            return null;
+        }
+        try {
+            FrameRecorder recorder = FrameRecorder.open(file, builder.recordingBytes);
+            Log.d("info", "recording to " + file);
+            return recorder;
+        } catch (IOException e) {
+            Log.e("info", "cannot record to " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static ResolutionSelector resolutionFor(AnalysisGovernor.Level level) {
+        return new ResolutionSelector.Builder()
+                .setResolutionStrategy(new ResolutionStrategy(
+                        new Size(level.getWidth(), level.getHeight()),
+                        ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER))
+                .build();
+    }
+
+    // called on the analysis thread, or the main thread for thermal changes
+    private void onLevelChanged(AnalysisGovernor.Level previous, AnalysisGovernor.Level current) {
+        Log.d("info", "analysis " + previous + " -> " + current + " | " + governor);
+        if (switchingDetector != null) {
+            switchingDetector.setUseFast(current.isFastDetector());
+        }
+        if (!current.hasSameResolution(previous)) {
+            // rebinds the analysis use case, so it has to happen on the main thread
+            mainHandler.post(() -> {
+                if (!destroyed && governor.getLevel() == current) {
+                    cameraController.setImageAnalysisResolutionSelector(resolutionFor(current));
+                }
+            });
+        }
+    }
+
+    // called on the thread presenting the result
+    private void onLensSwitched(long nanos) {
+        metrics.onLensSwitched(nanos);
+        Log.d("info", String.format(Locale.US, "lens switch to first result %.1f ms, %d stale results dropped",
+                nanos / 1e6, lensGate.getDroppedResults()));
+    }
+
+    /**
+     * Switches to another lens, keeping detectors, processors and views; main thread only.
+     * Processors are {@link ResultProcessor#reset() reset} and results of the previous lens
+     * never reach the sinks, but what the views show of it is for the screen to clear. The
+     * time to the first result of the new lens goes to {@link FrameMetrics#getLensSwitchLatency()}.
+     */
+    public void switchLens(CameraSelector selector) {
+        if (destroyed || selector == cameraSelector) {
+            return;
+        }
+        lensGate.beginSwitch();
+        if (staticScene != null) {
+            staticScene.reset();
+        }
+        for (ResultProcessor processor : processors) {
+            processor.reset();
+        }
+        // fused partials and cached regions belong to the old lens's scene and time base
+        pipeline.getDetector().reset();
+        latestResult = null;
+        if (resultChannel != null) {
+            // the new lens may count time from another base
+            resultChannel.reset();
+        }
+        cameraSelector = selector;
+        cameraController.setCameraSelector(selector);
+    }
+
+    public CameraSelector getCameraSelector() {
+        return cameraSelector;
+    }
+
+    /**
+     * Reuses results while the scene stands still; null when not enabled.
+     */
+    public StaticSceneGate getStaticSceneGate() {
+        return staticScene;
+    }
+
+    public LensSwitchGate getLensSwitchGate() {
+        return lensGate;
+    }
+
+    public LifecycleCameraController getCameraController() {
+        return cameraController;
+    }
+
+    public DetectionPipeline getPipeline() {
+        return pipeline;
+    }
+
+    public PipelineExecutors getExecutors() {
+        return executors;
+    }
+
+    /**
+     * Stage timings of this screen, from camera timestamp to the result reaching the views.
+     */
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The recorder of this screen, or null when it does not record.
+     */
+    public FrameRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Scores analysis frames while a best-of burst is being taken, see {@link CaptureService}.
+     */
+    public BestFrameSelector getBestFrameSelector() {
+        return bestFrames;
+    }
+
+    public AnalysisGovernor getGovernor() {
+        return governor;
+    }
+
+    /**
+     * Handoff to the UI sink, with its delivered / coalesced / dropped counters; null when no
+     * UI sink was set.
+     */
+    public LatestResultChannel<DetectionResult> getResultChannel() {
+        return resultChannel;
+    }
+
+    /**
+     * The newest processed result, e.g. to save with a photo; null before the first one.
+     */
+    public DetectionResult getLatestResult() {
+        return latestResult;
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        owner.getLifecycle().removeObserver(this);
+        destroyed = true;
+        thermalMonitor.stop();
+        mainHandler.removeCallbacksAndMessages(null);
+        cameraController.clearImageAnalysisAnalyzer();
+        pipeline.close();
+        if (staticScene != null) {
+            Log.d("info", staticScene.toString());
+        }
+        if (resultChannel != null) {
+            resultChannel.close();
+        }
+        if (recorder != null) {
+            try {
+                recorder.close();
+                Log.d("info", "recorded " + recorder.getRecordedFrames() + " frames, "
+                        + recorder.getRecordedResults() + " results, dropped " + recorder.getDroppedFrames());
+            } catch (IOException e) {
+                Log.e("info", "recording not saved: " + e.getMessage());
+            }
+        }
+        executors.release();
+    }
+
+    public static final class Builder {
+        private final LifecycleOwner owner;
+        private final PreviewView previewView;
+        private CameraSelector cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA;
+        private int backpressureStrategy = ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST;
+        private DetectorStage detector;
+        private DetectorStage fastDetector;
+        private long latencyBudgetMillis = 100;
+        private final List<ResultProcessor> processors = new ArrayList<>();
+        private ResultSink sink;
+        private ResultSink uiSink;
+        private Consumer<Throwable> errorListener;
+        private File recordingFile;
+        private long recordingBytes = DEFAULT_RECORDING_BYTES;
+        private BestFrameSelector.Criterion bestFrameCriterion = BestFrameSelector.Criterion.SHARPNESS;
+        private long staticSceneRefreshMillis;
+
+        public Builder(LifecycleOwner owner, PreviewView previewView) {
+            this.owner = owner;
+            this.previewView = previewView;
+        }
+
+        public Builder setCameraSelector(CameraSelector cameraSelector) {
+            this.cameraSelector = cameraSelector;
+            return this;
+        }
+
+        public Builder setBackpressureStrategy(int backpressureStrategy) {
+            this.backpressureStrategy = backpressureStrategy;
+            return this;
+        }
+
+        public Builder setDetector(DetectorStage detector) {
+            this.detector = detector;
+            return this;
+        }
+
+        /**
+         * Cheaper detector the governor may switch to before it starts skipping frames.
+         */
+        public Builder setFastDetector(DetectorStage fastDetector) {
+            this.fastDetector = fastDetector;
+            return this;
+        }
+
+        /**
+         * Inference latency the governor aims to stay under, 100 ms by default.
+         */
+        public Builder setLatencyBudgetMillis(long latencyBudgetMillis) {
+            this.latencyBudgetMillis = latencyBudgetMillis;
+            return this;
+        }
+
+        public Builder addProcessor(ResultProcessor processor) {
+            processors.add(processor);
+            return this;
+        }
+
+        public Builder setSink(ResultSink sink) {
+            this.sink = sink;
+            return this;
+        }
+
+        public Builder setUiSink(ResultSink uiSink) {
+            this.uiSink = uiSink;
+            return this;
+        }
+
+        public Builder setErrorListener(Consumer<Throwable> errorListener) {
+            this.errorListener = errorListener;
+            return this;
+        }
+
+        /**
+         * Records analyzed frames and detector results to {@code file}, keeping the newest
+         * {@code maxBytes} (64 MB when started with {@link #EXTRA_RECORD}).
+         */
+        public Builder setRecording(File file, long maxBytes) {
+            this.recordingFile = file;
+            this.recordingBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * What besides sharpness makes the best photo of a burst for this screen; sharpness
+         * only by default.
+         */
+        public Builder setBestFrameCriterion(BestFrameSelector.Criterion bestFrameCriterion) {
+            this.bestFrameCriterion = bestFrameCriterion;
+            return this;
+        }
+
+        /**
+         * Skips inference while the scene does not change, reusing the last result for at most
+         * {@code millis}; 0, the default, analyzes every frame.
+         */
+        public Builder setStaticSceneRefreshMillis(long millis) {
+            this.staticSceneRefreshMillis = millis;
+            return this;
+        }
+
+        public CameraPipeline build() {
+            return new CameraPipeline(this);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.cameramlkit.camera;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.cameramlkit.search.TextIndex;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The app's one {@link TextIndex} of captured photos, by name, in internal storage. Opened on
+ * first use, which reads storage, so not from the main thread; segments are merged on a
+ * thread of its own.
+ */
+public final class CaptureIndex {
+
+    private static final String DIRECTORY = "capture-index";
+    private static final String SIDECAR_SUFFIX = ".json";
+
+    private static final ExecutorService merger = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-merge");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private static TextIndex index;
+    private static boolean backfilled;
+
+    private CaptureIndex() {
+    }
+
+    public static synchronized TextIndex get(Context context) throws IOException {
+        if (index == null) {
+            long start = System.nanoTime();
+            index = new TextIndex.Builder(new File(context.getApplicationContext().getFilesDir(), DIRECTORY))
+                    .setMergeExecutor(merger)
+                    .open();
+            Log.d("info", "opened in " + (System.nanoTime() - start) / 1_000_000 + " ms, " + index);
+        }
+        return index;
+    }
+
+    /**
+     * Indexes the photos captured before the index existed (or while it was not kept), from
+     * their JSON sidecars in the app's external files under "captures". Runs once per process;
+     * call it off the main thread.
+     */
+    public static void indexExisting(Context context) {
+        synchronized (CaptureIndex.class) {
+            if (backfilled) {
+                return;
+            }
+            backfilled = true;
+        }
+        File directory = context.getExternalFilesDir("captures");
+        File[] sidecars = directory != null ? directory.listFiles((dir, name) -> name.endsWith(SIDECAR_SUFFIX)) : null;
+        if (sidecars == null) {
+            return;
+        }
+        int added = 0;
+        try {
+            TextIndex target = get(context);
+            for (File sidecar : sidecars) {
+                String name = sidecar.getName().substring(0, sidecar.getName().length() - SIDECAR_SUFFIX.length());
+                if (target.contains(name)) {
+                    continue;
+                }
+                try {
+                    String text = indexableText(new String(Files.readAllBytes(sidecar.toPath()), StandardCharsets.UTF_8));
+                    if (!text.isEmpty()) {
+                        target.add(name, text);
+                        added++;
+                    }
+                } catch (JSONException e) {
+                    Log.e("info", "sidecar " + sidecar.getName() + " not indexed: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            Log.e("info", "captures not indexed: " + e.getMessage());
+        }
+        Log.d("info", "indexed " + added + " earlier captures");
+    }
+
+    /**
+     * The same text as {@link com.example.cameramlkit.capture.CaptureSidecar#indexableText},
+     * read back from a sidecar.
+     */
+    private static String indexableText(String sidecar) throws JSONException {
+        JSONObject result = new JSONObject(sidecar).optJSONObject("result");
+        if (result == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        JSONObject recognized = result.optJSONObject("text");
+        if (recognized != null) {
+            text.append(recognized.optString("text")).append('\n');
+        }
+        appendLabels(text, result.optJSONArray("labels"));
+        JSONArray objects = result.optJSONArray("objects");
+        for (int i = 0; objects != null && i < objects.length(); i++) {
+            appendLabels(text, objects.getJSONObject(i).optJSONArray("labels"));
+        }
+        return text.toString();
+    }
+
+    private static void appendLabels(StringBuilder text, JSONArray labels) throws JSONException {
+        for (int i = 0; labels != null && i < labels.length(); i++) {
+            text.append(labels.getJSONObject(i).optString("text")).append('\n');
+        }
+    }
+}
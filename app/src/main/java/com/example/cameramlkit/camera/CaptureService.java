@@ -0,0 +1,639 @@
+package com.example.cameramlkit.camera;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageCapture;
+import androidx.camera.core.ImageCaptureException;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.view.LifecycleCameraController;
+import androidx.camera.view.PreviewView;
+import androidx.exifinterface.media.ExifInterface;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.example.cameramlkit.capture.BestFrameSelector;
+import com.example.cameramlkit.capture.CaptureQueue;
+import com.example.cameramlkit.capture.CaptureSidecar;
+import com.example.cameramlkit.capture.PreviewMapping;
+import com.example.cameramlkit.metrics.MetricsExporter;
+import com.example.cameramlkit.overlay.BoxBuffer;
+import com.example.cameramlkit.overlay.BoxOverlayView;
+import com.example.cameramlkit.overlay.BoxPainter;
+import com.example.cameramlkit.pipeline.DetectionResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Takes photos for a camera screen without holding up the preview or the main thread. The
+ * camera's JPEG is copied out and its buffer returned right away, so shots of a burst queue up
+ * in the camera back to back; decoding, annotating and writing happen on a dedicated I/O
+ * thread, one photo at a time.
+ * <p>
+ * What the user was looking at is kept with the photo: the overlay's boxes, snapshotted at the
+ * shutter, can be burnt into the image, and the newest detection result is written as JSON
+ * (see {@link CaptureSidecar}) to the app's external files under "captures" and/or into the
+ * photo's EXIF user comment. Photos go to DCIM through the MediaStore.
+ * <p>
+ * The text and labels of every saved photo are added to the {@link CaptureIndex}, so photos
+ * can be searched by what was read or recognized in them; photos taken before are indexed from
+ * their sidecars once per process.
+ * <p>
+ * {@link #captureBest(int)} takes a burst and keeps only its best photo, judged by the
+ * {@link BestFrameSelector} on the analysis frames taken at the same time.
+ * <p>
+ * {@link #getQueue()} reports queue depth and shutter-to-saved latency; every saved photo also
+ * logs them. Use it from the main thread.
+ */
+public final class CaptureService implements DefaultLifecycleObserver {
+
+    /**
+     * Shots of a burst when the screen doesn't choose.
+     */
+    public static final int DEFAULT_BURST_SHOTS = 5;
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 8;
+    private static final int JPEG_QUALITY = 95;
+    // the whole EXIF segment has to fit in 64 KB
+    private static final int MAX_EXIF_COMMENT_CHARS = 60_000;
+    // how long a best-of burst waits for the analysis of its last photo's moment
+    private static final long BEST_FRAME_WAIT_MILLIS = 500;
+
+    private final Context context;
+    private final String screen;
+    private final LifecycleCameraController cameraController;
+    private final PreviewView previewView;
+    private final BoxOverlayView overlay;
+    private final Supplier<DetectionResult> results;
+    private final BestFrameSelector bestFrames;
+    private final boolean jsonSidecar;
+    private final boolean exifComment;
+    private final boolean textIndex;
+    private final CaptureQueue queue;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "capture-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // main thread only
+    private int savedSinceIdle;
+    private BestOfBurst pendingBurst;
+    private boolean destroyed;
+
+    private CaptureService(Builder builder) {
+        context = builder.previewView.getContext().getApplicationContext();
+        screen = builder.owner.getClass().getSimpleName();
+        cameraController = builder.cameraController;
+        previewView = builder.previewView;
+        overlay = builder.overlay;
+        results = builder.results;
+        bestFrames = builder.bestFrames;
+        jsonSidecar = results != null && builder.jsonSidecar;
+        exifComment = results != null && builder.exifComment;
+        textIndex = results != null && builder.textIndex;
+        queue = new CaptureQueue(builder.queueCapacity);
+        builder.owner.getLifecycle().addObserver(this);
+        if (textIndex) {
+            io.execute(() -> CaptureIndex.indexExisting(context));
+        }
+    }
+
+    /**
+     * Everything known about one shot, filled in on the way from shutter to storage.
+     */
+    private static final class Shot {
+        final String name;
+        final long shutterNanos;
+        final BoxBuffer boxes;
+        final DetectionResult result;
+        final int viewWidth;
+        final int viewHeight;
+        final boolean fill;
+        final boolean mirrored;
+        BestOfBurst burst;
+        boolean collected;
+        byte[] jpeg;
+        long sensorTimestampNanos;
+        int rotationDegrees;
+        Rect crop;
+        int imageWidth;
+        int imageHeight;
+
+        Shot(String name, long shutterNanos, BoxBuffer boxes, DetectionResult result,
+             int viewWidth, int viewHeight, boolean fill, boolean mirrored) {
+            this.name = name;
+            this.shutterNanos = shutterNanos;
+            this.boxes = boxes;
+            this.result = result;
+            this.viewWidth = viewWidth;
+            this.viewHeight = viewHeight;
+            this.fill = fill;
+            this.mirrored = mirrored;
+        }
+    }
+
+    /**
+     * Takes one photo. Returns false when it couldn't be queued (too many photos pending).
+     */
+    public boolean capture() {
+        return shoot(0);
+    }
+
+    /**
+     * Queues {@code shots} photos at once; returns how many were accepted.
+     */
+    public int burst(int shots) {
+        int accepted = 0;
+        for (int i = 1; i <= shots && shoot(i); i++) {
+            accepted++;
+        }
+        return accepted;
+    }
+
+    /**
+     * Takes {@code shots} photos (at most the queue's capacity) and saves only the best one.
+     * Without a {@link BestFrameSelector} this is a single {@link #capture()}. Returns false
+     * when nothing could be queued or the previous best-of burst is still being judged.
+     */
+    public boolean captureBest(int shots) {
+        if (bestFrames == null) {
+            return capture();
+        }
+        if (destroyed || pendingBurst != null) {
+            return false;
+        }
+        int count = Math.min(shots, queue.getCapacity());
+        BestOfBurst burst = new BestOfBurst(count);
+        pendingBurst = burst;
+        bestFrames.arm();
+        for (int i = 0; i < count; i++) {
+            if (!shoot(0, burst)) {
+                burst.onNotTaken(count - i);
+                return i > 0;
+            }
+        }
+        return true;
+    }
+
+    public CaptureQueue getQueue() {
+        return queue;
+    }
+
+    private boolean shoot(int burstIndex) {
+        return shoot(burstIndex, null);
+    }
+
+    private boolean shoot(int burstIndex, BestOfBurst burst) {
+        if (destroyed) {
+            return false;
+        }
+        if (!queue.tryEnter()) {
+            Log.d("info", "capture rejected, " + queue);
+            return false;
+        }
+        CameraSelector selector = cameraController.getCameraSelector();
+        Integer lensFacing = selector.getLensFacing();
+        PreviewView.ScaleType scaleType = previewView.getScaleType();
+        boolean fill = scaleType == PreviewView.ScaleType.FILL_CENTER
+                || scaleType == PreviewView.ScaleType.FILL_START
+                || scaleType == PreviewView.ScaleType.FILL_END;
+        Shot shot = new Shot(CaptureSidecar.displayName(System.currentTimeMillis(), TimeZone.getDefault(), burstIndex),
+                SystemClock.elapsedRealtimeNanos(),
+                overlay != null ? overlay.snapshot() : null,
+                results != null ? results.get() : null,
+                previewView.getWidth(), previewView.getHeight(), fill,
+                lensFacing != null && lensFacing == CameraSelector.LENS_FACING_FRONT);
+        shot.burst = burst;
+
+        try {
+            // the callback only copies the JPEG, so it runs on the camera's thread
+            cameraController.takePicture(Runnable::run, new ImageCapture.OnImageCapturedCallback() {
+                @Override
+                public void onCaptureSuccess(@NonNull ImageProxy image) {
+                    onImage(shot, image);
+                }
+
+                @Override
+                public void onError(@NonNull ImageCaptureException exception) {
+                    fail(shot, exception);
+                }
+            });
+        } catch (RuntimeException e) {
+            fail(shot, e);
+        }
+        return true;
+    }
+
+    private void onImage(Shot shot, ImageProxy image) {
+        try {
+            if (image.getFormat() != ImageFormat.JPEG) {
+                throw new IllegalStateException("Unexpected capture format " + image.getFormat());
+            }
+            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+            buffer.rewind();
+            shot.jpeg = new byte[buffer.remaining()];
+            buffer.get(shot.jpeg);
+            shot.sensorTimestampNanos = image.getImageInfo().getTimestamp();
+            shot.rotationDegrees = image.getImageInfo().getRotationDegrees();
+            shot.crop = new Rect(image.getCropRect());
+            shot.imageWidth = image.getWidth();
+            shot.imageHeight = image.getHeight();
+        } catch (RuntimeException e) {
+            fail(shot, e);
+            return;
+        } finally {
+            image.close();
+        }
+        queue.onImage(SystemClock.elapsedRealtimeNanos() - shot.shutterNanos);
+        if (shot.burst != null) {
+            shot.burst.onImage(shot);
+            return;
+        }
+        try {
+            io.execute(() -> save(shot));
+        } catch (RejectedExecutionException e) {
+            fail(shot, e);
+        }
+    }
+
+    /**
+     * The photos of a best-of burst, collected on the camera's thread until all are in.
+     */
+    private final class BestOfBurst {
+        private final List<Shot> shots = new ArrayList<>();
+        private int expected;
+        private int finished;
+
+        BestOfBurst(int expected) {
+            this.expected = expected;
+        }
+
+        synchronized void onImage(Shot shot) {
+            shot.collected = true;
+            shots.add(shot);
+            finished++;
+            completeIfDone();
+        }
+
+        synchronized void onFailed() {
+            finished++;
+            completeIfDone();
+        }
+
+        /**
+         * The last {@code count} shots were never taken.
+         */
+        synchronized void onNotTaken(int count) {
+            expected -= count;
+            completeIfDone();
+        }
+
+        // every shot is accounted for exactly once, so this passes only once
+        private void completeIfDone() {
+            if (finished < expected) {
+                return;
+            }
+            List<Shot> taken = new ArrayList<>(shots);
+            try {
+                io.execute(() -> keepBest(taken));
+            } catch (RejectedExecutionException e) {
+                for (Shot shot : taken) {
+                    fail(shot, e);
+                }
+                bestFrames.disarm();
+            }
+            mainHandler.post(() -> pendingBurst = null);
+        }
+    }
+
+    // I/O thread
+    private void keepBest(List<Shot> shots) {
+        if (shots.isEmpty()) {
+            bestFrames.disarm();
+            return;
+        }
+        long start = System.nanoTime();
+        long[] timestamps = new long[shots.size()];
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = shots.get(i).sensorTimestampNanos;
+            last = Math.max(last, timestamps[i]);
+        }
+        try {
+            bestFrames.awaitFrame(last, BEST_FRAME_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        bestFrames.disarm();
+        int best = bestFrames.select(timestamps);
+        Log.d("info", "best of " + shots.size() + ": #" + (best + 1) + ", judged in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms, frame scoring p50 "
+                + bestFrames.getScoringLatency().snapshot().getPercentileMillis(50) + " ms");
+        for (int i = 0; i < shots.size(); i++) {
+            if (i != best) {
+                shots.get(i).jpeg = null;
+                queue.onDiscarded();
+            }
+        }
+        save(shots.get(best));
+    }
+
+    // I/O thread
+    private void save(Shot shot) {
+        try {
+            boolean cropped = shot.crop.left != 0 || shot.crop.top != 0
+                    || shot.crop.width() != shot.imageWidth || shot.crop.height() != shot.imageHeight;
+            boolean annotated = shot.boxes != null && shot.boxes.size() > 0;
+            boolean sideways = shot.rotationDegrees % 180 != 0;
+            int width = sideways ? shot.crop.height() : shot.crop.width();
+            int height = sideways ? shot.crop.width() : shot.crop.height();
+            PreviewMapping mapping = shot.viewWidth > 0 && shot.viewHeight > 0 && !shot.crop.isEmpty()
+                    ? new PreviewMapping(shot.viewWidth, shot.viewHeight, width, height, shot.fill) : null;
+
+            byte[] jpeg = shot.jpeg;
+            boolean rendered = false;
+            if ((annotated && mapping != null) || cropped) {
+                jpeg = render(shot, annotated ? mapping : null);
+                rendered = true;
+            }
+            String json = null;
+            if (jsonSidecar || exifComment) {
+                Map<String, String> info = MetricsExporter.describe(context, screen);
+                json = CaptureSidecar.toJson(info, shot.name, width, height, shot.result,
+                        bounds -> mapping != null ? mapping.map(bounds) : bounds);
+            }
+
+            Uri uri = writePhoto(shot.name, jpeg, rendered ? 0 : shot.rotationDegrees, !rendered && shot.mirrored,
+                    exifComment ? json : null);
+            if (jsonSidecar) {
+                writeSidecar(shot.name, json);
+            }
+            if (textIndex && shot.result != null) {
+                index(shot);
+            }
+            long latency = SystemClock.elapsedRealtimeNanos() - shot.shutterNanos;
+            queue.onSaved(latency);
+            Log.d("info", "photo " + shot.name + " saved to " + uri + " in " + latency / 1_000_000 + " ms | " + queue);
+            mainHandler.post(this::onSaved);
+        } catch (IOException | RuntimeException e) {
+            fail(shot, e);
+        } finally {
+            shot.jpeg = null;
+        }
+    }
+
+    /**
+     * Decodes the photo upright and mirrored as previewed, cropped to what the preview showed,
+     * and draws the boxes over it.
+     */
+    private static byte[] render(Shot shot, PreviewMapping mapping) throws IOException {
+        Bitmap decoded = BitmapFactory.decodeByteArray(shot.jpeg, 0, shot.jpeg.length);
+        if (decoded == null) {
+            throw new IOException("Cannot decode the captured JPEG");
+        }
+        Matrix orientation = new Matrix();
+        orientation.postRotate(shot.rotationDegrees);
+        if (shot.mirrored) {
+            orientation.postScale(-1f, 1f);
+        }
+        Bitmap upright = Bitmap.createBitmap(decoded, shot.crop.left, shot.crop.top,
+                shot.crop.width(), shot.crop.height(), orientation, true);
+        if (upright != decoded) {
+            decoded.recycle();
+        }
+        if (mapping != null) {
+            if (!upright.isMutable()) {
+                Bitmap copy = upright.copy(Bitmap.Config.ARGB_8888, true);
+                upright.recycle();
+                upright = copy;
+            }
+            Canvas canvas = new Canvas(upright);
+            canvas.scale(mapping.getScale(), mapping.getScale());
+            canvas.translate(-mapping.getOffsetX(), -mapping.getOffsetY());
+            new BoxPainter().draw(canvas, shot.boxes);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(shot.jpeg.length);
+        upright.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        upright.recycle();
+        return out.toByteArray();
+    }
+
+    private Uri writePhoto(String name, byte[] jpeg, int rotationDegrees, boolean mirrored, String comment)
+            throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, name);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_DCIM);
+            // hidden from the gallery until it is complete
+            values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+        }
+        Uri uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        if (uri == null) {
+            throw new IOException("MediaStore refused " + name);
+        }
+        try {
+            try (OutputStream out = resolver.openOutputStream(uri)) {
+                if (out == null) {
+                    throw new IOException("Cannot open " + uri);
+                }
+                out.write(jpeg);
+            }
+            try (ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "rw")) {
+                if (descriptor == null) {
+                    throw new IOException("Cannot open " + uri);
+                }
+                ExifInterface exif = new ExifInterface(descriptor.getFileDescriptor());
+                exif.resetOrientation();
+                exif.rotate(rotationDegrees);
+                if (mirrored) {
+                    exif.flipHorizontally();
+                }
+                if (comment != null) {
+                    if (comment.length() <= MAX_EXIF_COMMENT_CHARS) {
+                        exif.setAttribute(ExifInterface.TAG_USER_COMMENT, comment);
+                    } else {
+                        Log.e("info", "detections of " + name + " too large for EXIF");
+                    }
+                }
+                exif.saveAttributes();
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                values.clear();
+                values.put(MediaStore.MediaColumns.IS_PENDING, 0);
+                resolver.update(uri, values, null, null);
+            }
+            return uri;
+        } catch (IOException | RuntimeException e) {
+            resolver.delete(uri, null, null);
+            throw e;
+        }
+    }
+
+    private void writeSidecar(String name, String json) throws IOException {
+        File directory = context.getExternalFilesDir("captures");
+        if (directory == null || (!directory.isDirectory() && !directory.mkdirs())) {
+            throw new IOException("No storage for capture sidecars");
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, name + ".json")),
+                StandardCharsets.UTF_8)) {
+            writer.write(json);
+        }
+    }
+
+    // I/O thread; the photo counts as saved even when it could not be indexed
+    private void index(Shot shot) {
+        try {
+            CaptureIndex.get(context).add(shot.name, CaptureSidecar.indexableText(shot.result));
+        } catch (IOException e) {
+            Log.e("info", "photo " + shot.name + " not indexed: " + e.getMessage());
+        }
+    }
+
+    private void fail(Shot shot, Exception error) {
+        queue.onFailed();
+        if (shot.burst != null && !shot.collected) {
+            shot.burst.onFailed();
+        }
+        Log.e("info", "photo " + shot.name + " not saved: " + error.getMessage() + " | " + queue);
+    }
+
+    // main thread
+    private void onSaved() {
+        savedSinceIdle++;
+        if (destroyed || queue.getDepth() > 0) {
+            return;
+        }
+        Toast.makeText(context, savedSinceIdle == 1 ? "Photo taken correctly" : savedSinceIdle + " photos saved",
+                Toast.LENGTH_SHORT).show();
+        savedSinceIdle = 0;
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        owner.getLifecycle().removeObserver(this);
+        destroyed = true;
+        // photos already handed over are still written
+        io.shutdown();
+        Log.d("info", "capture " + queue);
+    }
+
+    public static final class Builder {
+        private final LifecycleOwner owner;
+        private final LifecycleCameraController cameraController;
+        private final PreviewView previewView;
+        private BoxOverlayView overlay;
+        private Supplier<DetectionResult> results;
+        private BestFrameSelector bestFrames;
+        private boolean jsonSidecar = true;
+        private boolean exifComment;
+        private boolean textIndex = true;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+        public Builder(LifecycleOwner owner, LifecycleCameraController cameraController, PreviewView previewView) {
+            this.owner = owner;
+            this.cameraController = cameraController;
+            this.previewView = previewView;
+        }
+
+        /**
+         * Burns the boxes this overlay shows at the shutter into the photo.
+         */
+        public Builder setOverlay(BoxOverlayView overlay) {
+            this.overlay = overlay;
+            return this;
+        }
+
+        /**
+         * Where the detections saved with a photo come from, e.g.
+         * {@link CameraPipeline#getLatestResult()}; called on the main thread at the shutter.
+         */
+        public Builder setResults(Supplier<DetectionResult> results) {
+            this.results = results;
+            return this;
+        }
+
+        /**
+         * Judges the photos of {@link #captureBest(int)}, e.g.
+         * {@link CameraPipeline#getBestFrameSelector()}.
+         */
+        public Builder setBestFrameSelector(BestFrameSelector bestFrames) {
+            this.bestFrames = bestFrames;
+            return this;
+        }
+
+        /**
+         * Writes the detections next to the photo as JSON; on by default when results are set.
+         */
+        public Builder setJsonSidecar(boolean jsonSidecar) {
+            this.jsonSidecar = jsonSidecar;
+            return this;
+        }
+
+        /**
+         * Writes the detections' JSON into the photo's EXIF user comment.
+         */
+        public Builder setExifComment(boolean exifComment) {
+            this.exifComment = exifComment;
+            return this;
+        }
+
+        /**
+         * Adds the text and labels of each photo to the {@link CaptureIndex}; on by default when
+         * results are set.
+         */
+        public Builder setTextIndex(boolean textIndex) {
+            this.textIndex = textIndex;
+            return this;
+        }
+
+        /**
+         * Photos between shutter and storage at most, 8 by default.
+         */
+        public Builder setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public CaptureService build() {
+            return new CaptureService(this);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.cameramlkit.camera;
+
+import android.view.Choreographer;
+
+import com.example.cameramlkit.pipeline.LatestResultChannel;
+
+/**
+ * Delivers {@link LatestResultChannel} items on the vsync of the thread it was created on
+ * (create it on the main thread).
+ */
+public final class ChoreographerFrameScheduler implements LatestResultChannel.FrameScheduler {
+
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private Runnable boundCallback;
+    private Choreographer.FrameCallback frameCallback;
+
+    @Override
+    public synchronized void postFrameCallback(Runnable callback) {
+        // channels always post the same runnable, so the frame callback is built once
+        if (callback != boundCallback) {
+            boundCallback = callback;
+            frameCallback = frameTimeNanos -> callback.run();
+        }
+        choreographer.postFrameCallback(frameCallback);
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.cameramlkit.camera;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.cameramlkit.pipeline.RefCountedCache;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.interfaces.Detector;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application wide, reference counted cache of ML Kit clients. Screens lease the clients they
+ * need instead of building (and leaking) new ones on every onCreate; clients nobody uses are
+ * closed after {@link #IDLE_TIMEOUT_MS}.
+ */
+public final class DetectorClients {
+
+    private static final String TAG = "info";
+    static final long IDLE_TIMEOUT_MS = 60_000;
+
+    private static DetectorClients instance;
+
+    private final RefCountedCache<DetectorSpec<?>, Detector<?>> cache = new RefCountedCache<>(
+            DetectorSpec::create,
+            Detector::close,
+            TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MS));
+    private final Map<String, Long> warmUpNanos = new ConcurrentHashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable evictIdle = this::evictIdle;
+    private Bitmap warmUpBitmap;
+
+    private DetectorClients() {
+    }
+
+    public static synchronized DetectorClients getInstance() {
+        if (instance == null) {
+            instance = new DetectorClients();
+        }
+        return instance;
+    }
+
+    public <T extends Detector<?>> Lease<T> acquire(DetectorSpec<T> spec) {
+        boolean cached = cache.contains(spec);
+        RefCountedCache.Lease<DetectorSpec<?>, Detector<?>> lease = cache.acquire(spec);
+        Log.d(TAG, "detector " + spec + (cached ? " hit" : " miss, created in "
+                + TimeUnit.NANOSECONDS.toMillis(cache.loadNanos(spec)) + " ms") + " | " + cache);
+        return new Lease<>(lease);
+    }
+
+    /**
+     * Creates the given clients and runs one tiny inference through each of them so that their
+     * models are loaded before the first camera frame arrives. The clients then stay cached
+     * until they are used or the idle timeout expires.
+     */
+    public void prewarm(List<DetectorSpec<?>> specs) {
+        for (DetectorSpec<?> spec : specs) {
+            if (warmUpNanos.containsKey(spec.getKey()) && cache.contains(spec)) {
+                continue;
+            }
+            Lease<? extends Detector<?>> lease = acquire(spec);
+            long start = SystemClock.elapsedRealtimeNanos();
+            spec.process(lease.get(), InputImage.fromBitmap(getWarmUpBitmap(), 0))
+                    .addOnCompleteListener(task -> {
+                        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+                        warmUpNanos.put(spec.getKey(), elapsed);
+                        Log.d(TAG, "detector " + spec + " warmed up in "
+                                + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+                        lease.close();
+                    });
+        }
+    }
+
+    /**
+     * Like {@link #acquire}, but also runs the first inference so the model is loaded when this
+     * returns. Blocks; not for the main thread.
+     */
+    public <T extends Detector<?>> Lease<T> acquireWarm(DetectorSpec<T> spec) throws ExecutionException, InterruptedException {
+        Lease<T> lease = acquire(spec);
+        if (!warmUpNanos.containsKey(spec.getKey())) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            try {
+                Tasks.await(spec.process(lease.get(), InputImage.fromBitmap(getWarmUpBitmap(), 0)));
+            } catch (ExecutionException | InterruptedException | RuntimeException e) {
+                lease.close();
+                throw e;
+            }
+            long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+            warmUpNanos.put(spec.getKey(), elapsed);
+            Log.d(TAG, "detector " + spec + " warmed up in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+        }
+        return lease;
+    }
+
+    /**
+     * Time the first inference took for a prewarmed client, or -1 if it was never prewarmed.
+     */
+    public long getWarmUpNanos(DetectorSpec<?> spec) {
+        Long nanos = warmUpNanos.get(spec.getKey());
+        return nanos == null ? -1 : nanos;
+    }
+
+    public long getLoadNanos(DetectorSpec<?> spec) {
+        return cache.loadNanos(spec);
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    @Override
+    public String toString() {
+        return cache.toString();
+    }
+
+    private synchronized Bitmap getWarmUpBitmap() {
+        if (warmUpBitmap == null) {
+            warmUpBitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        }
+        return warmUpBitmap;
+    }
+
+    private void scheduleEviction() {
+        handler.removeCallbacks(evictIdle);
+        handler.postDelayed(evictIdle, IDLE_TIMEOUT_MS);
+    }
+
+    private void evictIdle() {
+        int evicted = cache.evictIdle();
+        if (evicted > 0) {
+            Log.d(TAG, "closed " + evicted + " idle detector(s) | " + cache);
+        }
+        if (cache.size() > 0) {
+            handler.postDelayed(evictIdle, IDLE_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * A leased client; closing the lease hands the client back to the cache (it is not closed).
+     */
+    public final class Lease<T extends Detector<?>> implements AutoCloseable {
+        private final RefCountedCache.Lease<DetectorSpec<?>, Detector<?>> lease;
+
+        private Lease(RefCountedCache.Lease<DetectorSpec<?>, Detector<?>> lease) {
+            this.lease = lease;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get() {
+            return (T) lease.get();
+        }
+
+        @Override
+        public void close() {
+            lease.close();
+            scheduleEviction();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.cameramlkit.camera;
+
+import com.example.cameramlkit.models.ModelFile;
+import com.google.android.gms.tasks.Task;
+import com.google.mlkit.common.model.LocalModel;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.interfaces.Detector;
+import com.google.mlkit.vision.label.ImageLabeler;
+import com.google.mlkit.vision.label.ImageLabeling;
+import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
+import com.google.mlkit.vision.objects.ObjectDetection;
+import com.google.mlkit.vision.objects.ObjectDetector;
+import com.google.mlkit.vision.objects.custom.CustomObjectDetectorOptions;
+import com.google.mlkit.vision.objects.defaults.ObjectDetectorOptions;
+import com.google.mlkit.vision.text.TextRecognition;
+import com.google.mlkit.vision.text.TextRecognizer;
+import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
+
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Identity and factory of an ML Kit client. Two specs with the same key describe the same
+ * options, so they share one cached client in {@link DetectorClients}.
+ */
+public final class DetectorSpec<T extends Detector<?>> {
+
+    public static final DetectorSpec<ObjectDetector> OBJECTS = new DetectorSpec<>(
+            "objects/stream/classify/multiple",
+            () -> ObjectDetection.getClient(new ObjectDetectorOptions.Builder()
+                    .setDetectorMode(ObjectDetectorOptions.STREAM_MODE)
+                    .enableClassification()
+                    .enableMultipleObjects()
+                    .build()),
+            ObjectDetector::process);
+
+    /**
+     * Tracks only the most prominent object, which is cheaper than {@link #OBJECTS}.
+     */
+    public static final DetectorSpec<ObjectDetector> OBJECTS_SINGLE = new DetectorSpec<>(
+            "objects/stream/classify/single",
+            () -> ObjectDetection.getClient(new ObjectDetectorOptions.Builder()
+                    .setDetectorMode(ObjectDetectorOptions.STREAM_MODE)
+                    .enableClassification()
+                    .build()),
+            ObjectDetector::process);
+
+    public static final DetectorSpec<ObjectDetector> CUSTOM_OBJECTS = customObjects("1.tflite", 0.5f, 3, true);
+
+    public static final DetectorSpec<ObjectDetector> CUSTOM_OBJECTS_SINGLE = customObjects("1.tflite", 0.5f, 3, false);
+
+    /**
+     * For still images: detects without tracking and spends more time per image than {@link #OBJECTS}.
+     */
+    public static final DetectorSpec<ObjectDetector> OBJECTS_IMAGES = new DetectorSpec<>(
+            "objects/single-image/classify/multiple",
+            () -> ObjectDetection.getClient(new ObjectDetectorOptions.Builder()
+                    .setDetectorMode(ObjectDetectorOptions.SINGLE_IMAGE_MODE)
+                    .enableClassification()
+                    .enableMultipleObjects()
+                    .build()),
+            ObjectDetector::process);
+
+    public static final DetectorSpec<ObjectDetector> CUSTOM_OBJECTS_IMAGES = new DetectorSpec<>(
+            "custom-objects/1.tflite/single-image/0.5/3/multiple",
+            () -> ObjectDetection.getClient(customObjectOptions(
+                    new LocalModel.Builder().setAssetFilePath("1.tflite").build(),
+                    CustomObjectDetectorOptions.SINGLE_IMAGE_MODE, 0.5f, 3, true)),
+            ObjectDetector::process);
+
+    public static final DetectorSpec<ImageLabeler> LABELS = new DetectorSpec<>(
+            "labels/default",
+            () -> ImageLabeling.getClient(ImageLabelerOptions.DEFAULT_OPTIONS),
+            ImageLabeler::process);
+
+    public static final DetectorSpec<TextRecognizer> TEXT = new DetectorSpec<>(
+            "text/latin",
+            () -> TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS),
+            TextRecognizer::process);
+
+    private final String key;
+    private final Supplier<T> factory;
+    private final BiFunction<T, InputImage, Task<?>> processor;
+
+    public DetectorSpec(String key, Supplier<T> factory, BiFunction<T, InputImage, Task<?>> processor) {
+        this.key = key;
+        this.factory = factory;
+        this.processor = processor;
+    }
+
+    public static DetectorSpec<ObjectDetector> customObjects(String assetFilePath, float confidenceThreshold,
+                                                             int maxLabels, boolean multipleObjects) {
+        return new DetectorSpec<>(
+                "custom-objects/" + assetFilePath + "/stream/" + confidenceThreshold + "/" + maxLabels
+                        + (multipleObjects ? "/multiple" : "/single"),
+                () -> ObjectDetection.getClient(customObjectOptions(
+                        new LocalModel.Builder().setAssetFilePath(assetFilePath).build(),
+                        CustomObjectDetectorOptions.STREAM_MODE, confidenceThreshold, maxLabels, multipleObjects)),
+                ObjectDetector::process);
+    }
+
+    /**
+     * A custom object detector running a model from the {@link com.example.cameramlkit.models.ModelRegistry},
+     * with the model's own confidence threshold and label count.
+     */
+    public static DetectorSpec<ObjectDetector> customObjects(ModelFile model, boolean multipleObjects) {
+        if (model.isAsset()) {
+            return customObjects(model.getPath(), model.getConfidenceThreshold(), model.getMaxLabels(), multipleObjects);
+        }
+        String path = model.getPath();
+        return new DetectorSpec<>(
+                "custom-objects/file:" + path + "/stream/" + model.getConfidenceThreshold() + "/" + model.getMaxLabels()
+                        + (multipleObjects ? "/multiple" : "/single"),
+                () -> ObjectDetection.getClient(customObjectOptions(
+                        new LocalModel.Builder().setAbsoluteFilePath(path).build(),
+                        CustomObjectDetectorOptions.STREAM_MODE, model.getConfidenceThreshold(), model.getMaxLabels(),
+                        multipleObjects)),
+                ObjectDetector::process);
+    }
+
+    private static CustomObjectDetectorOptions customObjectOptions(LocalModel localModel, int detectorMode,
+                                                                   float confidenceThreshold, int maxLabels,
+                                                                   boolean multipleObjects) {
+        CustomObjectDetectorOptions.Builder options = new CustomObjectDetectorOptions.Builder(localModel)
+                .setDetectorMode(detectorMode)
+                .enableClassification()
+                .setClassificationConfidenceThreshold(confidenceThreshold)
+                .setMaxPerObjectLabelCount(maxLabels);
+        if (multipleObjects) {
+            options.enableMultipleObjects();
+        }
+        return options.build();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    T create() {
+        return factory.get();
+    }
+
+    /**
+     * Runs one inference, which makes ML Kit load and initialize the underlying model.
+     */
+    Task<?> process(Detector<?> detector, InputImage image) {
+        @SuppressWarnings("unchecked")
+        T typed = (T) detector;
+        return processor.apply(typed, image);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DetectorSpec && key.equals(((DetectorSpec<?>) o).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
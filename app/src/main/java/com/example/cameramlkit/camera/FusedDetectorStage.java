@@ -0,0 +1,281 @@
+package com.example.cameramlkit.camera;
+
+import android.graphics.Matrix;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.mlkit.vision.MlKitAnalyzer;
+
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.DetectorSchedule;
+import com.example.cameramlkit.pipeline.DetectorStage;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.FusedResults;
+import com.example.cameramlkit.pipeline.PipelineExecutors;
+import com.google.mlkit.vision.interfaces.Detector;
+import com.google.mlkit.vision.label.ImageLabeler;
+import com.google.mlkit.vision.objects.ObjectDetector;
+import com.google.mlkit.vision.text.TextRecognizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs several ML Kit clients over the same camera frame, each at its own cadence (e.g. text
+ * on every 4th frame), and merges what they found into one result.
+ * <p>
+ * The frame is converted to an InputImage once and shared by every client scheduled on it:
+ * MlKitAnalyzer does that for the detectors it is given, so one analyzer is kept per subset of
+ * clients that the {@link DetectorSchedule} actually produces.
+ * <p>
+ * As in {@link MlKitDetectorStage}, an analyzer whose transform is cleared between scheduling
+ * and analysis closes the frame without calling back; such requests are dropped after
+ * {@link MlKitDetectorStage#PENDING_TIMEOUT_MS}, so they cannot keep the executors alive.
+ */
+public final class FusedDetectorStage implements DetectorStage, TransformReceiver {
+
+    private interface ValueMapper<V> {
+        void addTo(DetectionResult.Builder builder, V value);
+    }
+
+    private static final class Source {
+        final Detector<?> detector;
+        final ValueMapper<Object> mapper;
+        final Runnable onClose;
+
+        @SuppressWarnings("unchecked")
+        <V> Source(Detector<V> detector, ValueMapper<V> mapper, Runnable onClose) {
+            this.detector = detector;
+            this.mapper = (ValueMapper<Object>) mapper;
+            this.onClose = onClose;
+        }
+    }
+
+    private final List<Source> sources;
+    private final DetectorSchedule schedule;
+    private final FusedResults fused;
+    private final PipelineExecutors executors;
+    private final Map<Integer, MlKitAnalyzer> analyzers = new HashMap<>();
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Matrix sensorToTarget;
+    private long analyzedFrames;
+    private boolean closed;
+    private boolean executorsReleased;
+
+    private FusedDetectorStage(Builder builder) {
+        this.sources = new ArrayList<>(builder.sources);
+        int[] periods = new int[builder.periods.size()];
+        for (int i = 0; i < periods.length; i++) {
+            periods[i] = builder.periods.get(i);
+        }
+        this.schedule = new DetectorSchedule(periods);
+        this.fused = new FusedResults(sources.size(), TimeUnit.MILLISECONDS.toNanos(builder.maxAgeMillis));
+        this.executors = PipelineExecutors.acquire();
+    }
+
+    public DetectorSchedule getSchedule() {
+        return schedule;
+    }
+
+    @Override
+    public void detect(Frame frame, Callback callback) {
+        if (!(frame.getImage() instanceof ImageProxy)) {
+            throw new IllegalArgumentException("FusedDetectorStage needs camera frames");
+        }
+        // counted here rather than by camera sequence, so frames skipped upstream do not starve
+        // a detector whose phase keeps landing on them
+        int mask = schedule.maskFor(analyzedFrames++);
+        MlKitAnalyzer analyzer = mask == 0 ? null : analyzerFor(mask);
+        if (analyzer == null) {
+            // nothing scheduled, or no transform yet to map results to the view
+            frame.release();
+            return;
+        }
+        long now = System.nanoTime();
+        expirePending(now);
+        long timestamp = frame.getTimestampNanos();
+        pending.put(timestamp, new Pending(frame, callback, fused.getGeneration(), now));
+        try {
+            analyzer.analyze((ImageProxy) frame.getImage());
+        } catch (RuntimeException e) {
+            pending.remove(timestamp);
+            throw e;
+        }
+        frame.detach();
+    }
+
+    private synchronized MlKitAnalyzer analyzerFor(int mask) {
+        if (sensorToTarget == null) {
+            return null;
+        }
+        MlKitAnalyzer analyzer = analyzers.get(mask);
+        if (analyzer == null) {
+            List<Detector<?>> detectors = new ArrayList<>();
+            for (int i = 0; i < sources.size(); i++) {
+                if ((mask & (1 << i)) != 0) {
+                    detectors.add(sources.get(i).detector);
+                }
+            }
+            analyzer = new MlKitAnalyzer(detectors,
+                    ImageAnalysis.COORDINATE_SYSTEM_VIEW_REFERENCED,
+                    executors.getAnalysisExecutor(),
+                    result -> onAnalyzerResult(mask, result));
+            analyzer.updateTransform(sensorToTarget);
+            analyzers.put(mask, analyzer);
+        }
+        return analyzer;
+    }
+
+    @Override
+    public synchronized void updateTransform(@Nullable Matrix sensorToTarget) {
+        this.sensorToTarget = sensorToTarget == null ? null : new Matrix(sensorToTarget);
+        for (MlKitAnalyzer analyzer : analyzers.values()) {
+            analyzer.updateTransform(sensorToTarget);
+        }
+    }
+
+    private void onAnalyzerResult(int mask, MlKitAnalyzer.Result result) {
+        Pending request = pending.remove(result.getTimestamp());
+        if (request != null) {
+            long timestamp = result.getTimestamp();
+            Throwable error = null;
+            boolean anyValue = false;
+            for (int i = 0; i < sources.size(); i++) {
+                if ((mask & (1 << i)) == 0) {
+                    continue;
+                }
+                Source source = sources.get(i);
+                Object value = result.getValue(source.detector);
+                if (value != null) {
+                    DetectionResult.Builder partial = new DetectionResult.Builder(timestamp);
+                    source.mapper.addTo(partial, value);
+                    fused.put(i, partial.build(), request.generation);
+                    anyValue = true;
+                } else if (error == null) {
+                    error = result.getThrowable(source.detector);
+                }
+            }
+            if (error != null && !anyValue) {
+                request.callback.onError(request.frame, error);
+            } else {
+                request.callback.onResult(request.frame, fused.assemble(timestamp));
+            }
+        }
+        releaseExecutorsIfIdle();
+    }
+
+    @Override
+    public void reset() {
+        fused.reset();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        for (Source source : sources) {
+            source.onClose.run();
+        }
+        fused.clear();
+        releaseExecutorsIfIdle();
+        if (!pending.isEmpty()) {
+            handler.postDelayed(() -> {
+                expirePending(System.nanoTime());
+                releaseExecutorsIfIdle();
+            }, MlKitDetectorStage.PENDING_TIMEOUT_MS);
+        }
+    }
+
+    private void expirePending(long now) {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(MlKitDetectorStage.PENDING_TIMEOUT_MS);
+        Iterator<Pending> requests = pending.values().iterator();
+        while (requests.hasNext()) {
+            Pending request = requests.next();
+            if (now - request.startNanos > timeout) {
+                requests.remove();
+                Log.d("info", "no fused result for frame " + request.frame.getSequence()
+                        + " within " + MlKitDetectorStage.PENDING_TIMEOUT_MS + " ms, dropped");
+            }
+        }
+    }
+
+    private synchronized void releaseExecutorsIfIdle() {
+        if (closed && !executorsReleased && pending.isEmpty()) {
+            executorsReleased = true;
+            executors.release();
+        }
+    }
+
+    private static final class Pending {
+        final Frame frame;
+        final Callback callback;
+        final int generation;
+        final long startNanos;
+
+        Pending(Frame frame, Callback callback, int generation, long startNanos) {
+            this.frame = frame;
+            this.callback = callback;
+            this.generation = generation;
+            this.startNanos = startNanos;
+        }
+    }
+
+    public static final class Builder {
+        private final List<Source> sources = new ArrayList<>();
+        private final List<Integer> periods = new ArrayList<>();
+        private long maxAgeMillis = 500;
+
+        /**
+         * @param period run on one frame out of this many
+         */
+        public Builder addObjects(DetectorClients.Lease<ObjectDetector> lease, int period) {
+            return add(new Source(lease.get(), (builder, objects) ->
+                    builder.addObjects(MlKitResults.fromObjects(objects)), lease::close), period);
+        }
+
+        public Builder addLabels(DetectorClients.Lease<ImageLabeler> lease, int period) {
+            return add(new Source(lease.get(), (builder, labels) ->
+                    builder.addLabels(MlKitResults.fromImageLabels(labels)), lease::close), period);
+        }
+
+        public Builder addText(DetectorClients.Lease<TextRecognizer> lease, int period) {
+            return add(new Source(lease.get(), (builder, text) ->
+                    builder.setText(MlKitResults.fromText(text)), lease::close), period);
+        }
+
+        /**
+         * How long a detector's last result is still shown when it has not run since.
+         */
+        public Builder setMaxAgeMillis(long maxAgeMillis) {
+            this.maxAgeMillis = maxAgeMillis;
+            return this;
+        }
+
+        private Builder add(Source source, int period) {
+            sources.add(source);
+            periods.add(period);
+            return this;
+        }
+
+        public FusedDetectorStage build() {
+            if (sources.isEmpty()) {
+                throw new IllegalStateException("At least one detector is required");
+            }
+            return new FusedDetectorStage(this);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.cameramlkit.camera;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import com.example.cameramlkit.batch.BatchItem;
+import com.example.cameramlkit.batch.BatchRunner;
+import com.example.cameramlkit.cache.ImageHash;
+import com.example.cameramlkit.cache.ResultCache;
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.label.ImageLabel;
+import com.google.mlkit.vision.label.ImageLabeler;
+import com.google.mlkit.vision.objects.DetectedObject;
+import com.google.mlkit.vision.objects.ObjectDetector;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.TextRecognizer;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Runs the object detector, the custom object model, the image labeler and the text recognizer
+ * over MediaStore images for a {@link BatchRunner}. Images are decoded downsampled, to no less
+ * than {@link #DECODE_LONG_SIDE} pixels on the long side, and the four detectors run on the same
+ * bitmap concurrently; bounds are reported in the full size, upright image.
+ * <p>
+ * With a {@link ResultCache}, each image is first hashed from a thumbnail-sized decode and
+ * looked up; the full decode and the detectors only run on a miss. The cache key covers the
+ * detector options and the checksum of the custom model file, so results of an older model
+ * are not reused.
+ */
+public final class GalleryProcessor implements BatchRunner.Processor, AutoCloseable {
+
+    /**
+     * Long side images are decoded to at least: enough for text recognition, which needs the
+     * most pixels of the four.
+     */
+    public static final int DECODE_LONG_SIDE = 1280;
+    // enough pixels to average into the hash's cells
+    private static final int HASH_LONG_SIDE = 128;
+    private static final String CUSTOM_MODEL = "1.tflite";
+
+    private final ContentResolver resolver;
+    private final DetectorClients.Lease<ObjectDetector> objects;
+    private final DetectorClients.Lease<ObjectDetector> customObjects;
+    private final DetectorClients.Lease<ImageLabeler> labels;
+    private final DetectorClients.Lease<TextRecognizer> text;
+    private final ResultCache cache;
+    // by rotation / 90, since the hash is of the image as stored
+    private final long[] detectorsKeys = new long[4];
+
+    /**
+     * @param cache results of images seen before, or null to always run the detectors
+     * @throws IOException when the custom model cannot be read to key the cache
+     */
+    public GalleryProcessor(Context context, ResultCache cache) throws IOException {
+        if (cache != null) {
+            String model = CUSTOM_MODEL + ":" + checksum(context, CUSTOM_MODEL);
+            for (int i = 0; i < detectorsKeys.length; i++) {
+                detectorsKeys[i] = ResultCache.detectorsKey(DetectorSpec.OBJECTS_IMAGES.getKey(),
+                        DetectorSpec.CUSTOM_OBJECTS_IMAGES.getKey(), model, DetectorSpec.LABELS.getKey(),
+                        DetectorSpec.TEXT.getKey(), "rotation:" + i * 90);
+            }
+        }
+        DetectorClients clients = DetectorClients.getInstance();
+        this.cache = cache;
+        this.resolver = context.getContentResolver();
+        this.objects = clients.acquire(DetectorSpec.OBJECTS_IMAGES);
+        this.customObjects = clients.acquire(DetectorSpec.CUSTOM_OBJECTS_IMAGES);
+        this.labels = clients.acquire(DetectorSpec.LABELS);
+        this.text = clients.acquire(DetectorSpec.TEXT);
+    }
+
+    /**
+     * The images in a folder of shared storage, e.g. {@code Environment.DIRECTORY_DCIM}, and its
+     * subfolders, in ascending id order as a {@link BatchRunner} needs them. Items are named by
+     * their path under the folder without the extension, e.g. "Camera/IMG_1234", so photos of
+     * different subfolders do not share a name, and photos of {@link CaptureService}, saved at
+     * the top of DCIM, have the name they were indexed under. Reads storage.
+     */
+    public static List<BatchItem> listImages(Context context, String folder) {
+        boolean relativePaths = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+        String[] projection = {
+                MediaStore.Images.Media._ID,
+                MediaStore.Images.Media.DISPLAY_NAME,
+                MediaStore.Images.Media.WIDTH,
+                MediaStore.Images.Media.HEIGHT,
+                MediaStore.Images.Media.ORIENTATION,
+                relativePaths ? MediaStore.Images.Media.RELATIVE_PATH : MediaStore.Images.Media.DATA};
+        String selection;
+        String[] arguments;
+        if (relativePaths) {
+            selection = MediaStore.Images.Media.RELATIVE_PATH + " LIKE ?";
+            arguments = new String[]{folder + "/%"};
+        } else {
+            selection = MediaStore.Images.Media.DATA + " LIKE ?";
+            arguments = new String[]{"%/" + folder + "/%"};
+        }
+        List<BatchItem> items = new ArrayList<>();
+        try (Cursor cursor = context.getContentResolver().query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                projection, selection, arguments, MediaStore.Images.Media._ID + " ASC")) {
+            if (cursor == null) {
+                return items;
+            }
+            while (cursor.moveToNext()) {
+                int width = cursor.getInt(2);
+                int height = cursor.getInt(3);
+                int rotation = cursor.getInt(4);
+                boolean sideways = rotation % 180 != 0;
+                String path = relativePaths ? cursor.getString(5) + cursor.getString(1) : cursor.getString(5);
+                items.add(new BatchItem(cursor.getLong(0), nameUnder(folder, path),
+                        sideways ? height : width, sideways ? width : height, rotation));
+            }
+        }
+        return items;
+    }
+
+    private static String nameUnder(String folder, String path) {
+        int start = path.indexOf(folder + "/");
+        String name = start < 0 ? path : path.substring(start + folder.length() + 1);
+        int extension = name.lastIndexOf('.');
+        return extension > name.lastIndexOf('/') ? name.substring(0, extension) : name;
+    }
+
+    @Override
+    public DetectionResult process(BatchItem item) throws Exception {
+        Uri uri = ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, item.getId());
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(uri, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Cannot decode " + item);
+        }
+        int fullWidth = options.outWidth;
+        int fullHeight = options.outHeight;
+        long imageHash = 0;
+        long detectors = detectorsKeys[(item.getRotationDegrees() / 90) & 3];
+        if (cache != null) {
+            imageHash = hash(uri, fullWidth, fullHeight);
+            DetectionResult cached = lookUp(imageHash, fullWidth, fullHeight, detectors);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = BatchItem.sampleSize(fullWidth, fullHeight, DECODE_LONG_SIDE);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = decode(uri, options);
+        if (bitmap == null) {
+            throw new IOException("Cannot decode " + item);
+        }
+        try {
+            // decoders round the sampled size, so scale by the sizes rather than the sample size
+            float scale = (float) fullWidth / bitmap.getWidth();
+            InputImage image = InputImage.fromBitmap(bitmap, item.getRotationDegrees());
+            Task<List<DetectedObject>> objectTask = objects.get().process(image);
+            Task<List<DetectedObject>> customObjectTask = customObjects.get().process(image);
+            Task<List<ImageLabel>> labelTask = labels.get().process(image);
+            Task<Text> textTask = text.get().process(image);
+
+            DetectionResult.Builder result = new DetectionResult.Builder(0);
+            addObjects(result, Tasks.await(objectTask), scale);
+            addObjects(result, Tasks.await(customObjectTask), scale);
+            result.addLabels(MlKitResults.fromImageLabels(Tasks.await(labelTask)));
+            result.setText(MlKitResults.fromText(Tasks.await(textTask)).mapBounds(bounds -> scale(bounds, scale)));
+            DetectionResult detected = result.build();
+            if (cache != null) {
+                store(imageHash, fullWidth, fullHeight, detectors, detected);
+            }
+            return detected;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private long hash(Uri uri, int width, int height) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = BatchItem.sampleSize(width, height, HASH_LONG_SIDE);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap thumbnail = decode(uri, options);
+        if (thumbnail == null) {
+            throw new IOException("Cannot decode " + uri);
+        }
+        try {
+            int[] pixels = new int[thumbnail.getWidth() * thumbnail.getHeight()];
+            thumbnail.getPixels(pixels, 0, thumbnail.getWidth(), 0, 0, thumbnail.getWidth(), thumbnail.getHeight());
+            return ImageHash.of(pixels, thumbnail.getWidth(), thumbnail.getHeight());
+        } finally {
+            thumbnail.recycle();
+        }
+    }
+
+    // the cache only saves work; when it fails the detectors run
+    private DetectionResult lookUp(long imageHash, int width, int height, long detectors) {
+        try {
+            return cache.get(imageHash, width, height, detectors);
+        } catch (IOException e) {
+            Log.e("info", "result cache read failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void store(long imageHash, int width, int height, long detectors, DetectionResult result) {
+        try {
+            cache.put(imageHash, width, height, detectors, result);
+        } catch (IOException e) {
+            Log.e("info", "result cache write failed: " + e.getMessage());
+        }
+    }
+
+    private static String checksum(Context context, String asset) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = context.getAssets().open(asset)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * Hands the detectors back to {@link DetectorClients}.
+     */
+    @Override
+    public void close() {
+        objects.close();
+        customObjects.close();
+        labels.close();
+        text.close();
+    }
+
+    private Bitmap decode(Uri uri, BitmapFactory.Options options) throws IOException {
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) {
+                throw new FileNotFoundException(uri.toString());
+            }
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+
+    private static void addObjects(DetectionResult.Builder result, List<DetectedObject> detected, float scale) {
+        for (DetectedBox box : MlKitResults.fromObjects(detected)) {
+            result.addObject(box.withBounds(scale(box.getBounds(), scale)));
+        }
+    }
+
+    private static Bounds scale(Bounds bounds, float scale) {
+        return new Bounds(bounds.getLeft() * scale, bounds.getTop() * scale,
+                bounds.getRight() * scale, bounds.getBottom() * scale);
+    }
+}
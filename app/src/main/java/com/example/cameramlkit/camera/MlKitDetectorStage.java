@@ -0,0 +1,238 @@
+package com.example.cameramlkit.camera;
+
+import android.graphics.Matrix;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.mlkit.vision.MlKitAnalyzer;
+
+import com.example.cameramlkit.metrics.BackendTimings;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.DetectorStage;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.PipelineExecutors;
+import com.google.mlkit.vision.interfaces.Detector;
+import com.google.mlkit.vision.label.ImageLabel;
+import com.google.mlkit.vision.label.ImageLabeler;
+import com.google.mlkit.vision.objects.DetectedObject;
+import com.google.mlkit.vision.objects.ObjectDetector;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.TextRecognizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detector stage running ML Kit clients through CameraX's {@link MlKitAnalyzer}, which takes
+ * care of the image to view coordinate transform.
+ * <p>
+ * The analyzer closes frames without a result while it has no transform, so frames are only
+ * handed to it once {@link #updateTransform} gave one; requests whose result has not come
+ * within {@link #PENDING_TIMEOUT_MS} are dropped, so a lost result cannot keep the executors
+ * alive after {@link #close()}.
+ */
+public class MlKitDetectorStage implements DetectorStage, TransformReceiver {
+
+    static final long PENDING_TIMEOUT_MS = 2_000;
+
+    public interface ResultMapper {
+        DetectionResult map(MlKitAnalyzer.Result result, long timestampNanos);
+    }
+
+    private final List<Detector<?>> detectors;
+    private final ResultMapper mapper;
+    private final Runnable onClose;
+    private final PipelineExecutors executors;
+    private final MlKitAnalyzer analyzer;
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final BackendTimings timings = new BackendTimings("mlkit");
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private volatile boolean hasTransform;
+    private boolean closed;
+    private boolean executorsReleased;
+
+    /**
+     * @param onClose releases the detector clients, typically by closing their
+     *                {@link DetectorClients.Lease}s
+     */
+    public MlKitDetectorStage(List<Detector<?>> detectors, ResultMapper mapper, Runnable onClose) {
+        this.detectors = Collections.unmodifiableList(new ArrayList<>(detectors));
+        this.mapper = mapper;
+        this.onClose = onClose;
+        this.executors = PipelineExecutors.acquire();
+        this.analyzer = new MlKitAnalyzer(this.detectors,
+                ImageAnalysis.COORDINATE_SYSTEM_VIEW_REFERENCED,
+                executors.getAnalysisExecutor(),
+                this::onAnalyzerResult);
+    }
+
+    public static MlKitDetectorStage forObjects(DetectorClients.Lease<ObjectDetector> lease) {
+        ObjectDetector objectDetector = lease.get();
+        return new MlKitDetectorStage(Collections.singletonList(objectDetector), (result, timestamp) -> {
+            DetectionResult.Builder builder = new DetectionResult.Builder(timestamp);
+            List<DetectedObject> detectedObjects = result.getValue(objectDetector);
+            if (detectedObjects != null)
+                builder.addObjects(MlKitResults.fromObjects(detectedObjects));
+            return builder.build();
+        }, lease::close);
+    }
+
+    public static MlKitDetectorStage forLabels(DetectorClients.Lease<ImageLabeler> lease) {
+        ImageLabeler labeler = lease.get();
+        return new MlKitDetectorStage(Collections.singletonList(labeler), (result, timestamp) -> {
+            DetectionResult.Builder builder = new DetectionResult.Builder(timestamp);
+            List<ImageLabel> labels = result.getValue(labeler);
+            if (labels != null)
+                builder.addLabels(MlKitResults.fromImageLabels(labels));
+            return builder.build();
+        }, lease::close);
+    }
+
+    public static MlKitDetectorStage forText(DetectorClients.Lease<TextRecognizer> lease) {
+        TextRecognizer recognizer = lease.get();
+        return new MlKitDetectorStage(Collections.singletonList(recognizer), (result, timestamp) -> {
+            DetectionResult.Builder builder = new DetectionResult.Builder(timestamp);
+            Text visionText = result.getValue(recognizer);
+            if (visionText != null)
+                builder.setText(MlKitResults.fromText(visionText));
+            return builder.build();
+        }, lease::close);
+    }
+
+    public List<Detector<?>> getDetectors() {
+        return detectors;
+    }
+
+    /**
+     * ML Kit converts the frame inside the detector call, so preprocessing is counted as model
+     * time here; decoding is the mapping of its results.
+     */
+    public BackendTimings getTimings() {
+        return timings;
+    }
+
+    @Override
+    public void detect(Frame frame, Callback callback) {
+        if (!(frame.getImage() instanceof ImageProxy)) {
+            throw new IllegalArgumentException("MlKitDetectorStage needs camera frames");
+        }
+        if (!hasTransform) {
+            // the analyzer would close it without calling back
+            frame.release();
+            return;
+        }
+        long now = System.nanoTime();
+        expirePending(now);
+        long timestamp = frame.getTimestampNanos();
+        pending.put(timestamp, new Pending(frame, callback, now));
+        try {
+            analyzer.analyze((ImageProxy) frame.getImage());
+        } catch (RuntimeException e) {
+            pending.remove(timestamp);
+            throw e;
+        }
+        // MlKitAnalyzer closes the ImageProxy once every detector is done with it
+        frame.detach();
+    }
+
+    @Override
+    public void updateTransform(@Nullable Matrix sensorToTarget) {
+        hasTransform = sensorToTarget != null;
+        analyzer.updateTransform(sensorToTarget);
+    }
+
+    private void onAnalyzerResult(MlKitAnalyzer.Result result) {
+        Pending request = pending.remove(result.getTimestamp());
+        if (request != null) {
+            Throwable error = firstError(result);
+            if (error != null && !hasAnyValue(result)) {
+                request.callback.onError(request.frame, error);
+            } else {
+                long mapStart = System.nanoTime();
+                DetectionResult mapped = mapper.map(result, result.getTimestamp());
+                timings.record(-1, mapStart - request.startNanos, System.nanoTime() - mapStart);
+                request.callback.onResult(request.frame, mapped);
+            }
+        }
+        releaseExecutorsIfIdle();
+    }
+
+    private Throwable firstError(MlKitAnalyzer.Result result) {
+        for (Detector<?> detector : detectors) {
+            Throwable throwable = result.getThrowable(detector);
+            if (throwable != null) {
+                return throwable;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasAnyValue(MlKitAnalyzer.Result result) {
+        for (Detector<?> detector : detectors) {
+            if (result.getValue(detector) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        onClose.run();
+        releaseExecutorsIfIdle();
+        if (!pending.isEmpty()) {
+            handler.postDelayed(() -> {
+                expirePending(System.nanoTime());
+                releaseExecutorsIfIdle();
+            }, PENDING_TIMEOUT_MS);
+        }
+    }
+
+    private void expirePending(long now) {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(PENDING_TIMEOUT_MS);
+        Iterator<Pending> requests = pending.values().iterator();
+        while (requests.hasNext()) {
+            Pending request = requests.next();
+            if (now - request.startNanos > timeout) {
+                requests.remove();
+                Log.d("info", "no ML Kit result for frame " + request.frame.getSequence()
+                        + " within " + PENDING_TIMEOUT_MS + " ms, dropped");
+            }
+        }
+    }
+
+    // results still in flight are delivered on the analysis executor, so it must outlive them
+    private synchronized void releaseExecutorsIfIdle() {
+        if (closed && !executorsReleased && pending.isEmpty()) {
+            executorsReleased = true;
+            executors.release();
+        }
+    }
+
+    private static final class Pending {
+        final Frame frame;
+        final Callback callback;
+        final long startNanos;
+
+        Pending(Frame frame, Callback callback, long startNanos) {
+            this.frame = frame;
+            this.callback = callback;
+            this.startNanos = startNanos;
+        }
+    }
+}
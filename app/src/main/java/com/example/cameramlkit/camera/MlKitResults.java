@@ -0,0 +1,71 @@
+package com.example.cameramlkit.camera;
+
+import android.graphics.Rect;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.RecognizedText;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+import com.google.mlkit.vision.label.ImageLabel;
+import com.google.mlkit.vision.objects.DetectedObject;
+import com.google.mlkit.vision.text.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies ML Kit results into the platform independent pipeline model.
+ */
+public final class MlKitResults {
+
+    private MlKitResults() {
+    }
+
+    public static Bounds toBounds(Rect rect) {
+        if (rect == null) {
+            return Bounds.EMPTY;
+        }
+        return new Bounds(rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+    public static List<DetectedBox> fromObjects(List<DetectedObject> detectedObjects) {
+        List<DetectedBox> boxes = new ArrayList<>(detectedObjects.size());
+        for (DetectedObject detectedObject : detectedObjects) {
+            List<ScoredLabel> labels = new ArrayList<>(detectedObject.getLabels().size());
+            for (DetectedObject.Label label : detectedObject.getLabels()) {
+                labels.add(new ScoredLabel(label.getIndex(), label.getText(), label.getConfidence()));
+            }
+            Integer trackingId = detectedObject.getTrackingId();
+            boxes.add(new DetectedBox(toBounds(detectedObject.getBoundingBox()),
+                    trackingId == null ? DetectedBox.NO_TRACKING_ID : trackingId,
+                    labels));
+        }
+        return boxes;
+    }
+
+    public static List<ScoredLabel> fromImageLabels(List<ImageLabel> imageLabels) {
+        List<ScoredLabel> labels = new ArrayList<>(imageLabels.size());
+        for (ImageLabel label : imageLabels) {
+            labels.add(new ScoredLabel(label.getIndex(), label.getText(), label.getConfidence()));
+        }
+        return labels;
+    }
+
+    public static RecognizedText fromText(Text visionText) {
+        List<RecognizedText.Block> blocks = new ArrayList<>(visionText.getTextBlocks().size());
+        for (Text.TextBlock block : visionText.getTextBlocks()) {
+            List<RecognizedText.Line> lines = new ArrayList<>(block.getLines().size());
+            for (Text.Line line : block.getLines()) {
+                List<RecognizedText.Element> elements = new ArrayList<>(line.getElements().size());
+                for (Text.Element element : line.getElements()) {
+                    elements.add(new RecognizedText.Element(element.getText(),
+                            toBounds(element.getBoundingBox()), element.getConfidence()));
+                }
+                lines.add(new RecognizedText.Line(line.getText(), toBounds(line.getBoundingBox()),
+                        line.getConfidence(), elements));
+            }
+            blocks.add(new RecognizedText.Block(block.getText(), toBounds(block.getBoundingBox()), lines));
+        }
+        return new RecognizedText(visionText.getText(), blocks);
+    }
+}
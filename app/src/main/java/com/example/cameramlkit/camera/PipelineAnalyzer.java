@@ -0,0 +1,76 @@
+package com.example.cameramlkit.camera;
+
+import android.graphics.Matrix;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import com.example.cameramlkit.pipeline.DetectionPipeline;
+import com.example.cameramlkit.pipeline.DetectorStage;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.SwitchingDetectorStage;
+
+/**
+ * CameraX analyzer acting as the live frame source of a {@link DetectionPipeline}.
+ */
+public class PipelineAnalyzer implements ImageAnalysis.Analyzer {
+
+    private final DetectionPipeline pipeline;
+    private final Runnable onTransformChanged;
+    private long sequence;
+
+    public PipelineAnalyzer(DetectionPipeline pipeline) {
+        this(pipeline, null);
+    }
+
+    /**
+     * @param onTransformChanged runs after every new, non-null transform reached the detector,
+     *                           e.g. once the camera switched lens
+     */
+    public PipelineAnalyzer(DetectionPipeline pipeline, @Nullable Runnable onTransformChanged) {
+        this.pipeline = pipeline;
+        this.onTransformChanged = onTransformChanged;
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy imageProxy) {
+        ImageProxy.PlaneProxy luma = imageProxy.getPlanes()[0];
+        Frame frame = new Frame.Builder(imageProxy.getWidth(), imageProxy.getHeight())
+                .setSequence(sequence++)
+                .setTimestampNanos(imageProxy.getImageInfo().getTimestamp())
+                .setRotationDegrees(imageProxy.getImageInfo().getRotationDegrees())
+                .setLuma(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride())
+                .setImage(imageProxy)
+                .setReleaser(imageProxy::close)
+                .build();
+        pipeline.accept(frame);
+    }
+
+    @Override
+    public int getTargetCoordinateSystem() {
+        return ImageAnalysis.COORDINATE_SYSTEM_VIEW_REFERENCED;
+    }
+
+    @Override
+    public void updateTransform(@Nullable Matrix matrix) {
+        DetectorStage detector = pipeline.getDetector();
+        if (detector instanceof SwitchingDetectorStage) {
+            for (DetectorStage stage : ((SwitchingDetectorStage) detector).getStages()) {
+                forwardTransform(stage, matrix);
+            }
+        } else {
+            forwardTransform(detector, matrix);
+        }
+        if (matrix != null && onTransformChanged != null) {
+            onTransformChanged.run();
+        }
+    }
+
+    private static void forwardTransform(DetectorStage stage, @Nullable Matrix matrix) {
+        if (stage instanceof TransformReceiver) {
+            ((TransformReceiver) stage).updateTransform(matrix);
+        }
+    }
+}
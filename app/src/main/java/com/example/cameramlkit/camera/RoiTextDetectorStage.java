@@ -0,0 +1,244 @@
+package com.example.cameramlkit.camera;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.media.Image;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.camera.core.ExperimentalGetImage;
+import androidx.camera.core.ImageProxy;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.DetectorStage;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.PipelineExecutors;
+import com.example.cameramlkit.pipeline.RecognizedText;
+import com.example.cameramlkit.roi.RegionCache;
+import com.example.cameramlkit.roi.RegionCrop;
+import com.example.cameramlkit.roi.RegionPlanner;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.objects.DetectedObject;
+import com.google.mlkit.vision.objects.ObjectDetector;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.TextRecognizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Region of interest OCR: the object detector finds where the products / labels are, and text
+ * is recognized only in those regions, cropped out of the luma plane, turned upright and
+ * upscaled. Regions that look the same as in an earlier frame reuse that frame's text.
+ * <p>
+ * When nothing is detected, the whole frame is recognized every few frames instead, so plain
+ * documents still work (and, being static, are mostly served from the cache too).
+ */
+public final class RoiTextDetectorStage implements DetectorStage, TransformReceiver {
+
+    private static final float TARGET_SHORT_SIDE = 320f;
+    private static final float MAX_SCALE = 3f;
+    private static final int MAX_RECOGNITIONS_PER_FRAME = 3;
+    private static final int FULL_FRAME_PERIOD = 8;
+
+    private final DetectorClients.Lease<ObjectDetector> objectLease;
+    private final DetectorClients.Lease<TextRecognizer> textLease;
+    private final PipelineExecutors executors;
+    private final RegionPlanner planner = new RegionPlanner(0.1f, 24f);
+    private final RegionCache cache = new RegionCache(0.6f, 6f, 30);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private Matrix sensorToView;
+    private long frames;
+    // bumped by reset(), so text recognized for the previous lens is not cached
+    private volatile int generation;
+    private boolean closed;
+    private boolean executorsReleased;
+
+    public RoiTextDetectorStage(DetectorClients.Lease<ObjectDetector> objectLease,
+                                DetectorClients.Lease<TextRecognizer> textLease) {
+        this.objectLease = objectLease;
+        this.textLease = textLease;
+        this.executors = PipelineExecutors.acquire();
+    }
+
+    public RegionCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public synchronized void updateTransform(@Nullable Matrix sensorToTarget) {
+        sensorToView = sensorToTarget == null ? null : new Matrix(sensorToTarget);
+    }
+
+    @Override
+    @OptIn(markerClass = ExperimentalGetImage.class)
+    public void detect(Frame frame, Callback callback) {
+        if (!(frame.getImage() instanceof ImageProxy)) {
+            throw new IllegalArgumentException("RoiTextDetectorStage needs camera frames");
+        }
+        ImageProxy imageProxy = (ImageProxy) frame.getImage();
+        Image mediaImage = imageProxy.getImage();
+        Matrix bufferToView = bufferToView(imageProxy);
+        if (mediaImage == null || bufferToView == null) {
+            frame.release();
+            return;
+        }
+        long frameIndex = frames++;
+        int frameGeneration = generation;
+        inFlight.incrementAndGet();
+        objectLease.get().process(InputImage.fromMediaImage(mediaImage, frame.getRotationDegrees()))
+                .addOnCompleteListener(executors.getAnalysisExecutor(), task -> {
+                    if (!task.isSuccessful()) {
+                        frame.release();
+                        callback.onError(frame, task.getException());
+                        finished();
+                        return;
+                    }
+                    onObjects(frame, frameIndex, frameGeneration, task.getResult(), bufferToView, callback);
+                });
+    }
+
+    private Matrix bufferToView(ImageProxy imageProxy) {
+        Matrix sensorToBuffer = imageProxy.getImageInfo().getSensorToBufferTransformMatrix();
+        Matrix bufferToView = new Matrix();
+        if (!sensorToBuffer.invert(bufferToView)) {
+            return null;
+        }
+        synchronized (this) {
+            if (sensorToView == null) {
+                return null;
+            }
+            bufferToView.postConcat(sensorToView);
+        }
+        return bufferToView;
+    }
+
+    private void onObjects(Frame frame, long frameIndex, int frameGeneration, List<DetectedObject> detectedObjects,
+                           Matrix bufferToView, Callback callback) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int rotation = frame.getRotationDegrees();
+
+        List<DetectedBox> objects = new ArrayList<>(detectedObjects.size());
+        List<Bounds> candidates = new ArrayList<>(detectedObjects.size());
+        for (DetectedBox box : MlKitResults.fromObjects(detectedObjects)) {
+            Bounds buffer = RegionCrop.uprightToBuffer(box.getBounds(), rotation, width, height);
+            candidates.add(buffer);
+            objects.add(box.withBounds(mapBounds(bufferToView, buffer)));
+        }
+        if (candidates.isEmpty() && frameIndex % FULL_FRAME_PERIOD == 0) {
+            candidates.add(new Bounds(0, 0, width, height));
+        }
+
+        List<RegionCache.Region> regions;
+        List<RegionCache.Region> toRecognize = new ArrayList<>();
+        List<Task<Text>> tasks = new ArrayList<>();
+        List<RegionCrop> crops = new ArrayList<>();
+        try {
+            regions = cache.match(planner.plan(candidates, width, height),
+                    frame.getLuma(), frame.getLumaRowStride(), frame.getLumaPixelStride(), frameIndex);
+            for (RegionCache.Region region : regions) {
+                if (!region.needsRecognition() || tasks.size() == MAX_RECOGNITIONS_PER_FRAME) {
+                    continue;
+                }
+                Bounds bounds = region.getBounds();
+                RegionCrop crop = new RegionCrop(bounds, rotation,
+                        RegionCrop.upscaleFor(bounds, TARGET_SHORT_SIDE, MAX_SCALE));
+                byte[] nv21 = new byte[crop.nv21Size()];
+                crop.copyTo(frame.getLuma(), frame.getLumaRowStride(), frame.getLumaPixelStride(), width, height, nv21);
+                toRecognize.add(region);
+                crops.add(crop);
+                tasks.add(textLease.get().process(InputImage.fromByteArray(nv21,
+                        crop.getOutputWidth(), crop.getOutputHeight(), 0, InputImage.IMAGE_FORMAT_NV21)));
+            }
+        } finally {
+            // the crops are copies, the camera buffer can go back
+            frame.release();
+        }
+
+        if (tasks.isEmpty()) {
+            deliver(frame, regions, Collections.<RegionCache.Region, RecognizedText>emptyMap(), objects, bufferToView, callback);
+            return;
+        }
+        Tasks.whenAllComplete(tasks).addOnCompleteListener(executors.getAnalysisExecutor(), all -> {
+            Map<RegionCache.Region, RecognizedText> recognized = new HashMap<>();
+            for (int i = 0; i < tasks.size(); i++) {
+                Task<Text> task = tasks.get(i);
+                if (!task.isSuccessful()) {
+                    continue;
+                }
+                RegionCrop crop = crops.get(i);
+                RecognizedText text = MlKitResults.fromText(task.getResult()).mapBounds(crop::toBuffer);
+                if (frameGeneration == generation) {
+                    cache.store(toRecognize.get(i), text, frameIndex);
+                }
+                recognized.put(toRecognize.get(i), text);
+            }
+            deliver(frame, regions, recognized, objects, bufferToView, callback);
+        });
+    }
+
+    private void deliver(Frame frame, List<RegionCache.Region> regions,
+                         Map<RegionCache.Region, RecognizedText> recognized,
+                         List<DetectedBox> objects, Matrix bufferToView, Callback callback) {
+        List<RecognizedText> parts = new ArrayList<>(regions.size());
+        for (RegionCache.Region region : regions) {
+            RecognizedText text = region.needsRecognition() ? recognized.get(region) : region.getText();
+            if (text != null) {
+                parts.add(text.mapBounds(bounds -> mapBounds(bufferToView, bounds)));
+            }
+        }
+        callback.onResult(frame, new DetectionResult.Builder(frame.getTimestampNanos())
+                .addObjects(objects)
+                .setText(RecognizedText.concat(parts))
+                .build());
+        finished();
+    }
+
+    private static Bounds mapBounds(Matrix matrix, Bounds bounds) {
+        RectF rect = new RectF(bounds.getLeft(), bounds.getTop(), bounds.getRight(), bounds.getBottom());
+        matrix.mapRect(rect);
+        return new Bounds(rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+    private void finished() {
+        inFlight.decrementAndGet();
+        releaseIfIdle();
+    }
+
+    @Override
+    public void reset() {
+        generation++;
+        cache.clear();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        objectLease.close();
+        textLease.close();
+        cache.clear();
+        releaseIfIdle();
+    }
+
+    // completion listeners run on the analysis executor, so it must outlive them
+    private synchronized void releaseIfIdle() {
+        if (closed && !executorsReleased && inFlight.get() == 0) {
+            executorsReleased = true;
+            executors.release();
+        }
+    }
+}
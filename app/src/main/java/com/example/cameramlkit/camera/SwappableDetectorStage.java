@@ -0,0 +1,186 @@
+package com.example.cameramlkit.camera;
+
+import android.graphics.Matrix;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.cameramlkit.pipeline.DetectorStage;
+import com.example.cameramlkit.pipeline.Frame;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A detector stage that can be replaced while the camera keeps running, e.g. to switch models.
+ * The replacement is built (and warmed up) on a loader thread while frames keep going to the
+ * current stage; only then are frames routed to it and the old stage closed. Frames arriving
+ * before the first stage is loaded are dropped.
+ */
+public final class SwappableDetectorStage implements DetectorStage, TransformReceiver {
+
+    public interface Loader {
+        /**
+         * Builds a ready to use stage; runs on the loader thread.
+         */
+        DetectorStage load() throws Exception;
+    }
+
+    public interface Listener {
+        /**
+         * Loader thread. {@code loadNanos} is the time {@link Loader#load()} took.
+         */
+        void onSwapped(DetectorStage stage, long loadNanos);
+
+        void onSwapFailed(Exception error);
+    }
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "model-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // frames are detected under the read lock, stages are swapped under the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // written under both the write lock and the monitor
+    private DetectorStage current;
+    private Matrix transform;
+    private boolean hasTransform;
+    private long generation;
+    private boolean closed;
+
+    /**
+     * Loads a stage in the background and switches to it once it is ready. A swap requested
+     * while another is loading wins over it.
+     */
+    public void swap(Loader stageLoader, Listener listener) {
+        long requested;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            requested = ++generation;
+        }
+        loader.execute(() -> {
+            synchronized (this) {
+                if (requested != generation) {
+                    return;
+                }
+            }
+            long start = System.nanoTime();
+            DetectorStage loaded;
+            try {
+                loaded = stageLoader.load();
+            } catch (Exception e) {
+                listener.onSwapFailed(e);
+                return;
+            }
+            long loadNanos = System.nanoTime() - start;
+            if (!install(loaded, requested)) {
+                loaded.close();
+                return;
+            }
+            listener.onSwapped(loaded, loadNanos);
+        });
+    }
+
+    private boolean install(DetectorStage stage, long requested) {
+        DetectorStage previous;
+        lock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (closed || requested != generation) {
+                    return false;
+                }
+                if (hasTransform && stage instanceof TransformReceiver) {
+                    ((TransformReceiver) stage).updateTransform(transform);
+                }
+                previous = current;
+                current = stage;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (previous != null) {
+            // frames it already took are still delivered, see the stages' close()
+            previous.close();
+        }
+        Log.d("info", "detector stage swapped to " + stage);
+        return true;
+    }
+
+    /**
+     * The stage frames currently go to, null until the first one is loaded.
+     */
+    public DetectorStage getCurrent() {
+        lock.readLock().lock();
+        try {
+            return current;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void detect(Frame frame, Callback callback) {
+        lock.readLock().lock();
+        try {
+            if (current == null) {
+                frame.release();
+                return;
+            }
+            current.detect(frame, callback);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Resets the current stage; a stage still loading has seen no frames yet.
+     */
+    @Override
+    public void reset() {
+        lock.readLock().lock();
+        try {
+            if (current != null) {
+                current.reset();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateTransform(@Nullable Matrix sensorToTarget) {
+        DetectorStage stage;
+        synchronized (this) {
+            transform = sensorToTarget == null ? null : new Matrix(sensorToTarget);
+            hasTransform = true;
+            stage = current;
+        }
+        if (stage instanceof TransformReceiver) {
+            ((TransformReceiver) stage).updateTransform(sensorToTarget);
+        }
+    }
+
+    @Override
+    public void close() {
+        DetectorStage stage;
+        lock.writeLock().lock();
+        try {
+            synchronized (this) {
+                closed = true;
+                stage = current;
+                current = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        loader.shutdown();
+        if (stage != null) {
+            stage.close();
+        }
+    }
+}
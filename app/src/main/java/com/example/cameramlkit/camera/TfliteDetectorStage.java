@@ -0,0 +1,265 @@
+package com.example.cameramlkit.camera;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+
+import androidx.annotation.Nullable;
+import androidx.camera.core.ImageProxy;
+
+import com.example.cameramlkit.inference.ClassifierDecoder;
+import com.example.cameramlkit.inference.ModelDescription;
+import com.example.cameramlkit.inference.YuvTensorConverter;
+import com.example.cameramlkit.metrics.BackendTimings;
+import com.example.cameramlkit.models.ModelFile;
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.DetectorStage;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.PipelineExecutors;
+import com.example.cameramlkit.pipeline.PipelinedDetectorStage;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Runs a bundled TFLite classifier with the Interpreter on the CPU (XNNPACK), as an alternative
+ * to ML Kit's custom model detector. Frames are converted by {@link YuvTensorConverter} into a
+ * reused input buffer, so the only per-frame allocations are the result itself.
+ * <p>
+ * Each interpreter runs on a worker thread with its own input, so with more than one the
+ * analysis thread converts the next frame while the previous ones are in inference
+ * ({@link PipelinedDetectorStage}); results are still published in frame order.
+ * <p>
+ * The model classifies the center square of the frame; the result is that square as one box
+ * carrying the best labels, the same shape ML Kit's single object mode produces.
+ */
+public final class TfliteDetectorStage implements DetectorStage, TransformReceiver {
+
+    private final ModelFile model;
+    private final ByteBuffer modelBuffer;
+    private final Interpreter.Options options;
+    private final List<String> labels;
+    // analysis thread only
+    private final YuvTensorConverter converter;
+    private final BackendTimings timings = new BackendTimings("tflite");
+    private final PipelinedDetectorStage<Slot> stage;
+    private final long warmUpNanos;
+    private Matrix sensorToView;
+
+    /**
+     * One interpreter with the buffers of the frame it is working on.
+     */
+    private final class Slot {
+        final Interpreter interpreter = new Interpreter(modelBuffer, options);
+        final ByteBuffer input = converter.allocateInput();
+        final ByteBuffer output;
+        final ClassifierDecoder decoder;
+        Matrix bufferToView;
+        Bounds crop;
+        long preprocessingNanos;
+
+        Slot() {
+            Tensor outputTensor = interpreter.getOutputTensor(0);
+            output = ByteBuffer.allocateDirect(outputTensor.numBytes()).order(ByteOrder.nativeOrder());
+            decoder = outputTensor.dataType() == DataType.FLOAT32
+                    ? ClassifierDecoder.forFloat(labels, model.getMaxLabels(), model.getConfidenceThreshold())
+                    : ClassifierDecoder.forQuantized(labels, model.getMaxLabels(), model.getConfidenceThreshold(),
+                    outputTensor.quantizationParams().getScale(),
+                    outputTensor.quantizationParams().getZeroPoint());
+            // the first run allocates the tensors and packs the weights
+            interpreter.run(input, output);
+        }
+    }
+
+    private TfliteDetectorStage(Builder builder) throws Exception {
+        long start = System.nanoTime();
+        this.model = builder.model;
+        this.modelBuffer = model.getBuffer();
+        this.options = new Interpreter.Options()
+                .setNumThreads(builder.interpreterThreads)
+                .setUseXNNPACK(true);
+        this.labels = model.getDescription().getLabels();
+        if (labels.isEmpty()) {
+            throw new IOException(model.getName() + " has no labels");
+        }
+        this.converter = new YuvTensorConverter(model.getDescription().getInputHeight(),
+                model.getDescription().getInputType() == ModelDescription.TensorType.FLOAT32
+                        ? YuvTensorConverter.TensorType.FLOAT32 : YuvTensorConverter.TensorType.UINT8,
+                127.5f, 127.5f, true);
+
+        PipelineExecutors executors = PipelineExecutors.acquire();
+        try {
+            this.stage = new PipelinedDetectorStage<>(new PipelinedDetectorStage.Backend<Slot>() {
+                @Override
+                public Slot createSlot() {
+                    return new Slot();
+                }
+
+                @Override
+                public boolean prepare(Slot slot, Frame frame) {
+                    return convert(slot, frame);
+                }
+
+                @Override
+                public DetectionResult infer(Slot slot, Frame frame) {
+                    return run(slot, frame);
+                }
+
+                @Override
+                public void closeSlot(Slot slot) {
+                    slot.interpreter.close();
+                }
+            }, builder.interpreters, executors.getWorkerPool(), executors.getAnalysisExecutor(), executors::release);
+        } catch (Exception e) {
+            executors.release();
+            throw e;
+        }
+        this.warmUpNanos = System.nanoTime() - start;
+    }
+
+    public BackendTimings getTimings() {
+        return timings;
+    }
+
+    public int getInterpreters() {
+        return stage.getSlotCount();
+    }
+
+    public ModelFile getModel() {
+        return model;
+    }
+
+    /**
+     * Time to create the interpreters and run each once.
+     */
+    public long getWarmUpNanos() {
+        return warmUpNanos;
+    }
+
+    /**
+     * The mapped model plus the tensors of every interpreter; the interpreters' own arenas
+     * are not visible from Java and come on top.
+     */
+    public long getFootprintBytes() {
+        return model.getMappedBytes() + stage.getSlotCount() * model.getTensorBytes();
+    }
+
+    @Override
+    public synchronized void updateTransform(@Nullable Matrix sensorToTarget) {
+        sensorToView = sensorToTarget == null ? null : new Matrix(sensorToTarget);
+    }
+
+    @Override
+    public void detect(Frame frame, Callback callback) {
+        if (!(frame.getImage() instanceof ImageProxy)) {
+            throw new IllegalArgumentException("TfliteDetectorStage needs camera frames");
+        }
+        stage.detect(frame, callback);
+    }
+
+    private boolean convert(Slot slot, Frame frame) {
+        ImageProxy imageProxy = (ImageProxy) frame.getImage();
+        slot.bufferToView = bufferToView(imageProxy);
+        if (slot.bufferToView == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        converter.configure(frame.getWidth(), frame.getHeight(),
+                planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getRowStride(), planes[1].getPixelStride(),
+                frame.getRotationDegrees());
+        converter.convert(planes[0].getBuffer(), planes[1].getBuffer(), planes[2].getBuffer(), slot.input);
+        slot.crop = converter.getCrop();
+        slot.preprocessingNanos = System.nanoTime() - start;
+        return true;
+    }
+
+    private DetectionResult run(Slot slot, Frame frame) {
+        long start = System.nanoTime();
+        slot.output.rewind();
+        slot.interpreter.run(slot.input, slot.output);
+        long inferred = System.nanoTime();
+        List<ScoredLabel> labels = slot.decoder.decode(slot.output);
+        DetectionResult.Builder result = new DetectionResult.Builder(frame.getTimestampNanos());
+        if (!labels.isEmpty()) {
+            result.addObject(new DetectedBox(mapBounds(slot.bufferToView, slot.crop), DetectedBox.NO_TRACKING_ID, labels));
+        }
+        timings.record(slot.preprocessingNanos, inferred - start, System.nanoTime() - inferred);
+        return result.build();
+    }
+
+    private Matrix bufferToView(ImageProxy imageProxy) {
+        Matrix sensorToBuffer = imageProxy.getImageInfo().getSensorToBufferTransformMatrix();
+        Matrix bufferToView = new Matrix();
+        if (!sensorToBuffer.invert(bufferToView)) {
+            return null;
+        }
+        synchronized (this) {
+            if (sensorToView == null) {
+                return null;
+            }
+            bufferToView.postConcat(sensorToView);
+        }
+        return bufferToView;
+    }
+
+    private static Bounds mapBounds(Matrix matrix, Bounds bounds) {
+        RectF rect = new RectF(bounds.getLeft(), bounds.getTop(), bounds.getRight(), bounds.getBottom());
+        matrix.mapRect(rect);
+        return new Bounds(rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+    @Override
+    public void close() {
+        stage.close();
+    }
+
+    public static final class Builder {
+        private final ModelFile model;
+        private int interpreters = 1;
+        private int interpreterThreads = 4;
+
+        public Builder(ModelFile model) {
+            this.model = model;
+        }
+
+        /**
+         * Interpreter instances, i.e. frames in inference at once. Beyond the shared worker
+         * pool's size the extra ones only wait.
+         */
+        public Builder setInterpreters(int interpreters) {
+            this.interpreters = interpreters;
+            return this;
+        }
+
+        /**
+         * Threads each interpreter splits one inference over.
+         */
+        public Builder setInterpreterThreads(int interpreterThreads) {
+            this.interpreterThreads = interpreterThreads;
+            return this;
+        }
+
+        /**
+         * Creates and warms up the interpreters; slow, keep it off the main thread.
+         */
+        public TfliteDetectorStage build() throws IOException {
+            try {
+                return new TfliteDetectorStage(this);
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
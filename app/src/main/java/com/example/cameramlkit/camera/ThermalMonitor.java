@@ -0,0 +1,47 @@
+package com.example.cameramlkit.camera;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Forwards PowerManager thermal status changes (API 29+). On older devices nothing is ever
+ * reported and the status stays at THERMAL_STATUS_NONE.
+ */
+public final class ThermalMonitor {
+
+    private final PowerManager powerManager;
+    private Object listener;
+
+    public ThermalMonitor(Context context) {
+        powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    /**
+     * Reports the current status right away, then every change on the main thread.
+     */
+    public void start(IntConsumer onStatus) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null && listener == null) {
+            listener = register(onStatus);
+        }
+    }
+
+    public void stop() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && listener != null) {
+            powerManager.removeThermalStatusListener((PowerManager.OnThermalStatusChangedListener) listener);
+            listener = null;
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private Object register(IntConsumer onStatus) {
+        PowerManager.OnThermalStatusChangedListener statusListener = onStatus::accept;
+        // the listener is also called once with the current status when added
+        powerManager.addThermalStatusListener(statusListener);
+        return statusListener;
+    }
+}
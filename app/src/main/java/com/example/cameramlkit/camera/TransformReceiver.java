@@ -0,0 +1,13 @@
+package com.example.cameramlkit.camera;
+
+import android.graphics.Matrix;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Detector stages that need the sensor to view transform CameraX hands to the analyzer.
+ */
+public interface TransformReceiver {
+
+    void updateTransform(@Nullable Matrix sensorToTarget);
+}
@@ -0,0 +1,271 @@
+package com.example.cameramlkit.capture;
+
+import com.example.cameramlkit.metrics.LatencyHistogram;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.PipelineListener;
+import com.example.cameramlkit.pipeline.RecognizedText;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Picks the best photo of a burst. Photos arrive as JPEGs, so they are judged by the analysis
+ * frames taken at the same moment: while armed, every analyzed frame gets a sharpness score
+ * ({@link LumaSharpness}, on its Y plane in place, before the detector releases it) and, once
+ * the detector is done, a content score from its result. Each photo is matched to the frame
+ * nearest its sensor timestamp.
+ * <p>
+ * Sharpness and content are each normalized to the best of the burst and added up, so a frame
+ * needs to be both steady and rich to win.
+ */
+public final class BestFrameSelector implements PipelineListener {
+
+    public enum Criterion {
+        /**
+         * Sharpness only.
+         */
+        SHARPNESS,
+        /**
+         * Plus the highest label confidence among the detected objects and labels.
+         */
+        DETECTION,
+        /**
+         * Plus the number of recognized text elements.
+         */
+        TEXT
+    }
+
+    // a few seconds of analysis frames, more than a burst takes
+    private static final int MAX_CANDIDATES = 90;
+    // samples every pixel below this width, every other one above
+    private static final int FULL_RESOLUTION_WIDTH = 1280;
+
+    private final Criterion criterion;
+    private final Executor pool;
+    private final int strips;
+    // guarded by itself, oldest first
+    private final ArrayDeque<Candidate> candidates = new ArrayDeque<>();
+    private final LatencyHistogram scoring = new LatencyHistogram();
+    private volatile boolean armed;
+
+    /**
+     * @param pool   scores the strips of a frame in parallel
+     * @param strips strips per frame, e.g. the pool's size
+     */
+    public BestFrameSelector(Criterion criterion, Executor pool, int strips) {
+        this.criterion = criterion;
+        this.pool = pool;
+        this.strips = strips;
+    }
+
+    public Criterion getCriterion() {
+        return criterion;
+    }
+
+    /**
+     * Starts scoring analysis frames, forgetting earlier ones.
+     */
+    public void arm() {
+        synchronized (candidates) {
+            candidates.clear();
+        }
+        armed = true;
+    }
+
+    /**
+     * Stops scoring; the frames scored so far stay available to {@link #select(long[])}.
+     */
+    public void disarm() {
+        armed = false;
+        synchronized (candidates) {
+            candidates.notifyAll();
+        }
+    }
+
+    public boolean isArmed() {
+        return armed;
+    }
+
+    /**
+     * Time to score one frame's sharpness, which holds up the analysis thread.
+     */
+    public LatencyHistogram getScoringLatency() {
+        return scoring;
+    }
+
+    @Override
+    public void onFrameStarted(Frame frame) {
+        score(frame, criterion == Criterion.SHARPNESS ? 0 : -1);
+    }
+
+    /**
+     * Frames of a static scene are not analyzed, but still photographed; they count with the
+     * reused result.
+     */
+    @Override
+    public void onFrameReused(Frame frame, DetectionResult result) {
+        score(frame, contentOf(criterion, result));
+    }
+
+    // content < 0 waits for the detector's result
+    private void score(Frame frame, double content) {
+        if (!armed || frame.getLuma() == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        int step = frame.getWidth() > FULL_RESOLUTION_WIDTH ? 2 : 1;
+        double sharpness = LumaSharpness.variance(frame.getLuma(), frame.getWidth(), frame.getHeight(),
+                frame.getLumaRowStride(), frame.getLumaPixelStride(), step, pool, strips);
+        scoring.recordNanos(System.nanoTime() - start);
+        synchronized (candidates) {
+            if (candidates.size() == MAX_CANDIDATES) {
+                candidates.removeFirst();
+            }
+            Candidate candidate = new Candidate(frame.getTimestampNanos(), sharpness, content >= 0);
+            candidate.content = Math.max(0, content);
+            candidates.addLast(candidate);
+            if (candidate.done) {
+                candidates.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void onDetectorDone(Frame frame, DetectionResult result) {
+        if (!armed) {
+            return;
+        }
+        double content = contentOf(criterion, result);
+        synchronized (candidates) {
+            for (Candidate candidate : candidates) {
+                if (candidate.timestampNanos == frame.getTimestampNanos()) {
+                    candidate.content = content;
+                    candidate.done = true;
+                }
+            }
+            candidates.notifyAll();
+        }
+    }
+
+    @Override
+    public void onResultProcessed(DetectionResult result) {
+    }
+
+    /**
+     * Waits until a frame taken at or after {@code timestampNanos} has been scored and detected,
+     * so the photo taken then can be judged; false on timeout or when disarmed.
+     */
+    public boolean awaitFrame(long timestampNanos, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        synchronized (candidates) {
+            while (true) {
+                for (Candidate candidate : candidates) {
+                    if (candidate.timestampNanos >= timestampNanos && candidate.done) {
+                        return true;
+                    }
+                }
+                long remaining = deadline - System.nanoTime();
+                if (!armed || remaining <= 0) {
+                    return false;
+                }
+                candidates.wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            }
+        }
+    }
+
+    /**
+     * Index of the best of the photos taken at {@code timestampsNanos}; 0 when no frame was
+     * scored.
+     */
+    public int select(long[] timestampsNanos) {
+        Candidate[] matched = new Candidate[timestampsNanos.length];
+        double maxSharpness = 0;
+        double maxContent = 0;
+        synchronized (candidates) {
+            for (int i = 0; i < timestampsNanos.length; i++) {
+                matched[i] = nearest(timestampsNanos[i]);
+                if (matched[i] != null) {
+                    maxSharpness = Math.max(maxSharpness, matched[i].sharpness);
+                    maxContent = Math.max(maxContent, matched[i].content);
+                }
+            }
+        }
+        int best = 0;
+        double bestScore = -1;
+        for (int i = 0; i < matched.length; i++) {
+            if (matched[i] == null) {
+                continue;
+            }
+            double score = maxSharpness > 0 ? matched[i].sharpness / maxSharpness : 0;
+            if (criterion != Criterion.SHARPNESS && maxContent > 0) {
+                score += matched[i].content / maxContent;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private Candidate nearest(long timestampNanos) {
+        Candidate nearest = null;
+        for (Candidate candidate : candidates) {
+            if (nearest == null || Math.abs(candidate.timestampNanos - timestampNanos)
+                    < Math.abs(nearest.timestampNanos - timestampNanos)) {
+                nearest = candidate;
+            }
+        }
+        return nearest;
+    }
+
+    static double contentOf(Criterion criterion, DetectionResult result) {
+        switch (criterion) {
+            case DETECTION:
+                double best = 0;
+                for (DetectedBox object : result.getObjects()) {
+                    best = Math.max(best, topConfidence(object.getLabels()));
+                }
+                return Math.max(best, topConfidence(result.getLabels()));
+            case TEXT:
+                RecognizedText text = result.getText();
+                if (text == null) {
+                    return 0;
+                }
+                int elements = 0;
+                for (RecognizedText.Block block : text.getBlocks()) {
+                    for (RecognizedText.Line line : block.getLines()) {
+                        elements += line.getElements().size();
+                    }
+                }
+                return elements;
+            default:
+                return 0;
+        }
+    }
+
+    private static double topConfidence(List<ScoredLabel> labels) {
+        double best = 0;
+        for (ScoredLabel label : labels) {
+            best = Math.max(best, label.getConfidence());
+        }
+        return best;
+    }
+
+    private static final class Candidate {
+        final long timestampNanos;
+        final double sharpness;
+        double content;
+        boolean done;
+
+        Candidate(long timestampNanos, double sharpness, boolean done) {
+            this.timestampNanos = timestampNanos;
+            this.sharpness = sharpness;
+            this.done = done;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.cameramlkit.capture;
+
+import com.example.cameramlkit.metrics.LatencyHistogram;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bookkeeping of the photos between shutter and storage: how many are queued, how long they
+ * took and what became of them. The capacity bounds the decoded images held in memory during
+ * a burst; shots beyond it are rejected rather than stalling the camera.
+ */
+public final class CaptureQueue {
+
+    private final int capacity;
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final LatencyHistogram shutterToImage = new LatencyHistogram();
+    private final LatencyHistogram shutterToSaved = new LatencyHistogram();
+
+    public CaptureQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Takes a place for one shot; false (and counted as rejected) when the queue is full.
+     */
+    public boolean tryEnter() {
+        int current;
+        do {
+            current = depth.get();
+            if (current >= capacity) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        } while (!depth.compareAndSet(current, current + 1));
+        int max;
+        do {
+            max = maxDepth.get();
+        } while (current + 1 > max && !maxDepth.compareAndSet(max, current + 1));
+        return true;
+    }
+
+    /**
+     * The camera handed over the image of a shot, {@code nanos} after the shutter.
+     */
+    public void onImage(long nanos) {
+        shutterToImage.recordNanos(nanos);
+    }
+
+    /**
+     * The shot is stored, {@code nanos} after the shutter; frees its place.
+     */
+    public void onSaved(long nanos) {
+        shutterToSaved.recordNanos(nanos);
+        saved.incrementAndGet();
+        depth.decrementAndGet();
+    }
+
+    /**
+     * The shot was lost on the way; frees its place.
+     */
+    public void onFailed() {
+        failed.incrementAndGet();
+        depth.decrementAndGet();
+    }
+
+    /**
+     * The shot lost against a better one of its burst; frees its place.
+     */
+    public void onDiscarded() {
+        discarded.incrementAndGet();
+        depth.decrementAndGet();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Shots taken but not yet stored or failed.
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public long getSaved() {
+        return saved.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getDiscarded() {
+        return discarded.get();
+    }
+
+    /**
+     * Shutter to the camera's JPEG reaching the app.
+     */
+    public LatencyHistogram getShutterToImageLatency() {
+        return shutterToImage;
+    }
+
+    /**
+     * Shutter to the photo (and its sidecar) being written.
+     */
+    public LatencyHistogram getShutterToSavedLatency() {
+        return shutterToSaved;
+    }
+
+    @Override
+    public String toString() {
+        LatencyHistogram.Snapshot image = shutterToImage.snapshot();
+        LatencyHistogram.Snapshot stored = shutterToSaved.snapshot();
+        return String.format(Locale.US,
+                "queue %d/%d (max %d), saved %d, failed %d, rejected %d, discarded %d, shutter-to-image p50 %.1f ms, shutter-to-saved p50 %.1f p95 %.1f ms",
+                getDepth(), capacity, getMaxDepth(), getSaved(), getFailed(), getRejected(), getDiscarded(),
+                image.getPercentileMillis(50), stored.getPercentileMillis(50), stored.getPercentileMillis(95));
+    }
+}
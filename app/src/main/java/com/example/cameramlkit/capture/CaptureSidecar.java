@@ -0,0 +1,159 @@
+package com.example.cameramlkit.capture;
+
+import com.example.cameramlkit.metrics.FrameMetrics;
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.RecognizedText;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.function.UnaryOperator;
+
+/**
+ * Names captured photos and describes what was detected when they were taken, as JSON written
+ * next to the photo or into its EXIF user comment:
+ * <pre>
+ * {"info":{...},"image":{"name":"IMG_20240131_142501_042","width":4032,"height":3024},
+ *  "result":{"timestampNanos":..,
+ *            "objects":[{"trackingId":3,"bounds":[l,t,r,b],"labels":[{"index":..,"text":..,"confidence":..}]}],
+ *            "labels":[...],
+ *            "text":{"text":..,"lines":[{"text":..,"confidence":..,"bounds":[l,t,r,b]}]}}}
+ * </pre>
+ * Bounds are in photo pixels; "result" is null when nothing had been detected yet.
+ */
+public final class CaptureSidecar {
+
+    private CaptureSidecar() {
+    }
+
+    /**
+     * "IMG_yyyyMMdd_HHmmss_SSS" in {@code zone}, with "_n" appended for the n-th (from 1) shot
+     * of a burst; 0 for a single shot.
+     */
+    public static String displayName(long epochMillis, TimeZone zone, int burstIndex) {
+        return displayName("IMG", epochMillis, zone, burstIndex);
+    }
+
+    /**
+     * The same with another prefix than "IMG", e.g. "DOC" for a document transcript.
+     */
+    public static String displayName(String prefix, long epochMillis, TimeZone zone, int burstIndex) {
+        SimpleDateFormat format = new SimpleDateFormat("'" + prefix + "_'yyyyMMdd_HHmmss_SSS", Locale.US);
+        format.setTimeZone(zone);
+        String name = format.format(new Date(epochMillis));
+        return burstIndex > 0 ? name + "_" + burstIndex : name;
+    }
+
+    /**
+     * What a photo is found by in a text index: the recognized text and the labels of the
+     * image and its objects, one per line.
+     */
+    public static String indexableText(DetectionResult result) {
+        StringBuilder text = new StringBuilder();
+        if (result.getText() != null) {
+            text.append(result.getText().getText()).append('\n');
+        }
+        for (ScoredLabel label : result.getLabels()) {
+            text.append(label.getText()).append('\n');
+        }
+        for (DetectedBox object : result.getObjects()) {
+            for (ScoredLabel label : object.getLabels()) {
+                text.append(label.getText()).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @param toImage maps the result's view coordinates onto the photo
+     */
+    public static String toJson(Map<String, String> info, String name, int width, int height,
+                                DetectionResult result, UnaryOperator<Bounds> toImage) {
+        StringBuilder json = new StringBuilder("{\"info\":{");
+        boolean first = true;
+        for (Map.Entry<String, String> entry : info.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            FrameMetrics.appendJsonString(json, entry.getKey());
+            json.append(':');
+            FrameMetrics.appendJsonString(json, entry.getValue());
+        }
+        json.append("},\"image\":{\"name\":");
+        FrameMetrics.appendJsonString(json, name);
+        json.append(",\"width\":").append(width).append(",\"height\":").append(height)
+                .append("},\"result\":");
+        if (result == null) {
+            json.append("null");
+        } else {
+            appendResult(json, result, toImage);
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendResult(StringBuilder json, DetectionResult result, UnaryOperator<Bounds> toImage) {
+        json.append("{\"timestampNanos\":").append(result.getTimestampNanos()).append(",\"objects\":[");
+        List<DetectedBox> objects = result.getObjects();
+        for (int i = 0; i < objects.size(); i++) {
+            DetectedBox object = objects.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"trackingId\":").append(object.getTrackingId()).append(",\"bounds\":");
+            appendBounds(json, toImage.apply(object.getBounds()));
+            json.append(",\"labels\":");
+            appendLabels(json, object.getLabels());
+            json.append('}');
+        }
+        json.append("],\"labels\":");
+        appendLabels(json, result.getLabels());
+        RecognizedText text = result.getText();
+        if (text != null) {
+            json.append(",\"text\":{\"text\":");
+            FrameMetrics.appendJsonString(json, text.getText());
+            json.append(",\"lines\":[");
+            boolean first = true;
+            for (RecognizedText.Block block : text.getBlocks()) {
+                for (RecognizedText.Line line : block.getLines()) {
+                    if (!first) {
+                        json.append(',');
+                    }
+                    first = false;
+                    json.append("{\"text\":");
+                    FrameMetrics.appendJsonString(json, line.getText());
+                    json.append(String.format(Locale.US, ",\"confidence\":%.4f,\"bounds\":", line.getConfidence()));
+                    appendBounds(json, toImage.apply(line.getBounds()));
+                    json.append('}');
+                }
+            }
+            json.append("]}");
+        }
+        json.append('}');
+    }
+
+    private static void appendLabels(StringBuilder json, List<ScoredLabel> labels) {
+        json.append('[');
+        for (int i = 0; i < labels.size(); i++) {
+            ScoredLabel label = labels.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"index\":").append(label.getIndex()).append(",\"text\":");
+            FrameMetrics.appendJsonString(json, label.getText());
+            json.append(String.format(Locale.US, ",\"confidence\":%.4f}", label.getConfidence()));
+        }
+        json.append(']');
+    }
+
+    private static void appendBounds(StringBuilder json, Bounds bounds) {
+        json.append(String.format(Locale.US, "[%.1f,%.1f,%.1f,%.1f]",
+                bounds.getLeft(), bounds.getTop(), bounds.getRight(), bounds.getBottom()));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.cameramlkit.capture;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Focus / motion blur measure of a frame: the variance of the 4-neighbour Laplacian over the
+ * Y plane. Blur flattens edges, so sharper frames score higher; the value only compares frames
+ * of the same scene and size.
+ * <p>
+ * Reads the plane in place (any row and pixel stride, heap or direct buffer) and can split
+ * the rows over a worker pool; nothing is copied or converted.
+ */
+public final class LumaSharpness {
+
+    private LumaSharpness() {
+    }
+
+    /**
+     * Single threaded; {@code step} samples every step-th pixel of every step-th row.
+     */
+    public static double variance(ByteBuffer luma, int width, int height, int rowStride, int pixelStride, int step) {
+        long[] sums = new long[3];
+        accumulate(luma, width, height, rowStride, pixelStride, step, 1, height - 1, sums, 0);
+        return variance(sums[0], sums[1], sums[2]);
+    }
+
+    /**
+     * Splits the rows in {@code strips} strips; all but one run on {@code pool}, the last one
+     * on the calling thread, which waits for the others. The buffer must stay valid until this
+     * returns.
+     */
+    public static double variance(ByteBuffer luma, int width, int height, int rowStride, int pixelStride, int step,
+                                  Executor pool, int strips) {
+        int rows = height - 2;
+        if (strips <= 1 || rows < strips * 2) {
+            return variance(luma, width, height, rowStride, pixelStride, step);
+        }
+        long[] sums = new long[strips * 3];
+        CountDownLatch done = new CountDownLatch(strips - 1);
+        for (int i = 0; i < strips - 1; i++) {
+            int strip = i;
+            Runnable task = () -> {
+                try {
+                    accumulateStrip(luma, width, height, rowStride, pixelStride, step, strip, strips, sums);
+                } finally {
+                    done.countDown();
+                }
+            };
+            try {
+                pool.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+        accumulateStrip(luma, width, height, rowStride, pixelStride, step, strips - 1, strips, sums);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                // the strips read the caller's buffer, so they have to finish first
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        long count = 0;
+        long sum = 0;
+        long sumOfSquares = 0;
+        for (int i = 0; i < strips; i++) {
+            count += sums[i * 3];
+            sum += sums[i * 3 + 1];
+            sumOfSquares += sums[i * 3 + 2];
+        }
+        return variance(count, sum, sumOfSquares);
+    }
+
+    private static void accumulateStrip(ByteBuffer luma, int width, int height, int rowStride, int pixelStride,
+                                        int step, int strip, int strips, long[] sums) {
+        int rows = height - 2;
+        int from = 1 + (int) ((long) rows * strip / strips);
+        int to = 1 + (int) ((long) rows * (strip + 1) / strips);
+        accumulate(luma, width, height, rowStride, pixelStride, step, from, to, sums, strip * 3);
+    }
+
+    // rows [from, to) of the interior, into sums[offset..offset + 2] as count, sum, sum of squares
+    private static void accumulate(ByteBuffer luma, int width, int height, int rowStride, int pixelStride, int step,
+                                   int from, int to, long[] sums, int offset) {
+        long count = 0;
+        long sum = 0;
+        long sumOfSquares = 0;
+        // align to the global sampling grid so the strips add up to the single threaded result
+        int first = from + Math.floorMod(1 - from, step);
+        for (int y = first; y < to && y < height - 1; y += step) {
+            int row = y * rowStride;
+            for (int x = 1; x < width - 1; x += step) {
+                int center = row + x * pixelStride;
+                int laplacian = 4 * (luma.get(center) & 0xFF)
+                        - (luma.get(center - pixelStride) & 0xFF)
+                        - (luma.get(center + pixelStride) & 0xFF)
+                        - (luma.get(center - rowStride) & 0xFF)
+                        - (luma.get(center + rowStride) & 0xFF);
+                count++;
+                sum += laplacian;
+                sumOfSquares += (long) laplacian * laplacian;
+            }
+        }
+        sums[offset] += count;
+        sums[offset + 1] += sum;
+        sums[offset + 2] += sumOfSquares;
+    }
+
+    private static double variance(long count, long sum, long sumOfSquares) {
+        if (count == 0) {
+            return 0;
+        }
+        double mean = sum / (double) count;
+        return sumOfSquares / (double) count - mean * mean;
+    }
+}
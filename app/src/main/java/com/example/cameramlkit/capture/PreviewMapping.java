@@ -0,0 +1,63 @@
+package com.example.cameramlkit.capture;
+
+import com.example.cameramlkit.pipeline.Bounds;
+
+/**
+ * Maps view referenced coordinates (where results and overlay boxes live) onto a captured
+ * photo, given how the preview scaled the same picture into the view: centered and either
+ * filling the view (cropping) or fitting into it (letterboxing). The photo must be upright and
+ * mirrored like the preview, and cover the same field of view.
+ */
+public final class PreviewMapping {
+
+    private final float scale;
+    private final float offsetX;
+    private final float offsetY;
+
+    /**
+     * @param fill true for the preview's FILL_* scale types, false for FIT_*
+     */
+    public PreviewMapping(int viewWidth, int viewHeight, int imageWidth, int imageHeight, boolean fill) {
+        if (viewWidth <= 0 || viewHeight <= 0 || imageWidth <= 0 || imageHeight <= 0) {
+            throw new IllegalArgumentException("empty view or image");
+        }
+        float scaleX = viewWidth / (float) imageWidth;
+        float scaleY = viewHeight / (float) imageHeight;
+        // image to view scale
+        float viewScale = fill ? Math.max(scaleX, scaleY) : Math.min(scaleX, scaleY);
+        this.scale = 1f / viewScale;
+        this.offsetX = (viewWidth - imageWidth * viewScale) / 2f;
+        this.offsetY = (viewHeight - imageHeight * viewScale) / 2f;
+    }
+
+    /**
+     * Image pixels per view pixel; also how much to scale strokes and text.
+     */
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * Where the image's left edge is in the view; negative when the preview crops it.
+     */
+    public float getOffsetX() {
+        return offsetX;
+    }
+
+    public float getOffsetY() {
+        return offsetY;
+    }
+
+    public float mapX(float viewX) {
+        return (viewX - offsetX) * scale;
+    }
+
+    public float mapY(float viewY) {
+        return (viewY - offsetY) * scale;
+    }
+
+    public Bounds map(Bounds bounds) {
+        return new Bounds(mapX(bounds.getLeft()), mapY(bounds.getTop()),
+                mapX(bounds.getRight()), mapY(bounds.getBottom()));
+    }
+}
@@ -0,0 +1,537 @@
+package com.example.cameramlkit.document;
+
+import com.example.cameramlkit.keywords.TextFolding;
+import com.example.cameramlkit.metrics.FrameMetrics;
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.RecognizedText;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Merges the OCR results of successive frames of a document into one transcript, in reading
+ * order, each line voted on by every frame that saw it.
+ * <p>
+ * Only the lines seen in the last few frames are <em>active</em> and matched against a new
+ * frame, so the cost of a frame does not grow with the document. A frame is matched in two
+ * steps: lines read identically to an active line give the vertical shift of the camera since
+ * the last frame (their median offset), then every line is paired with the active line that is
+ * closest in content (edit distance on the folded text) among those at about the same height
+ * once shifted. Paired lines vote for their reading, weighted by the mean confidence of its
+ * elements; the reading with the highest total weight is the line's text. Lines nobody matched
+ * are looked up among the frozen lines, near their predecessor's transcript line by content and
+ * anywhere by exact text, so coming back to a part of the page does not duplicate it; failing
+ * that, they are inserted next to their predecessor's line.
+ * <p>
+ * Memory stays bounded: a line keeps at most {@value #MAX_READINGS} readings, a line falling
+ * out of view is frozen to its best reading (or dropped when it was seen fewer than the
+ * minimum votes, as misreads usually are), and past the line limit the oldest lines go.
+ * <p>
+ * Thread safe; feed it from the analysis thread and export from the main thread.
+ */
+public final class DocumentTranscript {
+
+    static final int MAX_READINGS = 4;
+    // a line out of view for this many frames is frozen
+    private static final int ACTIVE_FRAMES = 15;
+    private static final double MIN_SIMILARITY = 0.6;
+    // how far from its predicted height a line may be matched, in line heights
+    private static final float MAX_LINE_OFFSET = 1.0f;
+    // frozen lines after the predecessor's that a returning line is compared with
+    private static final int NEIGHBORS = 3;
+    // shorter lines (page numbers, "Total") repeat too often to be revived by text alone
+    private static final int MIN_REVIVE_LENGTH = 8;
+
+    private final int maxLines;
+    private final int minVotes;
+
+    private Line head;
+    private Line tail;
+    private int lineCount;
+    private final List<Line> active = new ArrayList<>();
+    private final Map<String, Line> activeByText = new HashMap<>();
+    private final Map<String, Line> frozenByText = new HashMap<>();
+    private long frames;
+    private long droppedLines;
+    private RecognizedText lastText;
+    // scratch rows of the edit distance
+    private int[] previousRow = new int[64];
+    private int[] currentRow = new int[64];
+
+    /**
+     * @param maxLines lines kept before the oldest are dropped
+     * @param minVotes frames a line must be read in to be exported (and kept once frozen)
+     */
+    public DocumentTranscript(int maxLines, int minVotes) {
+        if (maxLines < 1 || minVotes < 1) {
+            throw new IllegalArgumentException("maxLines and minVotes must be at least 1");
+        }
+        this.maxLines = maxLines;
+        this.minVotes = minVotes;
+    }
+
+    /**
+     * Merges one frame's OCR result; false when it was the same result as the last one (a
+     * reused result of a still scene votes only once).
+     */
+    public synchronized boolean add(RecognizedText text) {
+        if (text == null || text == lastText) {
+            return false;
+        }
+        lastText = text;
+        frames++;
+
+        List<Observation> observations = new ArrayList<>();
+        for (RecognizedText.Block block : text.getBlocks()) {
+            boolean first = true;
+            for (RecognizedText.Line line : block.getLines()) {
+                String folded = TextFolding.fold(line.getText());
+                if (folded.isEmpty() || line.getBounds() == null) {
+                    continue;
+                }
+                observations.add(new Observation(line, folded, first));
+                first = false;
+            }
+        }
+
+        float shift = estimateShift(observations);
+        for (Line line : active) {
+            line.centerY += shift;
+        }
+        match(observations);
+
+        Line anchor = null;
+        for (int i = 0; i < observations.size(); i++) {
+            Observation observation = observations.get(i);
+            if (observation.match == null) {
+                observation.match = revive(observation, anchor);
+            }
+            if (observation.match == null) {
+                Line line = new Line(observation.paragraphStart);
+                if (anchor != null) {
+                    insertAfter(anchor, line);
+                } else {
+                    Line next = nextMatch(observations, i);
+                    if (next != null) {
+                        insertBefore(next, line);
+                    } else {
+                        insertAfter(tail, line);
+                    }
+                }
+                active.add(line);
+                observation.match = line;
+            }
+            observation.match.observe(observation, frames);
+            anchor = observation.match;
+        }
+
+        retire();
+        return true;
+    }
+
+    // median offset of the lines read exactly as an active line, 0 when there are none
+    private float estimateShift(List<Observation> observations) {
+        activeByText.clear();
+        for (Line line : active) {
+            activeByText.put(line.bestFolded(), line);
+        }
+        float[] offsets = new float[observations.size()];
+        int count = 0;
+        for (Observation observation : observations) {
+            Line line = activeByText.get(observation.folded);
+            if (line != null) {
+                offsets[count++] = observation.bounds.centerY() - line.centerY;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(offsets, 0, count);
+        return offsets[count / 2];
+    }
+
+    // best pairs first, each active line taken once
+    private void match(List<Observation> observations) {
+        int lines = active.size();
+        double[] scores = new double[observations.size() * lines];
+        for (int o = 0; o < observations.size(); o++) {
+            Observation observation = observations.get(o);
+            float height = Math.max(1f, observation.bounds.height());
+            for (int l = 0; l < lines; l++) {
+                Line line = active.get(l);
+                float offset = Math.abs(observation.bounds.centerY() - line.centerY) / Math.max(height, line.height);
+                if (offset > MAX_LINE_OFFSET) {
+                    continue;
+                }
+                double similarity = similarity(observation.folded, line.bestFolded());
+                if (similarity >= MIN_SIMILARITY) {
+                    // the content decides, the geometry breaks ties
+                    scores[o * lines + l] = similarity - 0.1 * offset;
+                }
+            }
+        }
+        boolean[] taken = new boolean[lines];
+        while (true) {
+            int best = -1;
+            for (int i = 0; i < scores.length; i++) {
+                if (scores[i] > 0 && (best < 0 || scores[i] > scores[best])
+                        && observations.get(i / lines).match == null && !taken[i % lines]) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return;
+            }
+            observations.get(best / lines).match = active.get(best % lines);
+            taken[best % lines] = true;
+        }
+    }
+
+    private Line revive(Observation observation, Line anchor) {
+        Line line = null;
+        Line candidate = anchor != null ? anchor.next : null;
+        for (int i = 0; i < NEIGHBORS && candidate != null && line == null; i++, candidate = candidate.next) {
+            if (!candidate.active && similarity(observation.folded, candidate.bestFolded()) >= MIN_SIMILARITY) {
+                line = candidate;
+            }
+        }
+        if (line == null && observation.folded.length() >= MIN_REVIVE_LENGTH) {
+            line = frozenByText.get(observation.folded);
+        }
+        if (line == null) {
+            return null;
+        }
+        frozenByText.remove(line.bestFolded(), line);
+        line.thaw();
+        active.add(line);
+        return line;
+    }
+
+    private static Line nextMatch(List<Observation> observations, int from) {
+        for (int i = from + 1; i < observations.size(); i++) {
+            if (observations.get(i).match != null) {
+                return observations.get(i).match;
+            }
+        }
+        return null;
+    }
+
+    // freezes the lines out of view, drops the unconfirmed ones and the oldest past the limit
+    private void retire() {
+        for (int i = active.size() - 1; i >= 0; i--) {
+            Line line = active.get(i);
+            if (frames - line.lastSeenFrame < ACTIVE_FRAMES) {
+                continue;
+            }
+            active.remove(i);
+            if (line.votes < minVotes) {
+                unlink(line);
+                droppedLines++;
+            } else {
+                line.freeze();
+                frozenByText.put(line.bestFolded(), line);
+            }
+        }
+        while (lineCount > maxLines) {
+            Line oldest = head;
+            active.remove(oldest);
+            unlink(oldest);
+            droppedLines++;
+        }
+    }
+
+    private void insertAfter(Line anchor, Line line) {
+        if (anchor == null) {
+            head = line;
+            tail = line;
+        } else {
+            line.previous = anchor;
+            line.next = anchor.next;
+            if (anchor.next != null) {
+                anchor.next.previous = line;
+            } else {
+                tail = line;
+            }
+            anchor.next = line;
+        }
+        lineCount++;
+    }
+
+    private void insertBefore(Line anchor, Line line) {
+        line.next = anchor;
+        line.previous = anchor.previous;
+        if (anchor.previous != null) {
+            anchor.previous.next = line;
+        } else {
+            head = line;
+        }
+        anchor.previous = line;
+        lineCount++;
+    }
+
+    private void unlink(Line line) {
+        frozenByText.remove(line.bestFolded(), line);
+        if (line.previous != null) {
+            line.previous.next = line.next;
+        } else {
+            head = line.next;
+        }
+        if (line.next != null) {
+            line.next.previous = line.previous;
+        } else {
+            tail = line.previous;
+        }
+        line.previous = null;
+        line.next = null;
+        lineCount--;
+    }
+
+    /**
+     * 1 for equal texts down to 0, from the edit distance relative to the longer text.
+     */
+    double similarity(String a, String b) {
+        int longer = Math.max(a.length(), b.length());
+        if (longer == 0) {
+            return 1;
+        }
+        // lengths alone already rule it out
+        if (Math.abs(a.length() - b.length()) > longer * (1 - MIN_SIMILARITY)) {
+            return 0;
+        }
+        return 1 - editDistance(a, b) / (double) longer;
+    }
+
+    private int editDistance(String a, String b) {
+        int columns = b.length() + 1;
+        if (previousRow.length < columns) {
+            previousRow = new int[columns * 2];
+            currentRow = new int[columns * 2];
+        }
+        for (int j = 0; j < columns; j++) {
+            previousRow[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            currentRow[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j < columns; j++) {
+                int substitution = previousRow[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                currentRow[j] = Math.min(substitution, Math.min(previousRow[j], currentRow[j - 1]) + 1);
+            }
+            int[] swap = previousRow;
+            previousRow = currentRow;
+            currentRow = swap;
+        }
+        return previousRow[columns - 1];
+    }
+
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    public synchronized int getLineCount() {
+        return lineCount;
+    }
+
+    public synchronized int getActiveLineCount() {
+        return active.size();
+    }
+
+    /**
+     * Lines dropped as unconfirmed or beyond the line limit.
+     */
+    public synchronized long getDroppedLines() {
+        return droppedLines;
+    }
+
+    public synchronized void clear() {
+        head = null;
+        tail = null;
+        lineCount = 0;
+        active.clear();
+        activeByText.clear();
+        frozenByText.clear();
+        frames = 0;
+        droppedLines = 0;
+        lastText = null;
+    }
+
+    /**
+     * The confirmed lines in reading order, paragraphs separated by an empty line.
+     */
+    public synchronized String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Line line = head; line != null; line = line.next) {
+            if (line.votes < minVotes) {
+                continue;
+            }
+            if (text.length() > 0) {
+                text.append(line.paragraphStart ? "\n\n" : "\n");
+            }
+            text.append(line.best().text);
+        }
+        return text.toString();
+    }
+
+    /**
+     * The confirmed lines with their votes and the readings still competing:
+     * <pre>
+     * {"frames":120,"lines":[{"text":..,"paragraph":true,"votes":14,"confidence":0.91,
+     *                         "readings":[{"text":..,"votes":12,"weight":10.9},...]},...]}
+     * </pre>
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\"frames\":").append(frames).append(",\"lines\":[");
+        boolean first = true;
+        for (Line line = head; line != null; line = line.next) {
+            if (line.votes < minVotes) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            Reading best = line.best();
+            json.append("{\"text\":");
+            FrameMetrics.appendJsonString(json, best.text);
+            json.append(",\"paragraph\":").append(line.paragraphStart)
+                    .append(",\"votes\":").append(line.votes)
+                    .append(String.format(Locale.US, ",\"confidence\":%.3f", best.weight / best.votes))
+                    .append(",\"readings\":[");
+            for (int i = 0; i < line.readingCount; i++) {
+                Reading reading = line.readings[i];
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"text\":");
+                FrameMetrics.appendJsonString(json, reading.text);
+                json.append(",\"votes\":").append(reading.votes)
+                        .append(String.format(Locale.US, ",\"weight\":%.3f}", reading.weight));
+            }
+            json.append("]}");
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Mean element confidence of a line, the line's own when it has no elements, and 1 when
+     * the recognizer reports none.
+     */
+    static float weightOf(RecognizedText.Line line) {
+        List<RecognizedText.Element> elements = line.getElements();
+        float sum = 0;
+        for (RecognizedText.Element element : elements) {
+            sum += element.getConfidence();
+        }
+        float weight = elements.isEmpty() ? line.getConfidence() : sum / elements.size();
+        return weight > 0 ? weight : 1f;
+    }
+
+    private static final class Observation {
+        final String text;
+        final String folded;
+        final Bounds bounds;
+        final float weight;
+        final boolean paragraphStart;
+        Line match;
+
+        Observation(RecognizedText.Line line, String folded, boolean paragraphStart) {
+            this.text = line.getText();
+            this.folded = folded;
+            this.bounds = line.getBounds();
+            this.weight = weightOf(line);
+            this.paragraphStart = paragraphStart;
+        }
+    }
+
+    private static final class Reading {
+        final String text;
+        final String folded;
+        int votes;
+        double weight;
+
+        Reading(String text, String folded) {
+            this.text = text;
+            this.folded = folded;
+        }
+    }
+
+    private static final class Line {
+        final boolean paragraphStart;
+        boolean active = true;
+        Line previous;
+        Line next;
+        Reading[] readings = new Reading[MAX_READINGS];
+        int readingCount;
+        int best;
+        int votes;
+        long lastSeenFrame;
+        // in the coordinates of the latest frame while active
+        float centerY;
+        float height;
+
+        Line(boolean paragraphStart) {
+            this.paragraphStart = paragraphStart;
+        }
+
+        Reading best() {
+            return readings[best];
+        }
+
+        String bestFolded() {
+            return readings[best].folded;
+        }
+
+        void observe(Observation observation, long frame) {
+            votes++;
+            lastSeenFrame = frame;
+            centerY = observation.bounds.centerY();
+            height = observation.bounds.height();
+
+            int index = -1;
+            for (int i = 0; i < readingCount; i++) {
+                if (readings[i].text.equals(observation.text)) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                if (readingCount < readings.length) {
+                    index = readingCount++;
+                } else {
+                    // replaces the weakest reading other than the best one
+                    index = best == 0 ? 1 : 0;
+                    for (int i = 0; i < readingCount; i++) {
+                        if (i != best && readings[i].weight < readings[index].weight) {
+                            index = i;
+                        }
+                    }
+                }
+                readings[index] = new Reading(observation.text, observation.folded);
+            }
+            Reading reading = readings[index];
+            reading.votes++;
+            reading.weight += observation.weight;
+            Reading current = readings[best];
+            if (reading.weight > current.weight
+                    || (reading.weight == current.weight && reading.votes > current.votes)) {
+                best = index;
+            }
+        }
+
+        void freeze() {
+            active = false;
+            readings = new Reading[]{readings[best]};
+            readingCount = 1;
+            best = 0;
+        }
+
+        void thaw() {
+            active = true;
+            readings = Arrays.copyOf(readings, MAX_READINGS);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.cameramlkit.inference;
+
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Top labels of a classifier's output tensor, quantized (uint8 with scale and zero point) or
+ * float. The ranking runs in reused arrays; only the returned labels are allocated.
+ */
+public final class ClassifierDecoder {
+
+    private final List<String> labels;
+    private final int maxLabels;
+    private final float threshold;
+    private final boolean quantized;
+    private final float scale;
+    private final int zeroPoint;
+    private final int[] topIndices;
+    private final float[] topScores;
+
+    public static ClassifierDecoder forFloat(List<String> labels, int maxLabels, float threshold) {
+        return new ClassifierDecoder(labels, maxLabels, threshold, false, 1f, 0);
+    }
+
+    public static ClassifierDecoder forQuantized(List<String> labels, int maxLabels, float threshold,
+                                                 float scale, int zeroPoint) {
+        return new ClassifierDecoder(labels, maxLabels, threshold, true, scale, zeroPoint);
+    }
+
+    private ClassifierDecoder(List<String> labels, int maxLabels, float threshold, boolean quantized,
+                              float scale, int zeroPoint) {
+        this.labels = labels;
+        this.maxLabels = maxLabels;
+        this.threshold = threshold;
+        this.quantized = quantized;
+        this.scale = scale;
+        this.zeroPoint = zeroPoint;
+        this.topIndices = new int[maxLabels];
+        this.topScores = new float[maxLabels];
+    }
+
+    /**
+     * The best labels at or above the threshold, best first. Reads {@code output} from 0.
+     */
+    public List<ScoredLabel> decode(ByteBuffer output) {
+        int count = 0;
+        int classes = labels.size();
+        for (int i = 0; i < classes; i++) {
+            float score = quantized
+                    ? ((output.get(i) & 0xff) - zeroPoint) * scale
+                    : output.getFloat(i * 4);
+            if (score < threshold || (count == maxLabels && score <= topScores[count - 1])) {
+                continue;
+            }
+            int at = count < maxLabels ? count++ : count - 1;
+            while (at > 0 && topScores[at - 1] < score) {
+                topScores[at] = topScores[at - 1];
+                topIndices[at] = topIndices[at - 1];
+                at--;
+            }
+            topScores[at] = score;
+            topIndices[at] = i;
+        }
+        List<ScoredLabel> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new ScoredLabel(topIndices[i], labels.get(topIndices[i]), topScores[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Bytes of the output tensor this decoder reads.
+     */
+    public int outputBytes() {
+        return labels.size() * (quantized ? 1 : 4);
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.cameramlkit.inference;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a TFLite model takes and produces, read straight from the model's flatbuffer (and its
+ * packed label file) without creating an interpreter, so models can be listed cheaply.
+ */
+public final class ModelDescription {
+
+    /**
+     * The TFLite schema's tensor types this app can feed or decode.
+     */
+    public enum TensorType {
+        FLOAT32(0), UINT8(3), INT8(9), OTHER(-1);
+
+        final int code;
+
+        TensorType(int code) {
+            this.code = code;
+        }
+
+        static TensorType of(int code) {
+            for (TensorType type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return OTHER;
+        }
+    }
+
+    // field indices of the schema tables used here
+    private static final int MODEL_SUBGRAPHS = 2;
+    private static final int SUBGRAPH_TENSORS = 0;
+    private static final int SUBGRAPH_INPUTS = 1;
+    private static final int SUBGRAPH_OUTPUTS = 2;
+    private static final int TENSOR_SHAPE = 0;
+    private static final int TENSOR_TYPE = 1;
+
+    private final int[] inputShape;
+    private final TensorType inputType;
+    private final int[] outputShape;
+    private final TensorType outputType;
+    private final List<String> labels;
+
+    private ModelDescription(int[] inputShape, TensorType inputType, int[] outputShape, TensorType outputType,
+                             List<String> labels) {
+        this.inputShape = inputShape;
+        this.inputType = inputType;
+        this.outputShape = outputShape;
+        this.outputType = outputType;
+        this.labels = labels;
+    }
+
+    /**
+     * Reads the first input and output of the main subgraph, and the labels from
+     * {@code labelsFile} when the model packs one.
+     *
+     * @throws IOException when {@code model} is not a TFLite model
+     */
+    public static ModelDescription read(ByteBuffer model, String labelsFile) throws IOException {
+        ByteBuffer buffer = model.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(0);
+        if (buffer.limit() < 8 || buffer.get(4) != 'T' || buffer.get(5) != 'F' || buffer.get(6) != 'L') {
+            throw new IOException("Not a TFLite model");
+        }
+        try {
+            int root = indirect(buffer, 0);
+            int subgraphs = field(buffer, root, MODEL_SUBGRAPHS);
+            if (subgraphs == 0 || buffer.getInt(indirect(buffer, subgraphs)) == 0) {
+                throw new IOException("Model has no subgraph");
+            }
+            int subgraph = indirect(buffer, indirect(buffer, subgraphs) + 4);
+            int tensors = indirect(buffer, field(buffer, subgraph, SUBGRAPH_TENSORS));
+            int input = tensor(buffer, tensors, firstIndex(buffer, field(buffer, subgraph, SUBGRAPH_INPUTS)));
+            int output = tensor(buffer, tensors, firstIndex(buffer, field(buffer, subgraph, SUBGRAPH_OUTPUTS)));
+
+            List<String> labels;
+            try {
+                labels = Collections.unmodifiableList(ModelMetadata.readLabels(model, labelsFile));
+            } catch (IOException e) {
+                labels = Collections.emptyList();
+            }
+            return new ModelDescription(shape(buffer, input), type(buffer, input),
+                    shape(buffer, output), type(buffer, output), labels);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt TFLite model", e);
+        }
+    }
+
+    // position a uoffset at pos points to
+    private static int indirect(ByteBuffer buffer, int pos) {
+        return pos + buffer.getInt(pos);
+    }
+
+    // position of a table's field, or 0 when absent
+    private static int field(ByteBuffer buffer, int table, int index) {
+        int vtable = table - buffer.getInt(table);
+        int vtableSize = buffer.getShort(vtable) & 0xFFFF;
+        int slot = 4 + index * 2;
+        if (slot >= vtableSize) {
+            return 0;
+        }
+        int offset = buffer.getShort(vtable + slot) & 0xFFFF;
+        return offset == 0 ? 0 : table + offset;
+    }
+
+    private static int firstIndex(ByteBuffer buffer, int vectorField) throws IOException {
+        if (vectorField == 0) {
+            throw new IOException("Model has no inputs or outputs");
+        }
+        int vector = indirect(buffer, vectorField);
+        if (buffer.getInt(vector) == 0) {
+            throw new IOException("Model has no inputs or outputs");
+        }
+        return buffer.getInt(vector + 4);
+    }
+
+    private static int tensor(ByteBuffer buffer, int tensors, int index) {
+        if (index < 0 || index >= buffer.getInt(tensors)) {
+            throw new IndexOutOfBoundsException("tensor " + index);
+        }
+        int element = tensors + 4 + index * 4;
+        return indirect(buffer, element);
+    }
+
+    private static int[] shape(ByteBuffer buffer, int tensor) {
+        int field = field(buffer, tensor, TENSOR_SHAPE);
+        if (field == 0) {
+            return new int[0];
+        }
+        int vector = indirect(buffer, field);
+        int[] shape = new int[buffer.getInt(vector)];
+        for (int i = 0; i < shape.length; i++) {
+            shape[i] = buffer.getInt(vector + 4 + i * 4);
+        }
+        return shape;
+    }
+
+    private static TensorType type(ByteBuffer buffer, int tensor) {
+        int field = field(buffer, tensor, TENSOR_TYPE);
+        // FLOAT32 is the schema default and is left out of the buffer
+        return field == 0 ? TensorType.FLOAT32 : TensorType.of(buffer.get(field));
+    }
+
+    /**
+     * [batch, height, width, channels] for image models.
+     */
+    public int[] getInputShape() {
+        return inputShape.clone();
+    }
+
+    public TensorType getInputType() {
+        return inputType;
+    }
+
+    public int getInputWidth() {
+        return inputShape.length == 4 ? inputShape[2] : 0;
+    }
+
+    public int getInputHeight() {
+        return inputShape.length == 4 ? inputShape[1] : 0;
+    }
+
+    public int[] getOutputShape() {
+        return outputShape.clone();
+    }
+
+    public TensorType getOutputType() {
+        return outputType;
+    }
+
+    /**
+     * The packed labels, empty when the model has none.
+     */
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    @Override
+    public String toString() {
+        return "input " + Arrays.toString(inputShape) + " " + inputType
+                + ", output " + Arrays.toString(outputShape) + " " + outputType
+                + ", " + labels.size() + " labels";
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.cameramlkit.inference;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the files packed into a TFLite model with metadata (the label file, typically). They
+ * are stored in a zip archive appended to the flatbuffer, so the model buffer can be read as a
+ * zip from its end without a metadata library.
+ */
+public final class ModelMetadata {
+
+    private static final int END_OF_DIRECTORY = 0x06054b50;
+    private static final int DIRECTORY_ENTRY = 0x02014b50;
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int END_OF_DIRECTORY_BYTES = 22;
+    private static final int STORED = 0;
+
+    private ModelMetadata() {
+    }
+
+    /**
+     * The contents of the packed file {@code name}.
+     *
+     * @throws IOException when the model has no such file, or it is compressed
+     */
+    public static byte[] readAssociatedFile(ByteBuffer model, String name) throws IOException {
+        ByteBuffer zip = model.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int limit = zip.limit();
+        int end = -1;
+        for (int i = limit - END_OF_DIRECTORY_BYTES; i >= Math.max(0, limit - END_OF_DIRECTORY_BYTES - 0xFFFF); i--) {
+            if (zip.getInt(i) == END_OF_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new IOException("Model has no packed files");
+        }
+        int entries = zip.getShort(end + 10) & 0xFFFF;
+        int directorySize = zip.getInt(end + 12);
+        int directoryOffset = zip.getInt(end + 16);
+        // offsets count from the start of the archive, which follows the flatbuffer
+        int base = end - directorySize - directoryOffset;
+        int entry = base + directoryOffset;
+        byte[] wanted = name.getBytes(StandardCharsets.UTF_8);
+        for (int e = 0; e < entries; e++) {
+            if (zip.getInt(entry) != DIRECTORY_ENTRY) {
+                throw new IOException("Corrupt packed files");
+            }
+            int method = zip.getShort(entry + 10) & 0xFFFF;
+            int size = zip.getInt(entry + 20);
+            int nameLength = zip.getShort(entry + 28) & 0xFFFF;
+            int extraLength = zip.getShort(entry + 30) & 0xFFFF;
+            int commentLength = zip.getShort(entry + 32) & 0xFFFF;
+            int localOffset = zip.getInt(entry + 42);
+            if (nameEquals(zip, entry + 46, nameLength, wanted)) {
+                if (method != STORED) {
+                    throw new IOException(name + " is compressed");
+                }
+                int local = base + localOffset;
+                if (zip.getInt(local) != LOCAL_HEADER) {
+                    throw new IOException("Corrupt packed files");
+                }
+                int data = local + 30 + (zip.getShort(local + 26) & 0xFFFF) + (zip.getShort(local + 28) & 0xFFFF);
+                byte[] contents = new byte[size];
+                zip.position(data);
+                zip.get(contents);
+                return contents;
+            }
+            entry += 46 + nameLength + extraLength + commentLength;
+        }
+        throw new IOException("Model has no " + name);
+    }
+
+    /**
+     * One label per line of the packed file {@code name}.
+     */
+    public static List<String> readLabels(ByteBuffer model, String name) throws IOException {
+        byte[] contents = readAssociatedFile(model, name);
+        List<String> labels = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(contents), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                labels.add(line.trim());
+            }
+        }
+        return labels;
+    }
+
+    private static boolean nameEquals(ByteBuffer zip, int at, int length, byte[] wanted) {
+        if (length != wanted.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (zip.get(at + i) != wanted[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
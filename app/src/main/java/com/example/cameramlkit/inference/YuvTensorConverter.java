@@ -0,0 +1,211 @@
+package com.example.cameramlkit.inference;
+
+import com.example.cameramlkit.pipeline.Bounds;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * YUV_420_888 planes -> upright, center cropped, resized RGB input tensor, written straight
+ * into a reused direct buffer.
+ * <p>
+ * Rotation, crop and scaling only depend on the frame geometry, so the source offsets of every
+ * tensor pixel are computed once per geometry (see {@link #configure}); a frame then costs three
+ * table lookups and a few adds per pixel, without allocating. Sampling is nearest neighbour,
+ * the cheapest and good enough for a classifier input of a couple hundred pixels.
+ */
+public final class YuvTensorConverter {
+
+    public enum TensorType {
+        UINT8(1),
+        FLOAT32(4);
+
+        final int bytesPerChannel;
+
+        TensorType(int bytesPerChannel) {
+            this.bytesPerChannel = bytesPerChannel;
+        }
+    }
+
+    // full range BT.601, what camera YUV_420_888 frames use
+    private static final int[] R_FROM_V = new int[256];
+    private static final int[] G_FROM_U = new int[256];
+    private static final int[] G_FROM_V = new int[256];
+    private static final int[] B_FROM_U = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            R_FROM_V[i] = Math.round(1.402f * (i - 128));
+            G_FROM_U[i] = Math.round(-0.344136f * (i - 128));
+            G_FROM_V[i] = Math.round(-0.714136f * (i - 128));
+            B_FROM_U[i] = Math.round(1.772f * (i - 128));
+        }
+    }
+
+    private final int inputSize;
+    private final TensorType type;
+    private final float[] normalized = new float[256];
+    private final boolean centerCrop;
+
+    private int[] yOffsets = new int[0];
+    private int[] uvOffsets = new int[0];
+    private int width = -1;
+    private int height = -1;
+    private int yRowStride = -1;
+    private int yPixelStride = -1;
+    private int uvRowStride = -1;
+    private int uvPixelStride = -1;
+    private int rotationDegrees = -1;
+    private Bounds crop = Bounds.EMPTY;
+
+    /**
+     * @param mean  subtracted from FLOAT32 inputs
+     * @param std   FLOAT32 inputs are divided by it after the mean is subtracted
+     * @param centerCrop crops the largest centered square, as classifiers expect; otherwise
+     *                   the whole frame is squeezed into the input
+     */
+    public YuvTensorConverter(int inputSize, TensorType type, float mean, float std, boolean centerCrop) {
+        this.inputSize = inputSize;
+        this.type = type;
+        this.centerCrop = centerCrop;
+        for (int i = 0; i < 256; i++) {
+            normalized[i] = (i - mean) / std;
+        }
+    }
+
+    /**
+     * A buffer of the right size and byte order for {@link #convert}.
+     */
+    public ByteBuffer allocateInput() {
+        return ByteBuffer.allocateDirect(inputSize * inputSize * 3 * type.bytesPerChannel)
+                .order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Prepares the offset tables for frames of this geometry; cheap when nothing changed.
+     */
+    public void configure(int width, int height, int yRowStride, int yPixelStride,
+                          int uvRowStride, int uvPixelStride, int rotationDegrees) {
+        if (width == this.width && height == this.height && yRowStride == this.yRowStride
+                && yPixelStride == this.yPixelStride && uvRowStride == this.uvRowStride
+                && uvPixelStride == this.uvPixelStride && rotationDegrees == this.rotationDegrees) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        this.yRowStride = yRowStride;
+        this.yPixelStride = yPixelStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        this.rotationDegrees = rotationDegrees;
+
+        boolean sideways = rotationDegrees == 90 || rotationDegrees == 270;
+        int uprightWidth = sideways ? height : width;
+        int uprightHeight = sideways ? width : height;
+        float cropWidth = centerCrop ? Math.min(uprightWidth, uprightHeight) : uprightWidth;
+        float cropHeight = centerCrop ? Math.min(uprightWidth, uprightHeight) : uprightHeight;
+        float cropLeft = (uprightWidth - cropWidth) / 2;
+        float cropTop = (uprightHeight - cropHeight) / 2;
+
+        int pixels = inputSize * inputSize;
+        if (yOffsets.length != pixels) {
+            yOffsets = new int[pixels];
+            uvOffsets = new int[pixels];
+        }
+        for (int oy = 0; oy < inputSize; oy++) {
+            int uy = (int) (cropTop + (oy + 0.5f) * cropHeight / inputSize);
+            for (int ox = 0; ox < inputSize; ox++) {
+                int ux = (int) (cropLeft + (ox + 0.5f) * cropWidth / inputSize);
+                int bx;
+                int by;
+                switch (rotationDegrees) {
+                    case 90:
+                        bx = uy;
+                        by = height - 1 - ux;
+                        break;
+                    case 180:
+                        bx = width - 1 - ux;
+                        by = height - 1 - uy;
+                        break;
+                    case 270:
+                        bx = width - 1 - uy;
+                        by = ux;
+                        break;
+                    default:
+                        bx = ux;
+                        by = uy;
+                }
+                int i = oy * inputSize + ox;
+                yOffsets[i] = by * yRowStride + bx * yPixelStride;
+                uvOffsets[i] = (by >> 1) * uvRowStride + (bx >> 1) * uvPixelStride;
+            }
+        }
+        crop = toBuffer(cropLeft, cropTop, cropLeft + cropWidth, cropTop + cropHeight);
+    }
+
+    // upright rectangle -> buffer rectangle
+    private Bounds toBuffer(float left, float top, float right, float bottom) {
+        switch (rotationDegrees) {
+            case 90:
+                return new Bounds(top, height - right, bottom, height - left);
+            case 180:
+                return new Bounds(width - right, height - bottom, width - left, height - top);
+            case 270:
+                return new Bounds(width - bottom, left, width - top, right);
+            default:
+                return new Bounds(left, top, right, bottom);
+        }
+    }
+
+    /**
+     * Writes the tensor for one frame into {@code out}, from position 0.
+     */
+    public void convert(ByteBuffer y, ByteBuffer u, ByteBuffer v, ByteBuffer out) {
+        if (width < 0) {
+            throw new IllegalStateException("configure() first");
+        }
+        int[] yOffsets = this.yOffsets;
+        int[] uvOffsets = this.uvOffsets;
+        out.clear();
+        if (type == TensorType.UINT8) {
+            for (int i = 0; i < yOffsets.length; i++) {
+                int luma = y.get(yOffsets[i]) & 0xff;
+                int cb = u.get(uvOffsets[i]) & 0xff;
+                int cr = v.get(uvOffsets[i]) & 0xff;
+                out.put((byte) clamp(luma + R_FROM_V[cr]));
+                out.put((byte) clamp(luma + G_FROM_U[cb] + G_FROM_V[cr]));
+                out.put((byte) clamp(luma + B_FROM_U[cb]));
+            }
+        } else {
+            float[] normalized = this.normalized;
+            for (int i = 0; i < yOffsets.length; i++) {
+                int luma = y.get(yOffsets[i]) & 0xff;
+                int cb = u.get(uvOffsets[i]) & 0xff;
+                int cr = v.get(uvOffsets[i]) & 0xff;
+                out.putFloat(normalized[clamp(luma + R_FROM_V[cr])]);
+                out.putFloat(normalized[clamp(luma + G_FROM_U[cb] + G_FROM_V[cr])]);
+                out.putFloat(normalized[clamp(luma + B_FROM_U[cb])]);
+            }
+        }
+        out.rewind();
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    /**
+     * The part of the frame the tensor shows, in buffer coordinates.
+     */
+    public Bounds getCrop() {
+        return crop;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public TensorType getType() {
+        return type;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.cameramlkit.keywords;
+
+import java.util.Arrays;
+
+/**
+ * SymSpell style index for fuzzy lookups: each term is filed under every string obtained by
+ * deleting up to k of its characters. Two strings within k edits share such a string, so a
+ * query only looks up its own deletions, however many terms there are.
+ * <p>
+ * The deletion strings are never built: they are identified by a polynomial hash computed from
+ * prefix hashes. A collision only costs one extra verification.
+ */
+final class DeletionIndex {
+
+    private static final long PRIME = 0x100000001B3L;
+
+    private long[] keys = new long[64];
+    private int[][] values = new int[64][];
+    private int size;
+
+    /**
+     * Reusable arrays for {@link #hashes}, sized for strings up to {@code maxLength}.
+     */
+    static final class Scratch {
+        final long[] prefix;
+        final long[] powers;
+        final long[] hashes;
+
+        Scratch(int maxLength) {
+            prefix = new long[maxLength + 1];
+            powers = new long[maxLength + 1];
+            hashes = new long[1 + maxLength + maxLength * (maxLength - 1) / 2];
+            powers[0] = 1;
+            for (int i = 1; i <= maxLength; i++) {
+                powers[i] = powers[i - 1] * PRIME;
+            }
+        }
+    }
+
+    void add(String term, int maxDeletions, int id) {
+        char[] chars = term.toCharArray();
+        Scratch scratch = new Scratch(chars.length);
+        int count = hashes(chars, 0, chars.length, maxDeletions, scratch);
+        long[] unique = Arrays.copyOf(scratch.hashes, count);
+        Arrays.sort(unique);
+        for (int i = 0; i < unique.length; i++) {
+            if (i == 0 || unique[i] != unique[i - 1]) {
+                put(unique[i], id);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Ids filed under {@code hash}, or null.
+     */
+    int[] get(long hash) {
+        int mask = keys.length - 1;
+        for (int slot = slot(hash, mask); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == hash) {
+                return values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hashes of {@code text[offset, offset + length)} with 0 to {@code maxDeletions} (at most 2)
+     * characters deleted, into {@code scratch.hashes}. Returns how many were written.
+     */
+    static int hashes(char[] text, int offset, int length, int maxDeletions, Scratch scratch) {
+        long[] prefix = scratch.prefix;
+        long[] powers = scratch.powers;
+        long[] out = scratch.hashes;
+        prefix[0] = 0;
+        for (int i = 0; i < length; i++) {
+            prefix[i + 1] = prefix[i] * PRIME + text[offset + i] + 1;
+        }
+        int count = 0;
+        out[count++] = prefix[length];
+        if (maxDeletions >= 1) {
+            for (int i = 0; i < length; i++) {
+                out[count++] = prefix[i] * powers[length - 1 - i] + range(prefix, powers, i + 1, length);
+            }
+        }
+        if (maxDeletions >= 2) {
+            for (int i = 0; i < length; i++) {
+                for (int j = i + 1; j < length; j++) {
+                    out[count++] = prefix[i] * powers[length - 2 - i]
+                            + range(prefix, powers, i + 1, j) * powers[length - 1 - j]
+                            + range(prefix, powers, j + 1, length);
+                }
+            }
+        }
+        return count;
+    }
+
+    // hash of text[from, to)
+    private static long range(long[] prefix, long[] powers, int from, int to) {
+        return prefix[to] - prefix[from] * powers[to - from];
+    }
+
+    private void put(long hash, int id) {
+        if (size * 2 >= keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int slot = slot(hash, mask);
+        while (values[slot] != null && keys[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        if (values[slot] == null) {
+            keys[slot] = hash;
+            values[slot] = new int[]{id};
+            size++;
+        } else {
+            int[] ids = Arrays.copyOf(values[slot], values[slot].length + 1);
+            ids[ids.length - 1] = id;
+            values[slot] = ids;
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[][] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2][];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldKeys[i], mask);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int slot(long hash, int mask) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.cameramlkit.keywords;
+
+import com.example.cameramlkit.overlay.BoxModelBuilder;
+import com.example.cameramlkit.pipeline.RecognizedText;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keyword matches of one OCR result and the box color they give each element.
+ */
+public final class Highlights implements BoxModelBuilder.TextColorizer {
+
+    private final Map<RecognizedText.Element, Integer> colors;
+    private final List<KeywordMatcher.Match> matches;
+    private final int defaultColor;
+
+    Highlights(Map<RecognizedText.Element, Integer> colors, List<KeywordMatcher.Match> matches, int defaultColor) {
+        this.colors = colors;
+        this.matches = matches;
+        this.defaultColor = defaultColor;
+    }
+
+    public List<KeywordMatcher.Match> getMatches() {
+        return matches;
+    }
+
+    public boolean isHighlighted(RecognizedText.Element element) {
+        return colors.containsKey(element);
+    }
+
+    @Override
+    public int boxColorFor(RecognizedText.Element element) {
+        Integer color = colors.get(element);
+        return color == null ? defaultColor : color;
+    }
+}
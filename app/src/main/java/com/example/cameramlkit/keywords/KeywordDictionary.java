@@ -0,0 +1,126 @@
+package com.example.cameramlkit.keywords;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keywords grouped in categories, each category with its highlight color.
+ * <p>
+ * Text format, one entry per line:
+ * <pre>
+ * # comment
+ * &#64;drugs #FF0000
+ * Dulergina
+ * ibuprofen
+ * </pre>
+ * A line starting with {@code @} opens a category (name, then an optional #RRGGBB or #AARRGGBB
+ * color); the lines after it are its terms.
+ */
+public final class KeywordDictionary {
+
+    public static final int DEFAULT_COLOR = 0xFFFF0000;
+
+    public static final class Category {
+        private final String name;
+        private final int color;
+        private final List<String> terms = new ArrayList<>();
+
+        Category(String name, int color) {
+            this.name = name;
+            this.color = color;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getColor() {
+            return color;
+        }
+
+        public List<String> getTerms() {
+            return Collections.unmodifiableList(terms);
+        }
+    }
+
+    private final List<Category> categories = new ArrayList<>();
+
+    public List<Category> getCategories() {
+        return Collections.unmodifiableList(categories);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Category category : categories) {
+            size += category.terms.size();
+        }
+        return size;
+    }
+
+    /**
+     * Adds a term, creating its category with {@code color} the first time the name is seen.
+     */
+    public KeywordDictionary add(String category, int color, String term) {
+        categoryFor(category, color).terms.add(term);
+        return this;
+    }
+
+    private Category categoryFor(String name, int color) {
+        for (Category category : categories) {
+            if (category.name.equals(name)) {
+                return category;
+            }
+        }
+        Category category = new Category(name, color);
+        categories.add(category);
+        return category;
+    }
+
+    public static KeywordDictionary parse(Reader reader) throws IOException {
+        KeywordDictionary dictionary = new KeywordDictionary();
+        BufferedReader lines = new BufferedReader(reader);
+        Category current = null;
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("@")) {
+                String[] parts = line.substring(1).trim().split("\\s+");
+                if (parts[0].isEmpty()) {
+                    throw new IOException("Category without a name at line " + number);
+                }
+                int color = parts.length > 1 ? parseColor(parts[1], number) : DEFAULT_COLOR;
+                current = dictionary.categoryFor(parts[0], color);
+                continue;
+            }
+            if (current == null) {
+                current = dictionary.categoryFor("default", DEFAULT_COLOR);
+            }
+            current.terms.add(line);
+        }
+        return dictionary;
+    }
+
+    static int parseColor(String value, int line) throws IOException {
+        String hex = value.startsWith("#") ? value.substring(1) : value;
+        try {
+            if (hex.length() == 6) {
+                return 0xFF000000 | Integer.parseInt(hex, 16);
+            }
+            if (hex.length() == 8) {
+                return (int) Long.parseLong(hex, 16);
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        throw new IOException("Bad color '" + value + "' at line " + line);
+    }
+}
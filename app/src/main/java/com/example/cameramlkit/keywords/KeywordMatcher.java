@@ -0,0 +1,517 @@
+package com.example.cameramlkit.keywords;
+
+import com.example.cameramlkit.pipeline.RecognizedText;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the keywords of a {@link KeywordDictionary} in OCR output.
+ * <p>
+ * Exact matches come from an Aho-Corasick automaton over the folded text, one pass whatever the
+ * number of keywords. The text of all elements is joined with spaces, so keywords spanning
+ * several elements or lines are found; blocks are kept apart. Only whole words match.
+ * <p>
+ * Long keywords also match with OCR errors (1 edit from 5 characters, 2 from 8), looked up in a
+ * {@link DeletionIndex} so that the cost does not grow with the dictionary either. Only word
+ * spans whose length some keyword is within reach of are looked up.
+ * <p>
+ * Immutable once compiled, safe to share between threads.
+ */
+public final class KeywordMatcher {
+
+    static final int MIN_FUZZY_LENGTH = 5;
+    static final int TWO_EDITS_LENGTH = 8;
+    private static final char BLOCK_BREAK = '\n';
+
+    public static final class Match {
+        private final int start;
+        private final int end;
+        private final int edits;
+        private final String term;
+        private final KeywordDictionary.Category category;
+
+        Match(int start, int end, int edits, String term, KeywordDictionary.Category category) {
+            this.start = start;
+            this.end = end;
+            this.edits = edits;
+            this.term = term;
+            this.category = category;
+        }
+
+        /**
+         * Start offset in the folded text.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public int length() {
+            return end - start;
+        }
+
+        /**
+         * Edits between the keyword and the text, 0 for an exact match.
+         */
+        public int getEdits() {
+            return edits;
+        }
+
+        /**
+         * The keyword as written in the dictionary.
+         */
+        public String getTerm() {
+            return term;
+        }
+
+        public KeywordDictionary.Category getCategory() {
+            return category;
+        }
+
+        public int getColor() {
+            return category.getColor();
+        }
+
+        @Override
+        public String toString() {
+            return term + "[" + start + "," + end + ")" + (edits > 0 ? "~" + edits : "");
+        }
+    }
+
+    private final String[] folded;
+    private final String[] terms;
+    private final KeywordDictionary.Category[] categories;
+    private final int maxEdits;
+    private final int maxWords;
+    // for a text span of each length, the deletions to look up (0: no keyword is in reach)
+    private final int[] queryDeletions;
+
+    private final TransitionTable transitions;
+    private final int[] fail;
+    private final int[] termAt;
+    private final int[] outputLink;
+    private final DeletionIndex deletions = new DeletionIndex();
+
+    private KeywordMatcher(KeywordDictionary dictionary, int maxEdits) {
+        this.maxEdits = Math.max(0, Math.min(2, maxEdits));
+
+        List<String> foldedTerms = new ArrayList<>();
+        List<String> originalTerms = new ArrayList<>();
+        List<KeywordDictionary.Category> termCategories = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (KeywordDictionary.Category category : dictionary.getCategories()) {
+            for (String term : category.getTerms()) {
+                String key = TextFolding.fold(term);
+                // first category wins for a keyword listed twice
+                if (!key.isEmpty() && seen.add(key)) {
+                    foldedTerms.add(key);
+                    originalTerms.add(term);
+                    termCategories.add(category);
+                }
+            }
+        }
+        folded = foldedTerms.toArray(new String[0]);
+        terms = originalTerms.toArray(new String[0]);
+        categories = termCategories.toArray(new KeywordDictionary.Category[0]);
+
+        int capacity = 1;
+        int words = 1;
+        int fuzzyLength = 0;
+        for (String term : folded) {
+            capacity += term.length();
+            words = Math.max(words, wordCount(term));
+            if (allowedEdits(term.length()) > 0) {
+                fuzzyLength = Math.max(fuzzyLength, term.length());
+            }
+        }
+        maxWords = words;
+        queryDeletions = new int[fuzzyLength + this.maxEdits + 1];
+        for (String term : folded) {
+            int k = allowedEdits(term.length());
+            for (int length = Math.max(0, term.length() - k); k > 0 && length <= term.length() + k; length++) {
+                queryDeletions[length] = Math.max(queryDeletions[length], k);
+            }
+        }
+
+        // trie
+        transitions = new TransitionTable(capacity);
+        char[] stateChar = new char[capacity];
+        int[] firstChild = new int[capacity];
+        int[] nextSibling = new int[capacity];
+        int[] term = new int[capacity];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(term, -1);
+        int states = 1;
+        for (int p = 0; p < folded.length; p++) {
+            int state = 0;
+            String key = folded[p];
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                int next = transitions.get(state, c);
+                if (next < 0) {
+                    next = states++;
+                    transitions.put(state, c, next);
+                    stateChar[next] = c;
+                    nextSibling[next] = firstChild[state];
+                    firstChild[state] = next;
+                }
+                state = next;
+            }
+            term[state] = p;
+        }
+
+        // failure and output links, breadth first
+        int[] failLinks = new int[states];
+        int[] output = new int[states];
+        output[0] = -1;
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int child = firstChild[0]; child >= 0; child = nextSibling[child]) {
+            output[child] = -1;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int child = firstChild[state]; child >= 0; child = nextSibling[child]) {
+                char c = stateChar[child];
+                int f = failLinks[state];
+                int target;
+                while ((target = transitions.get(f, c)) < 0 && f != 0) {
+                    f = failLinks[f];
+                }
+                failLinks[child] = target < 0 ? 0 : target;
+                output[child] = term[failLinks[child]] >= 0 ? failLinks[child] : output[failLinks[child]];
+                queue[tail++] = child;
+            }
+        }
+        fail = failLinks;
+        outputLink = output;
+        termAt = Arrays.copyOf(term, states);
+
+        // deletion index for the fuzzy lookup
+        for (int p = 0; p < folded.length; p++) {
+            int k = allowedEdits(folded[p].length());
+            if (k > 0) {
+                deletions.add(folded[p], k, p);
+            }
+        }
+    }
+
+    /**
+     * @param maxEdits upper bound of OCR errors tolerated (0 to 2), 0 disables fuzzy matching
+     */
+    public static KeywordMatcher compile(KeywordDictionary dictionary, int maxEdits) {
+        return new KeywordMatcher(dictionary, maxEdits);
+    }
+
+    public int size() {
+        return folded.length;
+    }
+
+    public int getStateCount() {
+        return fail.length;
+    }
+
+    /**
+     * Keywords in plain text. Offsets refer to {@link TextFolding#fold(CharSequence)} of it.
+     */
+    public List<Match> find(CharSequence text) {
+        Stream stream = new Stream(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            stream.append(text.charAt(i), -1);
+        }
+        stream.trim();
+        return match(stream);
+    }
+
+    /**
+     * Colors the elements covered by a keyword with the keyword's category color, the others
+     * with {@code defaultColor}. Where matches overlap the longest one decides.
+     */
+    public Highlights highlight(RecognizedText text, int defaultColor) {
+        List<RecognizedText.Element> elements = new ArrayList<>();
+        Stream stream = new Stream(text.getText() == null ? 64 : text.getText().length() + 16);
+        List<RecognizedText.Block> blocks = text.getBlocks();
+        for (int b = 0; b < blocks.size(); b++) {
+            List<RecognizedText.Line> lines = blocks.get(b).getLines();
+            for (int l = 0; l < lines.size(); l++) {
+                List<RecognizedText.Element> lineElements = lines.get(l).getElements();
+                for (int e = 0; e < lineElements.size(); e++) {
+                    RecognizedText.Element element = lineElements.get(e);
+                    int owner = elements.size();
+                    elements.add(element);
+                    String elementText = element.getText();
+                    for (int i = 0; elementText != null && i < elementText.length(); i++) {
+                        stream.append(elementText.charAt(i), owner);
+                    }
+                    stream.separate(TextFolding.SEPARATOR);
+                }
+            }
+            stream.separate(BLOCK_BREAK);
+        }
+        stream.trim();
+
+        List<Match> matches = match(stream);
+        Map<RecognizedText.Element, Integer> colors = new IdentityHashMap<>();
+        int[] covering = new int[elements.size()];
+        for (int m = 0; m < matches.size(); m++) {
+            Match match = matches.get(m);
+            int last = -1;
+            for (int i = match.start; i < match.end; i++) {
+                int owner = stream.owners[i];
+                if (owner < 0 || owner == last) {
+                    continue;
+                }
+                last = owner;
+                if (match.length() > covering[owner]) {
+                    covering[owner] = match.length();
+                    colors.put(elements.get(owner), match.getColor());
+                }
+            }
+        }
+        return new Highlights(colors, matches, defaultColor);
+    }
+
+    private List<Match> match(Stream stream) {
+        List<Match> matches = new ArrayList<>();
+        matchExact(stream.chars, stream.length, matches);
+        if (!deletions.isEmpty()) {
+            matchFuzzy(stream.chars, stream.length, matches);
+        }
+        return matches;
+    }
+
+    private void matchExact(char[] text, int length, List<Match> out) {
+        int state = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text[i];
+            int next;
+            while ((next = transitions.get(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next < 0 ? 0 : next;
+            for (int s = termAt[state] >= 0 ? state : outputLink[state]; s > 0; s = outputLink[s]) {
+                int p = termAt[s];
+                int start = i + 1 - folded[p].length();
+                if (isBoundary(text, length, start - 1) && isBoundary(text, length, i + 1)) {
+                    out.add(new Match(start, i + 1, 0, terms[p], categories[p]));
+                }
+            }
+        }
+    }
+
+    // word windows not already matched exactly, up to the longest keyword's word count
+    private void matchFuzzy(char[] text, int length, List<Match> out) {
+        boolean[] covered = new boolean[length];
+        for (int m = 0; m < out.size(); m++) {
+            Arrays.fill(covered, out.get(m).start, out.get(m).end, true);
+        }
+        int maxSpan = queryDeletions.length - 1;
+        DeletionIndex.Scratch scratch = new DeletionIndex.Scratch(maxSpan);
+        int[][] rows = {new int[maxSpan + 1], new int[maxSpan + 1]};
+        for (int start = 0; start < length; start++) {
+            if (!isBoundary(text, length, start - 1) || isBoundary(text, length, start)) {
+                continue;
+            }
+            int words = 0;
+            boolean overlapsExact = false;
+            for (int end = start; end <= length && end - start <= maxSpan; end++) {
+                if (end < length && covered[end]) {
+                    overlapsExact = true;
+                }
+                if (end < length && !isBoundary(text, length, end)) {
+                    continue;
+                }
+                // end of a word
+                if (++words > maxWords || overlapsExact) {
+                    break;
+                }
+                if (queryDeletions[end - start] > 0) {
+                    Match match = lookup(text, start, end, scratch, rows);
+                    if (match != null) {
+                        out.add(match);
+                    }
+                }
+                if (end == length || text[end] == BLOCK_BREAK) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private Match lookup(char[] text, int start, int end, DeletionIndex.Scratch scratch, int[][] rows) {
+        int length = end - start;
+        int count = DeletionIndex.hashes(text, start, length, queryDeletions[length], scratch);
+        int best = -1;
+        int bestEdits = maxEdits + 1;
+        for (int h = 0; h < count; h++) {
+            int[] candidates = deletions.get(scratch.hashes[h]);
+            for (int c = 0; candidates != null && c < candidates.length; c++) {
+                int candidate = candidates[c];
+                int limit = Math.min(allowedEdits(folded[candidate].length()), bestEdits - 1);
+                int edits = boundedDistance(text, start, length, folded[candidate], limit, rows);
+                if (edits >= 0 && edits < bestEdits) {
+                    best = candidate;
+                    bestEdits = edits;
+                }
+            }
+        }
+        return best < 0 ? null : new Match(start, end, bestEdits, terms[best], categories[best]);
+    }
+
+    private int allowedEdits(int length) {
+        int edits = length >= TWO_EDITS_LENGTH ? 2 : length >= MIN_FUZZY_LENGTH ? 1 : 0;
+        return Math.min(edits, maxEdits);
+    }
+
+    private static boolean isBoundary(char[] text, int length, int index) {
+        return index < 0 || index >= length || text[index] == TextFolding.SEPARATOR || text[index] == BLOCK_BREAK;
+    }
+
+    private static int wordCount(String term) {
+        int words = 1;
+        for (int i = 0; i < term.length(); i++) {
+            if (term.charAt(i) == TextFolding.SEPARATOR) {
+                words++;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Levenshtein distance of {@code text[start, start + length)} and {@code term}, or -1 when
+     * it is above max. {@code rows} are two scratch arrays longer than the term.
+     */
+    static int boundedDistance(char[] text, int start, int length, String term, int max, int[][] rows) {
+        if (max < 0 || Math.abs(length - term.length()) > max) {
+            return -1;
+        }
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int j = 0; j <= term.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= length; i++) {
+            current[0] = i;
+            int rowMin = i;
+            char a = text[start + i - 1];
+            for (int j = 1; j <= term.length(); j++) {
+                int cost = a == term.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return -1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[term.length()] <= max ? previous[term.length()] : -1;
+    }
+
+    // folded text with, for every character, the index of the element it came from
+    private static final class Stream {
+        char[] chars;
+        int[] owners;
+        int length;
+
+        Stream(int capacity) {
+            chars = new char[Math.max(16, capacity)];
+            owners = new int[chars.length];
+        }
+
+        void append(char c, int owner) {
+            char f = TextFolding.fold(c);
+            if (f == TextFolding.SEPARATOR) {
+                separate(TextFolding.SEPARATOR);
+                return;
+            }
+            put(f, owner);
+        }
+
+        // one separator between words, a block break wins over a space
+        void separate(char separator) {
+            if (length == 0) {
+                return;
+            }
+            char last = chars[length - 1];
+            if (last == TextFolding.SEPARATOR || last == BLOCK_BREAK) {
+                if (separator == BLOCK_BREAK) {
+                    chars[length - 1] = BLOCK_BREAK;
+                }
+                return;
+            }
+            put(separator, -1);
+        }
+
+        void trim() {
+            if (length > 0 && (chars[length - 1] == TextFolding.SEPARATOR || chars[length - 1] == BLOCK_BREAK)) {
+                length--;
+            }
+        }
+
+        private void put(char c, int owner) {
+            if (length == chars.length) {
+                chars = Arrays.copyOf(chars, length * 2);
+                owners = Arrays.copyOf(owners, length * 2);
+            }
+            chars[length] = c;
+            owners[length] = owner;
+            length++;
+        }
+    }
+
+    // goto function of the automaton: (state, char) -> state, open addressing on a long key
+    static final class TransitionTable {
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+        private final int shift;
+
+        TransitionTable(int expected) {
+            int size = Integer.highestOneBit(Math.max(8, expected * 2 - 1)) << 1;
+            keys = new long[size];
+            values = new int[size];
+            mask = size - 1;
+            shift = 64 - Integer.numberOfTrailingZeros(size);
+        }
+
+        int get(int state, char c) {
+            // folded characters are never 0, so a 0 key marks a free slot
+            long key = ((long) state << 16) | c;
+            for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                if (keys[slot] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(int state, char c, int next) {
+            long key = ((long) state << 16) | c;
+            int slot = slot(key);
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = next;
+        }
+
+        private int slot(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.cameramlkit.keywords;
+
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.ResultSink;
+
+/**
+ * Matches the keywords in the text of each result as the pipeline's analysis thread sink, so
+ * the UI thread only looks up the {@link Highlights} of the result it draws. Those of the latest
+ * two results are kept: the UI may still draw one while the next is being matched.
+ */
+public final class ResultHighlighter implements ResultSink {
+
+    private static final class Entry {
+        final DetectionResult result;
+        final Highlights highlights;
+        final Entry previous;
+
+        Entry(DetectionResult result, Highlights highlights, Entry previous) {
+            this.result = result;
+            this.highlights = highlights;
+            this.previous = previous;
+        }
+    }
+
+    private final int defaultColor;
+    private volatile KeywordMatcher matcher;
+    private volatile boolean enabled = true;
+    private volatile Entry latest;
+
+    /**
+     * @param defaultColor box color of the elements no keyword matches
+     */
+    public ResultHighlighter(int defaultColor) {
+        this.defaultColor = defaultColor;
+    }
+
+    /**
+     * Any thread, e.g. once the dictionary is loaded; results before that are not highlighted.
+     */
+    public void setMatcher(KeywordMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * Any thread; while disabled nothing is matched.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            latest = null;
+        }
+    }
+
+    @Override
+    public void onResult(DetectionResult result) {
+        KeywordMatcher current = matcher;
+        if (!enabled || current == null || result.getText() == null) {
+            return;
+        }
+        Highlights highlights = current.highlight(result.getText(), defaultColor);
+        Entry last = latest;
+        latest = new Entry(result, highlights, last == null ? null : new Entry(last.result, last.highlights, null));
+    }
+
+    /**
+     * The highlights matched for {@code result}, null when it was not matched (yet).
+     */
+    public Highlights get(DetectionResult result) {
+        for (Entry entry = latest; entry != null; entry = entry.previous) {
+            if (entry.result == result) {
+                return entry.highlights;
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        latest = null;
+    }
+}
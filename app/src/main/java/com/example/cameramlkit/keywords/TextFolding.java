@@ -0,0 +1,60 @@
+package com.example.cameramlkit.keywords;
+
+import java.text.Normalizer;
+
+/**
+ * Case and diacritic folding applied to both the keywords and the OCR text: letters and digits
+ * are lower-cased and stripped of accents ("É" -> "e"), everything else becomes a space, and
+ * runs of spaces collapse to one.
+ */
+public final class TextFolding {
+
+    public static final char SEPARATOR = ' ';
+
+    private static final int TABLE_SIZE = 0x300;
+    private static final char[] TABLE = new char[TABLE_SIZE];
+
+    static {
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            TABLE[c] = foldSlow((char) c);
+        }
+    }
+
+    private TextFolding() {
+    }
+
+    /**
+     * Folded form of one character, {@link #SEPARATOR} for anything that is not a letter or
+     * digit. Table lookup for Latin scripts, so the per-frame path does not allocate.
+     */
+    public static char fold(char c) {
+        if (c < TABLE_SIZE) {
+            return TABLE[c];
+        }
+        return Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : SEPARATOR;
+    }
+
+    public static String fold(CharSequence text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            if (c == SEPARATOR && (folded.length() == 0 || folded.charAt(folded.length() - 1) == SEPARATOR)) {
+                continue;
+            }
+            folded.append(c);
+        }
+        int end = folded.length();
+        if (end > 0 && folded.charAt(end - 1) == SEPARATOR) {
+            folded.setLength(end - 1);
+        }
+        return folded.toString();
+    }
+
+    private static char foldSlow(char c) {
+        if (!Character.isLetterOrDigit(c)) {
+            return SEPARATOR;
+        }
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        return Character.toLowerCase(decomposed.charAt(0));
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.cameramlkit.metrics;
+
+/**
+ * Where the detector stage's own time goes: converting the frame into the model input, running
+ * the model, and decoding its output. Kept apart from {@link FrameMetrics}' inference latency
+ * (which also counts queueing) so two backends can be compared on the same device.
+ */
+public final class BackendTimings {
+
+    private final String name;
+    private final LatencyHistogram preprocessing = new LatencyHistogram();
+    private final LatencyHistogram model = new LatencyHistogram();
+    private final LatencyHistogram decoding = new LatencyHistogram();
+
+    public BackendTimings(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records one frame; a negative time means the backend cannot tell that part apart.
+     */
+    public void record(long preprocessingNanos, long modelNanos, long decodingNanos) {
+        preprocessing.recordNanos(preprocessingNanos);
+        model.recordNanos(modelNanos);
+        decoding.recordNanos(decodingNanos);
+    }
+
+    public void reset() {
+        preprocessing.reset();
+        model.reset();
+        decoding.reset();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getPreprocessingLatency() {
+        return preprocessing;
+    }
+
+    public LatencyHistogram getModelLatency() {
+        return model;
+    }
+
+    public LatencyHistogram getDecodingLatency() {
+        return decoding;
+    }
+}
@@ -0,0 +1,433 @@
+package com.example.cameramlkit.metrics;
+
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.PipelineListener;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-frame timing of the live pipeline: camera timestamp -> analyzer start -> detector done
+ * -> post-processing done -> presented on screen, plus frame rates and dropped frames.
+ * <p>
+ * Frames are matched across stages by their camera timestamp through a small ring of slots,
+ * so nothing is allocated per frame. The clock must use the same time base as the camera
+ * timestamps (SystemClock.elapsedRealtimeNanos on device); capture latency is not recorded
+ * when the camera uses another base.
+ */
+public final class FrameMetrics implements PipelineListener {
+
+    private static final int SLOTS = 64;
+    private static final int FIELDS = 4;
+    private static final int KEY = 0;
+    private static final int STARTED = 1;
+    private static final int DETECTED = 2;
+    private static final int PROCESSED = 3;
+    private static final double FPS_SMOOTHING = 0.1;
+
+    private final LongSupplier clock;
+    private final AtomicLongArray slots = new AtomicLongArray(SLOTS * FIELDS);
+
+    private final LatencyHistogram capture = new LatencyHistogram();
+    private final LatencyHistogram inference = new LatencyHistogram();
+    private final LatencyHistogram postProcessing = new LatencyHistogram();
+    private final LatencyHistogram presentation = new LatencyHistogram();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final LatencyHistogram lensSwitch = new LatencyHistogram();
+
+    private final AtomicLong analyzedFrames = new AtomicLong();
+    private final AtomicLong processedFrames = new AtomicLong();
+    private final AtomicLong presentedFrames = new AtomicLong();
+    private final AtomicLong cameraDroppedFrames = new AtomicLong();
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private final AtomicLong reusedFrames = new AtomicLong();
+    private final FrameRate analysisRate = new FrameRate();
+    private final FrameRate presentationRate = new FrameRate();
+    private long lastCameraTimestamp = -1;
+    private long cameraInterval;
+    private volatile BackendTimings backend;
+
+    public FrameMetrics(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public void onFrameStarted(Frame frame) {
+        long now = clock.getAsLong();
+        long timestamp = frame.getTimestampNanos();
+        int base = slotOf(timestamp);
+        slots.set(base + KEY, timestamp);
+        slots.set(base + STARTED, now);
+        slots.set(base + DETECTED, 0);
+        slots.set(base + PROCESSED, 0);
+
+        long latency = now - timestamp;
+        if (latency > 0 && latency < 1_000_000_000L) {
+            capture.recordNanos(latency);
+        }
+        countCameraDrops(timestamp);
+        analyzedFrames.incrementAndGet();
+        analysisRate.tick(now);
+    }
+
+    @Override
+    public void onFrameSkipped(Frame frame) {
+        countCameraDrops(frame.getTimestampNanos());
+        skippedFrames.incrementAndGet();
+    }
+
+    @Override
+    public void onFrameReused(Frame frame, DetectionResult result) {
+        countCameraDrops(frame.getTimestampNanos());
+        reusedFrames.incrementAndGet();
+    }
+
+    @Override
+    public void onDetectorDone(Frame frame, DetectionResult result) {
+        long now = clock.getAsLong();
+        int base = slotOf(result.getTimestampNanos());
+        if (slots.get(base + KEY) == result.getTimestampNanos()) {
+            slots.set(base + DETECTED, now);
+            inference.recordNanos(now - slots.get(base + STARTED));
+        }
+    }
+
+    @Override
+    public void onResultProcessed(DetectionResult result) {
+        long now = clock.getAsLong();
+        int base = slotOf(result.getTimestampNanos());
+        if (slots.get(base + KEY) == result.getTimestampNanos()) {
+            slots.set(base + PROCESSED, now);
+            long detected = slots.get(base + DETECTED);
+            if (detected != 0) {
+                postProcessing.recordNanos(now - detected);
+            }
+        }
+        processedFrames.incrementAndGet();
+    }
+
+    /**
+     * Adds the detector backend's own breakdown to the HUD and the export; null removes it.
+     */
+    public void setBackendTimings(BackendTimings backend) {
+        this.backend = backend;
+    }
+
+    public BackendTimings getBackendTimings() {
+        return backend;
+    }
+
+    /**
+     * The result with this camera timestamp has been handed to the views for the current
+     * display frame.
+     */
+    public void onFramePresented(long timestampNanos) {
+        long now = clock.getAsLong();
+        int base = slotOf(timestampNanos);
+        if (slots.get(base + KEY) == timestampNanos) {
+            long processed = slots.get(base + PROCESSED);
+            if (processed != 0) {
+                presentation.recordNanos(now - processed);
+            }
+            long latency = now - timestampNanos;
+            if (latency > 0 && latency < 10_000_000_000L) {
+                endToEnd.recordNanos(latency);
+            }
+        }
+        presentedFrames.incrementAndGet();
+        presentationRate.tick(now);
+    }
+
+    // the analyzer runs on one thread, so consecutive timestamps arrive in order; the
+    // shortest gap seen is taken as the camera's own frame interval
+    private void countCameraDrops(long timestamp) {
+        long previous = lastCameraTimestamp;
+        lastCameraTimestamp = timestamp;
+        if (previous < 0 || timestamp <= previous) {
+            return;
+        }
+        long gap = timestamp - previous;
+        if (cameraInterval == 0 || gap < cameraInterval) {
+            cameraInterval = gap;
+        }
+        if (gap > cameraInterval * 3 / 2) {
+            cameraDroppedFrames.addAndGet(Math.round((double) gap / cameraInterval) - 1);
+        }
+    }
+
+    private static int slotOf(long timestampNanos) {
+        long h = timestampNanos * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 58) * FIELDS;
+    }
+
+    public void reset() {
+        capture.reset();
+        inference.reset();
+        postProcessing.reset();
+        presentation.reset();
+        endToEnd.reset();
+        lensSwitch.reset();
+        analyzedFrames.set(0);
+        processedFrames.set(0);
+        presentedFrames.set(0);
+        cameraDroppedFrames.set(0);
+        skippedFrames.set(0);
+        reusedFrames.set(0);
+        analysisRate.reset();
+        presentationRate.reset();
+        lastCameraTimestamp = -1;
+        cameraInterval = 0;
+        BackendTimings backend = this.backend;
+        if (backend != null) {
+            backend.reset();
+        }
+    }
+
+    public LatencyHistogram getCaptureLatency() {
+        return capture;
+    }
+
+    public LatencyHistogram getInferenceLatency() {
+        return inference;
+    }
+
+    public LatencyHistogram getPostProcessingLatency() {
+        return postProcessing;
+    }
+
+    public LatencyHistogram getPresentationLatency() {
+        return presentation;
+    }
+
+    public LatencyHistogram getEndToEndLatency() {
+        return endToEnd;
+    }
+
+    /**
+     * The camera switched lens and its first result is being presented, {@code nanos} after
+     * the switch.
+     */
+    public void onLensSwitched(long nanos) {
+        lensSwitch.recordNanos(nanos);
+    }
+
+    /**
+     * Lens switch to the first result of the new lens on screen.
+     */
+    public LatencyHistogram getLensSwitchLatency() {
+        return lensSwitch;
+    }
+
+    public long getAnalyzedFrames() {
+        return analyzedFrames.get();
+    }
+
+    public long getPresentedFrames() {
+        return presentedFrames.get();
+    }
+
+    /**
+     * Frames the camera produced but never handed to the analyzer (backpressure), estimated
+     * from gaps in the camera timestamps.
+     */
+    public long getCameraDroppedFrames() {
+        return cameraDroppedFrames.get();
+    }
+
+    /**
+     * Frames the pipeline chose not to analyze (frame skipping).
+     */
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    /**
+     * Frames answered with an earlier result because the scene had not changed.
+     */
+    public long getReusedFrames() {
+        return reusedFrames.get();
+    }
+
+    /**
+     * Share of the frames meant for the detector that were answered with an earlier result.
+     */
+    public double getReusedFraction() {
+        long reused = reusedFrames.get();
+        long total = reused + analyzedFrames.get();
+        return total == 0 ? 0 : reused / (double) total;
+    }
+
+    /**
+     * Analyzed results that were superseded before reaching the screen.
+     */
+    public long getUnpresentedResults() {
+        return Math.max(0, processedFrames.get() - presentedFrames.get());
+    }
+
+    public double getAnalysisFps() {
+        return analysisRate.getFps();
+    }
+
+    public double getPresentationFps() {
+        return presentationRate.getFps();
+    }
+
+    /**
+     * Short multi-line summary for the debug HUD.
+     */
+    public String toHudText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "fps %.1f analyzed / %.1f shown%n", getAnalysisFps(), getPresentationFps()));
+        text.append(String.format(Locale.US, "dropped %d camera / %d skipped / %d results%n",
+                getCameraDroppedFrames(), getSkippedFrames(), getUnpresentedResults()));
+        if (reusedFrames.get() > 0) {
+            text.append(String.format(Locale.US, "static %d reused (%.0f%% of inferences)%n",
+                    getReusedFrames(), getReusedFraction() * 100));
+        }
+        text.append("ms        p50    p95    p99\n");
+        appendHudRow(text, "capture", capture.snapshot());
+        appendHudRow(text, "infer", inference.snapshot());
+        BackendTimings backend = this.backend;
+        if (backend != null) {
+            appendHudRow(text, " pre", backend.getPreprocessingLatency().snapshot());
+            appendHudRow(text, " model", backend.getModelLatency().snapshot());
+            appendHudRow(text, " decode", backend.getDecodingLatency().snapshot());
+        }
+        appendHudRow(text, "post", postProcessing.snapshot());
+        appendHudRow(text, "present", presentation.snapshot());
+        appendHudRow(text, "total", endToEnd.snapshot());
+        if (lensSwitch.getCount() > 0) {
+            appendHudRow(text, "switch", lensSwitch.snapshot());
+        }
+        return text.toString();
+    }
+
+    private static void appendHudRow(StringBuilder text, String name, LatencyHistogram.Snapshot snapshot) {
+        text.append(String.format(Locale.US, "%-8s%6.1f %6.1f %6.1f%n", name,
+                snapshot.getPercentileMillis(50),
+                snapshot.getPercentileMillis(95),
+                snapshot.getPercentileMillis(99)));
+    }
+
+    /**
+     * Everything above as a JSON object, tagged with {@code info} (device, build, screen...).
+     */
+    public String toJson(Map<String, String> info) {
+        StringBuilder json = new StringBuilder("{\"info\":{");
+        boolean first = true;
+        for (Map.Entry<String, String> entry : info.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendJsonString(json, entry.getKey());
+            json.append(':');
+            appendJsonString(json, entry.getValue());
+        }
+        json.append("},\"fps\":{")
+                .append(String.format(Locale.US, "\"analysis\":%.2f,\"presentation\":%.2f", getAnalysisFps(), getPresentationFps()))
+                .append("},\"frames\":{\"analyzed\":").append(analyzedFrames.get())
+                .append(",\"processed\":").append(processedFrames.get())
+                .append(",\"presented\":").append(presentedFrames.get())
+                .append(",\"cameraDropped\":").append(cameraDroppedFrames.get())
+                .append(",\"skipped\":").append(skippedFrames.get())
+                .append(",\"reused\":").append(reusedFrames.get())
+                .append(",\"unpresented\":").append(getUnpresentedResults())
+                .append("},\"latencyMs\":{");
+        appendJsonHistogram(json, "capture", capture.snapshot());
+        json.append(',');
+        appendJsonHistogram(json, "inference", inference.snapshot());
+        json.append(',');
+        appendJsonHistogram(json, "postProcessing", postProcessing.snapshot());
+        json.append(',');
+        appendJsonHistogram(json, "presentation", presentation.snapshot());
+        json.append(',');
+        appendJsonHistogram(json, "endToEnd", endToEnd.snapshot());
+        json.append(',');
+        appendJsonHistogram(json, "lensSwitch", lensSwitch.snapshot());
+        json.append('}');
+        BackendTimings backend = this.backend;
+        if (backend != null) {
+            json.append(",\"backend\":{\"name\":");
+            appendJsonString(json, backend.getName());
+            json.append(",\"latencyMs\":{");
+            appendJsonHistogram(json, "preprocessing", backend.getPreprocessingLatency().snapshot());
+            json.append(',');
+            appendJsonHistogram(json, "model", backend.getModelLatency().snapshot());
+            json.append(',');
+            appendJsonHistogram(json, "decoding", backend.getDecodingLatency().snapshot());
+            json.append("}}");
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendJsonHistogram(StringBuilder json, String name, LatencyHistogram.Snapshot snapshot) {
+        json.append('"').append(name).append("\":")
+                .append(String.format(Locale.US,
+                        "{\"count\":%d,\"mean\":%.3f,\"p50\":%.3f,\"p95\":%.3f,\"p99\":%.3f,\"max\":%.3f}",
+                        snapshot.getCount(),
+                        snapshot.getMeanMillis(),
+                        snapshot.getPercentileMillis(50),
+                        snapshot.getPercentileMillis(95),
+                        snapshot.getPercentileMillis(99),
+                        snapshot.getMaxMillis()));
+    }
+
+    /**
+     * Appends {@code value} as a quoted, escaped JSON string.
+     */
+    public static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Frame rate from an exponentially smoothed inter-frame interval.
+     */
+    static final class FrameRate {
+        private long last = -1;
+        private double intervalNanos;
+
+        synchronized void tick(long now) {
+            if (last >= 0 && now > last) {
+                long interval = now - last;
+                intervalNanos = intervalNanos == 0 ? interval
+                        : intervalNanos + FPS_SMOOTHING * (interval - intervalNanos);
+            }
+            last = now;
+        }
+
+        synchronized double getFps() {
+            return intervalNanos == 0 ? 0 : 1e9 / intervalNanos;
+        }
+
+        synchronized void reset() {
+            last = -1;
+            intervalNanos = 0;
+        }
+    }
+}
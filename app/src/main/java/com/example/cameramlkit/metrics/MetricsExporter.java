@@ -0,0 +1,59 @@
+package com.example.cameramlkit.metrics;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes {@link FrameMetrics} as JSON tagged with device and build, so runs on different
+ * devices and builds can be compared.
+ */
+public final class MetricsExporter {
+
+    private MetricsExporter() {
+    }
+
+    public static Map<String, String> describe(Context context, String screen) {
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("screen", screen);
+        info.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        info.put("sdk", String.valueOf(Build.VERSION.SDK_INT));
+        info.put("build", appVersion(context));
+        info.put("exportedAt", String.valueOf(System.currentTimeMillis()));
+        return info;
+    }
+
+    /**
+     * @return the written file, in the app's external files dir under "metrics"
+     */
+    public static File export(Context context, FrameMetrics metrics, String screen) throws IOException {
+        File directory = new File(context.getExternalFilesDir(null), "metrics");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = new File(directory, screen + "-" + System.currentTimeMillis() + ".json");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(metrics.toJson(describe(context, screen)));
+        }
+        return file;
+    }
+
+    private static String appVersion(Context context) {
+        try {
+            PackageInfo packageInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return packageInfo.versionName + " (" + packageInfo.versionCode + ")";
+        } catch (PackageManager.NameNotFoundException e) {
+            return "unknown";
+        }
+    }
+}
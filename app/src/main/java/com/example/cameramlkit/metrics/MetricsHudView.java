@@ -0,0 +1,102 @@
+package com.example.cameramlkit.metrics;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.View;
+import android.widget.Toast;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.widget.AppCompatTextView;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Optional debug HUD showing {@link FrameMetrics}; hidden until {@link #toggle()}d. A long
+ * press exports the current numbers as JSON.
+ */
+public class MetricsHudView extends AppCompatTextView {
+
+    private static final long REFRESH_MS = 500;
+
+    private FrameMetrics metrics;
+    private String screen = "camera";
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            if (metrics != null) {
+                setText(metrics.toHudText());
+            }
+            if (getVisibility() == VISIBLE) {
+                postDelayed(this, REFRESH_MS);
+            }
+        }
+    };
+
+    public MetricsHudView(Context context) {
+        this(context, null);
+    }
+
+    public MetricsHudView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        setTypeface(Typeface.MONOSPACE);
+        setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        setTextColor(Color.WHITE);
+        setBackgroundColor(0x99000000);
+        int padding = Math.round(6 * getResources().getDisplayMetrics().density);
+        setPadding(padding, padding, padding, padding);
+        setOnLongClickListener(view -> {
+            exportJson();
+            return true;
+        });
+    }
+
+    public void setMetrics(FrameMetrics metrics, String screen) {
+        this.metrics = metrics;
+        this.screen = screen;
+    }
+
+    /**
+     * Shows or hides the HUD; usable as a long click listener.
+     */
+    public boolean toggle() {
+        setVisibility(getVisibility() == VISIBLE ? GONE : VISIBLE);
+        return true;
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (refresh == null) {
+            // called from the View constructor, before the fields are set
+            return;
+        }
+        removeCallbacks(refresh);
+        if (visibility == VISIBLE && getVisibility() == VISIBLE) {
+            post(refresh);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(refresh);
+        super.onDetachedFromWindow();
+    }
+
+    private void exportJson() {
+        if (metrics == null) {
+            return;
+        }
+        try {
+            File file = MetricsExporter.export(getContext(), metrics, screen);
+            Toast.makeText(getContext(), "Metrics saved to " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e("info", e.getMessage());
+        }
+    }
+}
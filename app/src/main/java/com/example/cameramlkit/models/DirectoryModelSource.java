@@ -0,0 +1,66 @@
+package com.example.cameramlkit.models;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Models dropped into a folder, e.g. downloaded into app storage.
+ */
+public final class DirectoryModelSource implements ModelSource {
+
+    private final String name;
+    private final File directory;
+
+    public DirectoryModelSource(String name, File directory) {
+        this.name = name;
+        this.directory = directory;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public List<String> list() {
+        String[] files = directory.list((dir, file) -> file.endsWith(ModelRegistry.MODEL_SUFFIX));
+        List<String> models = new ArrayList<>();
+        if (files != null) {
+            Arrays.sort(files);
+            models.addAll(Arrays.asList(files));
+        }
+        return models;
+    }
+
+    @Override
+    public ByteBuffer map(String fileName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, fileName), "r")) {
+            // the mapping stays valid after the channel is closed
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+    }
+
+    @Override
+    public InputStream openSettings(String fileName) throws IOException {
+        File settings = new File(directory, fileName + ModelRegistry.SETTINGS_SUFFIX);
+        return settings.isFile() ? new FileInputStream(settings) : null;
+    }
+
+    @Override
+    public boolean isAssets() {
+        return false;
+    }
+
+    @Override
+    public String pathOf(String fileName) {
+        return new File(directory, fileName).getAbsolutePath();
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.cameramlkit.models;
+
+import com.example.cameramlkit.inference.ModelDescription;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A discovered model: its mapped contents, what it takes and produces, and the settings it is
+ * run with.
+ */
+public final class ModelFile {
+
+    private final String name;
+    private final ModelSource source;
+    private final ByteBuffer buffer;
+    private final ModelDescription description;
+    private final float confidenceThreshold;
+    private final int maxLabels;
+    private final long loadNanos;
+
+    ModelFile(String name, ModelSource source, ByteBuffer buffer, ModelDescription description,
+              float confidenceThreshold, int maxLabels, long loadNanos) {
+        this.name = name;
+        this.source = source;
+        this.buffer = buffer;
+        this.description = description;
+        this.confidenceThreshold = confidenceThreshold;
+        this.maxLabels = maxLabels;
+        this.loadNanos = loadNanos;
+    }
+
+    /**
+     * The file name, which is also the model's key in the registry.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getSourceName() {
+        return source.getName();
+    }
+
+    public boolean isAsset() {
+        return source.isAssets();
+    }
+
+    /**
+     * Asset path when {@link #isAsset()}, absolute file path otherwise.
+     */
+    public String getPath() {
+        return source.pathOf(name);
+    }
+
+    /**
+     * The model contents; a duplicate, so callers may move its position.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.duplicate();
+    }
+
+    public ModelDescription getDescription() {
+        return description;
+    }
+
+    public float getConfidenceThreshold() {
+        return confidenceThreshold;
+    }
+
+    public int getMaxLabels() {
+        return maxLabels;
+    }
+
+    /**
+     * Time to map the model and read its description.
+     */
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * Size of the mapped model. The pages are file backed and shared, but count towards the
+     * process' footprint once touched by inference.
+     */
+    public long getMappedBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Bytes of one input plus one output tensor, allocated per interpreter.
+     */
+    public long getTensorBytes() {
+        return bytesOf(description.getInputShape(), description.getInputType())
+                + bytesOf(description.getOutputShape(), description.getOutputType());
+    }
+
+    private static long bytesOf(int[] shape, ModelDescription.TensorType type) {
+        long count = 1;
+        for (int dimension : shape) {
+            count *= Math.max(1, dimension);
+        }
+        return count * (type == ModelDescription.TensorType.FLOAT32 ? 4 : 1);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + source.getName() + ", " + getMappedBytes() / 1024 + " KB, "
+                + loadNanos / 1_000_000 + " ms, " + description + ")";
+    }
+}
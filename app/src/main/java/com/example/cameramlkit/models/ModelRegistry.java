@@ -0,0 +1,132 @@
+package com.example.cameramlkit.models;
+
+import com.example.cameramlkit.inference.ModelDescription;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The custom models the app can run, discovered in its {@link ModelSource}s. A model in a later
+ * source replaces one of the same name in an earlier source, so a model downloaded to app
+ * storage overrides the bundled asset.
+ * <p>
+ * Each model is run with the confidence threshold and label count from an optional
+ * {@code <model>.properties} next to it ({@code confidenceThreshold=0.5}, {@code maxLabels=3}).
+ */
+public final class ModelRegistry {
+
+    public static final String MODEL_SUFFIX = ".tflite";
+    public static final String SETTINGS_SUFFIX = ".properties";
+    public static final String LABELS_FILE = "labels.txt";
+    public static final float DEFAULT_CONFIDENCE_THRESHOLD = 0.5f;
+    public static final int DEFAULT_MAX_LABELS = 3;
+
+    private final List<ModelSource> sources;
+    private final Map<String, ModelFile> models = new LinkedHashMap<>();
+    private final List<String> errors = new ArrayList<>();
+
+    public ModelRegistry(List<ModelSource> sources) {
+        this.sources = new ArrayList<>(sources);
+    }
+
+    /**
+     * Looks for models again. Models already loaded from the same source are kept as they are;
+     * models that cannot be read are left out and reported by {@link #getErrors()}.
+     */
+    public synchronized List<ModelFile> refresh() {
+        Map<String, ModelFile> found = new LinkedHashMap<>();
+        errors.clear();
+        for (ModelSource source : sources) {
+            List<String> names;
+            try {
+                names = source.list();
+            } catch (IOException e) {
+                errors.add(source.getName() + ": " + e.getMessage());
+                continue;
+            }
+            for (String name : names) {
+                ModelFile known = models.get(name);
+                if (known != null && known.getSourceName().equals(source.getName())) {
+                    found.put(name, known);
+                    continue;
+                }
+                try {
+                    found.put(name, load(source, name));
+                } catch (IOException e) {
+                    errors.add(source.getName() + "/" + name + ": " + e.getMessage());
+                }
+            }
+        }
+        models.clear();
+        models.putAll(found);
+        return getModels();
+    }
+
+    private static ModelFile load(ModelSource source, String name) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer buffer = source.map(name);
+        ModelDescription description = ModelDescription.read(buffer, LABELS_FILE);
+        Properties settings = new Properties();
+        try (InputStream stream = source.openSettings(name)) {
+            if (stream != null) {
+                settings.load(stream);
+            }
+        }
+        float threshold;
+        int maxLabels;
+        try {
+            threshold = Float.parseFloat(settings.getProperty("confidenceThreshold",
+                    String.valueOf(DEFAULT_CONFIDENCE_THRESHOLD)));
+            maxLabels = Integer.parseInt(settings.getProperty("maxLabels", String.valueOf(DEFAULT_MAX_LABELS)));
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad settings: " + e.getMessage(), e);
+        }
+        return new ModelFile(name, source, buffer, description, threshold, maxLabels, System.nanoTime() - start);
+    }
+
+    public synchronized List<ModelFile> getModels() {
+        return Collections.unmodifiableList(new ArrayList<>(models.values()));
+    }
+
+    /**
+     * The model with this file name, or null.
+     */
+    public synchronized ModelFile get(String name) {
+        return models.get(name);
+    }
+
+    /**
+     * The model after {@code current} in discovery order, wrapping around; null if there are none.
+     */
+    public synchronized ModelFile next(String current) {
+        List<String> names = new ArrayList<>(models.keySet());
+        if (names.isEmpty()) {
+            return null;
+        }
+        int index = names.indexOf(current);
+        return models.get(names.get((index + 1) % names.size()));
+    }
+
+    /**
+     * What went wrong in the last {@link #refresh()}.
+     */
+    public synchronized List<String> getErrors() {
+        return Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder("ModelRegistry{");
+        for (ModelFile model : models.values()) {
+            text.append("\n  ").append(model);
+        }
+        return text.append('}').toString();
+    }
+}
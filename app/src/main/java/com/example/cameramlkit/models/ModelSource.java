@@ -0,0 +1,39 @@
+package com.example.cameramlkit.models;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A place models are found in: the APK's assets, a folder in app storage...
+ */
+public interface ModelSource {
+
+    /**
+     * Short name for logs and the model list, e.g. "assets".
+     */
+    String getName();
+
+    /**
+     * File names of the .tflite models found, without a directory.
+     */
+    List<String> list() throws IOException;
+
+    /**
+     * The model, memory mapped where the source allows it.
+     */
+    ByteBuffer map(String fileName) throws IOException;
+
+    /**
+     * The optional settings file next to the model ({@code <fileName>.properties}), or null.
+     */
+    InputStream openSettings(String fileName) throws IOException;
+
+    /**
+     * True when {@link #pathOf} is an asset path, false when it is an absolute file path.
+     */
+    boolean isAssets();
+
+    String pathOf(String fileName);
+}
@@ -0,0 +1,197 @@
+package com.example.cameramlkit.overlay;
+
+import java.util.Arrays;
+
+/**
+ * Flat, reusable list of overlay boxes: coordinates and colors live in primitive arrays and
+ * every label is a slice of one shared char array. Once the arrays have grown to the largest
+ * frame seen, filling and drawing the buffer allocates nothing.
+ */
+public final class BoxBuffer {
+
+    private static final int INITIAL_BOXES = 32;
+    private static final int INITIAL_CHARS = 32 * 24;
+
+    private float[] left = new float[INITIAL_BOXES];
+    private float[] top = new float[INITIAL_BOXES];
+    private float[] right = new float[INITIAL_BOXES];
+    private float[] bottom = new float[INITIAL_BOXES];
+    private int[] boxColor = new int[INITIAL_BOXES];
+    private int[] textColor = new int[INITIAL_BOXES];
+    private int[] labelStart = new int[INITIAL_BOXES];
+    private int[] labelLength = new int[INITIAL_BOXES];
+    private char[] labelChars = new char[INITIAL_CHARS];
+    private int count;
+    private int charCount;
+
+    long generation;
+    long timestampNanos;
+
+    public void reset() {
+        count = 0;
+        charCount = 0;
+    }
+
+    /**
+     * Appends a box; the label of the new box is empty until {@code appendLabel*} is called.
+     */
+    public BoxBuffer add(float left, float top, float right, float bottom, int boxColor, int textColor) {
+        if (count == this.left.length) {
+            grow();
+        }
+        this.left[count] = left;
+        this.top[count] = top;
+        this.right[count] = right;
+        this.bottom[count] = bottom;
+        this.boxColor[count] = boxColor;
+        this.textColor[count] = textColor;
+        labelStart[count] = charCount;
+        labelLength[count] = 0;
+        count++;
+        return this;
+    }
+
+    public BoxBuffer appendLabel(CharSequence text) {
+        int length = text.length();
+        ensureChars(length);
+        for (int i = 0; i < length; i++) {
+            labelChars[charCount++] = text.charAt(i);
+        }
+        labelLength[count - 1] += length;
+        return this;
+    }
+
+    public BoxBuffer appendLabel(char c) {
+        ensureChars(1);
+        labelChars[charCount++] = c;
+        labelLength[count - 1]++;
+        return this;
+    }
+
+    /**
+     * Appends {@code confidence} as a percentage with up to two decimals, printed the way
+     * {@code Math.round(confidence * 10000) / 100.f} is ("87.5", "87.53", "100.0").
+     */
+    public BoxBuffer appendPercent(float confidence) {
+        int hundredths = Math.round(confidence * 10000);
+        if (hundredths < 0) {
+            appendLabel('-');
+            hundredths = -hundredths;
+        }
+        appendInt(hundredths / 100);
+        appendLabel('.');
+        int fraction = hundredths % 100;
+        if (fraction % 10 == 0) {
+            appendLabel((char) ('0' + fraction / 10));
+        } else {
+            appendLabel((char) ('0' + fraction / 10));
+            appendLabel((char) ('0' + fraction % 10));
+        }
+        return this;
+    }
+
+    private void appendInt(int value) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        ensureChars(digits);
+        for (int i = charCount + digits - 1; i >= charCount; i--) {
+            labelChars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        charCount += digits;
+        labelLength[count - 1] += digits;
+    }
+
+    /**
+     * Makes this buffer a copy of {@code other}, e.g. to keep the boxes on screen past the
+     * next frame.
+     */
+    public BoxBuffer copyFrom(BoxBuffer other) {
+        reset();
+        for (int i = 0; i < other.count; i++) {
+            add(other.left[i], other.top[i], other.right[i], other.bottom[i], other.boxColor[i], other.textColor[i]);
+            ensureChars(other.labelLength[i]);
+            System.arraycopy(other.labelChars, other.labelStart[i], labelChars, charCount, other.labelLength[i]);
+            charCount += other.labelLength[i];
+            labelLength[i] = other.labelLength[i];
+        }
+        timestampNanos = other.timestampNanos;
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public float getLeft(int i) {
+        return left[i];
+    }
+
+    public float getTop(int i) {
+        return top[i];
+    }
+
+    public float getRight(int i) {
+        return right[i];
+    }
+
+    public float getBottom(int i) {
+        return bottom[i];
+    }
+
+    public int getBoxColor(int i) {
+        return boxColor[i];
+    }
+
+    public int getTextColor(int i) {
+        return textColor[i];
+    }
+
+    /**
+     * Shared label storage; label {@code i} spans {@link #getLabelStart(int)} and
+     * {@link #getLabelLength(int)}.
+     */
+    public char[] getLabelChars() {
+        return labelChars;
+    }
+
+    public int getLabelStart(int i) {
+        return labelStart[i];
+    }
+
+    public int getLabelLength(int i) {
+        return labelLength[i];
+    }
+
+    public String getLabel(int i) {
+        return new String(labelChars, labelStart[i], labelLength[i]);
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int capacity() {
+        return left.length;
+    }
+
+    private void grow() {
+        int capacity = left.length * 2;
+        left = Arrays.copyOf(left, capacity);
+        top = Arrays.copyOf(top, capacity);
+        right = Arrays.copyOf(right, capacity);
+        bottom = Arrays.copyOf(bottom, capacity);
+        boxColor = Arrays.copyOf(boxColor, capacity);
+        textColor = Arrays.copyOf(textColor, capacity);
+        labelStart = Arrays.copyOf(labelStart, capacity);
+        labelLength = Arrays.copyOf(labelLength, capacity);
+    }
+
+    private void ensureChars(int extra) {
+        if (charCount + extra > labelChars.length) {
+            labelChars = Arrays.copyOf(labelChars, Math.max(labelChars.length * 2, charCount + extra));
+        }
+    }
+}
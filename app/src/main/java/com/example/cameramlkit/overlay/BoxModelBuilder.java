@@ -0,0 +1,73 @@
+package com.example.cameramlkit.overlay;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.RecognizedText;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import java.util.List;
+
+/**
+ * Turns detection results into overlay boxes. Indexed loops keep the frame path free of
+ * iterator allocations.
+ */
+public final class BoxModelBuilder {
+
+    /**
+     * Picks the box color of a recognized text element.
+     */
+    public interface TextColorizer {
+        int boxColorFor(RecognizedText.Element element);
+    }
+
+    private BoxModelBuilder() {
+    }
+
+    /**
+     * One box per object label, captioned "label: 87.5%".
+     */
+    public static void addObjects(BoxBuffer buffer, List<DetectedBox> objects, int boxColor, int textColor) {
+        for (int i = 0; i < objects.size(); i++) {
+            DetectedBox object = objects.get(i);
+            Bounds bounds = object.getBounds();
+            addObject(buffer, bounds.getLeft(), bounds.getTop(), bounds.getRight(), bounds.getBottom(),
+                    object.getLabels(), boxColor, textColor);
+        }
+    }
+
+    /**
+     * The boxes of one object given by its coordinates, for callers that compute them in place
+     * rather than keeping {@link Bounds}.
+     */
+    public static void addObject(BoxBuffer buffer, float left, float top, float right, float bottom,
+                                 List<ScoredLabel> labels, int boxColor, int textColor) {
+        for (int j = 0; j < labels.size(); j++) {
+            ScoredLabel label = labels.get(j);
+            buffer.add(left, top, right, bottom, boxColor, textColor)
+                    .appendLabel(label.getText())
+                    .appendLabel(": ")
+                    .appendPercent(label.getConfidence())
+                    .appendLabel('%');
+        }
+    }
+
+    /**
+     * One box per text element, captioned with the element text.
+     */
+    public static void addTextElements(BoxBuffer buffer, RecognizedText text, TextColorizer colorizer, int textColor) {
+        List<RecognizedText.Block> blocks = text.getBlocks();
+        for (int b = 0; b < blocks.size(); b++) {
+            List<RecognizedText.Line> lines = blocks.get(b).getLines();
+            for (int l = 0; l < lines.size(); l++) {
+                List<RecognizedText.Element> elements = lines.get(l).getElements();
+                for (int e = 0; e < elements.size(); e++) {
+                    RecognizedText.Element element = elements.get(e);
+                    Bounds bounds = element.getBounds();
+                    buffer.add(bounds.getLeft(), bounds.getTop(), bounds.getRight(), bounds.getBottom(),
+                                    colorizer.boxColorFor(element), textColor)
+                            .appendLabel(element.getText());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.cameramlkit.overlay;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.os.Looper;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Persistent overlay drawing the boxes published through its {@link OverlayBuffers}. Lay it
+ * out exactly over the PreviewView so view referenced coordinates line up.
+ * <p>
+ * Results are written from the analyzer thread with {@link #beginFrame(long)} /
+ * {@link #publish()}; drawing ({@link BoxPainter}) reuses preconfigured paints and allocates
+ * nothing.
+ */
+public class BoxOverlayView extends View {
+
+    private final OverlayBuffers buffers = new OverlayBuffers();
+    private final BoxPainter painter = new BoxPainter();
+
+    public BoxOverlayView(Context context) {
+        this(context, null);
+    }
+
+    public BoxOverlayView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        setWillNotDraw(false);
+    }
+
+    public BoxBuffer beginFrame(long timestampNanos) {
+        return buffers.beginFrame(timestampNanos);
+    }
+
+    /**
+     * Publishes the frame started by {@link #beginFrame(long)}; callable from any thread. On the
+     * main thread (e.g. from a frame callback) the boxes are drawn in the current frame.
+     */
+    public void publish() {
+        buffers.publish();
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            invalidate();
+        } else {
+            postInvalidateOnAnimation();
+        }
+    }
+
+    /**
+     * Publishes an empty frame, removing every box.
+     */
+    public void clear() {
+        buffers.beginFrame(0);
+        publish();
+    }
+
+    public OverlayBuffers getBuffers() {
+        return buffers;
+    }
+
+    /**
+     * Main thread: a copy of the boxes currently on screen.
+     */
+    public BoxBuffer snapshot() {
+        return new BoxBuffer().copyFrom(buffers.acquireFront());
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        painter.draw(canvas, buffers.acquireFront());
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.cameramlkit.overlay;
+
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import java.util.List;
+
+/**
+ * The label screen's text, one "Elem: label | Conf: 87.5% " line per label.
+ */
+public final class LabelFormatter {
+
+    private LabelFormatter() {
+    }
+
+    /**
+     * Replaces the content of {@code out}, so one builder can be reused frame after frame.
+     */
+    public static StringBuilder format(List<ScoredLabel> labels, StringBuilder out) {
+        out.setLength(0);
+        for (int i = 0; i < labels.size(); i++) {
+            ScoredLabel label = labels.get(i);
+            out.append("Elem: ")
+                    .append(label.getText())
+                    .append(" | Conf: ")
+                    .append(Math.round(label.getConfidence() * 10000) / 100.f)
+                    .append("% \n");
+        }
+        return out;
+    }
+}
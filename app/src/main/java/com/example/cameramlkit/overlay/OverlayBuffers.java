@@ -0,0 +1,69 @@
+package com.example.cameramlkit.overlay;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands {@link BoxBuffer}s from the analyzer thread to the UI thread without locks or copies.
+ * <p>
+ * The writer fills its private back buffer and {@link #publish()}es it; the reader
+ * {@link #acquireFront()}s the newest published buffer. A third, in-between slot is what makes
+ * the swap atomic: each buffer is only ever owned by the writer, the reader or the slot.
+ */
+public final class OverlayBuffers {
+
+    private BoxBuffer back = new BoxBuffer();
+    private final AtomicReference<BoxBuffer> ready = new AtomicReference<>(new BoxBuffer());
+    private BoxBuffer front = new BoxBuffer();
+
+    private long generation;
+    private volatile long consumedGeneration;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong overwritten = new AtomicLong();
+
+    /**
+     * Writer side: returns the emptied back buffer for the next frame.
+     */
+    public BoxBuffer beginFrame(long timestampNanos) {
+        back.reset();
+        back.timestampNanos = timestampNanos;
+        return back;
+    }
+
+    /**
+     * Writer side: makes the back buffer the newest result. If the reader never picked up the
+     * previously published buffer, that buffer is recycled unseen.
+     */
+    public void publish() {
+        back.generation = ++generation;
+        BoxBuffer previous = ready.getAndSet(back);
+        if (previous.generation > consumedGeneration) {
+            overwritten.incrementAndGet();
+        }
+        back = previous;
+        published.incrementAndGet();
+    }
+
+    /**
+     * Reader side: the newest published buffer. Stays valid until the next call.
+     */
+    public BoxBuffer acquireFront() {
+        BoxBuffer candidate = ready.get();
+        if (candidate.generation > front.generation) {
+            front = ready.getAndSet(front);
+            consumedGeneration = front.generation;
+        }
+        return front;
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * Published buffers that were replaced before the reader ever saw them.
+     */
+    public long getOverwritten() {
+        return overwritten.get();
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.cameramlkit.overlay;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.tracking.ObjectTracker;
+
+/**
+ * Draws tracked objects on a {@link BoxOverlayView} at display rate: results update the
+ * tracker, and every vsync in between redraws the boxes where the tracker predicts them, so
+ * boxes move smoothly even when the detector runs slower than the screen or skips frames.
+ * <p>
+ * Main thread only; use {@link #onResult} as the pipeline's UI sink.
+ */
+public final class TrackingOverlay implements DefaultLifecycleObserver {
+
+    private final BoxOverlayView overlay;
+    private final ObjectTracker tracker;
+    private final int boxColor;
+    private final int textColor;
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> onFrame();
+    // the tracker runs on frame timestamps, whose base is the camera's (realtime or uptime,
+    // possibly another one after a lens switch); the system clock only measures the time
+    // since the last result arrived
+    private long resultTimestampNanos;
+    private long resultArrivalNanos;
+    private boolean frameScheduled;
+    private boolean stopped;
+
+    public TrackingOverlay(LifecycleOwner owner, BoxOverlayView overlay, ObjectTracker tracker,
+                           int boxColor, int textColor) {
+        this.overlay = overlay;
+        this.tracker = tracker;
+        this.boxColor = boxColor;
+        this.textColor = textColor;
+        owner.getLifecycle().addObserver(this);
+    }
+
+    public ObjectTracker getTracker() {
+        return tracker;
+    }
+
+    public void onResult(DetectionResult result) {
+        if (stopped) {
+            return;
+        }
+        resultTimestampNanos = result.getTimestampNanos();
+        resultArrivalNanos = SystemClock.elapsedRealtimeNanos();
+        tracker.update(result.getObjects(), resultTimestampNanos);
+        draw(resultTimestampNanos);
+    }
+
+    /**
+     * Drops every track and the boxes on screen, e.g. after the camera switched lens.
+     */
+    public void clear() {
+        tracker.clear();
+        if (!stopped) {
+            draw(frameTimeNow());
+        }
+    }
+
+    private void onFrame() {
+        frameScheduled = false;
+        if (!stopped) {
+            draw(frameTimeNow());
+        }
+    }
+
+    // now, in the time base of the frames
+    private long frameTimeNow() {
+        return resultTimestampNanos + (SystemClock.elapsedRealtimeNanos() - resultArrivalNanos);
+    }
+
+    private void draw(long nowNanos) {
+        BoxBuffer boxes = overlay.beginFrame(nowNanos);
+        tracker.predictInto(boxes, nowNanos, boxColor, textColor);
+        overlay.publish();
+        // keep animating while something is on screen, one last empty frame clears it
+        if (boxes.size() > 0 && !frameScheduled) {
+            frameScheduled = true;
+            choreographer.postFrameCallback(frameCallback);
+        }
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        stopped = true;
+        choreographer.removeFrameCallback(frameCallback);
+        tracker.clear();
+    }
+}
@@ -0,0 +1,368 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Control loop that keeps inference latency within a budget by walking a ladder of analysis
+ * {@link Level}s: analysis resolution, frame skipping and detector mode.
+ * <p>
+ * Latency is measured as the time between a frame entering the detector and its result
+ * coming back, smoothed with an exponential moving average. The governor steps to a cheaper
+ * level as soon as the average exceeds the budget, and back to a richer one only after the
+ * average has stayed well below it for a while; a step up that has to be undone soon after
+ * doubles that wait, so a level sitting right at the budget does not oscillate. After every
+ * change the first few samples are ignored, because switching resolution or detector makes
+ * the next inferences unrepresentative.
+ * <p>
+ * Thermal status (the PowerManager THERMAL_STATUS_* values) puts a floor under the ladder:
+ * the hotter the device, the cheaper the richest level allowed.
+ * <p>
+ * Register it as a {@link PipelineListener} and frame filter of the pipeline, and apply
+ * resolution and detector mode from the {@link Listener}; frame skipping is applied by the
+ * filter itself.
+ */
+public final class AnalysisGovernor implements PipelineListener, Predicate<Frame> {
+
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_LIGHT = 1;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+    public static final int THERMAL_CRITICAL = 4;
+
+    private static final int STARTS = 8;
+    private static final double SMOOTHING = 0.25;
+    private static final double UPSHIFT_FRACTION = 0.6;
+    private static final int MAX_BACKOFF = 8;
+
+    public interface Listener {
+        /**
+         * Called on the thread that delivered the sample or thermal status.
+         */
+        void onLevelChanged(Level previous, Level current);
+    }
+
+    /**
+     * One rung of the ladder. Lower indexes are richer and more expensive.
+     */
+    public static final class Level {
+        private final int width;
+        private final int height;
+        private final int frameStride;
+        private final boolean fastDetector;
+
+        public Level(int width, int height, int frameStride, boolean fastDetector) {
+            if (frameStride < 1) {
+                throw new IllegalArgumentException("frameStride must be at least 1");
+            }
+            this.width = width;
+            this.height = height;
+            this.frameStride = frameStride;
+            this.fastDetector = fastDetector;
+        }
+
+        /**
+         * Target analysis resolution, landscape.
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Analyze one frame out of this many.
+         */
+        public int getFrameStride() {
+            return frameStride;
+        }
+
+        public boolean isFastDetector() {
+            return fastDetector;
+        }
+
+        public boolean hasSameResolution(Level other) {
+            return other != null && width == other.width && height == other.height;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%dx%d 1/%d %s", width, height, frameStride,
+                    fastDetector ? "fast" : "accurate");
+        }
+    }
+
+    private final List<Level> levels;
+    private final long budgetNanos;
+    private final long upshiftDelayNanos;
+    private final int settleSamples;
+    private final LongSupplier clock;
+    private final Listener listener;
+
+    private final long[] startKeys = new long[STARTS];
+    private final long[] startTimes = new long[STARTS];
+
+    private volatile int current;
+    private int thermalStatus = THERMAL_NONE;
+    private double averageNanos;
+    private int samples;
+    private long changedAt;
+    private boolean lastChangeWasUp;
+    private int backoff = 1;
+    private long frameCounter;
+    private int changes;
+
+    private AnalysisGovernor(Builder builder) {
+        this.levels = Collections.unmodifiableList(new ArrayList<>(builder.levels));
+        this.budgetNanos = builder.budgetNanos;
+        this.upshiftDelayNanos = builder.upshiftDelayNanos;
+        this.settleSamples = builder.settleSamples;
+        this.clock = builder.clock;
+        this.listener = builder.listener;
+        this.current = builder.startLevel;
+        this.changedAt = clock.getAsLong();
+    }
+
+    /**
+     * The ladder used by the camera screens: full detector at 1280x720 and 640x480 (the
+     * CameraX default, where it starts), then the fast detector if there is one and 320x240,
+     * which lower the latency of each inference, and last frame skipping, which only lowers
+     * the load and is mostly reached under thermal pressure.
+     */
+    public static List<Level> defaultLevels(boolean withFastDetector) {
+        List<Level> levels = new ArrayList<>(Arrays.asList(
+                new Level(1280, 720, 1, false),
+                new Level(640, 480, 1, false)));
+        if (withFastDetector) {
+            levels.add(new Level(640, 480, 1, true));
+        }
+        levels.add(new Level(320, 240, 1, withFastDetector));
+        levels.add(new Level(320, 240, 2, withFastDetector));
+        levels.add(new Level(320, 240, 3, withFastDetector));
+        return levels;
+    }
+
+    public Level getLevel() {
+        return levels.get(current);
+    }
+
+    public int getLevelIndex() {
+        return current;
+    }
+
+    public List<Level> getLevels() {
+        return levels;
+    }
+
+    public synchronized double getAverageLatencyMillis() {
+        return averageNanos / 1e6;
+    }
+
+    public synchronized int getThermalStatus() {
+        return thermalStatus;
+    }
+
+    public synchronized int getChangeCount() {
+        return changes;
+    }
+
+    /**
+     * Frame skipping: accepts one frame out of the current level's stride.
+     */
+    @Override
+    public boolean test(Frame frame) {
+        int stride = levels.get(current).getFrameStride();
+        synchronized (this) {
+            return frameCounter++ % stride == 0;
+        }
+    }
+
+    @Override
+    public synchronized void onFrameStarted(Frame frame) {
+        int slot = (int) (frame.getSequence() & (STARTS - 1));
+        startKeys[slot] = frame.getTimestampNanos();
+        startTimes[slot] = clock.getAsLong();
+    }
+
+    @Override
+    public void onDetectorDone(Frame frame, DetectionResult result) {
+        long latency;
+        synchronized (this) {
+            int slot = (int) (frame.getSequence() & (STARTS - 1));
+            if (startKeys[slot] != frame.getTimestampNanos()) {
+                return;
+            }
+            latency = clock.getAsLong() - startTimes[slot];
+        }
+        onInferenceLatency(latency);
+    }
+
+    @Override
+    public void onResultProcessed(DetectionResult result) {
+    }
+
+    /**
+     * Feeds one latency sample into the control loop.
+     */
+    public void onInferenceLatency(long nanos) {
+        Level previous;
+        Level next;
+        synchronized (this) {
+            samples++;
+            if (samples <= settleSamples) {
+                return;
+            }
+            averageNanos = samples == settleSamples + 1 ? nanos
+                    : averageNanos + SMOOTHING * (nanos - averageNanos);
+
+            int target = current;
+            long now = clock.getAsLong();
+            if (averageNanos > budgetNanos && current < levels.size() - 1) {
+                target = current + 1;
+                if (lastChangeWasUp && now - changedAt < upshiftDelayNanos * backoff) {
+                    // the richer level we just probed does not fit the budget
+                    backoff = Math.min(MAX_BACKOFF, backoff * 2);
+                }
+            } else if (averageNanos < budgetNanos * UPSHIFT_FRACTION
+                    && current > thermalFloor()
+                    && now - changedAt >= upshiftDelayNanos * backoff) {
+                target = current - 1;
+            } else if (lastChangeWasUp && now - changedAt >= upshiftDelayNanos * MAX_BACKOFF) {
+                // the last step up has held for long enough to trust the ladder again
+                backoff = 1;
+            }
+            if (target == current) {
+                return;
+            }
+            previous = levels.get(current);
+            setLevel(target, now);
+            next = levels.get(current);
+        }
+        notifyChanged(previous, next);
+    }
+
+    /**
+     * @param status one of the THERMAL_* values; the PowerManager constants can be passed
+     *               as they are
+     */
+    public void onThermalStatus(int status) {
+        Level previous;
+        Level next;
+        synchronized (this) {
+            thermalStatus = status;
+            int floor = thermalFloor();
+            if (current >= floor) {
+                return;
+            }
+            previous = levels.get(current);
+            setLevel(floor, clock.getAsLong());
+            next = levels.get(current);
+        }
+        notifyChanged(previous, next);
+    }
+
+    /**
+     * Richest level index the current thermal status allows.
+     */
+    synchronized int thermalFloor() {
+        int last = levels.size() - 1;
+        switch (thermalStatus) {
+            case THERMAL_NONE:
+            case THERMAL_LIGHT:
+                return 0;
+            case THERMAL_MODERATE:
+                return Math.min(last, 2);
+            case THERMAL_SEVERE:
+                return Math.max(0, last - 1);
+            default:
+                return last;
+        }
+    }
+
+    private void setLevel(int index, long now) {
+        lastChangeWasUp = index < current;
+        current = index;
+        changedAt = now;
+        samples = 0;
+        changes++;
+    }
+
+    private void notifyChanged(Level previous, Level next) {
+        if (listener != null) {
+            listener.onLevelChanged(previous, next);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "level %d/%d (%s) avg %.1f ms, budget %d ms, thermal %d",
+                current, levels.size() - 1, levels.get(current), averageNanos / 1e6,
+                TimeUnit.NANOSECONDS.toMillis(budgetNanos), thermalStatus);
+    }
+
+    public static final class Builder {
+        private final List<Level> levels = new ArrayList<>();
+        private long budgetNanos;
+        private int startLevel;
+        private long upshiftDelayNanos = TimeUnit.SECONDS.toNanos(3);
+        private int settleSamples = 3;
+        private LongSupplier clock = System::nanoTime;
+        private Listener listener;
+
+        public Builder(long budgetMillis) {
+            this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        }
+
+        public Builder setLevels(List<Level> levels) {
+            this.levels.clear();
+            this.levels.addAll(levels);
+            return this;
+        }
+
+        public Builder setStartLevel(int startLevel) {
+            this.startLevel = startLevel;
+            return this;
+        }
+
+        /**
+         * Time the average must stay well under budget before trying a richer level.
+         */
+        public Builder setUpshiftDelayMillis(long millis) {
+            this.upshiftDelayNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+            return this;
+        }
+
+        public Builder setSettleSamples(int settleSamples) {
+            this.settleSamples = settleSamples;
+            return this;
+        }
+
+        public Builder setClock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public Builder setListener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public AnalysisGovernor build() {
+            if (levels.isEmpty()) {
+                throw new IllegalStateException("At least one level is required");
+            }
+            if (startLevel < 0 || startLevel >= levels.size()) {
+                throw new IllegalStateException("Start level out of range");
+            }
+            return new AnalysisGovernor(this);
+        }
+    }
+}
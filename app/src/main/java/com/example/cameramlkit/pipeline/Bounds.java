@@ -0,0 +1,88 @@
+package com.example.cameramlkit.pipeline;
+
+/**
+ * Axis-aligned box in the coordinate space of the result it belongs to.
+ */
+public final class Bounds {
+
+    public static final Bounds EMPTY = new Bounds(0f, 0f, 0f, 0f);
+
+    private final float left;
+    private final float top;
+    private final float right;
+    private final float bottom;
+
+    public Bounds(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public float getLeft() {
+        return left;
+    }
+
+    public float getTop() {
+        return top;
+    }
+
+    public float getRight() {
+        return right;
+    }
+
+    public float getBottom() {
+        return bottom;
+    }
+
+    public float width() {
+        return right - left;
+    }
+
+    public float height() {
+        return bottom - top;
+    }
+
+    public float centerX() {
+        return (left + right) * 0.5f;
+    }
+
+    public float centerY() {
+        return (top + bottom) * 0.5f;
+    }
+
+    public float area() {
+        return Math.max(0f, width()) * Math.max(0f, height());
+    }
+
+    public float iou(Bounds other) {
+        float w = Math.min(right, other.right) - Math.max(left, other.left);
+        float h = Math.min(bottom, other.bottom) - Math.max(top, other.top);
+        if (w <= 0 || h <= 0) {
+            return 0f;
+        }
+        float intersection = w * h;
+        return intersection / (area() + other.area() - intersection);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Bounds)) return false;
+        Bounds b = (Bounds) o;
+        return left == b.left && top == b.top && right == b.right && bottom == b.bottom;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = Float.floatToIntBits(left);
+        h = 31 * h + Float.floatToIntBits(top);
+        h = 31 * h + Float.floatToIntBits(right);
+        return 31 * h + Float.floatToIntBits(bottom);
+    }
+
+    @Override
+    public String toString() {
+        return "Bounds(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One detected object: its box, the optional detector tracking id and its labels.
+ */
+public final class DetectedBox {
+
+    public static final int NO_TRACKING_ID = -1;
+
+    private final Bounds bounds;
+    private final int trackingId;
+    private final List<ScoredLabel> labels;
+
+    public DetectedBox(Bounds bounds, int trackingId, List<ScoredLabel> labels) {
+        this.bounds = bounds;
+        this.trackingId = trackingId;
+        this.labels = labels == null ? Collections.<ScoredLabel>emptyList() : labels;
+    }
+
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    public int getTrackingId() {
+        return trackingId;
+    }
+
+    public boolean hasTrackingId() {
+        return trackingId != NO_TRACKING_ID;
+    }
+
+    public List<ScoredLabel> getLabels() {
+        return labels;
+    }
+
+    public DetectedBox withBounds(Bounds bounds) {
+        return new DetectedBox(bounds, trackingId, labels);
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Frame source -> detector stage -> result processors -> sink.
+ * <p>
+ * The pipeline does not own any thread: frames are processed on the thread that delivers
+ * them (the shared analysis thread from {@link PipelineExecutors} on device, the test thread
+ * on the JVM) and results on whatever thread the detector stage calls back on.
+ */
+public final class DetectionPipeline implements Consumer<Frame> {
+
+    private final FrameSource source;
+    private final DetectorStage detector;
+    private final List<ResultProcessor> processors;
+    private final ResultSink sink;
+    private final Consumer<Throwable> errorListener;
+    private final PipelineListener[] listeners;
+    private final Predicate<Frame> frameFilter;
+    private final ResultReuse resultReuse;
+
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+    private final AtomicLong framesReused = new AtomicLong();
+    private final AtomicLong resultsDelivered = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile boolean closed;
+
+    private final DetectorStage.Callback callback = new DetectorStage.Callback() {
+        @Override
+        public void onResult(Frame frame, DetectionResult result) {
+            if (closed) {
+                return;
+            }
+            for (PipelineListener listener : listeners) {
+                listener.onDetectorDone(frame, result);
+            }
+            deliver(result);
+        }
+
+        @Override
+        public void onError(Frame frame, Throwable error) {
+            errors.incrementAndGet();
+            if (errorListener != null && !closed) {
+                errorListener.accept(error);
+            }
+        }
+    };
+
+    private DetectionPipeline(Builder builder) {
+        this.source = builder.source;
+        this.detector = builder.detector;
+        this.processors = Collections.unmodifiableList(new ArrayList<>(builder.processors));
+        this.sink = builder.sink;
+        this.errorListener = builder.errorListener;
+        this.listeners = builder.listeners.toArray(new PipelineListener[0]);
+        this.frameFilter = builder.frameFilter;
+        this.resultReuse = builder.resultReuse;
+    }
+
+    /**
+     * Starts pulling from the frame source, if one was configured. Sources that push frames
+     * on their own (the camera analyzer) call {@link #accept(Frame)} directly instead.
+     */
+    public void start() {
+        if (source != null) {
+            source.start(this);
+        }
+    }
+
+    @Override
+    public void accept(Frame frame) {
+        if (closed) {
+            frame.release();
+            return;
+        }
+        framesReceived.incrementAndGet();
+        if (frameFilter != null && !frameFilter.test(frame)) {
+            framesSkipped.incrementAndGet();
+            for (PipelineListener listener : listeners) {
+                listener.onFrameSkipped(frame);
+            }
+            frame.release();
+            return;
+        }
+        if (resultReuse != null) {
+            DetectionResult reused = resultReuse.reuse(frame);
+            if (reused != null) {
+                framesReused.incrementAndGet();
+                for (PipelineListener listener : listeners) {
+                    listener.onFrameReused(frame, reused);
+                }
+                frame.release();
+                deliver(reused);
+                return;
+            }
+        }
+        for (PipelineListener listener : listeners) {
+            listener.onFrameStarted(frame);
+        }
+        try {
+            detector.detect(frame, callback);
+        } catch (RuntimeException e) {
+            frame.release();
+            callback.onError(frame, e);
+        }
+    }
+
+    private void deliver(DetectionResult result) {
+        for (ResultProcessor processor : processors) {
+            result = processor.process(result);
+            if (result == null) {
+                return;
+            }
+        }
+        for (PipelineListener listener : listeners) {
+            listener.onResultProcessed(result);
+        }
+        sink.onResult(result);
+        resultsDelivered.incrementAndGet();
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (source != null) {
+            source.stop();
+        }
+        detector.close();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public DetectorStage getDetector() {
+        return detector;
+    }
+
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    public long getFramesSkipped() {
+        return framesSkipped.get();
+    }
+
+    /**
+     * Frames answered by the {@link ResultReuse} instead of the detector.
+     */
+    public long getFramesReused() {
+        return framesReused.get();
+    }
+
+    public long getResultsDelivered() {
+        return resultsDelivered.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public static final class Builder {
+        private FrameSource source;
+        private DetectorStage detector;
+        private final List<ResultProcessor> processors = new ArrayList<>();
+        private ResultSink sink;
+        private Consumer<Throwable> errorListener;
+        private final List<PipelineListener> listeners = new ArrayList<>();
+        private Predicate<Frame> frameFilter;
+        private ResultReuse resultReuse;
+
+        public Builder setFrameSource(FrameSource source) {
+            this.source = source;
+            return this;
+        }
+
+        public Builder setDetector(DetectorStage detector) {
+            this.detector = detector;
+            return this;
+        }
+
+        public Builder addProcessor(ResultProcessor processor) {
+            processors.add(processor);
+            return this;
+        }
+
+        public Builder setSink(ResultSink sink) {
+            this.sink = sink;
+            return this;
+        }
+
+        public Builder setErrorListener(Consumer<Throwable> errorListener) {
+            this.errorListener = errorListener;
+            return this;
+        }
+
+        public Builder addListener(PipelineListener listener) {
+            listeners.add(listener);
+            return this;
+        }
+
+        /**
+         * Frames the filter rejects are released without reaching the detector, e.g. to
+         * analyze only every other frame.
+         */
+        public Builder setFrameFilter(Predicate<Frame> frameFilter) {
+            this.frameFilter = frameFilter;
+            return this;
+        }
+
+        /**
+         * Asked before each frame that passed the filter goes to the detector; a result it
+         * returns goes through the processors to the sink in place of the detector's.
+         */
+        public Builder setResultReuse(ResultReuse resultReuse) {
+            this.resultReuse = resultReuse;
+            return this;
+        }
+
+        public DetectionPipeline build() {
+            if (detector == null) {
+                throw new IllegalStateException("A detector stage is required");
+            }
+            if (sink == null) {
+                throw new IllegalStateException("A result sink is required");
+            }
+            return new DetectionPipeline(this);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything the detector stage found in one frame. Boxes are in the coordinate space the
+ * detector stage was configured for (view coordinates for the live camera).
+ */
+public final class DetectionResult {
+
+    private final long timestampNanos;
+    private final List<DetectedBox> objects;
+    private final List<ScoredLabel> labels;
+    private final RecognizedText text;
+
+    private DetectionResult(Builder builder) {
+        this.timestampNanos = builder.timestampNanos;
+        this.objects = Collections.unmodifiableList(builder.objects);
+        this.labels = Collections.unmodifiableList(builder.labels);
+        this.text = builder.text;
+    }
+
+    public static DetectionResult empty(long timestampNanos) {
+        return new Builder(timestampNanos).build();
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public List<DetectedBox> getObjects() {
+        return objects;
+    }
+
+    public List<ScoredLabel> getLabels() {
+        return labels;
+    }
+
+    public RecognizedText getText() {
+        return text;
+    }
+
+    /**
+     * The same detections for another frame, e.g. one of an unchanged scene.
+     */
+    public DetectionResult withTimestamp(long timestampNanos) {
+        return new Builder(timestampNanos)
+                .addObjects(objects)
+                .addLabels(labels)
+                .setText(text)
+                .build();
+    }
+
+    public Builder toBuilder() {
+        return new Builder(timestampNanos)
+                .addObjects(objects)
+                .addLabels(labels)
+                .setText(text);
+    }
+
+    public static final class Builder {
+        private final long timestampNanos;
+        private final List<DetectedBox> objects = new ArrayList<>();
+        private final List<ScoredLabel> labels = new ArrayList<>();
+        private RecognizedText text;
+
+        public Builder(long timestampNanos) {
+            this.timestampNanos = timestampNanos;
+        }
+
+        public Builder addObject(DetectedBox object) {
+            objects.add(object);
+            return this;
+        }
+
+        public Builder addObjects(List<DetectedBox> objects) {
+            this.objects.addAll(objects);
+            return this;
+        }
+
+        public Builder clearObjects() {
+            objects.clear();
+            return this;
+        }
+
+        public Builder addLabel(ScoredLabel label) {
+            labels.add(label);
+            return this;
+        }
+
+        public Builder addLabels(List<ScoredLabel> labels) {
+            this.labels.addAll(labels);
+            return this;
+        }
+
+        public Builder clearLabels() {
+            labels.clear();
+            return this;
+        }
+
+        public Builder setText(RecognizedText text) {
+            this.text = text;
+            return this;
+        }
+
+        public DetectionResult build() {
+            return new DetectionResult(this);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.cameramlkit.pipeline;
+
+/**
+ * Which detectors of a fused stage run on which frame. Detector {@code i} runs on one frame
+ * out of {@code periods[i]}; the phases are staggered so that slow detectors with the same
+ * period do not all land on the same frame.
+ */
+public final class DetectorSchedule {
+
+    private static final int MAX_DETECTORS = 31;
+    private static final int MAX_HYPERPERIOD = 720;
+
+    private final int[] periods;
+    private final int[] offsets;
+
+    public DetectorSchedule(int... periods) {
+        if (periods.length == 0 || periods.length > MAX_DETECTORS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_DETECTORS + " detectors");
+        }
+        this.periods = periods.clone();
+        this.offsets = new int[periods.length];
+
+        int hyperperiod = 1;
+        for (int period : periods) {
+            if (period < 1) {
+                throw new IllegalArgumentException("Periods must be at least 1");
+            }
+            hyperperiod = Math.min(MAX_HYPERPERIOD, lcm(hyperperiod, period));
+        }
+        // greedily give each detector the phase whose frames are the least busy so far
+        int[] load = new int[hyperperiod];
+        for (int i = 0; i < periods.length; i++) {
+            int period = periods[i];
+            int best = 0;
+            int bestLoad = Integer.MAX_VALUE;
+            for (int offset = 0; offset < period; offset++) {
+                int worst = 0;
+                for (int frame = offset; frame < hyperperiod; frame += period) {
+                    worst = Math.max(worst, load[frame]);
+                }
+                if (worst < bestLoad) {
+                    bestLoad = worst;
+                    best = offset;
+                }
+            }
+            offsets[i] = best;
+            for (int frame = best; frame < hyperperiod; frame += period) {
+                load[frame]++;
+            }
+        }
+    }
+
+    private static int lcm(int a, int b) {
+        int x = a;
+        int y = b;
+        while (y != 0) {
+            int t = x % y;
+            x = y;
+            y = t;
+        }
+        return a / x * b;
+    }
+
+    public int size() {
+        return periods.length;
+    }
+
+    public int getPeriod(int detector) {
+        return periods[detector];
+    }
+
+    public int getOffset(int detector) {
+        return offsets[detector];
+    }
+
+    /**
+     * Bit {@code i} is set when detector {@code i} runs on the given frame.
+     */
+    public int maskFor(long frame) {
+        int mask = 0;
+        for (int i = 0; i < periods.length; i++) {
+            if (frame % periods[i] == offsets[i]) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.cameramlkit.pipeline;
+
+/**
+ * Runs inference for one frame. The stage owns the frame it is given and must release
+ * (or detach) it once its pixels are no longer needed; the callback may be invoked on any thread.
+ */
+public interface DetectorStage {
+
+    void detect(Frame frame, Callback callback);
+
+    /**
+     * Frees the detector clients held by this stage. Called once when the pipeline closes.
+     */
+    void close();
+
+    /**
+     * Forgets what this stage kept from the frames seen so far, e.g. when the camera switches lens
+     * and the next frames show another scene, counted from another time base.
+     */
+    default void reset() {
+    }
+
+    interface Callback {
+        void onResult(Frame frame, DetectionResult result);
+
+        void onError(Frame frame, Throwable error);
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.cameramlkit.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One analysis frame travelling through the pipeline. On device it wraps the CameraX
+ * ImageProxy (see {@link #getImage()}); in tests it only carries a synthetic luma plane.
+ * <p>
+ * Whoever ends the frame's journey must call {@link #release()} exactly once; extra calls
+ * are ignored.
+ */
+public final class Frame {
+
+    private final long sequence;
+    private final long timestampNanos;
+    private final int width;
+    private final int height;
+    private final int rotationDegrees;
+    private final ByteBuffer luma;
+    private final int lumaRowStride;
+    private final int lumaPixelStride;
+    private final Object image;
+    private final Runnable releaser;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Frame(Builder builder) {
+        this.sequence = builder.sequence;
+        this.timestampNanos = builder.timestampNanos;
+        this.width = builder.width;
+        this.height = builder.height;
+        this.rotationDegrees = builder.rotationDegrees;
+        this.luma = builder.luma;
+        this.lumaRowStride = builder.lumaRowStride;
+        this.lumaPixelStride = builder.lumaPixelStride;
+        this.image = builder.image;
+        this.releaser = builder.releaser;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    /**
+     * Y plane of the frame, or null when the source has no pixel data (e.g. replayed results).
+     * The buffer is only valid until the frame is released.
+     */
+    public ByteBuffer getLuma() {
+        return luma;
+    }
+
+    public int getLumaRowStride() {
+        return lumaRowStride;
+    }
+
+    public int getLumaPixelStride() {
+        return lumaPixelStride;
+    }
+
+    /**
+     * Platform image behind this frame (an ImageProxy on device), or null.
+     */
+    public Object getImage() {
+        return image;
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    public void release() {
+        if (released.compareAndSet(false, true) && releaser != null) {
+            releaser.run();
+        }
+    }
+
+    /**
+     * Marks the frame as released without running the releaser, for stages that hand the
+     * underlying image to code which closes it on its own (MlKitAnalyzer does).
+     */
+    public void detach() {
+        released.set(true);
+    }
+
+    public static final class Builder {
+        private final int width;
+        private final int height;
+        private long sequence;
+        private long timestampNanos;
+        private int rotationDegrees;
+        private ByteBuffer luma;
+        private int lumaRowStride;
+        private int lumaPixelStride = 1;
+        private Object image;
+        private Runnable releaser;
+
+        public Builder(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.lumaRowStride = width;
+        }
+
+        public Builder setSequence(long sequence) {
+            this.sequence = sequence;
+            return this;
+        }
+
+        public Builder setTimestampNanos(long timestampNanos) {
+            this.timestampNanos = timestampNanos;
+            return this;
+        }
+
+        public Builder setRotationDegrees(int rotationDegrees) {
+            this.rotationDegrees = rotationDegrees;
+            return this;
+        }
+
+        public Builder setLuma(ByteBuffer luma, int rowStride, int pixelStride) {
+            this.luma = luma;
+            this.lumaRowStride = rowStride;
+            this.lumaPixelStride = pixelStride;
+            return this;
+        }
+
+        public Builder setImage(Object image) {
+            this.image = image;
+            return this;
+        }
+
+        public Builder setReleaser(Runnable releaser) {
+            this.releaser = releaser;
+            return this;
+        }
+
+        public Frame build() {
+            return new Frame(this);
+        }
+    }
+}
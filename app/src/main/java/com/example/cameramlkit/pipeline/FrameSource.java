@@ -0,0 +1,14 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.function.Consumer;
+
+/**
+ * Anything that produces frames for a {@link DetectionPipeline}: the live camera on device,
+ * synthetic or recorded sequences on the JVM.
+ */
+public interface FrameSource {
+
+    void start(Consumer<Frame> consumer);
+
+    void stop();
+}
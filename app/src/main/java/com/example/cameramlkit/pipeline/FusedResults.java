@@ -0,0 +1,76 @@
+package com.example.cameramlkit.pipeline;
+
+/**
+ * Merges the partial results of detectors that run at different cadences into one
+ * {@link DetectionResult}: every source contributes its latest result until it is older than
+ * the maximum age, so text found three frames ago stays on screen next to this frame's objects.
+ */
+public final class FusedResults {
+
+    private final DetectionResult[] latest;
+    private final long maxAgeNanos;
+    private int generation;
+
+    public FusedResults(int sources, long maxAgeNanos) {
+        this.latest = new DetectionResult[sources];
+        this.maxAgeNanos = maxAgeNanos;
+    }
+
+    public synchronized void put(int source, DetectionResult partial) {
+        put(source, partial, generation);
+    }
+
+    /**
+     * Stores a partial of a frame taken at the given {@link #getGeneration() generation}; partials
+     * of frames taken before the last {@link #reset()} are dropped.
+     */
+    public synchronized void put(int source, DetectionResult partial, int generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        DetectionResult previous = latest[source];
+        if (previous == null || previous.getTimestampNanos() <= partial.getTimestampNanos()) {
+            latest[source] = partial;
+        }
+    }
+
+    /**
+     * Objects and labels of every fresh source, in source order, and the text of the first
+     * fresh source that has any.
+     */
+    public synchronized DetectionResult assemble(long timestampNanos) {
+        DetectionResult.Builder builder = new DetectionResult.Builder(timestampNanos);
+        boolean hasText = false;
+        for (DetectionResult partial : latest) {
+            if (partial == null || timestampNanos - partial.getTimestampNanos() > maxAgeNanos) {
+                continue;
+            }
+            builder.addObjects(partial.getObjects());
+            builder.addLabels(partial.getLabels());
+            if (!hasText && partial.getText() != null) {
+                builder.setText(partial.getText());
+                hasText = true;
+            }
+        }
+        return builder.build();
+    }
+
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Clears all partials and starts a new generation, so partials still in flight for earlier
+     * frames are not kept: they may count time from another base and would outlive every fresh one.
+     */
+    public synchronized void reset() {
+        clear();
+        generation++;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < latest.length; i++) {
+            latest[i] = null;
+        }
+    }
+}
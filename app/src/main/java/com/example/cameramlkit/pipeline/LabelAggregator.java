@@ -0,0 +1,288 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steadies image labels over time. Each label keeps an exponentially decayed confidence (a
+ * label missing from a frame counts as 0), and the top K shown only change with hysteresis: a
+ * label enters above {@code enterThreshold}, leaves below {@code exitThreshold}, and displaces
+ * a shown one only when clearly stronger.
+ * <p>
+ * As a {@link ResultProcessor} it replaces the result's labels with the shown set. That list,
+ * confidences included, stays the same until the set changes, so the UI can skip equal ones
+ * ({@link #sameLabels}). Runs on the analysis thread, so it sees every result, including the
+ * ones the UI never gets.
+ */
+public final class LabelAggregator implements ResultProcessor {
+
+    private static final float SWAP_MARGIN = 0.1f;
+    private static final float FORGET_BELOW = 0.01f;
+
+    private final int topK;
+    private final double timeConstantNanos;
+    private final float enterThreshold;
+    private final float exitThreshold;
+
+    // open addressing map from label index to its slot
+    private int[] keys = new int[64];
+    private boolean[] used = new boolean[64];
+    private float[] scores = new float[64];
+    private String[] texts = new String[64];
+    private boolean[] shown = new boolean[64];
+    private int size;
+
+    private long lastTimestampNanos = Long.MIN_VALUE;
+    private List<ScoredLabel> shownLabels = Collections.emptyList();
+    private long updates;
+    private long changes;
+
+    /**
+     * @param windowMillis time constant of the decay: a label's weight falls to 1/e after this
+     */
+    public LabelAggregator(int topK, long windowMillis, float enterThreshold, float exitThreshold) {
+        if (exitThreshold > enterThreshold) {
+            throw new IllegalArgumentException("exitThreshold must not exceed enterThreshold");
+        }
+        this.topK = topK;
+        this.timeConstantNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.enterThreshold = enterThreshold;
+        this.exitThreshold = exitThreshold;
+    }
+
+    @Override
+    public DetectionResult process(DetectionResult result) {
+        update(result.getLabels(), result.getTimestampNanos());
+        return result.toBuilder()
+                .clearLabels()
+                .addLabels(getShownLabels())
+                .build();
+    }
+
+    /**
+     * Adds one frame's labels. Returns whether the shown set changed.
+     */
+    public synchronized boolean update(List<ScoredLabel> labels, long timestampNanos) {
+        updates++;
+        float keep = lastTimestampNanos == Long.MIN_VALUE ? 0f
+                : (float) Math.exp(-Math.max(0, timestampNanos - lastTimestampNanos) / timeConstantNanos);
+        lastTimestampNanos = Math.max(lastTimestampNanos, timestampNanos);
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot]) {
+                scores[slot] *= keep;
+            }
+        }
+        for (int i = 0; i < labels.size(); i++) {
+            ScoredLabel label = labels.get(i);
+            int slot = slotFor(label.getIndex(), label.getText());
+            scores[slot] += (1f - keep) * label.getConfidence();
+        }
+
+        boolean changed = false;
+        int shownCount = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot] && shown[slot]) {
+                if (scores[slot] < exitThreshold) {
+                    shown[slot] = false;
+                    changed = true;
+                } else {
+                    shownCount++;
+                }
+            }
+        }
+        // fill free places with the strongest candidates, then let clearly stronger ones in
+        while (true) {
+            int candidate = strongest(false);
+            if (candidate < 0 || scores[candidate] < enterThreshold) {
+                break;
+            }
+            if (shownCount < topK) {
+                shown[candidate] = true;
+                shownCount++;
+                changed = true;
+                continue;
+            }
+            int weakest = weakestShown();
+            if (weakest < 0 || scores[candidate] < scores[weakest] + SWAP_MARGIN) {
+                break;
+            }
+            shown[weakest] = false;
+            shown[candidate] = true;
+            changed = true;
+        }
+
+        if (changed) {
+            changes++;
+            shownLabels = snapshot();
+        }
+        if (size > keys.length / 2) {
+            compact();
+        }
+        return changed;
+    }
+
+    /**
+     * The shown labels, strongest first, with the confidences they had when the set last changed.
+     */
+    public synchronized List<ScoredLabel> getShownLabels() {
+        return shownLabels;
+    }
+
+    /**
+     * The current decayed confidence of a label, 0 when unknown.
+     */
+    public synchronized float getScore(int index) {
+        int slot = find(index);
+        return slot < 0 ? 0f : scores[slot];
+    }
+
+    public synchronized long getUpdates() {
+        return updates;
+    }
+
+    /**
+     * Updates that changed the shown set, i.e. the UI updates needed.
+     */
+    public synchronized long getChanges() {
+        return changes;
+    }
+
+    @Override
+    public void reset() {
+        clear();
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(texts, null);
+        size = 0;
+        lastTimestampNanos = Long.MIN_VALUE;
+        shownLabels = Collections.emptyList();
+    }
+
+    /**
+     * Whether two label lists name the same labels in the same order with the same confidences.
+     */
+    public static boolean sameLabels(List<ScoredLabel> a, List<ScoredLabel> b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).getIndex() != b.get(i).getIndex() || a.get(i).getConfidence() != b.get(i).getConfidence()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<ScoredLabel> snapshot() {
+        List<ScoredLabel> labels = new ArrayList<>(topK);
+        boolean[] taken = new boolean[keys.length];
+        while (true) {
+            int best = -1;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (used[slot] && shown[slot] && !taken[slot] && (best < 0 || scores[slot] > scores[best])) {
+                    best = slot;
+                }
+            }
+            if (best < 0) {
+                return Collections.unmodifiableList(labels);
+            }
+            taken[best] = true;
+            labels.add(new ScoredLabel(keys[best], texts[best], scores[best]));
+        }
+    }
+
+    private int strongest(boolean wantShown) {
+        int best = -1;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot] && shown[slot] == wantShown && (best < 0 || scores[slot] > scores[best])) {
+                best = slot;
+            }
+        }
+        return best;
+    }
+
+    private int weakestShown() {
+        int weakest = -1;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot] && shown[slot] && (weakest < 0 || scores[slot] < scores[weakest])) {
+                weakest = slot;
+            }
+        }
+        return weakest;
+    }
+
+    private int find(int key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int slotFor(int key, String text) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                texts[slot] = text;
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        texts[slot] = text;
+        scores[slot] = 0f;
+        shown[slot] = false;
+        size++;
+        return slot;
+    }
+
+    // drops faded labels and grows the table when it is still too full
+    private void compact() {
+        int[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        float[] oldScores = scores;
+        String[] oldTexts = texts;
+        boolean[] oldShown = shown;
+        int live = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldUsed[slot] && (oldShown[slot] || oldScores[slot] >= FORGET_BELOW)) {
+                live++;
+            }
+        }
+        int capacity = oldKeys.length;
+        while (live > capacity / 4) {
+            capacity *= 2;
+        }
+        keys = new int[capacity];
+        used = new boolean[capacity];
+        scores = new float[capacity];
+        texts = new String[capacity];
+        shown = new boolean[capacity];
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldUsed[slot] && (oldShown[slot] || oldScores[slot] >= FORGET_BELOW)) {
+                int target = slotFor(oldKeys[slot], oldTexts[slot]);
+                scores[target] = oldScores[slot];
+                shown[target] = oldShown[slot];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Single slot handoff from the analysis thread to the UI thread. Only the newest item is kept
+ * and it is delivered at most once per display frame, so the UI never works through a backlog
+ * of outdated results when analysis runs faster than the screen refreshes.
+ */
+public final class LatestResultChannel<T> {
+
+    /**
+     * Runs a callback on the consumer thread at the start of the next display frame
+     * (Choreographer on device).
+     */
+    public interface FrameScheduler {
+        void postFrameCallback(Runnable callback);
+    }
+
+    private final FrameScheduler scheduler;
+    private final ToLongFunction<T> timestampOf;
+    private final Consumer<T> consumer;
+    private final AtomicReference<T> pending = new AtomicReference<>();
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final Runnable deliver = this::deliver;
+    private volatile long lastDeliveredTimestamp = Long.MIN_VALUE;
+    private volatile boolean closed;
+
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public LatestResultChannel(FrameScheduler scheduler, ToLongFunction<T> timestampOf, Consumer<T> consumer) {
+        this.scheduler = scheduler;
+        this.timestampOf = timestampOf;
+        this.consumer = consumer;
+    }
+
+    public static LatestResultChannel<DetectionResult> forResults(FrameScheduler scheduler, Consumer<DetectionResult> consumer) {
+        return new LatestResultChannel<>(scheduler, DetectionResult::getTimestampNanos, consumer);
+    }
+
+    /**
+     * Producer side, any thread. Replaces an undelivered item instead of queueing behind it.
+     */
+    public void offer(T item) {
+        if (closed) {
+            return;
+        }
+        offered.incrementAndGet();
+        if (timestampOf.applyAsLong(item) < lastDeliveredTimestamp) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (pending.getAndSet(item) != null) {
+            coalesced.incrementAndGet();
+        }
+        if (frameScheduled.compareAndSet(false, true)) {
+            scheduler.postFrameCallback(deliver);
+        }
+    }
+
+    private void deliver() {
+        frameScheduled.set(false);
+        T item = pending.getAndSet(null);
+        if (item == null || closed) {
+            return;
+        }
+        long timestamp = timestampOf.applyAsLong(item);
+        if (timestamp < lastDeliveredTimestamp) {
+            dropped.incrementAndGet();
+            return;
+        }
+        lastDeliveredTimestamp = timestamp;
+        delivered.incrementAndGet();
+        consumer.accept(item);
+    }
+
+    /**
+     * Forgets the delivered timestamp, e.g. after the camera restarted with a new time base.
+     */
+    public void reset() {
+        pending.set(null);
+        lastDeliveredTimestamp = Long.MIN_VALUE;
+    }
+
+    public void close() {
+        closed = true;
+        pending.set(null);
+    }
+
+    public long getOffered() {
+        return offered.get();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * Items replaced by a newer one before their frame came.
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Items older than what the consumer had already been given.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "LatestResultChannel{offered=" + offered.get()
+                + ", delivered=" + delivered.get()
+                + ", coalesced=" + coalesced.get()
+                + ", dropped=" + dropped.get() + "}";
+    }
+}
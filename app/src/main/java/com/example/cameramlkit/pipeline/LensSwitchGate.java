@@ -0,0 +1,162 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Keeps results of the previous lens away from the screen while the camera switches lens,
+ * without tearing the pipeline down.
+ * <p>
+ * {@link #beginSwitch()} starts a new lens generation. Until the new sensor to view transform
+ * arrives ({@link #onTransformChanged()}) frames are turned away, since their results would be
+ * mapped with the old lens' transform, unmirrored for the front camera; a settle timeout lets
+ * analysis resume when the transform does not change. Results of frames started before the
+ * switch are dropped, both as the first processor and right before presentation
+ * ({@link #admit}), and the first result of the new lens reports the switch latency.
+ * <p>
+ * Register it as a {@link PipelineListener}, frame filter and first {@link ResultProcessor} of
+ * the pipeline.
+ */
+public final class LensSwitchGate implements PipelineListener, Predicate<Frame>, ResultProcessor {
+
+    // frames in flight are far fewer; the oldest entries are results that never came
+    private static final int MAX_TRACKED_FRAMES = 32;
+
+    public interface Listener {
+        /**
+         * The first result of the new lens is being delivered, {@code nanos} after the switch.
+         */
+        void onFirstResult(long nanos);
+    }
+
+    private final LongSupplier clock;
+    private final long settleNanos;
+    private final Listener listener;
+    // frame timestamp -> lens generation it was started in, guarded by itself
+    private final Map<Long, Integer> generations = new LinkedHashMap<Long, Integer>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > MAX_TRACKED_FRAMES;
+        }
+    };
+    private volatile int generation;
+    private volatile boolean awaitingTransform;
+    private volatile boolean awaitingResult;
+    private volatile long switchStartNanos;
+    private long switches;
+    private long droppedResults;
+
+    /**
+     * @param clock       any monotonic clock, e.g. SystemClock.elapsedRealtimeNanos
+     * @param settleMillis how long to wait for a new transform before analyzing anyway
+     * @param listener    may be null
+     */
+    public LensSwitchGate(LongSupplier clock, long settleMillis, Listener listener) {
+        this.clock = clock;
+        this.settleNanos = settleMillis * 1_000_000;
+        this.listener = listener;
+    }
+
+    /**
+     * The camera is about to switch lens; any thread, usually the main one.
+     */
+    public void beginSwitch() {
+        synchronized (generations) {
+            switches++;
+            switchStartNanos = clock.getAsLong();
+            generation++;
+        }
+        awaitingTransform = true;
+        awaitingResult = true;
+    }
+
+    /**
+     * A new, non-null sensor to view transform reached the analyzer.
+     */
+    public void onTransformChanged() {
+        awaitingTransform = false;
+    }
+
+    public boolean isSwitching() {
+        return awaitingResult;
+    }
+
+    public long getSwitches() {
+        synchronized (generations) {
+            return switches;
+        }
+    }
+
+    /**
+     * Results of the previous lens that were kept from the screen.
+     */
+    public long getDroppedResults() {
+        synchronized (generations) {
+            return droppedResults;
+        }
+    }
+
+    @Override
+    public boolean test(Frame frame) {
+        if (!awaitingTransform) {
+            return true;
+        }
+        if (clock.getAsLong() - switchStartNanos < settleNanos) {
+            return false;
+        }
+        awaitingTransform = false;
+        return true;
+    }
+
+    @Override
+    public void onFrameStarted(Frame frame) {
+        synchronized (generations) {
+            generations.put(frame.getTimestampNanos(), generation);
+        }
+    }
+
+    @Override
+    public void onDetectorDone(Frame frame, DetectionResult result) {
+    }
+
+    @Override
+    public void onResultProcessed(DetectionResult result) {
+    }
+
+    @Override
+    public DetectionResult process(DetectionResult result) {
+        return isCurrent(result) ? result : null;
+    }
+
+    /**
+     * Last check before the result reaches the screen, which may be a display frame after it
+     * left the processors; false when it belongs to the previous lens.
+     */
+    public boolean admit(DetectionResult result) {
+        if (!isCurrent(result)) {
+            return false;
+        }
+        if (awaitingResult) {
+            awaitingResult = false;
+            long nanos = clock.getAsLong() - switchStartNanos;
+            if (listener != null) {
+                listener.onFirstResult(nanos);
+            }
+        }
+        return true;
+    }
+
+    private boolean isCurrent(DetectionResult result) {
+        synchronized (generations) {
+            Integer started = generations.get(result.getTimestampNanos());
+            // untracked results are older than every frame in flight, or not from a frame
+            if (started != null && started != generation) {
+                droppedResults++;
+                return false;
+            }
+            return true;
+        }
+    }
+}
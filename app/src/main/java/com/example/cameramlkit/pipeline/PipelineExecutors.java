@@ -0,0 +1,97 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process wide executors shared by every camera screen, so the number of pipeline threads
+ * stays fixed no matter how many times the screens are opened.
+ * <p>
+ * Each owner (an activity, a batch job...) {@link #acquire()}s the executors and
+ * {@link #release()}s them when it is destroyed; the threads are shut down when the last
+ * owner goes away and recreated on the next acquire.
+ */
+public final class PipelineExecutors {
+
+    private static final Object LOCK = new Object();
+    private static PipelineExecutors instance;
+    private static int owners;
+
+    private final ExecutorService analysisExecutor;
+    private final ExecutorService workerPool;
+    private final int workerCount;
+
+    private PipelineExecutors(int workerCount) {
+        this.workerCount = workerCount;
+        this.analysisExecutor = Executors.newSingleThreadExecutor(namedFactory("pipeline-analysis"));
+        this.workerPool = Executors.newFixedThreadPool(workerCount, namedFactory("pipeline-worker"));
+    }
+
+    public static PipelineExecutors acquire() {
+        synchronized (LOCK) {
+            if (instance == null) {
+                instance = new PipelineExecutors(defaultWorkerCount());
+            }
+            owners++;
+            return instance;
+        }
+    }
+
+    public void release() {
+        synchronized (LOCK) {
+            if (instance != this || owners == 0) {
+                return;
+            }
+            owners--;
+            if (owners == 0) {
+                instance = null;
+                analysisExecutor.shutdown();
+                workerPool.shutdown();
+            }
+        }
+    }
+
+    static int ownerCount() {
+        synchronized (LOCK) {
+            return owners;
+        }
+    }
+
+    /**
+     * Single thread on which frames are analyzed and detector results are delivered.
+     */
+    public ExecutorService getAnalysisExecutor() {
+        return analysisExecutor;
+    }
+
+    /**
+     * Bounded pool for work that can run beside the analysis thread.
+     */
+    public ExecutorService getWorkerPool() {
+        return workerPool;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public boolean isShutdown() {
+        return analysisExecutor.isShutdown();
+    }
+
+    private static int defaultWorkerCount() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(4, cores - 1));
+    }
+
+    private static ThreadFactory namedFactory(final String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.cameramlkit.pipeline;
+
+/**
+ * Observes frames moving through a {@link DetectionPipeline}, e.g. to time each stage.
+ * Called on the pipeline threads, so implementations must be cheap and thread safe.
+ */
+public interface PipelineListener {
+
+    void onFrameStarted(Frame frame);
+
+    /**
+     * The frame was turned away by the pipeline's frame filter and will not be analyzed.
+     */
+    default void onFrameSkipped(Frame frame) {
+    }
+
+    /**
+     * The frame was answered with an earlier result instead of being analyzed; its luma is
+     * still valid here. The result goes on to the processors like a detector's.
+     */
+    default void onFrameReused(Frame frame, DetectionResult result) {
+    }
+
+    void onDetectorDone(Frame frame, DetectionResult result);
+
+    /**
+     * The result went through every processor and is about to reach the sink.
+     */
+    void onResultProcessed(DetectionResult result);
+}
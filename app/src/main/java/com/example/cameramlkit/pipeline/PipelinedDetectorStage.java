@@ -0,0 +1,248 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Overlaps the stages of a detector over several frames: while frame N is in inference on a
+ * worker thread, the analysis thread already prepares frame N+1. Each of the backend's slots
+ * (an interpreter with its input and output buffers, say) holds one frame in flight; when all
+ * are busy the analysis thread waits, and the camera drops frames as usual.
+ * <p>
+ * Inference may finish out of order, so results are held back and published in frame order
+ * on the delivery executor.
+ */
+public final class PipelinedDetectorStage<S> implements DetectorStage {
+
+    private static final long SLOT_WAIT_MILLIS = 100;
+
+    public interface Backend<S> {
+        /**
+         * Called once per slot when the stage is built.
+         */
+        S createSlot() throws Exception;
+
+        /**
+         * Analysis thread, while the frame's pixels are valid: copies what inference needs into
+         * the slot. Returns false to skip the frame. The stage releases the frame afterwards.
+         */
+        boolean prepare(S slot, Frame frame) throws Exception;
+
+        /**
+         * Worker thread. {@code frame} only has its metadata left.
+         */
+        DetectionResult infer(S slot, Frame frame) throws Exception;
+
+        void closeSlot(S slot);
+    }
+
+    private final Backend<S> backend;
+    private final Executor workers;
+    private final Executor delivery;
+    private final Runnable onIdle;
+    private final BlockingQueue<S> freeSlots;
+    private final int slotCount;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong completedFrames = new AtomicLong();
+
+    // frame order bookkeeping, guarded by itself
+    private final TreeMap<Long, Completion> finished = new TreeMap<>();
+    private long nextTicket;
+    private long nextToPublish;
+
+    private volatile boolean closed;
+    private boolean idleReported;
+
+    /**
+     * @param workers  runs inference; needs at least {@code slots} threads to keep every slot busy
+     * @param delivery single thread the callback is invoked on, in frame order
+     * @param onIdle   runs once after {@link #close()} when no frame is in flight anymore, e.g. to
+     *                 release the executors; may be null
+     */
+    public PipelinedDetectorStage(Backend<S> backend, int slots, Executor workers, Executor delivery,
+                                  Runnable onIdle) throws Exception {
+        if (slots < 1) {
+            throw new IllegalArgumentException("slots must be at least 1");
+        }
+        this.backend = backend;
+        this.workers = workers;
+        this.delivery = delivery;
+        this.onIdle = onIdle;
+        this.slotCount = slots;
+        this.freeSlots = new ArrayBlockingQueue<>(slots);
+        List<S> created = new ArrayList<>(slots);
+        try {
+            for (int i = 0; i < slots; i++) {
+                created.add(backend.createSlot());
+            }
+        } catch (Exception e) {
+            for (S slot : created) {
+                backend.closeSlot(slot);
+            }
+            throw e;
+        }
+        freeSlots.addAll(created);
+    }
+
+    @Override
+    public void detect(Frame frame, Callback callback) {
+        S slot = null;
+        try {
+            // slots are closed instead of returned once the stage is closed, so don't wait forever
+            while (slot == null && !closed) {
+                slot = freeSlots.poll(SLOT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (slot == null || closed) {
+            if (slot != null) {
+                backend.closeSlot(slot);
+            }
+            frame.release();
+            return;
+        }
+        boolean prepared;
+        try {
+            prepared = backend.prepare(slot, frame);
+        } catch (Exception e) {
+            returnSlot(slot);
+            frame.release();
+            callback.onError(frame, e);
+            return;
+        }
+        // the slot holds a copy now, the camera buffer can go back
+        frame.release();
+        if (!prepared) {
+            returnSlot(slot);
+            return;
+        }
+
+        long ticket;
+        synchronized (finished) {
+            ticket = nextTicket++;
+        }
+        inFlight.incrementAndGet();
+        S busy = slot;
+        try {
+            workers.execute(() -> infer(busy, frame, callback, ticket));
+        } catch (RuntimeException e) {
+            returnSlot(busy);
+            finish(ticket, new Completion(frame, callback, null, e));
+        }
+    }
+
+    private void infer(S slot, Frame frame, Callback callback, long ticket) {
+        DetectionResult result = null;
+        Throwable error = null;
+        try {
+            result = backend.infer(slot, frame);
+        } catch (Exception e) {
+            error = e;
+        }
+        returnSlot(slot);
+        finish(ticket, new Completion(frame, callback, result, error));
+    }
+
+    private void returnSlot(S slot) {
+        if (closed) {
+            backend.closeSlot(slot);
+        } else {
+            freeSlots.offer(slot);
+            // close() may have drained the pool in between
+            if (closed && freeSlots.remove(slot)) {
+                backend.closeSlot(slot);
+            }
+        }
+    }
+
+    // hands the ready prefix to the delivery thread; queued under the lock, so in ticket order
+    private void finish(long ticket, Completion completion) {
+        synchronized (finished) {
+            finished.put(ticket, completion);
+            Completion next;
+            while ((next = finished.remove(nextToPublish)) != null) {
+                nextToPublish++;
+                Completion publish = next;
+                try {
+                    delivery.execute(() -> publish(publish));
+                } catch (RuntimeException e) {
+                    // the delivery thread is gone, the pipeline is shutting down
+                    done();
+                }
+            }
+        }
+    }
+
+    private void publish(Completion completion) {
+        completedFrames.incrementAndGet();
+        try {
+            if (completion.error != null) {
+                completion.callback.onError(completion.frame, completion.error);
+            } else {
+                completion.callback.onResult(completion.frame, completion.result);
+            }
+        } finally {
+            done();
+        }
+    }
+
+    private void done() {
+        inFlight.decrementAndGet();
+        reportIdle();
+    }
+
+    /**
+     * Frames whose result has been published.
+     */
+    public long getCompletedFrames() {
+        return completedFrames.get();
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        S slot;
+        while ((slot = freeSlots.poll()) != null) {
+            backend.closeSlot(slot);
+        }
+        reportIdle();
+    }
+
+    private void reportIdle() {
+        synchronized (this) {
+            if (!closed || idleReported || inFlight.get() != 0) {
+                return;
+            }
+            idleReported = true;
+        }
+        if (onIdle != null) {
+            onIdle.run();
+        }
+    }
+
+    private static final class Completion {
+        final Frame frame;
+        final Callback callback;
+        final DetectionResult result;
+        final Throwable error;
+
+        Completion(Frame frame, Callback callback, DetectionResult result, Throwable error) {
+            this.frame = frame;
+            this.callback = callback;
+            this.result = result;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Platform independent copy of an OCR result: blocks, lines and elements with their boxes.
+ */
+public final class RecognizedText {
+
+    private final String text;
+    private final List<Block> blocks;
+
+    public RecognizedText(String text, List<Block> blocks) {
+        this.text = text;
+        this.blocks = blocks == null ? Collections.<Block>emptyList() : blocks;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Copy with every block, line and element box passed through {@code mapper}, e.g. to move
+     * the result of a cropped region back into frame coordinates.
+     */
+    public RecognizedText mapBounds(UnaryOperator<Bounds> mapper) {
+        List<Block> mappedBlocks = new ArrayList<>(blocks.size());
+        for (Block block : blocks) {
+            List<Line> mappedLines = new ArrayList<>(block.lines.size());
+            for (Line line : block.lines) {
+                List<Element> mappedElements = new ArrayList<>(line.elements.size());
+                for (Element element : line.elements) {
+                    mappedElements.add(new Element(element.text, mapper.apply(element.bounds), element.confidence));
+                }
+                mappedLines.add(new Line(line.text, mapper.apply(line.bounds), line.confidence, mappedElements));
+            }
+            mappedBlocks.add(new Block(block.text, mapper.apply(block.bounds), mappedLines));
+        }
+        return new RecognizedText(text, mappedBlocks);
+    }
+
+    /**
+     * The blocks of all parts in order, their texts joined by new lines.
+     */
+    public static RecognizedText concat(List<RecognizedText> parts) {
+        StringBuilder joined = new StringBuilder();
+        List<Block> allBlocks = new ArrayList<>();
+        for (RecognizedText part : parts) {
+            if (part.text != null && !part.text.isEmpty()) {
+                if (joined.length() > 0) {
+                    joined.append('\n');
+                }
+                joined.append(part.text);
+            }
+            allBlocks.addAll(part.blocks);
+        }
+        return new RecognizedText(joined.toString(), allBlocks);
+    }
+
+    public static final class Block {
+        private final String text;
+        private final Bounds bounds;
+        private final List<Line> lines;
+
+        public Block(String text, Bounds bounds, List<Line> lines) {
+            this.text = text;
+            this.bounds = bounds;
+            this.lines = lines == null ? Collections.<Line>emptyList() : lines;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Bounds getBounds() {
+            return bounds;
+        }
+
+        public List<Line> getLines() {
+            return lines;
+        }
+    }
+
+    public static final class Line {
+        private final String text;
+        private final Bounds bounds;
+        private final float confidence;
+        private final List<Element> elements;
+
+        public Line(String text, Bounds bounds, float confidence, List<Element> elements) {
+            this.text = text;
+            this.bounds = bounds;
+            this.confidence = confidence;
+            this.elements = elements == null ? Collections.<Element>emptyList() : elements;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Bounds getBounds() {
+            return bounds;
+        }
+
+        public float getConfidence() {
+            return confidence;
+        }
+
+        public List<Element> getElements() {
+            return elements;
+        }
+    }
+
+    public static final class Element {
+        private final String text;
+        private final Bounds bounds;
+        private final float confidence;
+
+        public Element(String text, Bounds bounds, float confidence) {
+            this.text = text;
+            this.bounds = bounds;
+            this.confidence = confidence;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Bounds getBounds() {
+            return bounds;
+        }
+
+        public float getConfidence() {
+            return confidence;
+        }
+    }
+}
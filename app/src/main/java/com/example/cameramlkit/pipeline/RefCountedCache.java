@@ -0,0 +1,217 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keyed cache of expensive, closeable values (detector clients, models...). Values are handed
+ * out as {@link Lease}s; a value whose last lease was closed stays loaded until it has been
+ * idle for longer than the timeout and {@link #evictIdle()} runs.
+ */
+public final class RefCountedCache<K, V> {
+
+    public interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    public interface Closer<V> {
+        void close(V value);
+    }
+
+    public interface Clock {
+        long nanoTime();
+    }
+
+    private final Loader<K, V> loader;
+    private final Closer<V> closer;
+    private final long idleTimeoutNanos;
+    private final Clock clock;
+    private final Map<K, Entry<K, V>> entries = new LinkedHashMap<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long totalLoadNanos;
+
+    public RefCountedCache(Loader<K, V> loader, Closer<V> closer, long idleTimeoutNanos) {
+        this(loader, closer, idleTimeoutNanos, System::nanoTime);
+    }
+
+    public RefCountedCache(Loader<K, V> loader, Closer<V> closer, long idleTimeoutNanos, Clock clock) {
+        this.loader = loader;
+        this.closer = closer;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.clock = clock;
+    }
+
+    public synchronized Lease<K, V> acquire(K key) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+            long start = clock.nanoTime();
+            V value;
+            try {
+                value = loader.load(key);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not load " + key, e);
+            }
+            entry = new Entry<>(key, value, clock.nanoTime() - start);
+            totalLoadNanos += entry.loadNanos;
+            entries.put(key, entry);
+        }
+        entry.refCount++;
+        return new Lease<>(this, entry);
+    }
+
+    /**
+     * Closes every value that has no lease and was released more than the idle timeout ago.
+     *
+     * @return number of evicted values
+     */
+    public int evictIdle() {
+        List<V> evicted = new ArrayList<>();
+        synchronized (this) {
+            long now = clock.nanoTime();
+            Iterator<Entry<K, V>> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry<K, V> entry = iterator.next();
+                if (entry.refCount == 0 && now - entry.idleSinceNanos >= idleTimeoutNanos) {
+                    iterator.remove();
+                    evicted.add(entry.value);
+                }
+            }
+            evictions += evicted.size();
+        }
+        for (V value : evicted) {
+            closer.close(value);
+        }
+        return evicted.size();
+    }
+
+    /**
+     * Closes every value regardless of leases; outstanding leases become no-ops.
+     */
+    public void clear() {
+        List<V> values = new ArrayList<>();
+        synchronized (this) {
+            for (Entry<K, V> entry : entries.values()) {
+                values.add(entry.value);
+            }
+            entries.clear();
+        }
+        for (V value : values) {
+            closer.close(value);
+        }
+    }
+
+    public long getIdleTimeoutNanos() {
+        return idleTimeoutNanos;
+    }
+
+    public synchronized boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int refCount(K key) {
+        Entry<K, V> entry = entries.get(key);
+        return entry == null ? 0 : entry.refCount;
+    }
+
+    /**
+     * Time the loader took for the currently cached value of {@code key}, or -1 if not cached.
+     */
+    public synchronized long loadNanos(K key) {
+        Entry<K, V> entry = entries.get(key);
+        return entry == null ? -1 : entry.loadNanos;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getTotalLoadNanos() {
+        return totalLoadNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RefCountedCache{size=" + entries.size()
+                + ", hits=" + hits
+                + ", misses=" + misses
+                + ", evictions=" + evictions
+                + ", loadMs=" + totalLoadNanos / 1_000_000 + "}";
+    }
+
+    private synchronized void release(Entry<K, V> entry) {
+        if (entries.get(entry.key) != entry || entry.refCount == 0) {
+            return;
+        }
+        entry.refCount--;
+        if (entry.refCount == 0) {
+            entry.idleSinceNanos = clock.nanoTime();
+        }
+    }
+
+    private static final class Entry<K, V> {
+        final K key;
+        final V value;
+        final long loadNanos;
+        int refCount;
+        long idleSinceNanos;
+
+        Entry(K key, V value, long loadNanos) {
+            this.key = key;
+            this.value = value;
+            this.loadNanos = loadNanos;
+        }
+    }
+
+    public static final class Lease<K, V> implements AutoCloseable {
+        private final RefCountedCache<K, V> cache;
+        private final Entry<K, V> entry;
+        private boolean closed;
+
+        private Lease(RefCountedCache<K, V> cache, Entry<K, V> entry) {
+            this.cache = cache;
+            this.entry = entry;
+        }
+
+        public K getKey() {
+            return entry.key;
+        }
+
+        public V get() {
+            return entry.value;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            cache.release(entry);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.cameramlkit.pipeline;
+
+/**
+ * Post-processing step between the detector and the sink (filtering, tracking, aggregation...).
+ */
+public interface ResultProcessor {
+
+    DetectionResult process(DetectionResult result);
+
+    /**
+     * Forgets what earlier results taught it, e.g. when the camera switched lens.
+     */
+    default void reset() {
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.cameramlkit.pipeline;
+
+/**
+ * Lets a {@link DetectionPipeline} answer a frame with an earlier result instead of running the
+ * detector, e.g. when the scene has not changed.
+ */
+public interface ResultReuse {
+
+    /**
+     * Called on the analysis thread, while the frame's luma is valid.
+     *
+     * @return a result stamped with the frame's timestamp, or null to run the detector
+     */
+    DetectionResult reuse(Frame frame);
+}
@@ -0,0 +1,9 @@
+package com.example.cameramlkit.pipeline;
+
+/**
+ * Last stage of the pipeline, usually the overlay or a text view.
+ */
+public interface ResultSink {
+
+    void onResult(DetectionResult result);
+}
@@ -0,0 +1,34 @@
+package com.example.cameramlkit.pipeline;
+
+/**
+ * A classification label with its confidence, as produced by any detector stage.
+ */
+public final class ScoredLabel {
+
+    private final int index;
+    private final String text;
+    private final float confidence;
+
+    public ScoredLabel(int index, String text, float confidence) {
+        this.index = index;
+        this.text = text;
+        this.confidence = confidence;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public float getConfidence() {
+        return confidence;
+    }
+
+    @Override
+    public String toString() {
+        return text + ": " + confidence;
+    }
+}
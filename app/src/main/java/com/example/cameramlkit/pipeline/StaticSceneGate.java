@@ -0,0 +1,220 @@
+package com.example.cameramlkit.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Skips inference while the camera looks at an unchanged scene, answering frames with the
+ * last detector result instead.
+ * <p>
+ * Every frame gets a signature: the mean luma of a {@value #COLUMNS}x{@value #ROWS} grid of
+ * cells, each sampled on a sparse {@value #SAMPLES}x{@value #SAMPLES} pattern straight from the
+ * Y plane, a few thousand reads per frame. It is compared with the signature of the frame the
+ * cached result came from, not the previous frame, so a slow drift adds up until it counts.
+ * The scene has changed when the cells differ by more than a mean threshold (global change,
+ * e.g. exposure or a pan) or any one cell by more than a cell threshold (a small object moving).
+ * A fresh inference is forced once the cached result is older than the refresh interval.
+ * <p>
+ * Register it as the pipeline's {@link ResultReuse} and as a {@link PipelineListener}, which
+ * is how it learns the detector results.
+ */
+public final class StaticSceneGate implements ResultReuse, PipelineListener {
+
+    static final int COLUMNS = 16;
+    static final int ROWS = 12;
+    static final int SAMPLES = 4;
+    private static final int CELLS = COLUMNS * ROWS;
+    // more than the frames a detector keeps in flight; the rest never got a result
+    private static final int MAX_IN_FLIGHT = 8;
+
+    private final long refreshNanos;
+    private final double meanThreshold;
+    private final int cellThreshold;
+    private final LongSupplier clock;
+    // analysis thread only
+    private final int[] signature = new int[CELLS];
+    // frame timestamp -> signature, for frames sent to the detector; guarded by this
+    private final Map<Long, int[]> inFlight = new LinkedHashMap<Long, int[]>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return size() > MAX_IN_FLIGHT;
+        }
+    };
+    private int[] reference;
+    private DetectionResult cached;
+    private long cachedAtNanos;
+    private final AtomicLong inferred = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private volatile double lastDifference;
+
+    private StaticSceneGate(Builder builder) {
+        this.refreshNanos = builder.refreshNanos;
+        this.meanThreshold = builder.meanThreshold;
+        this.cellThreshold = builder.cellThreshold;
+        this.clock = builder.clock;
+    }
+
+    @Override
+    public DetectionResult reuse(Frame frame) {
+        ByteBuffer luma = frame.getLuma();
+        if (luma == null) {
+            return null;
+        }
+        computeSignature(luma, frame.getWidth(), frame.getHeight(),
+                frame.getLumaRowStride(), frame.getLumaPixelStride(), signature);
+        synchronized (this) {
+            if (cached != null && clock.getAsLong() - cachedAtNanos < refreshNanos
+                    && !hasChanged(signature, reference)) {
+                reused.incrementAndGet();
+                return cached.withTimestamp(frame.getTimestampNanos());
+            }
+            inFlight.put(frame.getTimestampNanos(), signature.clone());
+            return null;
+        }
+    }
+
+    /**
+     * Forgets the cached result, e.g. when the camera switched lens.
+     */
+    public synchronized void reset() {
+        inFlight.clear();
+        reference = null;
+        cached = null;
+    }
+
+    @Override
+    public void onFrameStarted(Frame frame) {
+        inferred.incrementAndGet();
+    }
+
+    @Override
+    public void onDetectorDone(Frame frame, DetectionResult result) {
+        synchronized (this) {
+            int[] inferredSignature = inFlight.remove(frame.getTimestampNanos());
+            if (inferredSignature != null) {
+                reference = inferredSignature;
+                cached = result;
+                cachedAtNanos = clock.getAsLong();
+            }
+        }
+    }
+
+    @Override
+    public void onResultProcessed(DetectionResult result) {
+    }
+
+    public long getInferredFrames() {
+        return inferred.get();
+    }
+
+    public long getReusedFrames() {
+        return reused.get();
+    }
+
+    /**
+     * Share of the frames that were answered from the cache rather than analyzed.
+     */
+    public double getSkippedFraction() {
+        long reusedFrames = reused.get();
+        long total = reusedFrames + inferred.get();
+        return total == 0 ? 0 : reusedFrames / (double) total;
+    }
+
+    /**
+     * Mean cell difference of the last comparison, in luma levels, e.g. to tune the thresholds.
+     */
+    public double getLastDifference() {
+        return lastDifference;
+    }
+
+    private boolean hasChanged(int[] current, int[] previous) {
+        if (previous == null) {
+            return true;
+        }
+        int total = 0;
+        int max = 0;
+        for (int i = 0; i < CELLS; i++) {
+            int difference = Math.abs(current[i] - previous[i]);
+            total += difference;
+            max = Math.max(max, difference);
+        }
+        double mean = total / (double) CELLS;
+        lastDifference = mean;
+        return mean > meanThreshold || max > cellThreshold;
+    }
+
+    /**
+     * Mean luma per grid cell into {@code out}, reading the plane in place; the frame may have
+     * any size, so signatures of different resolutions of a scene stay comparable.
+     */
+    static void computeSignature(ByteBuffer luma, int width, int height, int rowStride, int pixelStride, int[] out) {
+        int cell = 0;
+        for (int row = 0; row < ROWS; row++) {
+            int top = row * height / ROWS;
+            int cellHeight = (row + 1) * height / ROWS - top;
+            for (int column = 0; column < COLUMNS; column++) {
+                int left = column * width / COLUMNS;
+                int cellWidth = (column + 1) * width / COLUMNS - left;
+                int sum = 0;
+                // samples at the centers of a SAMPLES x SAMPLES split of the cell
+                for (int sy = 0; sy < SAMPLES; sy++) {
+                    int y = top + (2 * sy + 1) * cellHeight / (2 * SAMPLES);
+                    int offset = y * rowStride;
+                    for (int sx = 0; sx < SAMPLES; sx++) {
+                        int x = left + (2 * sx + 1) * cellWidth / (2 * SAMPLES);
+                        sum += luma.get(offset + x * pixelStride) & 0xFF;
+                    }
+                }
+                out[cell++] = sum / (SAMPLES * SAMPLES);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "static scene: %d reused / %d inferred (%.0f%% skipped), last difference %.1f",
+                getReusedFrames(), getInferredFrames(), getSkippedFraction() * 100, lastDifference);
+    }
+
+    public static final class Builder {
+        private long refreshNanos = TimeUnit.SECONDS.toNanos(2);
+        private double meanThreshold = 3;
+        private int cellThreshold = 24;
+        private LongSupplier clock = System::nanoTime;
+
+        /**
+         * Longest time a result is reused before the detector runs again, 2 s by default.
+         */
+        public Builder setRefreshMillis(long millis) {
+            this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+            return this;
+        }
+
+        /**
+         * Changes above these count as a new scene: the mean over all cells (3 luma levels by
+         * default) or any single cell (24 by default).
+         */
+        public Builder setThresholds(double meanThreshold, int cellThreshold) {
+            this.meanThreshold = meanThreshold;
+            this.cellThreshold = cellThreshold;
+            return this;
+        }
+
+        public Builder setClock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public StaticSceneGate build() {
+            if (refreshNanos <= 0) {
+                throw new IllegalStateException("The refresh interval must be positive");
+            }
+            return new StaticSceneGate(this);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.cameramlkit.pipeline;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Routes frames to either an accurate or a fast detector stage, e.g. to let
+ * {@link AnalysisGovernor} trade quality for latency. Both stages stay open, so results of
+ * frames already in flight on the other stage are still delivered.
+ */
+public final class SwitchingDetectorStage implements DetectorStage {
+
+    private final DetectorStage accurate;
+    private final DetectorStage fast;
+    private volatile boolean useFast;
+
+    public SwitchingDetectorStage(DetectorStage accurate, DetectorStage fast) {
+        this.accurate = accurate;
+        this.fast = fast;
+    }
+
+    public void setUseFast(boolean useFast) {
+        this.useFast = useFast;
+    }
+
+    public boolean isUsingFast() {
+        return useFast;
+    }
+
+    public List<DetectorStage> getStages() {
+        return Collections.unmodifiableList(Arrays.asList(accurate, fast));
+    }
+
+    @Override
+    public void detect(Frame frame, Callback callback) {
+        (useFast ? fast : accurate).detect(frame, callback);
+    }
+
+    @Override
+    public void reset() {
+        accurate.reset();
+        fast.reset();
+    }
+
+    @Override
+    public void close() {
+        accurate.close();
+        fast.close();
+    }
+}
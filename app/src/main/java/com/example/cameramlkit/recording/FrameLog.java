@@ -0,0 +1,54 @@
+package com.example.cameramlkit.recording;
+
+/**
+ * Layout of a frame log file, all numbers big endian:
+ * <pre>
+ * header  64 bytes   magic, version, index slots, data capacity, write position, record count
+ * index   slots * 16 {logical position, timestamp} of record n at slot n % slots
+ * data    capacity   records, back to back in a ring; a record may wrap around the end
+ * </pre>
+ * A record is {@code int length, byte type, 3 bytes padding, long timestampNanos} followed by
+ * its payload; {@code length} counts the whole record. Positions are logical (bytes appended
+ * since creation), so a record is still intact while
+ * {@code position >= writePosition - capacity}.
+ * <p>
+ * Frame payload: {@code long sequence, short width, short height, short rotation, short scale}
+ * and the downscaled luma rows. Result payload: objects as
+ * {@code int trackingId, 4 float bounds, labels}, then the image labels, each label list as
+ * {@code short count} of {@code int index, float confidence, short utf8Length, utf8}.
+ */
+final class FrameLog {
+
+    static final long MAGIC = 0x434D4C4B4C4F4731L; // "CMLKLOG1"
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 64;
+    static final int INDEX_ENTRY_BYTES = 16;
+    static final int RECORD_HEADER_BYTES = 16;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 8;
+    static final int INDEX_SLOTS_OFFSET = 12;
+    static final int CAPACITY_OFFSET = 16;
+    static final int WRITE_POSITION_OFFSET = 24;
+    static final int RECORD_COUNT_OFFSET = 32;
+
+    static final byte TYPE_FRAME = 1;
+    static final byte TYPE_RESULT = 2;
+
+    static final int MIN_INDEX_SLOTS = 256;
+    static final int MAX_INDEX_SLOTS = 1 << 16;
+    static final long MIN_BYTES = 256 * 1024;
+
+    private FrameLog() {
+    }
+
+    /**
+     * Index slots for a data region of {@code capacity} bytes: about one per 2 KB, since most
+     * records are small results between larger frames.
+     */
+    static int indexSlotsFor(long capacity) {
+        long slots = capacity / 2048;
+        return (int) Math.max(MIN_INDEX_SLOTS, Math.min(MAX_INDEX_SLOTS, slots));
+    }
+}
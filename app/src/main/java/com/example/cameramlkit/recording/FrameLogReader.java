@@ -0,0 +1,241 @@
+package com.example.cameramlkit.recording;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+import com.example.cameramlkit.replay.FrameDecoder;
+import com.example.cameramlkit.replay.RecordedSequence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Loads the records still intact in a {@link FrameLog} file, oldest first, and turns them into
+ * a {@link RecordedSequence}, a decoder and results for the replay harness.
+ */
+public final class FrameLogReader {
+
+    private final List<FrameRecord> frames;
+    private final NavigableMap<Long, DetectionResult> results;
+
+    private FrameLogReader(List<FrameRecord> frames, NavigableMap<Long, DetectionResult> results) {
+        this.frames = Collections.unmodifiableList(frames);
+        this.results = results;
+    }
+
+    public static FrameLogReader read(File source) throws IOException {
+        byte[] bytes;
+        try (RandomAccessFile file = new RandomAccessFile(source, "r")) {
+            if (file.length() > Integer.MAX_VALUE) {
+                throw new IOException("Frame log too large: " + source);
+            }
+            bytes = new byte[(int) file.length()];
+            file.readFully(bytes);
+        }
+        return parse(ByteBuffer.wrap(bytes));
+    }
+
+    static FrameLogReader parse(ByteBuffer log) throws IOException {
+        if (log.capacity() < FrameLog.HEADER_BYTES || log.getLong(FrameLog.MAGIC_OFFSET) != FrameLog.MAGIC) {
+            throw new IOException("Not a frame log");
+        }
+        if (log.getInt(FrameLog.VERSION_OFFSET) != FrameLog.VERSION) {
+            throw new IOException("Unsupported frame log version " + log.getInt(FrameLog.VERSION_OFFSET));
+        }
+        int indexSlots = log.getInt(FrameLog.INDEX_SLOTS_OFFSET);
+        long capacity = log.getLong(FrameLog.CAPACITY_OFFSET);
+        long writePosition = log.getLong(FrameLog.WRITE_POSITION_OFFSET);
+        long recordCount = log.getLong(FrameLog.RECORD_COUNT_OFFSET);
+        int dataOffset = FrameLog.HEADER_BYTES + indexSlots * FrameLog.INDEX_ENTRY_BYTES;
+        if (indexSlots <= 0 || capacity <= 0 || dataOffset + capacity > log.capacity()) {
+            throw new IOException("Corrupt frame log header");
+        }
+
+        List<FrameRecord> frames = new ArrayList<>();
+        NavigableMap<Long, DetectionResult> results = new TreeMap<>();
+        byte[] record = new byte[256];
+        for (long n = Math.max(0, recordCount - indexSlots); n < recordCount; n++) {
+            int slot = FrameLog.HEADER_BYTES + (int) (n % indexSlots) * FrameLog.INDEX_ENTRY_BYTES;
+            long position = log.getLong(slot);
+            if (position < writePosition - capacity) {
+                // overwritten by newer records
+                continue;
+            }
+            int length = readInt(log, dataOffset, capacity, position);
+            if (length < FrameLog.RECORD_HEADER_BYTES || position + length > writePosition) {
+                throw new IOException("Corrupt record " + n);
+            }
+            if (record.length < length) {
+                record = new byte[length];
+            }
+            copy(log, dataOffset, capacity, position, record, length);
+            ByteBuffer in = ByteBuffer.wrap(record, 0, length);
+            in.position(4);
+            byte type = in.get();
+            in.position(8);
+            long timestamp = in.getLong();
+            if (type == FrameLog.TYPE_FRAME) {
+                frames.add(readFrame(in, timestamp));
+            } else if (type == FrameLog.TYPE_RESULT) {
+                results.put(timestamp, readResult(in, timestamp));
+            }
+        }
+        return new FrameLogReader(frames, results);
+    }
+
+    private static int readInt(ByteBuffer log, int dataOffset, long capacity, long position) {
+        byte[] bytes = new byte[4];
+        copy(log, dataOffset, capacity, position, bytes, 4);
+        return ByteBuffer.wrap(bytes).getInt();
+    }
+
+    private static void copy(ByteBuffer log, int dataOffset, long capacity, long position, byte[] out, int length) {
+        int physical = (int) (position % capacity);
+        int first = (int) Math.min(length, capacity - physical);
+        ByteBuffer source = log.duplicate();
+        source.position(dataOffset + physical);
+        source.get(out, 0, first);
+        if (first < length) {
+            source.position(dataOffset);
+            source.get(out, first, length - first);
+        }
+    }
+
+    private static FrameRecord readFrame(ByteBuffer in, long timestamp) {
+        long sequence = in.getLong();
+        int width = in.getShort() & 0xFFFF;
+        int height = in.getShort() & 0xFFFF;
+        int rotation = in.getShort();
+        int scale = in.getShort();
+        byte[] luma = new byte[width * height];
+        in.get(luma);
+        return new FrameRecord(timestamp, sequence, width, height, rotation, scale, luma);
+    }
+
+    private static DetectionResult readResult(ByteBuffer in, long timestamp) {
+        DetectionResult.Builder builder = new DetectionResult.Builder(timestamp);
+        int objects = in.getShort();
+        for (int i = 0; i < objects; i++) {
+            int trackingId = in.getInt();
+            Bounds bounds = new Bounds(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+            builder.addObject(new DetectedBox(bounds, trackingId, readLabels(in)));
+        }
+        return builder.addLabels(readLabels(in)).build();
+    }
+
+    private static List<ScoredLabel> readLabels(ByteBuffer in) {
+        int count = in.getShort();
+        List<ScoredLabel> labels = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = in.getInt();
+            float confidence = in.getFloat();
+            byte[] text = new byte[in.getShort()];
+            in.get(text);
+            labels.add(new ScoredLabel(index, new String(text, StandardCharsets.UTF_8), confidence));
+        }
+        return labels;
+    }
+
+    public List<FrameRecord> getFrames() {
+        return frames;
+    }
+
+    /**
+     * Recorded results by timestamp, as {@link com.example.cameramlkit.replay.ReplayDetectorStage}
+     * takes them.
+     */
+    public NavigableMap<Long, DetectionResult> getResults() {
+        return results;
+    }
+
+    /**
+     * The recorded frames as a sequence for {@link #decoder()}; null when no frame survived.
+     */
+    public RecordedSequence toSequence() {
+        if (frames.isEmpty()) {
+            return null;
+        }
+        List<RecordedSequence.Entry> entries = new ArrayList<>(frames.size());
+        for (FrameRecord frame : frames) {
+            entries.add(new RecordedSequence.Entry(entries.size(), frame.timestampNanos, null,
+                    frame.width, frame.height, frame.rotationDegrees));
+        }
+        return RecordedSequence.of(entries);
+    }
+
+    /**
+     * Serves the luma of the frames of {@link #toSequence()}.
+     */
+    public FrameDecoder decoder() {
+        return entry -> {
+            FrameRecord frame = frames.get(entry.getIndex());
+            return new Frame.Builder(frame.width, frame.height)
+                    .setLuma(ByteBuffer.wrap(frame.luma), frame.width, 1);
+        };
+    }
+
+    public static final class FrameRecord {
+        private final long timestampNanos;
+        private final long sequence;
+        private final int width;
+        private final int height;
+        private final int rotationDegrees;
+        private final int scale;
+        private final byte[] luma;
+
+        FrameRecord(long timestampNanos, long sequence, int width, int height, int rotationDegrees,
+                    int scale, byte[] luma) {
+            this.timestampNanos = timestampNanos;
+            this.sequence = sequence;
+            this.width = width;
+            this.height = height;
+            this.rotationDegrees = rotationDegrees;
+            this.scale = scale;
+            this.luma = luma;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        /**
+         * Sequence of the frame in the live pipeline; gaps are frames the recorder dropped.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getRotationDegrees() {
+            return rotationDegrees;
+        }
+
+        /**
+         * Downscale factor from the analysis frame.
+         */
+        public int getScale() {
+            return scale;
+        }
+
+        public byte[] getLuma() {
+            return luma;
+        }
+    }
+}
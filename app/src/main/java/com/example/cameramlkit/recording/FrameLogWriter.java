@@ -0,0 +1,200 @@
+package com.example.cameramlkit.recording;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Appends frames and results to a memory mapped {@link FrameLog} file of fixed size; once the
+ * data region is full the oldest records are overwritten. Not thread safe: one writer thread
+ * owns it (see {@link FrameRecorder}).
+ */
+public final class FrameLogWriter implements Closeable {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int indexSlots;
+    private final long capacity;
+    private final int dataOffset;
+    private ByteBuffer record = ByteBuffer.allocate(64 * 1024);
+    private long writePosition;
+    private long recordCount;
+    private boolean closed;
+
+    private FrameLogWriter(RandomAccessFile file, MappedByteBuffer map, int indexSlots, long capacity) {
+        this.file = file;
+        this.map = map;
+        this.indexSlots = indexSlots;
+        this.capacity = capacity;
+        this.dataOffset = FrameLog.HEADER_BYTES + indexSlots * FrameLog.INDEX_ENTRY_BYTES;
+    }
+
+    /**
+     * Creates (or replaces) a log of {@code maxBytes} in total.
+     */
+    public static FrameLogWriter create(File target, long maxBytes) throws IOException {
+        if (maxBytes < FrameLog.MIN_BYTES || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxBytes must be between 256 KB and 2 GB");
+        }
+        int indexSlots = FrameLog.indexSlotsFor(maxBytes);
+        long capacity = maxBytes - FrameLog.HEADER_BYTES - (long) indexSlots * FrameLog.INDEX_ENTRY_BYTES;
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+        try {
+            file.setLength(0);
+            file.setLength(maxBytes);
+            MappedByteBuffer map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, maxBytes);
+            FrameLogWriter writer = new FrameLogWriter(file, map, indexSlots, capacity);
+            map.putLong(FrameLog.MAGIC_OFFSET, FrameLog.MAGIC);
+            map.putInt(FrameLog.VERSION_OFFSET, FrameLog.VERSION);
+            map.putInt(FrameLog.INDEX_SLOTS_OFFSET, indexSlots);
+            map.putLong(FrameLog.CAPACITY_OFFSET, capacity);
+            writer.publish();
+            return writer;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param luma {@code width * height} downscaled luma bytes, rows packed
+     */
+    public void appendFrame(long timestampNanos, long sequence, int width, int height, int rotationDegrees,
+                            int scale, byte[] luma) throws IOException {
+        ByteBuffer out = begin(FrameLog.TYPE_FRAME, timestampNanos, 16 + width * height);
+        out.putLong(sequence);
+        out.putShort((short) width);
+        out.putShort((short) height);
+        out.putShort((short) rotationDegrees);
+        out.putShort((short) scale);
+        out.put(luma, 0, width * height);
+        end(timestampNanos);
+    }
+
+    public void appendResult(DetectionResult result) throws IOException {
+        long timestamp = result.getTimestampNanos();
+        ByteBuffer out = begin(FrameLog.TYPE_RESULT, timestamp, 256);
+        List<DetectedBox> objects = result.getObjects();
+        out.putShort((short) objects.size());
+        for (int i = 0; i < objects.size(); i++) {
+            DetectedBox object = objects.get(i);
+            Bounds bounds = object.getBounds();
+            out = ensure(24);
+            out.putInt(object.getTrackingId());
+            out.putFloat(bounds.getLeft());
+            out.putFloat(bounds.getTop());
+            out.putFloat(bounds.getRight());
+            out.putFloat(bounds.getBottom());
+            putLabels(object.getLabels());
+        }
+        putLabels(result.getLabels());
+        end(timestamp);
+    }
+
+    private void putLabels(List<ScoredLabel> labels) {
+        ensure(2).putShort((short) labels.size());
+        for (int i = 0; i < labels.size(); i++) {
+            ScoredLabel label = labels.get(i);
+            byte[] text = label.getText() == null ? new byte[0] : label.getText().getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(text.length, Short.MAX_VALUE);
+            ByteBuffer out = ensure(10 + length);
+            out.putInt(label.getIndex());
+            out.putFloat(label.getConfidence());
+            out.putShort((short) length);
+            out.put(text, 0, length);
+        }
+    }
+
+    private ByteBuffer begin(byte type, long timestampNanos, int payloadHint) throws IOException {
+        if (closed) {
+            throw new IOException("Frame log closed");
+        }
+        record.clear();
+        ensure(FrameLog.RECORD_HEADER_BYTES + payloadHint);
+        record.putInt(0);
+        record.put(type);
+        record.put((byte) 0).put((byte) 0).put((byte) 0);
+        record.putLong(timestampNanos);
+        return record;
+    }
+
+    private ByteBuffer ensure(int bytes) {
+        if (record.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + bytes));
+            record.flip();
+            grown.put(record);
+            record = grown;
+        }
+        return record;
+    }
+
+    private void end(long timestampNanos) throws IOException {
+        int length = record.position();
+        if (length > capacity) {
+            throw new IOException("Record of " + length + " bytes does not fit a log of " + capacity);
+        }
+        record.putInt(0, length);
+        record.flip();
+
+        int physical = (int) (writePosition % capacity);
+        int first = (int) Math.min(length, capacity - physical);
+        ByteBuffer target = map.duplicate();
+        target.position(dataOffset + physical);
+        record.limit(first);
+        target.put(record);
+        if (first < length) {
+            record.limit(length);
+            target.position(dataOffset);
+            target.put(record);
+        }
+
+        int slot = FrameLog.HEADER_BYTES + (int) (recordCount % indexSlots) * FrameLog.INDEX_ENTRY_BYTES;
+        map.putLong(slot, writePosition);
+        map.putLong(slot + 8, timestampNanos);
+        writePosition += length;
+        recordCount++;
+        publish();
+    }
+
+    // the header last, so a reader of a crashed recording only sees complete records
+    private void publish() {
+        map.putLong(FrameLog.WRITE_POSITION_OFFSET, writePosition);
+        map.putLong(FrameLog.RECORD_COUNT_OFFSET, recordCount);
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Bytes appended since creation, including those overwritten since.
+     */
+    public long getBytesWritten() {
+        return writePosition;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        map.force();
+        file.close();
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.cameramlkit.recording;
+
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.PipelineListener;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in recording of a live pipeline into a {@link FrameLogWriter}: every analyzed frame,
+ * downscaled to its luma, and every raw detector result.
+ * <p>
+ * On the analysis thread a frame only costs a box filtered copy into one of a few pooled
+ * buffers, about 0.1 ms for 640x480; a background thread does the writing. When the writer
+ * falls behind, frames and results are dropped from the recording rather than blocking the
+ * analyzer.
+ */
+public final class FrameRecorder implements PipelineListener, Closeable {
+
+    public static final int DEFAULT_MAX_SIDE = 320;
+    private static final int POOLED_FRAMES = 4;
+    private static final Object STOP = new Object();
+    private static final long CLOSE_TIMEOUT_MS = 2_000;
+
+    private final FrameLogWriter writer;
+    private final int maxSide;
+    private final BlockingQueue<FrameCopy> freeFrames;
+    private final BlockingQueue<Object> pending;
+    private final Thread thread;
+
+    private final AtomicLong recordedFrames = new AtomicLong();
+    private final AtomicLong recordedResults = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong droppedResults = new AtomicLong();
+    private volatile IOException error;
+    private volatile IOException closeError;
+    private volatile boolean closed;
+    // set when close() stopped waiting; the drain thread then drops the rest and closes the writer
+    private volatile boolean abandoned;
+    // analysis thread only
+    private byte[] rows;
+
+    private static final class FrameCopy {
+        byte[] luma = new byte[0];
+        long timestampNanos;
+        long sequence;
+        int width;
+        int height;
+        int rotationDegrees;
+        int scale;
+    }
+
+    /**
+     * @param maxSide frames are downscaled by a whole factor until neither side exceeds this
+     */
+    public FrameRecorder(FrameLogWriter writer, int maxSide) {
+        this.writer = writer;
+        this.maxSide = maxSide;
+        this.freeFrames = new ArrayBlockingQueue<>(POOLED_FRAMES);
+        for (int i = 0; i < POOLED_FRAMES; i++) {
+            freeFrames.add(new FrameCopy());
+        }
+        this.pending = new ArrayBlockingQueue<>(POOLED_FRAMES * 4);
+        this.thread = new Thread(this::drain, "frame-recorder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Records into {@code file}, keeping at most {@code maxBytes} of the newest records.
+     */
+    public static FrameRecorder open(File file, long maxBytes) throws IOException {
+        return new FrameRecorder(FrameLogWriter.create(file, maxBytes), DEFAULT_MAX_SIDE);
+    }
+
+    @Override
+    public void onFrameStarted(Frame frame) {
+        ByteBuffer luma = frame.getLuma();
+        if (closed || error != null || luma == null) {
+            return;
+        }
+        FrameCopy copy = freeFrames.poll();
+        if (copy == null) {
+            droppedFrames.incrementAndGet();
+            return;
+        }
+        int scale = scaleFor(frame.getWidth(), frame.getHeight(), maxSide);
+        int width = frame.getWidth() / scale;
+        int height = frame.getHeight() / scale;
+        if (copy.luma.length < width * height) {
+            copy.luma = new byte[width * height];
+        }
+        rows = downscale(luma, frame.getLumaRowStride(), frame.getLumaPixelStride(), scale, width, height,
+                copy.luma, rows);
+        copy.timestampNanos = frame.getTimestampNanos();
+        copy.sequence = frame.getSequence();
+        copy.width = width;
+        copy.height = height;
+        copy.rotationDegrees = frame.getRotationDegrees();
+        copy.scale = scale;
+        if (!pending.offer(copy)) {
+            freeFrames.offer(copy);
+            droppedFrames.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onDetectorDone(Frame frame, DetectionResult result) {
+        if (closed || error != null) {
+            return;
+        }
+        if (!pending.offer(result)) {
+            droppedResults.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onResultProcessed(DetectionResult result) {
+    }
+
+    static int scaleFor(int width, int height, int maxSide) {
+        int longest = Math.max(width, height);
+        return Math.max(1, (longest + maxSide - 1) / maxSide);
+    }
+
+    /**
+     * Mean of each {@code scale x scale} block of the luma plane into {@code out}. The rows of
+     * a block are bulk copied into {@code rows} first, which is much faster than reading the
+     * (usually direct) plane one byte at a time.
+     */
+    static byte[] downscale(ByteBuffer luma, int rowStride, int pixelStride, int scale,
+                            int width, int height, byte[] out, byte[] rows) {
+        int span = (scale - 1) * rowStride + (width * scale - 1) * pixelStride + 1;
+        if (rows == null || rows.length < span) {
+            rows = new byte[span];
+        }
+        ByteBuffer plane = luma.duplicate();
+        int area = scale * scale;
+        for (int v = 0; v < height; v++) {
+            plane.position(v * scale * rowStride);
+            plane.get(rows, 0, span);
+            int outRow = v * width;
+            if (scale == 2 && pixelStride == 1) {
+                // the usual 640x480 analysis frame, unrolled
+                for (int u = 0, x = 0; u < width; u++, x += 2) {
+                    int sum = (rows[x] & 0xff) + (rows[x + 1] & 0xff)
+                            + (rows[x + rowStride] & 0xff) + (rows[x + rowStride + 1] & 0xff);
+                    out[outRow + u] = (byte) (sum >> 2);
+                }
+                continue;
+            }
+            for (int u = 0; u < width; u++) {
+                int base = u * scale * pixelStride;
+                int sum = 0;
+                for (int dy = 0; dy < scale; dy++) {
+                    int offset = base + dy * rowStride;
+                    for (int dx = 0; dx < scale; dx++) {
+                        sum += rows[offset + dx * pixelStride] & 0xff;
+                    }
+                }
+                out[outRow + u] = (byte) (sum / area);
+            }
+        }
+        return rows;
+    }
+
+    // owns the writer: writes, and closes it on the way out
+    private void drain() {
+        try {
+            while (true) {
+                Object item = pending.take();
+                if (item == STOP || abandoned) {
+                    return;
+                }
+                if (error != null) {
+                    recycle(item);
+                    continue;
+                }
+                try {
+                    if (item instanceof FrameCopy) {
+                        FrameCopy copy = (FrameCopy) item;
+                        writer.appendFrame(copy.timestampNanos, copy.sequence, copy.width, copy.height,
+                                copy.rotationDegrees, copy.scale, copy.luma);
+                        recordedFrames.incrementAndGet();
+                    } else {
+                        writer.appendResult((DetectionResult) item);
+                        recordedResults.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    error = e;
+                }
+                recycle(item);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                closeError = e;
+            }
+        }
+    }
+
+    private void recycle(Object item) {
+        if (item instanceof FrameCopy) {
+            freeFrames.offer((FrameCopy) item);
+        }
+    }
+
+    public long getRecordedFrames() {
+        return recordedFrames.get();
+    }
+
+    public long getRecordedResults() {
+        return recordedResults.get();
+    }
+
+    /**
+     * Frames left out because the writer was behind.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getDroppedResults() {
+        return droppedResults.get();
+    }
+
+    /**
+     * The write error that stopped the recording, or null.
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Writes what is still queued, then closes the log. Call after the pipeline stopped. When
+     * the writer needs longer than a couple of seconds, the rest of the queue is dropped and the
+     * log is closed in the background, by the thread that is still writing to it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (pending.offer(STOP, CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                thread.join(CLOSE_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            abandoned = true;
+            // wakes the thread should it have emptied the queue since STOP did not fit; when it
+            // is still full, the next item taken ends the loop
+            pending.offer(STOP);
+            return;
+        }
+        if (closeError != null) {
+            throw closeError;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.cameramlkit.replay;
+
+import com.example.cameramlkit.pipeline.Frame;
+
+import java.io.IOException;
+
+/**
+ * Loads the pixels of one recorded frame. Returns a builder with the size and luma plane
+ * set; {@link ReplayFrameSource} adds the sequence, timestamp, rotation and releaser.
+ */
+public interface FrameDecoder {
+
+    Frame.Builder decode(RecordedSequence.Entry entry) throws IOException;
+}
@@ -0,0 +1,199 @@
+package com.example.cameramlkit.replay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A recorded frame sequence: per frame its camera timestamp and, optionally, the file holding
+ * its pixels. Read from an {@code index.csv} of {@code timestampNanos,file[,width,height[,rotation]]}
+ * lines ({@code #} starts a comment; width and height may be left out for self describing
+ * formats such as JPEG), made from a plain folder of images, or from timestamps only when the
+ * detector results are replayed without pixels.
+ */
+public final class RecordedSequence {
+
+    public static final String INDEX_FILE = "index.csv";
+
+    private static final long DEFAULT_INTERVAL_NANOS = 33_333_333L;
+
+    private final List<Entry> entries;
+
+    private RecordedSequence(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("A recorded sequence needs at least one frame");
+        }
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Reads {@code index.csv} from {@code directory}; file names are relative to it.
+     */
+    public static RecordedSequence read(File directory) throws IOException {
+        try (Reader reader = new InputStreamReader(
+                Files.newInputStream(new File(directory, INDEX_FILE).toPath()), StandardCharsets.UTF_8)) {
+            return parse(reader, directory);
+        }
+    }
+
+    public static RecordedSequence parse(Reader reader, File directory) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int number = 0;
+        long previous = Long.MIN_VALUE;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s*,\\s*");
+            if (fields.length < 2 || fields.length > 5) {
+                throw new IOException("Expected timestamp,file[,width,height[,rotation]] at line " + number);
+            }
+            try {
+                long timestamp = Long.parseLong(fields[0]);
+                if (timestamp <= previous) {
+                    throw new IOException("Timestamps must increase, at line " + number);
+                }
+                previous = timestamp;
+                int width = fields.length > 2 ? Integer.parseInt(fields[2]) : 0;
+                int height = fields.length > 3 ? Integer.parseInt(fields[3]) : 0;
+                int rotation = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+                File file = fields[1].isEmpty() ? null : new File(directory, fields[1]);
+                entries.add(new Entry(entries.size(), timestamp, file, width, height, rotation));
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad number at line " + number, e);
+            }
+        }
+        return new RecordedSequence(entries);
+    }
+
+    /**
+     * Every file of {@code directory} ending in {@code suffix}, in name order, one frame every
+     * {@code intervalNanos}.
+     */
+    public static RecordedSequence ofFolder(File directory, String suffix, long intervalNanos) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+        if (files == null) {
+            throw new IOException("Cannot list " + directory);
+        }
+        Arrays.sort(files);
+        List<Entry> entries = new ArrayList<>(files.length);
+        for (File file : files) {
+            entries.add(new Entry(entries.size(), entries.size() * intervalNanos, file, 0, 0, 0));
+        }
+        return new RecordedSequence(entries);
+    }
+
+    /**
+     * Frames without pixels, e.g. the timestamps of a {@link ResultLog}.
+     */
+    public static RecordedSequence ofTimestamps(Collection<Long> timestamps, int width, int height) {
+        List<Entry> entries = new ArrayList<>(timestamps.size());
+        for (long timestamp : timestamps) {
+            entries.add(new Entry(entries.size(), timestamp, null, width, height, 0));
+        }
+        return new RecordedSequence(entries);
+    }
+
+    public static RecordedSequence of(List<Entry> entries) {
+        return new RecordedSequence(new ArrayList<>(entries));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Entry get(int index) {
+        return entries.get(index);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Mean gap between consecutive frames; the usual camera interval for a single frame.
+     */
+    public long getFrameIntervalNanos() {
+        if (entries.size() < 2) {
+            return DEFAULT_INTERVAL_NANOS;
+        }
+        return (entries.get(entries.size() - 1).timestampNanos - entries.get(0).timestampNanos)
+                / (entries.size() - 1);
+    }
+
+    /**
+     * Time from the first frame until the frame after the last one would be due.
+     */
+    public long getDurationNanos() {
+        return entries.get(entries.size() - 1).timestampNanos - entries.get(0).timestampNanos
+                + getFrameIntervalNanos();
+    }
+
+    public static final class Entry {
+        private final int index;
+        private final long timestampNanos;
+        private final File file;
+        private final int width;
+        private final int height;
+        private final int rotationDegrees;
+
+        public Entry(int index, long timestampNanos, File file, int width, int height, int rotationDegrees) {
+            this.index = index;
+            this.timestampNanos = timestampNanos;
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.rotationDegrees = rotationDegrees;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Camera timestamp at recording time, the key of the recorded results.
+         */
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        /**
+         * File with the frame's pixels, or null.
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Frame width, or 0 when the file format says.
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getRotationDegrees() {
+            return rotationDegrees;
+        }
+    }
+}
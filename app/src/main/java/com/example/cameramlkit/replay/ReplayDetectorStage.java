@@ -0,0 +1,159 @@
+package com.example.cameramlkit.replay;
+
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.DetectorStage;
+import com.example.cameramlkit.pipeline.Frame;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fake detector answering each replayed frame with the result recorded for it, restamped with
+ * the frame's timestamp. The recorded result is looked up by the frame sequence (the recorded
+ * frame index, see {@link ReplayFrameSource}) and the nearest recorded timestamp; frames with
+ * nothing recorded close enough get an empty result.
+ * <p>
+ * An inference latency can be simulated, on the calling thread or on an executor so results
+ * arrive asynchronously like ML Kit's.
+ */
+public final class ReplayDetectorStage implements DetectorStage {
+
+    private final RecordedSequence sequence;
+    private final NavigableMap<Long, DetectionResult> results;
+    private final long toleranceNanos;
+    private final long latencyNanos;
+    private final Sleeper sleeper;
+    private final Executor executor;
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile boolean closed;
+
+    private ReplayDetectorStage(Builder builder) {
+        this.sequence = builder.sequence;
+        this.results = builder.results;
+        this.toleranceNanos = builder.toleranceNanos >= 0
+                ? builder.toleranceNanos : sequence.getFrameIntervalNanos() / 2;
+        this.latencyNanos = builder.latencyNanos;
+        this.sleeper = builder.sleeper;
+        this.executor = builder.executor;
+    }
+
+    @Override
+    public void detect(Frame frame, Callback callback) {
+        frames.incrementAndGet();
+        // nothing reads the pixels
+        frame.release();
+        if (executor == null) {
+            answer(frame, callback);
+        } else {
+            executor.execute(() -> answer(frame, callback));
+        }
+    }
+
+    private void answer(Frame frame, Callback callback) {
+        if (latencyNanos > 0) {
+            try {
+                sleeper.sleepNanos(latencyNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                callback.onError(frame, e);
+                return;
+            }
+        }
+        if (closed) {
+            return;
+        }
+        DetectionResult recorded = lookup(frame.getSequence());
+        if (recorded == null) {
+            misses.incrementAndGet();
+            callback.onResult(frame, DetectionResult.empty(frame.getTimestampNanos()));
+            return;
+        }
+        callback.onResult(frame, new DetectionResult.Builder(frame.getTimestampNanos())
+                .addObjects(recorded.getObjects())
+                .addLabels(recorded.getLabels())
+                .setText(recorded.getText())
+                .build());
+    }
+
+    /**
+     * The result recorded for the frame with this sequence, or null.
+     */
+    public DetectionResult lookup(long frameSequence) {
+        long recordedAt = sequence.get((int) (frameSequence % sequence.size())).getTimestampNanos();
+        Map.Entry<Long, DetectionResult> floor = results.floorEntry(recordedAt);
+        Map.Entry<Long, DetectionResult> ceiling = results.ceilingEntry(recordedAt);
+        Map.Entry<Long, DetectionResult> nearest;
+        if (floor == null) {
+            nearest = ceiling;
+        } else if (ceiling == null) {
+            nearest = floor;
+        } else {
+            nearest = recordedAt - floor.getKey() <= ceiling.getKey() - recordedAt ? floor : ceiling;
+        }
+        if (nearest == null || Math.abs(nearest.getKey() - recordedAt) > toleranceNanos) {
+            return null;
+        }
+        return nearest.getValue();
+    }
+
+    public long getFrames() {
+        return frames.get();
+    }
+
+    /**
+     * Frames without a recorded result.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    public static final class Builder {
+        private final RecordedSequence sequence;
+        private final NavigableMap<Long, DetectionResult> results;
+        private long toleranceNanos = -1;
+        private long latencyNanos;
+        private Sleeper sleeper = Sleeper.SYSTEM;
+        private Executor executor;
+
+        /**
+         * @param results recorded results by recording timestamp, see {@link ResultLog#read}
+         */
+        public Builder(RecordedSequence sequence, NavigableMap<Long, DetectionResult> results) {
+            this.sequence = sequence;
+            this.results = results;
+        }
+
+        /**
+         * How far a recorded result may be from the frame's recorded timestamp; half the frame
+         * interval by default.
+         */
+        public Builder setToleranceNanos(long toleranceNanos) {
+            this.toleranceNanos = toleranceNanos;
+            return this;
+        }
+
+        public Builder setLatency(long latencyNanos, Sleeper sleeper) {
+            this.latencyNanos = latencyNanos;
+            this.sleeper = sleeper;
+            return this;
+        }
+
+        public Builder setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public ReplayDetectorStage build() {
+            return new ReplayDetectorStage(this);
+        }
+    }
+}
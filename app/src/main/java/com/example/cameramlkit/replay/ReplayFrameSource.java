@@ -0,0 +1,231 @@
+package com.example.cameramlkit.replay;
+
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.FrameSource;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Feeds a {@link RecordedSequence} into a pipeline in place of the camera.
+ * <p>
+ * Frames are stamped with the replay clock, as the camera stamps them with its own: in real
+ * time mode each frame is due at its recorded offset from the start and, like the analyzer's
+ * keep-only-latest backpressure, a frame is dropped when the next one is already due; otherwise
+ * frames follow each other as fast as the pipeline takes them. The frame sequence is the
+ * recorded frame index, which is how {@link ReplayDetectorStage} finds the recorded result.
+ * <p>
+ * Frames are delivered on the thread calling {@link #start}, or on the executor if one is set.
+ */
+public final class ReplayFrameSource implements FrameSource {
+
+    private final RecordedSequence sequence;
+    private final FrameDecoder decoder;
+    private final boolean realTime;
+    private final int loops;
+    private final LongSupplier clock;
+    private final Sleeper sleeper;
+    private final Executor executor;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong decodeErrors = new AtomicLong();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile IOException lastDecodeError;
+    private volatile boolean stopped;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    private ReplayFrameSource(Builder builder) {
+        this.sequence = builder.sequence;
+        this.decoder = builder.decoder;
+        this.realTime = builder.realTime;
+        this.loops = builder.loops;
+        this.clock = builder.clock;
+        this.sleeper = builder.sleeper;
+        this.executor = builder.executor;
+    }
+
+    @Override
+    public void start(Consumer<Frame> consumer) {
+        if (executor == null) {
+            run(consumer);
+        } else {
+            executor.execute(() -> run(consumer));
+        }
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+
+    private void run(Consumer<Frame> consumer) {
+        try {
+            startNanos = clock.getAsLong();
+            long first = sequence.get(0).getTimestampNanos();
+            long loopDuration = sequence.getDurationNanos();
+            int size = sequence.size();
+            for (int loop = 0; loop < loops && !stopped; loop++) {
+                for (int i = 0; i < size && !stopped; i++) {
+                    RecordedSequence.Entry entry = sequence.get(i);
+                    long timestamp;
+                    if (realTime) {
+                        long due = startNanos + loop * loopDuration + entry.getTimestampNanos() - first;
+                        long next = i + 1 < size
+                                ? startNanos + loop * loopDuration + sequence.get(i + 1).getTimestampNanos() - first
+                                : Long.MAX_VALUE;
+                        long now = clock.getAsLong();
+                        if (now >= next) {
+                            dropped.incrementAndGet();
+                            continue;
+                        }
+                        if (due > now) {
+                            sleeper.sleepNanos(due - now);
+                        }
+                        timestamp = due;
+                    } else {
+                        timestamp = clock.getAsLong();
+                    }
+                    Frame frame;
+                    try {
+                        frame = decode(entry, (long) loop * size + i, timestamp);
+                    } catch (IOException e) {
+                        decodeErrors.incrementAndGet();
+                        lastDecodeError = e;
+                        continue;
+                    }
+                    delivered.incrementAndGet();
+                    consumer.accept(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            endNanos = clock.getAsLong();
+            finished.countDown();
+        }
+    }
+
+    private Frame decode(RecordedSequence.Entry entry, long frameSequence, long timestamp) throws IOException {
+        Frame.Builder builder = decoder != null
+                ? decoder.decode(entry)
+                : new Frame.Builder(entry.getWidth(), entry.getHeight());
+        return builder
+                .setSequence(frameSequence)
+                .setTimestampNanos(timestamp)
+                .setRotationDegrees(entry.getRotationDegrees())
+                .setReleaser(released::incrementAndGet)
+                .build();
+    }
+
+    /**
+     * Waits until every frame was handed out (or the source was stopped).
+     */
+    public boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    public RecordedSequence getSequence() {
+        return sequence;
+    }
+
+    public long getFramesDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * Frames dropped because the pipeline was still busy when the next one was due.
+     */
+    public long getFramesDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Delivered frames nobody released yet; should be 0 once the pipeline is idle.
+     */
+    public long getFramesOutstanding() {
+        return delivered.get() - released.get();
+    }
+
+    public long getDecodeErrors() {
+        return decodeErrors.get();
+    }
+
+    public IOException getLastDecodeError() {
+        return lastDecodeError;
+    }
+
+    /**
+     * Replay clock time from the first frame until the source ran out of frames.
+     */
+    public long getElapsedNanos() {
+        return isFinished() ? endNanos - startNanos : clock.getAsLong() - startNanos;
+    }
+
+    public static final class Builder {
+        private final RecordedSequence sequence;
+        private FrameDecoder decoder;
+        private boolean realTime;
+        private int loops = 1;
+        private LongSupplier clock = System::nanoTime;
+        private Sleeper sleeper = Sleeper.SYSTEM;
+        private Executor executor;
+
+        public Builder(RecordedSequence sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Without a decoder, frames carry no pixels, which is enough for replayed results.
+         */
+        public Builder setDecoder(FrameDecoder decoder) {
+            this.decoder = decoder;
+            return this;
+        }
+
+        public Builder setRealTime(boolean realTime) {
+            this.realTime = realTime;
+            return this;
+        }
+
+        /**
+         * Plays the sequence this many times; timestamps keep increasing across loops.
+         */
+        public Builder setLoops(int loops) {
+            if (loops < 1) {
+                throw new IllegalArgumentException("loops must be at least 1");
+            }
+            this.loops = loops;
+            return this;
+        }
+
+        /**
+         * The clock stamping the frames, and how to wait for it in real time mode.
+         */
+        public Builder setClock(LongSupplier clock, Sleeper sleeper) {
+            this.clock = clock;
+            this.sleeper = sleeper;
+            return this;
+        }
+
+        public Builder setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public ReplayFrameSource build() {
+            return new ReplayFrameSource(this);
+        }
+    }
+}
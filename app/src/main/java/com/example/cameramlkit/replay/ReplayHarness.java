@@ -0,0 +1,154 @@
+package com.example.cameramlkit.replay;
+
+import com.example.cameramlkit.metrics.FrameMetrics;
+import com.example.cameramlkit.pipeline.DetectionPipeline;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.DetectorStage;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.PipelineListener;
+import com.example.cameramlkit.pipeline.ResultProcessor;
+import com.example.cameramlkit.pipeline.ResultSink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Runs a replayed sequence through a {@link DetectionPipeline} wired like the live one
+ * (processors, {@link FrameMetrics}, sink) and reports what came out, so throughput, latency
+ * and the drawn overlay can be checked offline. Every result is counted as presented the
+ * moment it reaches the sink.
+ */
+public final class ReplayHarness {
+
+    private final ReplayFrameSource source;
+    private final DetectorStage detector;
+    private final List<ResultProcessor> processors;
+    private final ResultSink sink;
+    private final Predicate<Frame> frameFilter;
+    private final LongSupplier clock;
+
+    private ReplayHarness(Builder builder) {
+        this.source = builder.source;
+        this.detector = builder.detector;
+        this.processors = new ArrayList<>(builder.processors);
+        this.sink = builder.sink;
+        this.frameFilter = builder.frameFilter;
+        this.clock = builder.clock;
+    }
+
+    /**
+     * Plays the whole sequence and waits for the last result, at most {@code timeout}.
+     */
+    public ReplayReport run(long timeout, TimeUnit unit) throws InterruptedException {
+        FrameMetrics metrics = new FrameMetrics(clock);
+        List<DetectionResult> results = Collections.synchronizedList(new ArrayList<DetectionResult>());
+        Object lock = new Object();
+        long[] started = new long[1];
+        long[] answered = new long[1];
+        PipelineListener counter = new PipelineListener() {
+            @Override
+            public void onFrameStarted(Frame frame) {
+                synchronized (lock) {
+                    started[0]++;
+                }
+            }
+
+            @Override
+            public void onDetectorDone(Frame frame, DetectionResult result) {
+                synchronized (lock) {
+                    answered[0]++;
+                    lock.notifyAll();
+                }
+            }
+
+            @Override
+            public void onResultProcessed(DetectionResult result) {
+            }
+        };
+        DetectionPipeline.Builder builder = new DetectionPipeline.Builder()
+                .setFrameSource(source)
+                .setDetector(detector)
+                .addListener(metrics)
+                .addListener(counter)
+                .setFrameFilter(frameFilter)
+                .setErrorListener(error -> {
+                    synchronized (lock) {
+                        answered[0]++;
+                        lock.notifyAll();
+                    }
+                })
+                .setSink(result -> {
+                    if (sink != null) {
+                        sink.onResult(result);
+                    }
+                    results.add(result);
+                    metrics.onFramePresented(result.getTimestampNanos());
+                });
+        for (ResultProcessor processor : processors) {
+            builder.addProcessor(processor);
+        }
+        DetectionPipeline pipeline = builder.build();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        pipeline.start();
+        boolean complete = source.awaitFinished(timeout, unit);
+        synchronized (lock) {
+            long remaining;
+            while (answered[0] < started[0] && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            complete &= answered[0] >= started[0];
+        }
+        long elapsed = source.getElapsedNanos();
+        pipeline.close();
+        return new ReplayReport(source, pipeline, metrics, new ArrayList<>(results), elapsed, complete);
+    }
+
+    public static final class Builder {
+        private final ReplayFrameSource source;
+        private final DetectorStage detector;
+        private final List<ResultProcessor> processors = new ArrayList<>();
+        private ResultSink sink;
+        private Predicate<Frame> frameFilter;
+        private LongSupplier clock = System::nanoTime;
+
+        public Builder(ReplayFrameSource source, DetectorStage detector) {
+            this.source = source;
+            this.detector = detector;
+        }
+
+        public Builder addProcessor(ResultProcessor processor) {
+            processors.add(processor);
+            return this;
+        }
+
+        /**
+         * Called with every result on the detector's thread, e.g. to build the overlay model.
+         */
+        public Builder setSink(ResultSink sink) {
+            this.sink = sink;
+            return this;
+        }
+
+        public Builder setFrameFilter(Predicate<Frame> frameFilter) {
+            this.frameFilter = frameFilter;
+            return this;
+        }
+
+        /**
+         * Clock for the metrics; must be the one the frame source stamps frames with.
+         */
+        public Builder setClock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public ReplayHarness build() {
+            return new ReplayHarness(this);
+        }
+    }
+}
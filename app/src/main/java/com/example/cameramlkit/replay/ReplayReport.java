@@ -0,0 +1,102 @@
+package com.example.cameramlkit.replay;
+
+import com.example.cameramlkit.metrics.FrameMetrics;
+import com.example.cameramlkit.metrics.LatencyHistogram;
+import com.example.cameramlkit.pipeline.DetectionPipeline;
+import com.example.cameramlkit.pipeline.DetectionResult;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * What one {@link ReplayHarness} run produced: the results in sink order, frame counts and
+ * the pipeline's timing.
+ */
+public final class ReplayReport {
+
+    private final long framesDelivered;
+    private final long framesDropped;
+    private final long framesOutstanding;
+    private final long framesSkipped;
+    private final long errors;
+    private final FrameMetrics metrics;
+    private final List<DetectionResult> results;
+    private final long elapsedNanos;
+    private final boolean complete;
+
+    ReplayReport(ReplayFrameSource source, DetectionPipeline pipeline, FrameMetrics metrics,
+                 List<DetectionResult> results, long elapsedNanos, boolean complete) {
+        this.framesDelivered = source.getFramesDelivered();
+        this.framesDropped = source.getFramesDropped();
+        this.framesOutstanding = source.getFramesOutstanding();
+        this.framesSkipped = pipeline.getFramesSkipped();
+        this.errors = pipeline.getErrors();
+        this.metrics = metrics;
+        this.results = Collections.unmodifiableList(results);
+        this.elapsedNanos = elapsedNanos;
+        this.complete = complete;
+    }
+
+    public List<DetectionResult> getResults() {
+        return results;
+    }
+
+    public long getFramesDelivered() {
+        return framesDelivered;
+    }
+
+    /**
+     * Frames the source dropped because the pipeline fell behind real time.
+     */
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * Frames never released: a leak in the detector stage or a processor.
+     */
+    public long getFramesOutstanding() {
+        return framesOutstanding;
+    }
+
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * False when the run timed out before the last result.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Results per second of replay clock time.
+     */
+    public double getThroughputFps() {
+        return elapsedNanos <= 0 ? 0 : results.size() * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        LatencyHistogram.Snapshot endToEnd = metrics.getEndToEndLatency().snapshot();
+        return String.format(Locale.US,
+                "%d frames, %d dropped, %d skipped, %d results, %d errors, %.1f fps, e2e p50 %.1f ms p95 %.1f ms%s",
+                framesDelivered, framesDropped, framesSkipped, results.size(), errors, getThroughputFps(),
+                endToEnd.getPercentileMillis(50), endToEnd.getPercentileMillis(95),
+                complete ? "" : " (timed out)");
+    }
+}
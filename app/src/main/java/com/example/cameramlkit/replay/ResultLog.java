@@ -0,0 +1,320 @@
+package com.example.cameramlkit.replay;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.RecognizedText;
+import com.example.cameramlkit.pipeline.ResultSink;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Text format for detector results, so a session recorded on device can be replayed by
+ * {@link ReplayDetectorStage}. One tab separated row per item, each starting with the result's
+ * timestamp:
+ * <pre>
+ * ts  result
+ * ts  object   trackingId  left top right bottom  [index:confidence:text]...
+ * ts  label    index  confidence  text
+ * ts  text     fullText
+ * ts  block    left top right bottom  text
+ * ts  line     left top right bottom  confidence  text
+ * ts  element  left top right bottom  confidence  text
+ * </pre>
+ * Lines belong to the block before them and elements to the line before them. Tabs, new lines
+ * and backslashes in texts are escaped; floats are written so they read back exactly.
+ */
+public final class ResultLog {
+
+    private static final char TAB = '\t';
+
+    private ResultLog() {
+    }
+
+    public static void write(DetectionResult result, Appendable out) throws IOException {
+        String ts = Long.toString(result.getTimestampNanos());
+        out.append(ts).append(TAB).append("result\n");
+        for (DetectedBox object : result.getObjects()) {
+            out.append(ts).append(TAB).append("object").append(TAB)
+                    .append(Integer.toString(object.getTrackingId()));
+            appendBounds(out, object.getBounds());
+            for (ScoredLabel label : object.getLabels()) {
+                out.append(TAB).append(Integer.toString(label.getIndex()))
+                        .append(':').append(Float.toString(label.getConfidence()))
+                        .append(':');
+                appendEscaped(out, label.getText());
+            }
+            out.append('\n');
+        }
+        for (ScoredLabel label : result.getLabels()) {
+            out.append(ts).append(TAB).append("label").append(TAB)
+                    .append(Integer.toString(label.getIndex())).append(TAB)
+                    .append(Float.toString(label.getConfidence())).append(TAB);
+            appendEscaped(out, label.getText());
+            out.append('\n');
+        }
+        RecognizedText text = result.getText();
+        if (text != null) {
+            out.append(ts).append(TAB).append("text").append(TAB);
+            appendEscaped(out, text.getText());
+            out.append('\n');
+            for (RecognizedText.Block block : text.getBlocks()) {
+                out.append(ts).append(TAB).append("block");
+                appendBounds(out, block.getBounds());
+                out.append(TAB);
+                appendEscaped(out, block.getText());
+                out.append('\n');
+                for (RecognizedText.Line line : block.getLines()) {
+                    out.append(ts).append(TAB).append("line");
+                    appendBounds(out, line.getBounds());
+                    out.append(TAB).append(Float.toString(line.getConfidence())).append(TAB);
+                    appendEscaped(out, line.getText());
+                    out.append('\n');
+                    for (RecognizedText.Element element : line.getElements()) {
+                        out.append(ts).append(TAB).append("element");
+                        appendBounds(out, element.getBounds());
+                        out.append(TAB).append(Float.toString(element.getConfidence())).append(TAB);
+                        appendEscaped(out, element.getText());
+                        out.append('\n');
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Every result of the log, by timestamp.
+     */
+    public static NavigableMap<Long, DetectionResult> read(Reader reader) throws IOException {
+        NavigableMap<Long, DetectionResult> results = new TreeMap<>();
+        BufferedReader lines = new BufferedReader(reader);
+        ResultReader current = null;
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 2) {
+                throw new IOException("Expected timestamp and kind at line " + number);
+            }
+            try {
+                long timestamp = Long.parseLong(fields[0]);
+                if (fields[1].equals("result")) {
+                    if (current != null) {
+                        results.put(current.timestamp, current.build());
+                    }
+                    current = new ResultReader(timestamp);
+                    continue;
+                }
+                if (current == null || current.timestamp != timestamp) {
+                    throw new IOException("Row outside of its result at line " + number);
+                }
+                current.add(fields, number);
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                throw new IOException("Malformed row at line " + number, e);
+            }
+        }
+        if (current != null) {
+            results.put(current.timestamp, current.build());
+        }
+        return results;
+    }
+
+    private static void appendBounds(Appendable out, Bounds bounds) throws IOException {
+        out.append(TAB).append(Float.toString(bounds.getLeft()))
+                .append(TAB).append(Float.toString(bounds.getTop()))
+                .append(TAB).append(Float.toString(bounds.getRight()))
+                .append(TAB).append(Float.toString(bounds.getBottom()));
+    }
+
+    private static Bounds parseBounds(String[] fields, int from) {
+        return new Bounds(Float.parseFloat(fields[from]), Float.parseFloat(fields[from + 1]),
+                Float.parseFloat(fields[from + 2]), Float.parseFloat(fields[from + 3]));
+    }
+
+    static void appendEscaped(Appendable out, String text) throws IOException {
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+
+    static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                out.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    // rebuilds one result from its rows
+    private static final class ResultReader {
+        final long timestamp;
+        final DetectionResult.Builder builder;
+        String fullText;
+        final List<RecognizedText.Block> blocks = new ArrayList<>();
+        String blockText;
+        Bounds blockBounds;
+        List<RecognizedText.Line> lines;
+        String lineText;
+        Bounds lineBounds;
+        float lineConfidence;
+        List<RecognizedText.Element> elements;
+
+        ResultReader(long timestamp) {
+            this.timestamp = timestamp;
+            this.builder = new DetectionResult.Builder(timestamp);
+        }
+
+        void add(String[] fields, int number) throws IOException {
+            switch (fields[1]) {
+                case "object":
+                    List<ScoredLabel> labels = new ArrayList<>(fields.length - 7);
+                    for (int i = 7; i < fields.length; i++) {
+                        String[] parts = fields[i].split(":", 3);
+                        labels.add(new ScoredLabel(Integer.parseInt(parts[0]), unescape(parts[2]),
+                                Float.parseFloat(parts[1])));
+                    }
+                    builder.addObject(new DetectedBox(parseBounds(fields, 3), Integer.parseInt(fields[2]), labels));
+                    break;
+                case "label":
+                    builder.addLabel(new ScoredLabel(Integer.parseInt(fields[2]), unescape(fields[4]),
+                            Float.parseFloat(fields[3])));
+                    break;
+                case "text":
+                    fullText = unescape(fields[2]);
+                    break;
+                case "block":
+                    endBlock();
+                    blockBounds = parseBounds(fields, 2);
+                    blockText = unescape(fields[6]);
+                    lines = new ArrayList<>();
+                    break;
+                case "line":
+                    if (lines == null) {
+                        throw new IOException("Line outside of a block at line " + number);
+                    }
+                    endLine();
+                    lineBounds = parseBounds(fields, 2);
+                    lineConfidence = Float.parseFloat(fields[6]);
+                    lineText = unescape(fields[7]);
+                    elements = new ArrayList<>();
+                    break;
+                case "element":
+                    if (elements == null) {
+                        throw new IOException("Element outside of a line at line " + number);
+                    }
+                    elements.add(new RecognizedText.Element(unescape(fields[7]), parseBounds(fields, 2),
+                            Float.parseFloat(fields[6])));
+                    break;
+                default:
+                    throw new IOException("Unknown row '" + fields[1] + "' at line " + number);
+            }
+        }
+
+        private void endLine() {
+            if (elements != null) {
+                lines.add(new RecognizedText.Line(lineText, lineBounds, lineConfidence, elements));
+                elements = null;
+            }
+        }
+
+        private void endBlock() {
+            if (lines != null) {
+                endLine();
+                blocks.add(new RecognizedText.Block(blockText, blockBounds, lines));
+                lines = null;
+            }
+        }
+
+        DetectionResult build() {
+            endBlock();
+            if (fullText != null) {
+                builder.setText(new RecognizedText(fullText, blocks));
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * Sink that appends every result to a log, e.g. next to the pipeline's own sink while
+     * recording a session. Write errors do not reach the pipeline; the first one is kept.
+     */
+    public static final class Recorder implements ResultSink, Closeable {
+        private final Writer writer;
+        private final StringBuilder row = new StringBuilder(256);
+        private volatile IOException error;
+        private long written;
+
+        public Recorder(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public synchronized void onResult(DetectionResult result) {
+            if (error != null) {
+                return;
+            }
+            row.setLength(0);
+            try {
+                write(result, row);
+                writer.append(row);
+                written++;
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        public synchronized long getWritten() {
+            return written;
+        }
+
+        public IOException getError() {
+            return error;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.cameramlkit.replay;
+
+/**
+ * Waits for the replay clock. Tests pass one that advances a fake clock instead, so paced
+ * replays and simulated inference latency stay deterministic.
+ */
+public interface Sleeper {
+
+    Sleeper SYSTEM = nanos -> Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+
+    void sleepNanos(long nanos) throws InterruptedException;
+}
@@ -0,0 +1,31 @@
+package com.example.cameramlkit.replay;
+
+import com.example.cameramlkit.pipeline.Frame;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * Raw YUV 4:2:0 dumps (I420, NV12 or NV21) with tightly packed rows. All three start with
+ * the full Y plane, which is all the pipeline reads, so only that part of the file is loaded.
+ */
+public final class YuvFrameDecoder implements FrameDecoder {
+
+    @Override
+    public Frame.Builder decode(RecordedSequence.Entry entry) throws IOException {
+        int width = entry.getWidth();
+        int height = entry.getHeight();
+        if (entry.getFile() == null || width <= 0 || height <= 0) {
+            throw new IOException("YUV frame " + entry.getIndex() + " needs a file, width and height");
+        }
+        byte[] luma = new byte[width * height];
+        try (InputStream in = Files.newInputStream(entry.getFile().toPath())) {
+            new DataInputStream(in).readFully(luma);
+        }
+        return new Frame.Builder(width, height)
+                .setLuma(ByteBuffer.wrap(luma), width, 1);
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.cameramlkit.roi;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.RecognizedText;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Remembers the text recognized in each region so that regions that have not changed are not
+ * recognized again. A region matches a cached one when they overlap enough and a coarse luma
+ * signature (8x8 cell means, exposure-normalized) is nearly the same.
+ */
+public final class RegionCache {
+
+    static final int GRID = 8;
+    private static final int SAMPLES_PER_CELL = 3;
+
+    /**
+     * A region of the current frame, either with the text cached for it or waiting to be
+     * recognized.
+     */
+    public static final class Region {
+        private final Bounds bounds;
+        private final float[] signature;
+        private final RecognizedText text;
+
+        Region(Bounds bounds, float[] signature, RecognizedText text) {
+            this.bounds = bounds;
+            this.signature = signature;
+            this.text = text;
+        }
+
+        public Bounds getBounds() {
+            return bounds;
+        }
+
+        /**
+         * Cached text in buffer coordinates, null when the region has to be recognized.
+         */
+        public RecognizedText getText() {
+            return text;
+        }
+
+        public boolean needsRecognition() {
+            return text == null;
+        }
+    }
+
+    private static final class Entry {
+        Bounds bounds;
+        float[] signature;
+        RecognizedText text;
+        long lastSeen;
+    }
+
+    private final float minIou;
+    private final float maxDistance;
+    private final long maxAgeFrames;
+    private final List<Entry> entries = new ArrayList<>();
+    private long hits;
+    private long misses;
+
+    /**
+     * @param minIou       overlap needed to consider a cached region the same
+     * @param maxDistance  mean absolute signature difference (luma levels) still considered
+     *                     unchanged
+     * @param maxAgeFrames cached regions not seen for this many frames are forgotten
+     */
+    public RegionCache(float minIou, float maxDistance, long maxAgeFrames) {
+        this.minIou = minIou;
+        this.maxDistance = maxDistance;
+        this.maxAgeFrames = maxAgeFrames;
+    }
+
+    public synchronized List<Region> match(List<Bounds> regions, ByteBuffer luma, int rowStride, int pixelStride, long frame) {
+        Iterator<Entry> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            if (frame - iterator.next().lastSeen > maxAgeFrames) {
+                iterator.remove();
+            }
+        }
+
+        List<Region> matched = new ArrayList<>(regions.size());
+        for (Bounds bounds : regions) {
+            float[] signature = signature(luma, rowStride, pixelStride, bounds);
+            Entry best = null;
+            float bestIou = minIou;
+            for (Entry entry : entries) {
+                float iou = entry.bounds.iou(bounds);
+                if (iou >= bestIou && distance(entry.signature, signature) <= maxDistance) {
+                    best = entry;
+                    bestIou = iou;
+                }
+            }
+            if (best != null) {
+                best.lastSeen = frame;
+                hits++;
+                matched.add(new Region(bounds, signature, best.text));
+            } else {
+                misses++;
+                matched.add(new Region(bounds, signature, null));
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Caches the text recognized for a region returned by {@link #match}.
+     */
+    public synchronized void store(Region region, RecognizedText text, long frame) {
+        Entry entry = new Entry();
+        entry.bounds = region.bounds;
+        entry.signature = region.signature;
+        entry.text = text;
+        entry.lastSeen = frame;
+        // the new entry supersedes stale ones for the same spot
+        Iterator<Entry> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().bounds.iou(region.bounds) >= minIou) {
+                iterator.remove();
+            }
+        }
+        entries.add(entry);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    static float[] signature(ByteBuffer luma, int rowStride, int pixelStride, Bounds bounds) {
+        float[] cells = new float[GRID * GRID];
+        float cellWidth = bounds.width() / GRID;
+        float cellHeight = bounds.height() / GRID;
+        float total = 0;
+        for (int cy = 0; cy < GRID; cy++) {
+            for (int cx = 0; cx < GRID; cx++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int y = (int) (bounds.getTop() + (cy + (sy + 0.5f) / SAMPLES_PER_CELL) * cellHeight);
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        int x = (int) (bounds.getLeft() + (cx + (sx + 0.5f) / SAMPLES_PER_CELL) * cellWidth);
+                        sum += luma.get(y * rowStride + x * pixelStride) & 0xff;
+                    }
+                }
+                float mean = sum / (float) (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+                cells[cy * GRID + cx] = mean;
+                total += mean;
+            }
+        }
+        // remove the average brightness, auto exposure moves it without the content changing
+        float average = total / cells.length;
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] -= average;
+        }
+        return cells;
+    }
+
+    static float distance(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return sum / a.length;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.cameramlkit.roi;
+
+import com.example.cameramlkit.pipeline.Bounds;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A region of the camera buffer turned upright and scaled, ready to be recognized on its own.
+ * <p>
+ * "Buffer" coordinates are those of the sensor-oriented luma plane; the crop's own coordinates
+ * are upright (rotated by the frame's rotation degrees, clockwise) and multiplied by the scale.
+ * {@link #toBuffer} maps boxes found in the crop back into the buffer.
+ */
+public final class RegionCrop {
+
+    private final Bounds region;
+    private final int rotationDegrees;
+    private final float scale;
+    private final int outputWidth;
+    private final int outputHeight;
+
+    public RegionCrop(Bounds region, int rotationDegrees, float scale) {
+        if (rotationDegrees % 90 != 0) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotationDegrees);
+        }
+        this.region = region;
+        this.rotationDegrees = ((rotationDegrees % 360) + 360) % 360;
+        this.scale = scale;
+        boolean swap = this.rotationDegrees == 90 || this.rotationDegrees == 270;
+        float uprightWidth = swap ? region.height() : region.width();
+        float uprightHeight = swap ? region.width() : region.height();
+        // NV21 needs even dimensions
+        this.outputWidth = Math.max(2, Math.round(uprightWidth * scale) & ~1);
+        this.outputHeight = Math.max(2, Math.round(uprightHeight * scale) & ~1);
+    }
+
+    /**
+     * Scale that brings the region's short side to {@code targetShortSide}, within
+     * [1, {@code maxScale}]: small text gets enlarged, large regions are left alone.
+     */
+    public static float upscaleFor(Bounds region, float targetShortSide, float maxScale) {
+        float shortSide = Math.min(region.width(), region.height());
+        if (shortSide <= 0) {
+            return 1f;
+        }
+        return Math.max(1f, Math.min(maxScale, targetShortSide / shortSide));
+    }
+
+    /**
+     * Maps a box given in upright full-frame coordinates (what detectors report for a rotated
+     * InputImage) into buffer coordinates.
+     */
+    public static Bounds uprightToBuffer(Bounds upright, int rotationDegrees, int bufferWidth, int bufferHeight) {
+        return new RegionCrop(new Bounds(0, 0, bufferWidth, bufferHeight), rotationDegrees, 1f).toBuffer(upright);
+    }
+
+    public Bounds getRegion() {
+        return region;
+    }
+
+    public int getOutputWidth() {
+        return outputWidth;
+    }
+
+    public int getOutputHeight() {
+        return outputHeight;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * Maps a box in crop coordinates back into buffer coordinates.
+     */
+    public Bounds toBuffer(Bounds crop) {
+        float x1 = bufferX(crop.getLeft() / scale, crop.getTop() / scale);
+        float y1 = bufferY(crop.getLeft() / scale, crop.getTop() / scale);
+        float x2 = bufferX(crop.getRight() / scale, crop.getBottom() / scale);
+        float y2 = bufferY(crop.getRight() / scale, crop.getBottom() / scale);
+        return new Bounds(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+    }
+
+    // upright region-local (x, y), unscaled, to buffer coordinates
+    private float bufferX(float x, float y) {
+        switch (rotationDegrees) {
+            case 90:
+                return region.getLeft() + y;
+            case 180:
+                return region.getRight() - x;
+            case 270:
+                return region.getRight() - y;
+            default:
+                return region.getLeft() + x;
+        }
+    }
+
+    private float bufferY(float x, float y) {
+        switch (rotationDegrees) {
+            case 90:
+                return region.getBottom() - x;
+            case 180:
+                return region.getBottom() - y;
+            case 270:
+                return region.getTop() + x;
+            default:
+                return region.getTop() + y;
+        }
+    }
+
+    /**
+     * Size of the NV21 array {@link #copyTo} fills.
+     */
+    public int nv21Size() {
+        return outputWidth * outputHeight * 3 / 2;
+    }
+
+    /**
+     * Samples the region out of a luma plane (bilinear) into a grey NV21 image of
+     * {@link #getOutputWidth()} x {@link #getOutputHeight()}: luma as is, chroma neutral.
+     */
+    public void copyTo(ByteBuffer luma, int rowStride, int pixelStride, int bufferWidth, int bufferHeight, byte[] nv21) {
+        int maxX = bufferWidth - 1;
+        int maxY = bufferHeight - 1;
+        for (int v = 0; v < outputHeight; v++) {
+            float y = (v + 0.5f) / scale;
+            int row = v * outputWidth;
+            for (int u = 0; u < outputWidth; u++) {
+                float x = (u + 0.5f) / scale;
+                float bx = Math.max(0f, Math.min(maxX, bufferX(x, y) - 0.5f));
+                float by = Math.max(0f, Math.min(maxY, bufferY(x, y) - 0.5f));
+                int x0 = (int) bx;
+                int y0 = (int) by;
+                int x1 = Math.min(maxX, x0 + 1);
+                int y1 = Math.min(maxY, y0 + 1);
+                float fx = bx - x0;
+                float fy = by - y0;
+                int p00 = luma.get(y0 * rowStride + x0 * pixelStride) & 0xff;
+                int p01 = luma.get(y0 * rowStride + x1 * pixelStride) & 0xff;
+                int p10 = luma.get(y1 * rowStride + x0 * pixelStride) & 0xff;
+                int p11 = luma.get(y1 * rowStride + x1 * pixelStride) & 0xff;
+                float top = p00 + (p01 - p00) * fx;
+                float bottom = p10 + (p11 - p10) * fx;
+                nv21[row + u] = (byte) Math.round(top + (bottom - top) * fy);
+            }
+        }
+        Arrays.fill(nv21, outputWidth * outputHeight, nv21Size(), (byte) 128);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.cameramlkit.roi;
+
+import com.example.cameramlkit.pipeline.Bounds;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns candidate boxes (detected objects) into the regions worth recognizing text in: padded,
+ * clamped to the frame, overlapping ones merged, tiny ones dropped.
+ */
+public final class RegionPlanner {
+
+    private final float padding;
+    private final float minSide;
+
+    /**
+     * @param padding fraction of each side added around a candidate, labels often stick out of
+     *                the detected object
+     * @param minSide regions smaller than this (buffer pixels) are ignored
+     */
+    public RegionPlanner(float padding, float minSide) {
+        this.padding = padding;
+        this.minSide = minSide;
+    }
+
+    public List<Bounds> plan(List<Bounds> candidates, int bufferWidth, int bufferHeight) {
+        List<Bounds> regions = new ArrayList<>(candidates.size());
+        for (Bounds candidate : candidates) {
+            float padX = candidate.width() * padding;
+            float padY = candidate.height() * padding;
+            Bounds padded = new Bounds(
+                    Math.max(0, candidate.getLeft() - padX),
+                    Math.max(0, candidate.getTop() - padY),
+                    Math.min(bufferWidth, candidate.getRight() + padX),
+                    Math.min(bufferHeight, candidate.getBottom() + padY));
+            if (padded.width() >= minSide && padded.height() >= minSide) {
+                regions.add(padded);
+            }
+        }
+        // merge until no two regions overlap, text across a boundary would be cut in half
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < regions.size() && !merged; i++) {
+                for (int j = i + 1; j < regions.size(); j++) {
+                    if (overlaps(regions.get(i), regions.get(j))) {
+                        regions.set(i, union(regions.get(i), regions.get(j)));
+                        regions.remove(j);
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return regions;
+    }
+
+    static boolean overlaps(Bounds a, Bounds b) {
+        return a.getLeft() < b.getRight() && b.getLeft() < a.getRight()
+                && a.getTop() < b.getBottom() && b.getTop() < a.getBottom();
+    }
+
+    static Bounds union(Bounds a, Bounds b) {
+        return new Bounds(Math.min(a.getLeft(), b.getLeft()), Math.min(a.getTop(), b.getTop()),
+                Math.max(a.getRight(), b.getRight()), Math.max(a.getBottom(), b.getBottom()));
+    }
+}
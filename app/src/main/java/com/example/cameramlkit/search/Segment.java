@@ -0,0 +1,504 @@
+package com.example.cameramlkit.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An immutable part of a {@link TextIndex}: its documents in ascending id order with their
+ * names, and per term (sorted) a posting list of (document, term frequency). A posting list is
+ * its length followed by id deltas and frequencies, all variable-byte encoded, so a term found
+ * in every document costs about two bytes per document. On disk the term dictionary is also
+ * front-coded.
+ * <p>
+ * A segment also carries the names removed before its documents were added, which hide the
+ * same names in older segments when the index is opened again.
+ */
+final class Segment {
+
+    static final long MAGIC = 0x434D4C4B49445831L; // "CMLKIDX1"
+    static final int VERSION = 1;
+
+    interface PostingVisitor {
+        void visit(int docId, int frequency);
+    }
+
+    private final int[] docIds;
+    private final String[] names;
+    private final String[] terms;
+    // postings of terms[i] are postings[starts[i], starts[i + 1])
+    private final int[] starts;
+    private final byte[] postings;
+    private final String[] deletions;
+
+    private Segment(int[] docIds, String[] names, String[] terms, int[] starts, byte[] postings, String[] deletions) {
+        this.docIds = docIds;
+        this.names = names;
+        this.terms = terms;
+        this.starts = starts;
+        this.postings = postings;
+        this.deletions = deletions;
+    }
+
+    int size() {
+        return docIds.length;
+    }
+
+    int getDocId(int index) {
+        return docIds[index];
+    }
+
+    /**
+     * Highest document id, -1 when there are no documents.
+     */
+    int getMaxDocId() {
+        return docIds.length == 0 ? -1 : docIds[docIds.length - 1];
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Name of the document {@code docId}, or null when it is not in this segment.
+     */
+    String nameOf(int docId) {
+        int index = Arrays.binarySearch(docIds, docId);
+        return index >= 0 ? names[index] : null;
+    }
+
+    String[] getDeletions() {
+        return deletions;
+    }
+
+    int getTermCount() {
+        return terms.length;
+    }
+
+    String getTerm(int index) {
+        return terms[index];
+    }
+
+    /**
+     * Index of {@code term}, or -1.
+     */
+    int find(String term) {
+        int index = Arrays.binarySearch(terms, term);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Index of the first term not below {@code prefix}; the terms starting with it follow.
+     */
+    int lowerBound(String prefix) {
+        int index = Arrays.binarySearch(terms, prefix);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Documents containing the term at {@code index}.
+     */
+    int getDocumentFrequency(int index) {
+        return readVarInt(postings, new int[]{starts[index]});
+    }
+
+    void readPostings(int index, PostingVisitor visitor) {
+        int[] position = {starts[index]};
+        int count = readVarInt(postings, position);
+        int docId = -1;
+        for (int i = 0; i < count; i++) {
+            docId += readVarInt(postings, position);
+            visitor.visit(docId, readVarInt(postings, position));
+        }
+    }
+
+    /**
+     * Bytes of the encoded postings, for the index's statistics.
+     */
+    int getPostingBytes() {
+        return postings.length;
+    }
+
+    /**
+     * Writes the segment and syncs it to storage, so a file that exists is complete once the
+     * manifest names it.
+     */
+    void write(File file) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(docIds.length);
+            int previous = -1;
+            for (int i = 0; i < docIds.length; i++) {
+                writeVarInt(out, docIds[i] - previous);
+                previous = docIds[i];
+                out.writeUTF(names[i]);
+            }
+            out.writeInt(deletions.length);
+            for (String name : deletions) {
+                out.writeUTF(name);
+            }
+            out.writeInt(terms.length);
+            String last = "";
+            for (int i = 0; i < terms.length; i++) {
+                int shared = sharedPrefix(last, terms[i]);
+                writeVarInt(out, shared);
+                out.writeUTF(terms[i].substring(shared));
+                writeVarInt(out, starts[i + 1] - starts[i]);
+                last = terms[i];
+            }
+            out.writeInt(postings.length);
+            out.write(postings);
+            out.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    static Segment read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("Not an index segment: " + file.getName());
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported index segment version " + version);
+            }
+            int docCount = checkedCount(in.readInt(), file);
+            int[] docIds = new int[docCount];
+            String[] names = new String[docCount];
+            int previous = -1;
+            for (int i = 0; i < docCount; i++) {
+                previous += readVarInt(in);
+                docIds[i] = previous;
+                names[i] = in.readUTF();
+            }
+            String[] deletions = new String[checkedCount(in.readInt(), file)];
+            for (int i = 0; i < deletions.length; i++) {
+                deletions[i] = in.readUTF();
+            }
+            int termCount = checkedCount(in.readInt(), file);
+            String[] terms = new String[termCount];
+            int[] starts = new int[termCount + 1];
+            String last = "";
+            for (int i = 0; i < termCount; i++) {
+                int shared = readVarInt(in);
+                if (shared > last.length()) {
+                    throw new IOException("Corrupt term dictionary in " + file.getName());
+                }
+                terms[i] = last.substring(0, shared) + in.readUTF();
+                starts[i + 1] = starts[i] + readVarInt(in);
+                last = terms[i];
+            }
+            byte[] postings = new byte[checkedCount(in.readInt(), file)];
+            if (postings.length != starts[termCount]) {
+                throw new IOException("Corrupt postings in " + file.getName());
+            }
+            in.readFully(postings);
+            return new Segment(docIds, names, terms, starts, postings, deletions);
+        }
+    }
+
+    /**
+     * One segment of the live documents of {@code parts}, which hold consecutive id ranges in
+     * order. Deletions are kept unless {@code dropDeletions}, i.e. unless no older segment
+     * remains for them to apply to.
+     *
+     * @param live per part, which of its documents to keep
+     */
+    static Segment merge(List<Segment> parts, List<boolean[]> live, boolean dropDeletions) {
+        int docCount = 0;
+        for (boolean[] flags : live) {
+            for (boolean flag : flags) {
+                docCount += flag ? 1 : 0;
+            }
+        }
+        int[] docIds = new int[docCount];
+        String[] names = new String[docCount];
+        Set<String> deletions = new LinkedHashSet<>();
+        int next = 0;
+        for (int p = 0; p < parts.size(); p++) {
+            Segment part = parts.get(p);
+            boolean[] flags = live.get(p);
+            for (int i = 0; i < part.size(); i++) {
+                if (flags[i]) {
+                    docIds[next] = part.docIds[i];
+                    names[next++] = part.names[i];
+                }
+            }
+            if (!dropDeletions) {
+                deletions.addAll(Arrays.asList(part.deletions));
+            }
+        }
+
+        List<String> terms = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        Bytes out = new Bytes(totalPostingBytes(parts));
+        int[] positions = new int[parts.size()];
+        IntArray pending = new IntArray();
+        while (true) {
+            // the smallest term not yet merged
+            String term = null;
+            for (int p = 0; p < parts.size(); p++) {
+                Segment part = parts.get(p);
+                if (positions[p] < part.terms.length
+                        && (term == null || part.terms[positions[p]].compareTo(term) < 0)) {
+                    term = part.terms[positions[p]];
+                }
+            }
+            if (term == null) {
+                break;
+            }
+            pending.clear();
+            for (int p = 0; p < parts.size(); p++) {
+                Segment part = parts.get(p);
+                if (positions[p] < part.terms.length && part.terms[positions[p]].equals(term)) {
+                    boolean[] flags = live.get(p);
+                    part.readPostings(positions[p]++, (docId, frequency) -> {
+                        if (flags[Arrays.binarySearch(part.docIds, docId)]) {
+                            pending.add(docId);
+                            pending.add(frequency);
+                        }
+                    });
+                }
+            }
+            if (pending.size() > 0) {
+                terms.add(term);
+                starts.add(out.size());
+                writePostings(out, pending);
+            }
+        }
+        return new Segment(docIds, names, terms.toArray(new String[0]), toStarts(starts, out.size()),
+                out.toByteArray(), deletions.toArray(new String[0]));
+    }
+
+    private static int totalPostingBytes(List<Segment> parts) {
+        long total = 0;
+        for (Segment part : parts) {
+            total += part.postings.length;
+        }
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, total));
+    }
+
+    private static int[] toStarts(List<Integer> starts, int end) {
+        int[] result = new int[starts.size() + 1];
+        for (int i = 0; i < starts.size(); i++) {
+            result[i] = starts.get(i);
+        }
+        result[starts.size()] = end;
+        return result;
+    }
+
+    // (docId, frequency) pairs in ascending id order
+    private static void writePostings(Bytes out, IntArray pairs) {
+        out.writeVarInt(pairs.size() / 2);
+        int previous = -1;
+        for (int i = 0; i < pairs.size(); i += 2) {
+            out.writeVarInt(pairs.get(i) - previous);
+            out.writeVarInt(pairs.get(i + 1));
+            previous = pairs.get(i);
+        }
+    }
+
+    private static int checkedCount(int count, File file) throws IOException {
+        if (count < 0) {
+            throw new IOException("Corrupt index segment " + file.getName());
+        }
+        return count;
+    }
+
+    private static int sharedPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        // never split a surrogate pair between prefix and suffix
+        if (i > 0 && Character.isHighSurrogate(a.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    // position[0] is advanced past the value
+    private static int readVarInt(byte[] bytes, int[] position) {
+        int value = 0;
+        int shift = 0;
+        int p = position[0];
+        while (true) {
+            int b = bytes[p++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                position[0] = p;
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    /**
+     * Growable byte array for encoding postings.
+     */
+    private static final class Bytes {
+        private byte[] bytes;
+        private int size;
+
+        Bytes(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeVarInt(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    private static final class IntArray {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Collects the documents added since the last flush. A name added again replaces its
+     * earlier document; a removed name is also recorded as a deletion.
+     */
+    static final class Builder {
+        // name -> (docId, term -> frequency), in id order
+        private final Map<String, Document> documents = new LinkedHashMap<>();
+        private final Set<String> deletions = new LinkedHashSet<>();
+
+        private static final class Document {
+            final int docId;
+            final Map<String, Integer> frequencies;
+
+            Document(int docId, Map<String, Integer> frequencies) {
+                this.docId = docId;
+                this.frequencies = frequencies;
+            }
+        }
+
+        void add(int docId, String name, List<String> terms) {
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String term : terms) {
+                Integer count = frequencies.get(term);
+                frequencies.put(term, count == null ? 1 : count + 1);
+            }
+            documents.remove(name);
+            documents.put(name, new Document(docId, frequencies));
+        }
+
+        void remove(String name) {
+            documents.remove(name);
+            deletions.add(name);
+        }
+
+        int size() {
+            return documents.size();
+        }
+
+        boolean isEmpty() {
+            return documents.isEmpty() && deletions.isEmpty();
+        }
+
+        Segment build() {
+            int[] docIds = new int[documents.size()];
+            String[] names = new String[documents.size()];
+            TreeMap<String, IntArray> postings = new TreeMap<>();
+            int next = 0;
+            for (Map.Entry<String, Document> entry : documents.entrySet()) {
+                Document document = entry.getValue();
+                docIds[next] = document.docId;
+                names[next++] = entry.getKey();
+                for (Map.Entry<String, Integer> term : document.frequencies.entrySet()) {
+                    IntArray pairs = postings.get(term.getKey());
+                    if (pairs == null) {
+                        pairs = new IntArray();
+                        postings.put(term.getKey(), pairs);
+                    }
+                    pairs.add(document.docId);
+                    pairs.add(term.getValue());
+                }
+            }
+            String[] terms = new String[postings.size()];
+            int[] starts = new int[terms.length + 1];
+            Bytes out = new Bytes(256);
+            int index = 0;
+            for (Map.Entry<String, IntArray> entry : postings.entrySet()) {
+                terms[index] = entry.getKey();
+                starts[index++] = out.size();
+                writePostings(out, entry.getValue());
+            }
+            starts[terms.length] = out.size();
+            return new Segment(docIds, names, terms, starts, out.toByteArray(), deletions.toArray(new String[0]));
+        }
+    }
+}
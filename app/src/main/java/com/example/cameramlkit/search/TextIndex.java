@@ -0,0 +1,738 @@
+package com.example.cameramlkit.search;
+
+import com.example.cameramlkit.keywords.TextFolding;
+import com.example.cameramlkit.metrics.LatencyHistogram;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent full-text index of named documents, e.g. the text recognized in captured photos,
+ * with exact, prefix ({@code "recei*"}) and fuzzy ({@code "recipt~"}) terms.
+ * <p>
+ * New documents are appended to a journal, synced, and buffered in memory; every
+ * {@link Builder#setFlushDocuments flush size} documents the buffer is written as an immutable
+ * {@link Segment} and a manifest naming the segments is replaced atomically. Whatever happens
+ * to the process, an opened index has every document whose {@link #add} returned: those not
+ * yet in a segment are replayed from the journal, and a torn journal tail is cut off.
+ * <p>
+ * Segments are merged in the background, {@value #MERGE_FACTOR} segments of similar size at a
+ * time, so there are only logarithmically many and each document is rewritten only a few
+ * times. Merges also drop documents that were removed or replaced.
+ * <p>
+ * Adding and flushing write to storage and must not run on the main thread; searching only
+ * reads memory and may run anywhere. All methods are thread safe.
+ */
+public final class TextIndex implements Closeable {
+
+    static final String MANIFEST = "segments";
+    static final String JOURNAL = "journal";
+    static final int MERGE_FACTOR = 4;
+    private static final String SEGMENT_PREFIX = "seg_";
+    private static final String SEGMENT_SUFFIX = ".idx";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final int MAX_TERM_LENGTH = 64;
+    // terms this short only match exactly; below TWO_EDITS_LENGTH one edit, from there two
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final int TWO_EDITS_LENGTH = 8;
+    private static final float PREFIX_WEIGHT = 0.7f;
+    private static final float EDIT_PENALTY = 0.3f;
+
+    private final File directory;
+    private final Executor merger;
+    private final int flushDocuments;
+    // name -> id of its current document; read without the lock by searches
+    private final Map<String, Integer> live = new ConcurrentHashMap<>();
+    private final LatencyHistogram queryLatency = new LatencyHistogram();
+    private final AtomicLong merges = new AtomicLong();
+    // guarded by this; searches read the volatile snapshots
+    private volatile List<Segment> segments;
+    private volatile Segment pendingSegment;
+    private Segment.Builder pending = new Segment.Builder();
+    // file names of the segments, in the same order
+    private List<String> segmentNames = new ArrayList<>();
+    private FileOutputStream journalFile;
+    private DataOutputStream journal;
+    private int nextDocId;
+    private int nextSegment;
+    private boolean merging;
+    private boolean closed;
+
+    /**
+     * A matching document.
+     */
+    public static final class Hit {
+        private final String name;
+        private final float score;
+
+        Hit(String name, float score) {
+            this.name = name;
+            this.score = score;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public float getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s (%.2f)", name, score);
+        }
+    }
+
+    private TextIndex(Builder builder) {
+        this.directory = builder.directory;
+        this.merger = builder.merger;
+        this.flushDocuments = builder.flushDocuments;
+    }
+
+    /**
+     * Indexes {@code text} under {@code name}, replacing an earlier document of that name.
+     * Durable when this returns.
+     */
+    public synchronized void add(String name, String text) throws IOException {
+        checkOpen();
+        journal.writeByte(RECORD_ADD);
+        journal.writeUTF(name);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        journal.writeInt(bytes.length);
+        journal.write(bytes);
+        syncJournal();
+        apply(name, text);
+        if (pending.size() >= flushDocuments) {
+            flushLocked();
+        } else {
+            pendingSegment = pending.build();
+        }
+    }
+
+    /**
+     * Forgets the document {@code name}, e.g. when its photo was deleted.
+     */
+    public synchronized void remove(String name) throws IOException {
+        checkOpen();
+        journal.writeByte(RECORD_REMOVE);
+        journal.writeUTF(name);
+        syncJournal();
+        pending.remove(name);
+        live.remove(name);
+        pendingSegment = pending.build();
+    }
+
+    public boolean contains(String name) {
+        return live.containsKey(name);
+    }
+
+    /**
+     * Writes the buffered documents as a segment, so they need not be replayed on the next open.
+     */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        flushLocked();
+    }
+
+    /**
+     * The documents containing every term of {@code query}, best first, at most {@code limit}.
+     * Terms are folded like the OCR text (see {@link TextFolding}); a term ending in '*' also
+     * matches the terms it begins, one ending in '~' the terms within one or two edits of it.
+     * Scores add up, per term, the rarity of the matched term and how often the document has
+     * it; prefix completions and fuzzy matches count less than the term itself.
+     */
+    public List<Hit> search(String query, int limit) {
+        long start = System.nanoTime();
+        List<QueryTerm> terms = parse(query);
+        // the buffer first: a flush publishes the new segment before it empties the buffer,
+        // so a document may be seen twice but never missed
+        Segment buffered = pendingSegment;
+        List<Segment> parts = new ArrayList<>(segments);
+        if (buffered != null) {
+            parts.add(buffered);
+        }
+        int docLimit = 0;
+        for (Segment part : parts) {
+            docLimit = Math.max(docLimit, part.getMaxDocId() + 1);
+        }
+        // per document: its score so far, how many terms it has, and its score for this term
+        float[] totals = new float[docLimit];
+        int[] matched = new int[docLimit];
+        float[] best = new float[docLimit];
+        int[] touched = new int[docLimit];
+        int count = 0;
+        int candidates = 0;
+        for (int t = 0; t < terms.size(); t++) {
+            count = match(terms.get(t), parts, best, touched);
+            candidates = 0;
+            for (int i = 0; i < count; i++) {
+                int docId = touched[i];
+                if (matched[docId] == t) {
+                    matched[docId] = t + 1;
+                    totals[docId] += best[docId];
+                    candidates++;
+                }
+                best[docId] = 0;
+            }
+            if (candidates == 0) {
+                break;
+            }
+        }
+        // score bits above the id, so the order is by score and then newest first
+        long[] ranked = new long[candidates];
+        int next = 0;
+        for (int i = 0; i < count && next < candidates; i++) {
+            int docId = touched[i];
+            if (matched[docId] == terms.size()) {
+                ranked[next++] = (long) Float.floatToIntBits(totals[docId]) << 32 | docId;
+            }
+        }
+        Arrays.sort(ranked, 0, next);
+        List<Hit> hits = new ArrayList<>();
+        for (int i = next - 1; i >= 0 && hits.size() < limit; i--) {
+            int docId = (int) ranked[i];
+            // removed and replaced documents are only skipped here, they are rare
+            String name = nameOf(parts, docId);
+            Integer current = name != null ? live.get(name) : null;
+            if (current != null && current == docId) {
+                hits.add(new Hit(name, totals[docId]));
+            }
+        }
+        queryLatency.recordNanos(System.nanoTime() - start);
+        return hits;
+    }
+
+    /**
+     * Documents in the index, removed and replaced ones not counted.
+     */
+    public int getDocumentCount() {
+        return live.size();
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public long getMerges() {
+        return merges.get();
+    }
+
+    public LatencyHistogram getQueryLatency() {
+        return queryLatency;
+    }
+
+    /**
+     * Flushes nothing: buffered documents stay in the journal and are replayed on the next open.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            journal.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        List<Segment> current = segments;
+        long bytes = 0;
+        for (Segment segment : current) {
+            bytes += segment.getPostingBytes();
+        }
+        LatencyHistogram.Snapshot latency = queryLatency.snapshot();
+        return String.format(Locale.US, "text index: %d documents, %d segments (%d KB postings), %d merges, query p50 %.2f p95 %.2f ms",
+                getDocumentCount(), current.size(), bytes / 1024, getMerges(),
+                latency.getPercentileMillis(50), latency.getPercentileMillis(95));
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Text index closed");
+        }
+    }
+
+    private void syncJournal() throws IOException {
+        journal.flush();
+        journalFile.getFD().sync();
+    }
+
+    // with the lock held, or while opening
+    private void apply(String name, String text) {
+        int docId = nextDocId++;
+        pending.add(docId, name, tokenize(text));
+        live.put(name, docId);
+    }
+
+    private void flushLocked() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Segment segment = pending.build();
+        String name = SEGMENT_PREFIX + nextSegment++ + SEGMENT_SUFFIX;
+        segment.write(new File(directory, name));
+        List<Segment> next = new ArrayList<>(segments);
+        next.add(segment);
+        List<String> names = new ArrayList<>(segmentNames);
+        names.add(name);
+        writeManifest(names);
+        segments = Collections.unmodifiableList(next);
+        segmentNames = names;
+        pending = new Segment.Builder();
+        pendingSegment = null;
+        // the journal's documents are in the segment now
+        journal.close();
+        journalFile = new FileOutputStream(new File(directory, JOURNAL), false);
+        journal = new DataOutputStream(journalFile);
+        syncJournal();
+        scheduleMerge();
+    }
+
+    private void writeManifest(List<String> names) throws IOException {
+        File temporary = new File(directory, MANIFEST + TEMPORARY_SUFFIX);
+        FileOutputStream stream = new FileOutputStream(temporary);
+        try (DataOutputStream out = new DataOutputStream(stream)) {
+            out.writeLong(Segment.MAGIC);
+            out.writeInt(Segment.VERSION);
+            out.writeInt(nextDocId);
+            out.writeInt(nextSegment);
+            out.writeInt(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temporary.renameTo(new File(directory, MANIFEST))) {
+            throw new IOException("Cannot replace the index manifest in " + directory);
+        }
+    }
+
+    // with the lock held
+    private void scheduleMerge() {
+        if (merging || closed || findMerge(segments) == null) {
+            return;
+        }
+        merging = true;
+        try {
+            merger.execute(this::merge);
+        } catch (RejectedExecutionException e) {
+            merging = false;
+        }
+    }
+
+    /**
+     * First and end index of the segments to merge next, or null: the oldest run of
+     * {@value #MERGE_FACTOR} segments of one size level, or else a segment that is at least half
+     * removed documents.
+     */
+    private int[] findMerge(List<Segment> current) {
+        for (int i = 0; i + MERGE_FACTOR <= current.size(); i++) {
+            int level = level(current.get(i));
+            boolean same = true;
+            for (int j = i + 1; j < i + MERGE_FACTOR && same; j++) {
+                same = level(current.get(j)) == level;
+            }
+            if (same) {
+                return new int[]{i, i + MERGE_FACTOR};
+            }
+        }
+        for (int i = 0; i < current.size(); i++) {
+            Segment segment = current.get(i);
+            if (segment.size() > 0 && liveCount(segment) * 2 <= segment.size()) {
+                return new int[]{i, i + 1};
+            }
+        }
+        return null;
+    }
+
+    private int level(Segment segment) {
+        int level = 0;
+        for (long size = segment.size() / Math.max(1, flushDocuments); size >= MERGE_FACTOR; size /= MERGE_FACTOR) {
+            level++;
+        }
+        return level;
+    }
+
+    private int liveCount(Segment segment) {
+        int count = 0;
+        for (int i = 0; i < segment.size(); i++) {
+            count += isLive(segment, i) ? 1 : 0;
+        }
+        return count;
+    }
+
+    private boolean isLive(Segment segment, int index) {
+        Integer current = live.get(segment.getName(index));
+        return current != null && current == segment.getDocId(index);
+    }
+
+    // merge thread: reads and writes segments without the lock, swaps them in with it
+    private void merge() {
+        while (true) {
+            List<Segment> parts;
+            List<boolean[]> flags = new ArrayList<>();
+            String name;
+            boolean dropDeletions;
+            synchronized (this) {
+                int[] range = closed ? null : findMerge(segments);
+                if (range == null) {
+                    merging = false;
+                    return;
+                }
+                parts = new ArrayList<>(segments.subList(range[0], range[1]));
+                for (Segment part : parts) {
+                    boolean[] keep = new boolean[part.size()];
+                    for (int i = 0; i < keep.length; i++) {
+                        keep[i] = isLive(part, i);
+                    }
+                    flags.add(keep);
+                }
+                dropDeletions = range[0] == 0;
+                name = SEGMENT_PREFIX + nextSegment++ + SEGMENT_SUFFIX;
+            }
+            File file = new File(directory, name);
+            try {
+                Segment merged = Segment.merge(parts, flags, dropDeletions);
+                merged.write(file);
+                synchronized (this) {
+                    if (closed) {
+                        throw new IOException("Text index closed");
+                    }
+                    // only merges remove segments, so the parts are still in place
+                    int first = segments.indexOf(parts.get(0));
+                    List<Segment> next = new ArrayList<>(segments);
+                    List<String> names = new ArrayList<>(segmentNames);
+                    List<String> obsolete = new ArrayList<>(names.subList(first, first + parts.size()));
+                    next.subList(first, first + parts.size()).clear();
+                    names.subList(first, first + parts.size()).clear();
+                    if (merged.size() > 0 || merged.getDeletions().length > 0) {
+                        next.add(first, merged);
+                        names.add(first, name);
+                    } else {
+                        obsolete.add(name);
+                    }
+                    writeManifest(names);
+                    segments = Collections.unmodifiableList(next);
+                    segmentNames = names;
+                    for (String old : obsolete) {
+                        new File(directory, old).delete();
+                    }
+                }
+                merges.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                file.delete();
+                synchronized (this) {
+                    merging = false;
+                }
+                return;
+            }
+        }
+    }
+
+    private static String nameOf(List<Segment> parts, int docId) {
+        for (Segment part : parts) {
+            String name = part.nameOf(docId);
+            if (name != null) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Scores the documents having {@code term} into {@code best}, keeping the best of its
+     * variants, and lists them in {@code touched}. Returns how many there are.
+     */
+    private int match(QueryTerm term, List<Segment> parts, float[] best, int[] touched) {
+        // the index terms the query term stands for, with their weights and document counts
+        Map<String, Float> weights = new HashMap<>();
+        Map<String, Integer> frequencies = new HashMap<>();
+        List<List<Integer>> expansions = new ArrayList<>();
+        for (Segment part : parts) {
+            List<Integer> indexes = expand(term, part, weights);
+            for (int index : indexes) {
+                String text = part.getTerm(index);
+                Integer count = frequencies.get(text);
+                frequencies.put(text, (count == null ? 0 : count) + part.getDocumentFrequency(index));
+            }
+            expansions.add(indexes);
+        }
+        int documents = Math.max(1, live.size());
+        int[] count = {0};
+        for (int p = 0; p < parts.size(); p++) {
+            Segment part = parts.get(p);
+            for (int index : expansions.get(p)) {
+                String text = part.getTerm(index);
+                float weight = weights.get(text)
+                        * (float) Math.log(1 + documents / (double) frequencies.get(text));
+                part.readPostings(index, (docId, frequency) -> {
+                    float score = weight * (1 + (float) Math.log(frequency));
+                    if (best[docId] == 0) {
+                        touched[count[0]++] = docId;
+                    }
+                    if (score > best[docId]) {
+                        best[docId] = score;
+                    }
+                });
+            }
+        }
+        return count[0];
+    }
+
+    /**
+     * Indexes of the terms of {@code part} that {@code term} matches; their weights go into
+     * {@code weights}.
+     */
+    private static List<Integer> expand(QueryTerm term, Segment part, Map<String, Float> weights) {
+        List<Integer> indexes = new ArrayList<>();
+        String text = term.text;
+        if (term.prefix) {
+            for (int i = part.lowerBound(text); i < part.getTermCount() && part.getTerm(i).startsWith(text); i++) {
+                indexes.add(i);
+                weights.put(part.getTerm(i), part.getTerm(i).length() == text.length() ? 1f : PREFIX_WEIGHT);
+            }
+        } else if (term.maxEdits > 0) {
+            int[][] rows = new int[2][text.length() + 1];
+            for (int i = 0; i < part.getTermCount(); i++) {
+                String candidate = part.getTerm(i);
+                if (Math.abs(candidate.length() - text.length()) > term.maxEdits) {
+                    continue;
+                }
+                int edits = boundedDistance(text, candidate, term.maxEdits, rows);
+                if (edits <= term.maxEdits) {
+                    indexes.add(i);
+                    weights.put(candidate, Math.max(0.1f, 1f - EDIT_PENALTY * edits));
+                }
+            }
+        } else {
+            int index = part.find(text);
+            if (index >= 0) {
+                indexes.add(index);
+                weights.put(text, 1f);
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Levenshtein distance of {@code a} and {@code b}, or {@code max + 1} as soon as it must
+     * exceed {@code max}. {@code rows} holds two rows of {@code a.length() + 1}.
+     */
+    static int boundedDistance(String a, String b, int max, int[][] rows) {
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int i = 0; i <= a.length(); i++) {
+            previous[i] = i;
+        }
+        for (int j = 1; j <= b.length(); j++) {
+            current[0] = j;
+            int best = j;
+            char c = b.charAt(j - 1);
+            for (int i = 1; i <= a.length(); i++) {
+                int cost = a.charAt(i - 1) == c ? 0 : 1;
+                current[i] = Math.min(Math.min(current[i - 1], previous[i]) + 1, previous[i - 1] + cost);
+                best = Math.min(best, current[i]);
+            }
+            if (best > max) {
+                return max + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[a.length()], max + 1);
+    }
+
+    private static final class QueryTerm {
+        final String text;
+        final boolean prefix;
+        final int maxEdits;
+
+        QueryTerm(String text, boolean prefix, int maxEdits) {
+            this.text = text;
+            this.prefix = prefix;
+            this.maxEdits = maxEdits;
+        }
+    }
+
+    private static List<QueryTerm> parse(String query) {
+        List<QueryTerm> terms = new ArrayList<>();
+        for (String token : query.trim().split("\\s+")) {
+            boolean prefix = token.endsWith("*");
+            boolean fuzzy = token.endsWith("~");
+            List<String> words = tokenize(prefix || fuzzy ? token.substring(0, token.length() - 1) : token);
+            for (int i = 0; i < words.size(); i++) {
+                String word = words.get(i);
+                // a marker applies to the last word of a token folding splits, e.g. "e-mai*"
+                boolean last = i == words.size() - 1;
+                int maxEdits = !(fuzzy && last) || word.length() < MIN_FUZZY_LENGTH ? 0
+                        : word.length() < TWO_EDITS_LENGTH ? 1 : 2;
+                terms.add(new QueryTerm(word, prefix && last, maxEdits));
+            }
+        }
+        return terms;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        String folded = TextFolding.fold(text);
+        if (folded.isEmpty()) {
+            return terms;
+        }
+        for (String term : folded.split(String.valueOf(TextFolding.SEPARATOR))) {
+            terms.add(term.length() > MAX_TERM_LENGTH ? term.substring(0, MAX_TERM_LENGTH) : term);
+        }
+        return terms;
+    }
+
+    // while opening, before the index is shared
+    private void load() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the text index in " + directory);
+        }
+        List<Segment> loaded = new ArrayList<>();
+        File manifest = new File(directory, MANIFEST);
+        if (manifest.isFile()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(manifest))) {
+                if (in.readLong() != Segment.MAGIC || in.readInt() != Segment.VERSION) {
+                    throw new IOException("Not a text index manifest: " + manifest);
+                }
+                nextDocId = in.readInt();
+                nextSegment = in.readInt();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    segmentNames.add(in.readUTF());
+                }
+            }
+            for (String name : segmentNames) {
+                Segment segment = Segment.read(new File(directory, name));
+                for (String removed : segment.getDeletions()) {
+                    live.remove(removed);
+                }
+                for (int i = 0; i < segment.size(); i++) {
+                    live.put(segment.getName(i), segment.getDocId(i));
+                }
+                loaded.add(segment);
+            }
+        }
+        segments = Collections.unmodifiableList(loaded);
+        // segments of an interrupted flush or merge that never made it into the manifest
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(TEMPORARY_SUFFIX)
+                        || (name.startsWith(SEGMENT_PREFIX) && !segmentNames.contains(name))) {
+                    file.delete();
+                }
+            }
+        }
+        replayJournal();
+    }
+
+    private void replayJournal() throws IOException {
+        File file = new File(directory, JOURNAL);
+        byte[] bytes = file.isFile() ? Files.readAllBytes(file.toPath()) : new byte[0];
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int valid = 0;
+        try {
+            while (in.available() > 0) {
+                byte type = in.readByte();
+                String name = in.readUTF();
+                if (type == RECORD_ADD) {
+                    int length = in.readInt();
+                    if (length < 0 || length > in.available()) {
+                        break;
+                    }
+                    byte[] text = new byte[length];
+                    in.readFully(text);
+                    apply(name, new String(text, StandardCharsets.UTF_8));
+                } else if (type == RECORD_REMOVE) {
+                    pending.remove(name);
+                    live.remove(name);
+                } else {
+                    break;
+                }
+                valid = bytes.length - in.available();
+            }
+        } catch (EOFException e) {
+            // the process died while appending the last record
+        }
+        if (valid < bytes.length) {
+            try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+                truncate.setLength(valid);
+            }
+        }
+        journalFile = new FileOutputStream(file, true);
+        journal = new DataOutputStream(journalFile);
+        pendingSegment = pending.build();
+    }
+
+    public static final class Builder {
+        private final File directory;
+        private Executor merger = Runnable::run;
+        private int flushDocuments = 256;
+
+        /**
+         * @param directory holds the index files and nothing else
+         */
+        public Builder(File directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Where segments are merged; on the thread that flushed by default.
+         */
+        public Builder setMergeExecutor(Executor merger) {
+            this.merger = merger;
+            return this;
+        }
+
+        /**
+         * Documents buffered before they are written as a segment, 256 by default.
+         */
+        public Builder setFlushDocuments(int flushDocuments) {
+            this.flushDocuments = flushDocuments;
+            return this;
+        }
+
+        /**
+         * Opens the index, creating it when the directory has none. Reads from storage.
+         */
+        public TextIndex open() throws IOException {
+            if (flushDocuments < 1) {
+                throw new IllegalStateException("At least one document per segment");
+            }
+            TextIndex index = new TextIndex(this);
+            index.load();
+            synchronized (index) {
+                index.scheduleMerge();
+            }
+            return index;
+        }
+    }
+}
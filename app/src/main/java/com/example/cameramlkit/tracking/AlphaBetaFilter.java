@@ -0,0 +1,46 @@
+package com.example.cameramlkit.tracking;
+
+/**
+ * Constant velocity alpha-beta filter for one coordinate. Time is in seconds.
+ */
+final class AlphaBetaFilter {
+
+    private final float alpha;
+    private final float beta;
+    private float value;
+    private float velocity;
+    private int samples;
+
+    AlphaBetaFilter(float alpha, float beta) {
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    float getValue() {
+        return value;
+    }
+
+    float getVelocity() {
+        return velocity;
+    }
+
+    float predict(float dt) {
+        return value + velocity * dt;
+    }
+
+    void update(float measured, float dt) {
+        if (samples == 0 || dt <= 0) {
+            value = samples == 0 ? measured : value + alpha * (measured - value);
+        } else if (samples == 1) {
+            // two points give the first velocity, waiting for beta to build it up lags badly
+            velocity = (measured - value) / dt;
+            value = measured;
+        } else {
+            float predicted = predict(dt);
+            float residual = measured - predicted;
+            value = predicted + alpha * residual;
+            velocity += beta * residual / dt;
+        }
+        samples++;
+    }
+}
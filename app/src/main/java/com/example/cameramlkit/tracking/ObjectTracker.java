@@ -0,0 +1,240 @@
+package com.example.cameramlkit.tracking;
+
+import com.example.cameramlkit.overlay.BoxBuffer;
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows detected objects across frames so the overlay can draw steady boxes at display rate
+ * while the detector runs slower or skips frames.
+ * <p>
+ * Detections are associated with tracks by the detector's tracking id (ML Kit STREAM_MODE)
+ * first, then by IoU with where each track is predicted to be. Matched tracks are smoothed by
+ * alpha-beta filters; unmatched ones coast on their velocity for a while before being dropped.
+ * <p>
+ * Not thread safe; update and predict from the same thread (the UI thread).
+ */
+public final class ObjectTracker {
+
+    private final float minIou;
+    private final float alpha;
+    private final float beta;
+    private final int minHits;
+    private final int maxMisses;
+    private final long maxCoastNanos;
+    private final long maxExtrapolationNanos;
+    private final List<Track> tracks = new ArrayList<>();
+    private int nextId;
+
+    private ObjectTracker(Builder builder) {
+        this.minIou = builder.minIou;
+        this.alpha = builder.alpha;
+        this.beta = builder.beta;
+        this.minHits = builder.minHits;
+        this.maxMisses = builder.maxMisses;
+        this.maxCoastNanos = builder.maxCoastNanos;
+        this.maxExtrapolationNanos = builder.maxExtrapolationNanos;
+    }
+
+    /**
+     * Feeds the detections of the frame taken at {@code timestampNanos}. Results older than the
+     * last one are ignored.
+     */
+    public void update(List<DetectedBox> detections, long timestampNanos) {
+        long lastUpdate = Long.MIN_VALUE;
+        for (int t = 0; t < tracks.size(); t++) {
+            lastUpdate = Math.max(lastUpdate, tracks.get(t).getLastUpdateNanos());
+        }
+        if (timestampNanos < lastUpdate) {
+            return;
+        }
+
+        int detectionCount = detections.size();
+        Track[] assigned = new Track[detectionCount];
+        boolean[] matched = new boolean[tracks.size()];
+
+        // same detector id, trusted whatever the overlap
+        for (int d = 0; d < detectionCount; d++) {
+            DetectedBox detection = detections.get(d);
+            if (!detection.hasTrackingId()) {
+                continue;
+            }
+            for (int t = 0; t < tracks.size(); t++) {
+                if (!matched[t] && tracks.get(t).getDetectorId() == detection.getTrackingId()) {
+                    matched[t] = true;
+                    assigned[d] = tracks.get(t);
+                    break;
+                }
+            }
+        }
+
+        // then greedily by overlap with the predicted boxes, best pairs first
+        Bounds[] predicted = new Bounds[tracks.size()];
+        for (int t = 0; t < tracks.size(); t++) {
+            predicted[t] = tracks.get(t).boundsAt(timestampNanos, maxExtrapolationNanos);
+        }
+        while (true) {
+            int bestDetection = -1;
+            int bestTrack = -1;
+            float bestIou = minIou;
+            for (int d = 0; d < detectionCount; d++) {
+                if (assigned[d] != null) {
+                    continue;
+                }
+                Bounds bounds = detections.get(d).getBounds();
+                for (int t = 0; t < tracks.size(); t++) {
+                    if (matched[t]) {
+                        continue;
+                    }
+                    float iou = predicted[t].iou(bounds);
+                    if (iou >= bestIou) {
+                        bestIou = iou;
+                        bestDetection = d;
+                        bestTrack = t;
+                    }
+                }
+            }
+            if (bestDetection < 0) {
+                break;
+            }
+            matched[bestTrack] = true;
+            assigned[bestDetection] = tracks.get(bestTrack);
+        }
+
+        for (int t = tracks.size() - 1; t >= 0; t--) {
+            if (matched[t]) {
+                continue;
+            }
+            Track track = tracks.get(t);
+            track.miss();
+            if (track.getMisses() > maxMisses || timestampNanos - track.getLastUpdateNanos() > maxCoastNanos) {
+                tracks.remove(t);
+            }
+        }
+        for (int d = 0; d < detectionCount; d++) {
+            Track track = assigned[d];
+            if (track == null) {
+                track = new Track(nextId++, alpha, beta);
+                tracks.add(track);
+            }
+            track.update(detections.get(d), timestampNanos);
+        }
+    }
+
+    /**
+     * The boxes to draw at {@code timestampNanos}: confirmed tracks, extrapolated from their last
+     * detection, labelled with their last labels and carrying the tracker's id as tracking id.
+     */
+    public List<DetectedBox> predict(long timestampNanos) {
+        if (tracks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<DetectedBox> boxes = new ArrayList<>(tracks.size());
+        for (int t = 0; t < tracks.size(); t++) {
+            Track track = tracks.get(t);
+            if (isVisible(track, timestampNanos)) {
+                boxes.add(new DetectedBox(track.boundsAt(timestampNanos, maxExtrapolationNanos),
+                        track.getId(), track.getLabels()));
+            }
+        }
+        return boxes;
+    }
+
+    /**
+     * Adds the boxes of {@link #predict} to {@code buffer} as
+     * {@link com.example.cameramlkit.overlay.BoxModelBuilder#addObjects} would, without
+     * allocating: for redrawing at display rate.
+     */
+    public void predictInto(BoxBuffer buffer, long timestampNanos, int boxColor, int textColor) {
+        for (int t = 0; t < tracks.size(); t++) {
+            Track track = tracks.get(t);
+            if (isVisible(track, timestampNanos)) {
+                track.addTo(buffer, timestampNanos, maxExtrapolationNanos, boxColor, textColor);
+            }
+        }
+    }
+
+    private boolean isVisible(Track track, long timestampNanos) {
+        return track.getHits() >= minHits && timestampNanos - track.getLastUpdateNanos() <= maxCoastNanos;
+    }
+
+    public List<Track> getTracks() {
+        return Collections.unmodifiableList(tracks);
+    }
+
+    public void clear() {
+        tracks.clear();
+    }
+
+    public static final class Builder {
+        private float minIou = 0.3f;
+        private float alpha = 0.6f;
+        private float beta = 0.15f;
+        private int minHits = 2;
+        private int maxMisses = 3;
+        private long maxCoastNanos = TimeUnit.MILLISECONDS.toNanos(400);
+        private long maxExtrapolationNanos = TimeUnit.MILLISECONDS.toNanos(150);
+
+        /**
+         * Overlap needed to associate a detection with a track that has no matching detector id.
+         */
+        public Builder setMinIou(float minIou) {
+            this.minIou = minIou;
+            return this;
+        }
+
+        /**
+         * Filter gains: higher alpha follows measurements more closely, higher beta adapts the
+         * velocity faster. Both trade smoothness for lag.
+         */
+        public Builder setGains(float alpha, float beta) {
+            this.alpha = alpha;
+            this.beta = beta;
+            return this;
+        }
+
+        /**
+         * Detections needed before a track is drawn, single frame false positives never are.
+         */
+        public Builder setMinHits(int minHits) {
+            this.minHits = minHits;
+            return this;
+        }
+
+        /**
+         * Consecutive results without a detection after which a track is dropped.
+         */
+        public Builder setMaxMisses(int maxMisses) {
+            this.maxMisses = maxMisses;
+            return this;
+        }
+
+        /**
+         * Time a track stays visible without being detected.
+         */
+        public Builder setMaxCoastMillis(long millis) {
+            this.maxCoastNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+            return this;
+        }
+
+        /**
+         * How far past its last detection a box keeps moving; after that it stays put.
+         */
+        public Builder setMaxExtrapolationMillis(long millis) {
+            this.maxExtrapolationNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+            return this;
+        }
+
+        public ObjectTracker build() {
+            if (minIou <= 0 || minIou > 1) {
+                throw new IllegalStateException("minIou must be in (0, 1]");
+            }
+            return new ObjectTracker(this);
+        }
+    }
+}
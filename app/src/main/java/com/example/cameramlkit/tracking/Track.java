@@ -0,0 +1,126 @@
+package com.example.cameramlkit.tracking;
+
+import com.example.cameramlkit.overlay.BoxBuffer;
+import com.example.cameramlkit.overlay.BoxModelBuilder;
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import java.util.List;
+
+/**
+ * One object followed across frames: box center and size are filtered separately so the box
+ * glides instead of jumping, and can be extrapolated between detections.
+ */
+public final class Track {
+
+    private static final float NANOS_PER_SECOND = 1e9f;
+
+    private final int id;
+    private final AlphaBetaFilter centerX;
+    private final AlphaBetaFilter centerY;
+    private final AlphaBetaFilter width;
+    private final AlphaBetaFilter height;
+    private int detectorId = DetectedBox.NO_TRACKING_ID;
+    private List<ScoredLabel> labels;
+    private long lastUpdateNanos;
+    private int hits;
+    private int misses;
+
+    Track(int id, float alpha, float beta) {
+        this.id = id;
+        centerX = new AlphaBetaFilter(alpha, beta);
+        centerY = new AlphaBetaFilter(alpha, beta);
+        width = new AlphaBetaFilter(alpha, beta);
+        height = new AlphaBetaFilter(alpha, beta);
+    }
+
+    void update(DetectedBox detection, long timestampNanos) {
+        float dt = hits == 0 ? 0f : (timestampNanos - lastUpdateNanos) / NANOS_PER_SECOND;
+        Bounds bounds = detection.getBounds();
+        centerX.update(bounds.centerX(), dt);
+        centerY.update(bounds.centerY(), dt);
+        width.update(bounds.width(), dt);
+        height.update(bounds.height(), dt);
+        if (detection.hasTrackingId()) {
+            detectorId = detection.getTrackingId();
+        }
+        // classification flickers in stream mode, keep the last labels through empty ones
+        if (!detection.getLabels().isEmpty() || labels == null) {
+            labels = detection.getLabels();
+        }
+        lastUpdateNanos = timestampNanos;
+        hits++;
+        misses = 0;
+    }
+
+    void miss() {
+        misses++;
+    }
+
+    /**
+     * The filtered box at {@code timestampNanos}, extrapolated at most
+     * {@code maxExtrapolationNanos} past the last detection.
+     */
+    public Bounds boundsAt(long timestampNanos, long maxExtrapolationNanos) {
+        long ahead = Math.max(0, Math.min(maxExtrapolationNanos, timestampNanos - lastUpdateNanos));
+        float dt = ahead / NANOS_PER_SECOND;
+        float cx = centerX.predict(dt);
+        float cy = centerY.predict(dt);
+        float halfWidth = Math.max(0f, width.predict(dt)) * 0.5f;
+        float halfHeight = Math.max(0f, height.predict(dt)) * 0.5f;
+        return new Bounds(cx - halfWidth, cy - halfHeight, cx + halfWidth, cy + halfHeight);
+    }
+
+    /**
+     * Adds the box of {@link #boundsAt} to {@code buffer}, one per label, without allocating.
+     */
+    void addTo(BoxBuffer buffer, long timestampNanos, long maxExtrapolationNanos, int boxColor, int textColor) {
+        long ahead = Math.max(0, Math.min(maxExtrapolationNanos, timestampNanos - lastUpdateNanos));
+        float dt = ahead / NANOS_PER_SECOND;
+        float cx = centerX.predict(dt);
+        float cy = centerY.predict(dt);
+        float halfWidth = Math.max(0f, width.predict(dt)) * 0.5f;
+        float halfHeight = Math.max(0f, height.predict(dt)) * 0.5f;
+        BoxModelBuilder.addObject(buffer, cx - halfWidth, cy - halfHeight, cx + halfWidth, cy + halfHeight,
+                labels, boxColor, textColor);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * The detector's own tracking id, {@link DetectedBox#NO_TRACKING_ID} when it gives none.
+     */
+    public int getDetectorId() {
+        return detectorId;
+    }
+
+    public List<ScoredLabel> getLabels() {
+        return labels;
+    }
+
+    public long getLastUpdateNanos() {
+        return lastUpdateNanos;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Velocity of the box center, pixels per second.
+     */
+    public float getVelocityX() {
+        return centerX.getVelocity();
+    }
+
+    public float getVelocityY() {
+        return centerY.getVelocity();
+    }
+}
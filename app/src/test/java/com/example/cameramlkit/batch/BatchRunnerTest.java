@@ -0,0 +1,201 @@
+package com.example.cameramlkit.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchRunnerTest {
+
+    private File directory;
+    private File checkpointFile;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("batch").toFile();
+        checkpointFile = new File(directory, "progress");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /** Ids 10, 20, ... so the ids are not positions. */
+    private static List<BatchItem> items(int count) {
+        List<BatchItem> items = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            items.add(new BatchItem(i * 10L, "IMG_" + i, 4000, 3000));
+        }
+        return items;
+    }
+
+    private static DetectionResult labelled(BatchItem item) {
+        return new DetectionResult.Builder(0)
+                .addLabel(new ScoredLabel(1, "photo " + item.getId(), 0.9f))
+                .build();
+    }
+
+    /** Collects the ids written, as a sink would store them. */
+    private static final class RecordingSink implements BatchRunner.Sink {
+        final List<Long> accepted = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger flushes = new AtomicInteger();
+
+        @Override
+        public void accept(BatchItem item, DetectionResult result) {
+            accepted.add(item.getId());
+        }
+
+        @Override
+        public void flush() {
+            flushes.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void everyItemIsProcessedOnceAcrossWorkers() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+        BatchRunner runner = new BatchRunner.Builder(item -> {
+            threads.add(Thread.currentThread().getName());
+            if (item.getId() == 70) {
+                throw new IOException("corrupt JPEG");
+            }
+            Thread.sleep(item.getId() % 3);
+            return labelled(item);
+        }, BatchCheckpoint.load(checkpointFile))
+                .addSink(sink)
+                .setWorkers(3)
+                .setCheckpointInterval(10)
+                .build();
+
+        BatchRunner.Progress progress = runner.run(items(100));
+
+        assertTrue(progress.isDone());
+        assertEquals(100, progress.getFinished());
+        assertEquals(99, progress.getProcessed());
+        assertEquals(1, progress.getFailed());
+        assertEquals(99, sink.accepted.size());
+        assertEquals(99, new HashSet<>(sink.accepted).size());
+        assertTrue(threads.size() <= 3);
+        // every 10 items, and at the end
+        assertEquals(11, sink.flushes.get());
+        assertEquals(100, runner.getImageLatency().getCount());
+
+        BatchCheckpoint saved = BatchCheckpoint.load(checkpointFile);
+        assertEquals(1000, saved.getWatermark());
+        assertEquals(99, saved.getProcessed());
+        assertEquals(1, saved.getFailed());
+    }
+
+    @Test
+    public void cancelledRunResumesWhereItStopped() throws Exception {
+        RecordingSink first = new RecordingSink();
+        BatchRunner[] runner = new BatchRunner[1];
+        runner[0] = new BatchRunner.Builder(item -> {
+            if (item.getId() == 250) {
+                runner[0].cancel();
+            }
+            return labelled(item);
+        }, BatchCheckpoint.load(checkpointFile))
+                .addSink(first)
+                .setWorkers(2)
+                .build();
+        BatchRunner.Progress stopped = runner[0].run(items(60));
+        assertFalse(stopped.isDone());
+        assertTrue(stopped.getFinished() < 60);
+
+        // killed and started again: the saved progress is all it knows
+        RecordingSink second = new RecordingSink();
+        BatchRunner.Progress resumed = new BatchRunner.Builder(BatchRunnerTest::labelled, BatchCheckpoint.load(checkpointFile))
+                .addSink(second)
+                .setWorkers(2)
+                .build()
+                .run(items(60));
+        assertTrue(resumed.isDone());
+        assertEquals(60, resumed.getFinished());
+        assertEquals(60 - first.accepted.size(), second.accepted.size());
+        Set<Long> all = new HashSet<>(first.accepted);
+        all.addAll(second.accepted);
+        assertEquals(60, all.size());
+    }
+
+    @Test
+    public void checkpointKeepsItemsThatOvertookASlowerOne() throws Exception {
+        BatchCheckpoint checkpoint = BatchCheckpoint.load(checkpointFile);
+        checkpoint.onStarted(10);
+        checkpoint.onStarted(20);
+        checkpoint.onStarted(30);
+        checkpoint.onFinished(10, true);
+        checkpoint.onFinished(30, true);
+        assertEquals(10, checkpoint.getWatermark());
+        checkpoint.save();
+
+        BatchCheckpoint loaded = BatchCheckpoint.load(checkpointFile);
+        assertTrue(loaded.isFinished(10));
+        assertFalse(loaded.isFinished(20));
+        assertTrue(loaded.isFinished(30));
+        assertFalse(loaded.isFinished(40));
+        // 30 is absorbed once 20, the only item below it, is finished
+        loaded.onStarted(20);
+        loaded.onSkipped(30);
+        loaded.onStarted(40);
+        loaded.onFinished(20, true);
+        assertEquals(30, loaded.getWatermark());
+        assertEquals(3, loaded.getProcessed());
+    }
+
+    @Test
+    public void resultsStreamAsSidecarLines() throws Exception {
+        File results = new File(directory, "results.jsonl");
+        try (BatchResultWriter writer = new BatchResultWriter(results)) {
+            new BatchRunner.Builder(BatchRunnerTest::labelled, BatchCheckpoint.load(checkpointFile))
+                    .addSink(writer)
+                    .setWorkers(1)
+                    .build()
+                    .run(items(2));
+        }
+        List<String> lines = Files.readAllLines(results.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"info\":{\"id\":\"10\"},\"image\":{\"name\":\"IMG_1\",\"width\":4000,\"height\":3000}"));
+        assertTrue(lines.get(1).contains("\"text\":\"photo 20\""));
+    }
+
+    @Test
+    public void imagesAreDecodedNoSmallerThanTheLongSide() {
+        assertEquals(2, BatchItem.sampleSize(4000, 3000, 1280));
+        assertEquals(4, BatchItem.sampleSize(3000, 6000, 1280));
+        assertEquals(1, BatchItem.sampleSize(1920, 1080, 1280));
+        assertEquals(1, BatchItem.sampleSize(640, 480, 1280));
+    }
+
+    @Test
+    public void workersFitCoresAndMemory() {
+        assertEquals(7, BatchRunner.workersFor(8, 512L << 20, 32L << 20));
+        assertEquals(3, BatchRunner.workersFor(8, 128L << 20, 32L << 20));
+        assertEquals(1, BatchRunner.workersFor(1, 512L << 20, 32L << 20));
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.cameramlkit.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.RecognizedText;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+
+public class ResultCacheTest {
+
+    private static final long DETECTORS = ResultCache.detectorsKey("objects", "1.tflite:1234");
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private ResultCache open(long maxBytes) throws Exception {
+        return new ResultCache.Builder(directory).setMaxBytes(maxBytes).open();
+    }
+
+    private static DetectionResult result(int n) {
+        RecognizedText text = new RecognizedText("lot " + n, Collections.singletonList(
+                new RecognizedText.Block("lot " + n, new Bounds(1, 2, 3, 4), Collections.singletonList(
+                        new RecognizedText.Line("lot " + n, new Bounds(1, 2, 3, 4), 0.8f, Collections.emptyList())))));
+        return new DetectionResult.Builder(0)
+                .addObject(new DetectedBox(new Bounds(10.5f, 20, 300, 400), DetectedBox.NO_TRACKING_ID,
+                        Collections.singletonList(new ScoredLabel(2, "Food", 0.75f))))
+                .addLabel(new ScoredLabel(7, "Receipt " + n, 0.9f))
+                .setText(text)
+                .build();
+    }
+
+    @Test
+    public void resultsAreKeptByImageSizeAndDetectors() throws Exception {
+        try (ResultCache cache = open(1 << 20)) {
+            cache.put(42L, 4000, 3000, DETECTORS, result(1));
+            DetectionResult hit = cache.get(42L, 4000, 3000, DETECTORS);
+            assertEquals("Food", hit.getObjects().get(0).getLabels().get(0).getText());
+            assertEquals(new Bounds(10.5f, 20, 300, 400), hit.getObjects().get(0).getBounds());
+            assertEquals("Receipt 1", hit.getLabels().get(0).getText());
+            assertEquals("lot 1", hit.getText().getText());
+
+            assertTrue(cache.get(43L, 4000, 3000, DETECTORS) == null);
+            assertTrue(cache.get(42L, 2000, 1500, DETECTORS) == null);
+            // another model file is another set of detectors
+            assertTrue(cache.get(42L, 4000, 3000, ResultCache.detectorsKey("objects", "1.tflite:5678")) == null);
+            assertEquals(1, cache.getHits());
+            assertEquals(3, cache.getMisses());
+
+            cache.put(42L, 4000, 3000, DETECTORS, result(2));
+            assertEquals("Receipt 2", cache.get(42L, 4000, 3000, DETECTORS).getLabels().get(0).getText());
+            assertEquals(1, cache.getEntryCount());
+        }
+        try (ResultCache cache = open(1 << 20)) {
+            assertEquals(1, cache.getEntryCount());
+            assertEquals("Receipt 2", cache.get(42L, 4000, 3000, DETECTORS).getLabels().get(0).getText());
+        }
+    }
+
+    @Test
+    public void tornLogIsCutAndIndexRebuilt() throws Exception {
+        try (ResultCache cache = open(1 << 20)) {
+            for (int i = 0; i < 3000; i++) {
+                cache.put(i, 640, 480, DETECTORS, result(i));
+            }
+        }
+        long length = new File(directory, ResultCache.LOG).length();
+        try (RandomAccessFile log = new RandomAccessFile(new File(directory, ResultCache.LOG), "rw")) {
+            log.seek(length);
+            log.writeInt(500);
+            log.write(new byte[100]);
+        }
+        try (ResultCache cache = open(1 << 20)) {
+            assertEquals(3000, cache.getEntryCount());
+            assertEquals(length, cache.getLogBytes());
+            assertEquals("Receipt 2999", cache.get(2999, 640, 480, DETECTORS).getLabels().get(0).getText());
+        }
+
+        // an index that lost its writes only costs misses
+        try (RandomAccessFile index = new RandomAccessFile(new File(directory, ResultCache.INDEX), "rw")) {
+            index.seek(ResultCache.HEADER_BYTES);
+            byte[] garbage = new byte[(int) index.length() - ResultCache.HEADER_BYTES];
+            new Random(3).nextBytes(garbage);
+            index.write(garbage);
+        }
+        try (ResultCache cache = open(1 << 20)) {
+            for (int i = 0; i < 3000; i += 7) {
+                DetectionResult hit = cache.get(i, 640, 480, DETECTORS);
+                assertTrue(hit == null || hit.getLabels().get(0).getText().equals("Receipt " + i));
+            }
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedResultsAreEvicted() throws Exception {
+        try (ResultCache cache = open(64 * 1024)) {
+            cache.put(-1, 640, 480, DETECTORS, result(-1));
+            for (int i = 0; i < 2000; i++) {
+                cache.put(i, 640, 480, DETECTORS, result(i));
+                assertTrue(cache.get(-1, 640, 480, DETECTORS) != null);
+                assertTrue(cache.getLogBytes() <= 64 * 1024);
+            }
+            assertTrue(cache.getCompactions() > 0);
+            assertTrue(cache.getEvictions() > 0);
+            assertTrue(cache.get(0, 640, 480, DETECTORS) == null);
+            assertTrue(cache.get(1999, 640, 480, DETECTORS) != null);
+        }
+        try (ResultCache cache = open(64 * 1024)) {
+            assertTrue(cache.get(-1, 640, 480, DETECTORS) != null);
+        }
+    }
+
+    @Test
+    public void imageHashIgnoresScaleAndExposure() {
+        Random random = new Random(11);
+        int[] cells = new int[9 * 8];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = 20 + random.nextInt(200);
+        }
+        long full = ImageHash.of(image(cells, 20, 0), 180, 160);
+        assertEquals(full, ImageHash.of(image(cells, 10, 0), 90, 80));
+        assertEquals(full, ImageHash.of(image(cells, 10, 30), 90, 80));
+
+        cells[10] = cells[10] > 128 ? 0 : 255;
+        assertFalse(full == ImageHash.of(image(cells, 10, 0), 90, 80));
+    }
+
+    // 9 x 8 gray cells of cellSize pixels, brightened by offset
+    private static int[] image(int[] cells, int cellSize, int offset) {
+        int width = 9 * cellSize;
+        int height = 8 * cellSize;
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int gray = Math.min(255, cells[(y / cellSize) * 9 + x / cellSize] + offset);
+                argb[y * width + x] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+            }
+        }
+        return argb;
+    }
+}
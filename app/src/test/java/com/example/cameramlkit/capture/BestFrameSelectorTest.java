@@ -0,0 +1,114 @@
+package com.example.cameramlkit.capture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BestFrameSelectorTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(3);
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /** Stripes {@code period} pixels wide: short periods are sharp edges, long ones soft ramps. */
+    private static ByteBuffer stripes(int period, int rowStride, int pixelStride) {
+        ByteBuffer luma = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int phase = x % (2 * period);
+                int value = (phase < period ? phase : 2 * period - phase) * 255 / period;
+                luma.put(y * rowStride + x * pixelStride, (byte) value);
+            }
+        }
+        return luma;
+    }
+
+    private static Frame frame(long timestampNanos, ByteBuffer luma) {
+        return new Frame.Builder(WIDTH, HEIGHT)
+                .setTimestampNanos(timestampNanos)
+                .setLuma(luma, WIDTH, 1)
+                .build();
+    }
+
+    private static DetectionResult detection(long timestampNanos, float confidence) {
+        return new DetectionResult.Builder(timestampNanos)
+                .addObject(new DetectedBox(new Bounds(0, 0, 10, 10), DetectedBox.NO_TRACKING_ID,
+                        Collections.singletonList(new ScoredLabel(0, "page", confidence))))
+                .build();
+    }
+
+    @Test
+    public void sharperPlanesScoreHigherAndStripsAddUp() {
+        ByteBuffer sharp = stripes(1, WIDTH, 1);
+        ByteBuffer soft = stripes(16, WIDTH, 1);
+        double sharpScore = LumaSharpness.variance(sharp, WIDTH, HEIGHT, WIDTH, 1, 1);
+        assertTrue(sharpScore > 100 * LumaSharpness.variance(soft, WIDTH, HEIGHT, WIDTH, 1, 1));
+
+        for (int step = 1; step <= 3; step++) {
+            assertEquals(LumaSharpness.variance(sharp, WIDTH, HEIGHT, WIDTH, 1, step),
+                    LumaSharpness.variance(sharp, WIDTH, HEIGHT, WIDTH, 1, step, pool, 4), 1e-9);
+        }
+        // the same picture with padded rows and interleaved pixels
+        ByteBuffer strided = stripes(1, WIDTH * 2 + 8, 2);
+        assertEquals(sharpScore, LumaSharpness.variance(strided, WIDTH, HEIGHT, WIDTH * 2 + 8, 2, 1), 1e-9);
+    }
+
+    @Test
+    public void picksThePhotoTakenAtTheSharpestFrame() throws Exception {
+        BestFrameSelector selector = new BestFrameSelector(BestFrameSelector.Criterion.SHARPNESS, pool, 2);
+        // disarmed frames are ignored
+        selector.onFrameStarted(frame(0, stripes(1, WIDTH, 1)));
+        selector.arm();
+        selector.onFrameStarted(frame(100, stripes(8, WIDTH, 1)));
+        selector.onFrameStarted(frame(200, stripes(1, WIDTH, 1)));
+        selector.onFrameStarted(frame(300, stripes(16, WIDTH, 1)));
+        assertTrue(selector.awaitFrame(300, 0));
+        assertFalse(selector.awaitFrame(400, 0));
+
+        // photos are matched to the nearest frame
+        assertEquals(1, selector.select(new long[]{90, 210, 320}));
+        assertEquals(0, selector.select(new long[]{190, 290}));
+        assertEquals(3, selector.getScoringLatency().getCount());
+    }
+
+    @Test
+    public void contentWeighsAgainstSharpness() throws Exception {
+        BestFrameSelector selector = new BestFrameSelector(BestFrameSelector.Criterion.DETECTION, pool, 2);
+        selector.arm();
+        Frame sharpEmpty = frame(100, stripes(1, WIDTH, 1));
+        Frame slightlySoftFound = frame(200, stripes(2, WIDTH, 1));
+        selector.onFrameStarted(sharpEmpty);
+        selector.onFrameStarted(slightlySoftFound);
+        // not detected yet
+        assertFalse(selector.awaitFrame(200, 0));
+        selector.onDetectorDone(sharpEmpty, DetectionResult.empty(100));
+        selector.onDetectorDone(slightlySoftFound, detection(200, 0.9f));
+        assertTrue(selector.awaitFrame(200, 0));
+
+        assertEquals(1, selector.select(new long[]{100, 200}));
+        selector.disarm();
+        assertFalse(selector.isArmed());
+        // scored frames outlive disarming
+        assertEquals(1, selector.select(new long[]{100, 200}));
+    }
+}
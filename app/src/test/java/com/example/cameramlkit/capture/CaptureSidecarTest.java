@@ -0,0 +1,93 @@
+package com.example.cameramlkit.capture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+public class CaptureSidecarTest {
+
+    @Test
+    public void namesAreReadableAndUniqueWithinABurst() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        // 2024-01-31 14:25:01.042 UTC
+        long millis = 1706711101042L;
+        assertEquals("IMG_20240131_142501_042", CaptureSidecar.displayName(millis, utc, 0));
+        assertEquals("IMG_20240131_142501_042_3", CaptureSidecar.displayName(millis, utc, 3));
+    }
+
+    @Test
+    public void jsonCarriesTheDetectionsInPhotoPixels() {
+        DetectionResult result = new DetectionResult.Builder(42)
+                .addObject(new DetectedBox(new Bounds(10, 20, 30, 40), 7,
+                        Collections.singletonList(new ScoredLabel(1, "cup \"mug\"", 0.875f))))
+                .build();
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("screen", "test");
+
+        String json = CaptureSidecar.toJson(info, "IMG_1", 200, 100, result,
+                bounds -> new Bounds(bounds.getLeft() * 2, bounds.getTop() * 2, bounds.getRight() * 2, bounds.getBottom() * 2));
+
+        assertEquals("{\"info\":{\"screen\":\"test\"},\"image\":{\"name\":\"IMG_1\",\"width\":200,\"height\":100},"
+                + "\"result\":{\"timestampNanos\":42,\"objects\":[{\"trackingId\":7,\"bounds\":[20.0,40.0,60.0,80.0],"
+                + "\"labels\":[{\"index\":1,\"text\":\"cup \\\"mug\\\"\",\"confidence\":0.8750}]}],\"labels\":[]}}", json);
+        assertTrue(CaptureSidecar.toJson(info, "IMG_2", 1, 1, null, bounds -> bounds).endsWith("\"result\":null}"));
+    }
+
+    @Test
+    public void indexableTextListsTheLabelsOfImageAndObjects() {
+        DetectionResult result = new DetectionResult.Builder(42)
+                .addObject(new DetectedBox(new Bounds(10, 20, 30, 40), 7,
+                        Collections.singletonList(new ScoredLabel(1, "Cup", 0.875f))))
+                .addLabel(new ScoredLabel(2, "Table", 0.5f))
+                .build();
+        assertEquals("Table\nCup\n", CaptureSidecar.indexableText(result));
+    }
+
+    @Test
+    public void filledPreviewCropsTheLongSide() {
+        // a 4:3 photo of 400x300 filling a 300x300 view: 100x100 view pixels per 100x100 photo
+        // pixels, with 50 view pixels cut off left and right
+        PreviewMapping mapping = new PreviewMapping(300, 300, 400, 300, true);
+        assertEquals(1f, mapping.getScale(), 1e-6);
+        assertEquals(-50f, mapping.getOffsetX(), 1e-6);
+        assertEquals(0f, mapping.getOffsetY(), 1e-6);
+        assertEquals(new Bounds(50, 0, 350, 300), mapping.map(new Bounds(0, 0, 300, 300)));
+
+        // the same photo fitted into the view is letterboxed top and bottom
+        PreviewMapping fitted = new PreviewMapping(200, 300, 400, 300, false);
+        assertEquals(2f, fitted.getScale(), 1e-6);
+        assertEquals(75f, fitted.getOffsetY(), 1e-6);
+        assertEquals(new Bounds(0, 0, 400, 300), fitted.map(new Bounds(0, 75, 200, 225)));
+    }
+
+    @Test
+    public void queueRejectsBeyondCapacityAndTracksDepth() {
+        CaptureQueue queue = new CaptureQueue(2);
+        assertTrue(queue.tryEnter());
+        assertTrue(queue.tryEnter());
+        assertFalse(queue.tryEnter());
+        assertEquals(2, queue.getDepth());
+        assertEquals(1, queue.getRejected());
+
+        queue.onSaved(5_000_000);
+        queue.onFailed();
+        assertEquals(0, queue.getDepth());
+        assertEquals(2, queue.getMaxDepth());
+        assertEquals(1, queue.getSaved());
+        assertEquals(1, queue.getFailed());
+        assertEquals(1, queue.getShutterToSavedLatency().getCount());
+        assertTrue(queue.tryEnter());
+    }
+}
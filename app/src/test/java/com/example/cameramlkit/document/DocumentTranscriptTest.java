@@ -0,0 +1,123 @@
+package com.example.cameramlkit.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.RecognizedText;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DocumentTranscriptTest {
+
+    private static final String[] PAGE = {
+            "Invoice number 2024-0117",
+            "Delivered to Jane Doe",
+            "12 Rue de la Paix, Paris",
+            "Two boxes of green tea",
+            "One ceramic teapot, blue",
+            "Shipping and handling",
+            "Total due within thirty days",
+            "Thank you for your order",
+    };
+    private static final float LINE_HEIGHT = 40;
+
+    /**
+     * The page seen through a window of {@code visible} lines starting at line {@code first},
+     * one block per line; {@code misread} (or -1) is read with a wrong letter and low confidence.
+     */
+    private static RecognizedText view(int first, int visible, int misread) {
+        List<RecognizedText.Block> blocks = new ArrayList<>();
+        for (int i = first; i < Math.min(PAGE.length, first + visible); i++) {
+            String text = PAGE[i];
+            float confidence = 0.9f;
+            if (i == misread) {
+                text = text.replace('e', 'c');
+                confidence = 0.4f;
+            }
+            float top = (i - first) * LINE_HEIGHT + 7;
+            Bounds bounds = new Bounds(20, top, 400, top + LINE_HEIGHT * 0.8f);
+            RecognizedText.Line line = new RecognizedText.Line(text, bounds, confidence,
+                    Collections.singletonList(new RecognizedText.Element(text, bounds, confidence)));
+            blocks.add(new RecognizedText.Block(text, bounds, Collections.singletonList(line)));
+        }
+        return new RecognizedText("", blocks);
+    }
+
+    private static String page(int from, int to) {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (text.length() > 0) {
+                text.append("\n\n");
+            }
+            text.append(PAGE[i]);
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void scrollingOverAPageBuildsOneTranscriptInOrder() {
+        DocumentTranscript transcript = new DocumentTranscript(100, 2);
+        // scroll down one line every other frame, with one line misread now and then
+        for (int frame = 0; frame < 12; frame++) {
+            int first = Math.min(frame / 2, PAGE.length - 4);
+            transcript.add(view(first, 4, frame % 3 == 0 ? first + 1 : -1));
+        }
+        assertEquals(page(0, PAGE.length), transcript.toText());
+        assertEquals(PAGE.length, transcript.getLineCount());
+
+        // back to the top after the first lines were frozen: nothing is duplicated
+        for (int frame = 0; frame < 20; frame++) {
+            transcript.add(view(PAGE.length - 4, 4, -1));
+        }
+        assertTrue(transcript.getActiveLineCount() <= 4);
+        for (int frame = 0; frame < 3; frame++) {
+            transcript.add(view(0, 3, -1));
+        }
+        assertEquals(page(0, PAGE.length), transcript.toText());
+        assertEquals(PAGE.length, transcript.getLineCount());
+    }
+
+    @Test
+    public void confidentReadingsOutvoteFrequentMisreads() {
+        DocumentTranscript transcript = new DocumentTranscript(100, 2);
+        // the second line is misread in 3 of 5 frames, but with much lower confidence
+        for (int frame = 0; frame < 5; frame++) {
+            transcript.add(view(0, 3, frame < 3 ? 1 : -1));
+        }
+        assertEquals(page(0, 3), transcript.toText());
+        String json = transcript.toJson();
+        assertTrue(json, json.startsWith("{\"frames\":5,\"lines\":[{\"text\":\"Invoice number 2024-0117\",\"paragraph\":true,\"votes\":5,\"confidence\":0.900,"));
+        assertTrue(json, json.contains("{\"text\":\"Dclivcrcd to Janc Doc\",\"votes\":3,\"weight\":1.200}"));
+    }
+
+    @Test
+    public void aStillSceneVotesOnceAndSingleSightingsStayOut() {
+        DocumentTranscript transcript = new DocumentTranscript(100, 2);
+        RecognizedText still = view(0, 2, -1);
+        assertTrue(transcript.add(still));
+        assertFalse(transcript.add(still));
+        assertEquals("", transcript.toText());
+        transcript.add(view(0, 2, -1));
+        assertEquals(page(0, 2), transcript.toText());
+    }
+
+    @Test
+    public void memoryStaysBounded() {
+        DocumentTranscript transcript = new DocumentTranscript(5, 1);
+        for (int frame = 0; frame < 40; frame++) {
+            transcript.add(view(frame % PAGE.length, 1, -1));
+        }
+        assertEquals(5, transcript.getLineCount());
+        assertTrue(transcript.getDroppedLines() > 0);
+
+        transcript.clear();
+        assertEquals(0, transcript.getLineCount());
+        assertEquals("", transcript.toText());
+    }
+}
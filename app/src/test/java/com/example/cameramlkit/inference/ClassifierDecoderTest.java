@@ -0,0 +1,70 @@
+package com.example.cameramlkit.inference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ClassifierDecoderTest {
+
+    @Test
+    public void keepsTheBestQuantizedScores() {
+        ClassifierDecoder decoder = ClassifierDecoder.forQuantized(
+                Arrays.asList("background", "apple", "pear", "plum", "fig"), 2, 0.1f, 1f / 255, 0);
+        ByteBuffer output = ByteBuffer.wrap(new byte[]{10, (byte) 200, 50, (byte) 255, 100});
+
+        List<ScoredLabel> labels = decoder.decode(output);
+
+        assertEquals(2, labels.size());
+        assertEquals("plum", labels.get(0).getText());
+        assertEquals(3, labels.get(0).getIndex());
+        assertEquals(1f, labels.get(0).getConfidence(), 1e-6f);
+        assertEquals("apple", labels.get(1).getText());
+        assertEquals(200f / 255, labels.get(1).getConfidence(), 1e-6f);
+        assertEquals(5, decoder.outputBytes());
+    }
+
+    @Test
+    public void readsLabelsPackedAfterTheModel() throws IOException {
+        ByteArrayOutputStream model = new ByteArrayOutputStream();
+        model.write(new byte[1000]);
+        ZipOutputStream zip = new ZipOutputStream(model);
+        putStored(zip, "vocab.txt", "unused\n");
+        putStored(zip, "labels.txt", "background\napple\r\npear\n");
+        zip.close();
+
+        List<String> labels = ModelMetadata.readLabels(ByteBuffer.wrap(model.toByteArray()), "labels.txt");
+
+        assertEquals(Arrays.asList("background", "apple", "pear"), labels);
+        try {
+            ModelMetadata.readLabels(ByteBuffer.wrap(model.toByteArray()), "missing.txt");
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private static void putStored(ZipOutputStream zip, String name, String contents) throws IOException {
+        byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(bytes.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(bytes);
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.cameramlkit.inference;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.cameramlkit.pipeline.Bounds;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class YuvTensorConverterTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+
+    /** Luma rising left to right by 30 per column, neutral chroma (I420 layout). */
+    private static ByteBuffer[] gradientPlanes() {
+        ByteBuffer y = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int x = 0; x < WIDTH; x++) {
+                y.put((byte) (x * 30));
+            }
+        }
+        return new ByteBuffer[]{y, filled(WIDTH * HEIGHT / 4, 128), filled(WIDTH * HEIGHT / 4, 128)};
+    }
+
+    private static ByteBuffer filled(int size, int value) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        for (int i = 0; i < size; i++) {
+            buffer.put((byte) value);
+        }
+        return buffer;
+    }
+
+    private static int red(ByteBuffer out, int size, int row, int column) {
+        return out.get((row * size + column) * 3) & 0xff;
+    }
+
+    private static YuvTensorConverter converter(int rotation) {
+        YuvTensorConverter converter = new YuvTensorConverter(4, YuvTensorConverter.TensorType.UINT8, 0f, 1f, true);
+        converter.configure(WIDTH, HEIGHT, WIDTH, 1, WIDTH / 2, 1, rotation);
+        return converter;
+    }
+
+    @Test
+    public void convertsColorsWithFullRangeBt601() {
+        YuvTensorConverter converter = converter(0);
+        ByteBuffer out = converter.allocateInput();
+        converter.convert(filled(WIDTH * HEIGHT, 128), filled(8, 128), filled(8, 255), out);
+
+        assertEquals(255, out.get(0) & 0xff);
+        assertEquals(37, out.get(1) & 0xff);
+        assertEquals(128, out.get(2) & 0xff);
+        assertEquals(0, out.position());
+    }
+
+    @Test
+    public void centerCropsAndTurnsFramesUpright() {
+        ByteBuffer[] planes = gradientPlanes();
+
+        YuvTensorConverter upright = converter(0);
+        ByteBuffer out = upright.allocateInput();
+        upright.convert(planes[0], planes[1], planes[2], out);
+        for (int i = 0; i < 4; i++) {
+            // columns 2..5 of the frame, left to right
+            assertEquals((2 + i) * 30, red(out, 4, 0, i));
+            assertEquals((2 + i) * 30, red(out, 4, 3, i));
+        }
+        assertEquals(new Bounds(2, 0, 6, 4), upright.getCrop());
+
+        YuvTensorConverter rotated = converter(90);
+        rotated.convert(planes[0], planes[1], planes[2], out);
+        for (int i = 0; i < 4; i++) {
+            // turned clockwise, the left of the buffer is the top of the tensor
+            assertEquals((2 + i) * 30, red(out, 4, i, 0));
+            assertEquals((2 + i) * 30, red(out, 4, i, 3));
+        }
+        assertEquals(new Bounds(2, 0, 6, 4), rotated.getCrop());
+
+        YuvTensorConverter upsideDown = converter(180);
+        upsideDown.convert(planes[0], planes[1], planes[2], out);
+        assertEquals(5 * 30, red(out, 4, 0, 0));
+        assertEquals(2 * 30, red(out, 4, 0, 3));
+    }
+
+    @Test
+    public void normalizesFloatInputs() {
+        YuvTensorConverter converter = new YuvTensorConverter(2, YuvTensorConverter.TensorType.FLOAT32, 127.5f, 127.5f, false);
+        converter.configure(WIDTH, HEIGHT, WIDTH, 1, WIDTH / 2, 1, 0);
+        ByteBuffer out = converter.allocateInput();
+        assertEquals(2 * 2 * 3 * 4, out.capacity());
+
+        converter.convert(filled(WIDTH * HEIGHT, 255), filled(8, 128), filled(8, 128), out);
+        assertEquals(1f, out.getFloat(0), 1e-6f);
+        converter.convert(filled(WIDTH * HEIGHT, 0), filled(8, 128), filled(8, 128), out);
+        assertEquals(-1f, out.getFloat(0), 1e-6f);
+        assertEquals(new Bounds(0, 0, WIDTH, HEIGHT), converter.getCrop());
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.cameramlkit.keywords;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.RecognizedText;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class KeywordMatcherTest {
+
+    private static final int RED = 0xFFFF0000;
+    private static final int ORANGE = 0xFFFF9800;
+    private static final int YELLOW = 0xFFFFFF00;
+
+    private static KeywordMatcher matcher() throws IOException {
+        return KeywordMatcher.compile(KeywordDictionary.parse(new StringReader(
+                "# test dictionary\n"
+                        + "@drugs #FF0000\n"
+                        + "Dulergina\n"
+                        + "Paracetamol\n"
+                        + "pain\n"
+                        + "@allergens #FF9800\n"
+                        + "tree nuts\n"
+                        + "Crème fraîche\n")), 2);
+    }
+
+    private static RecognizedText.Element element(String text) {
+        return new RecognizedText.Element(text, new Bounds(0, 0, 1, 1), 1f);
+    }
+
+    private static RecognizedText.Line line(RecognizedText.Element... elements) {
+        return new RecognizedText.Line("", new Bounds(0, 0, 1, 1), 1f, Arrays.asList(elements));
+    }
+
+    private static RecognizedText.Block block(RecognizedText.Line... lines) {
+        return new RecognizedText.Block("", new Bounds(0, 0, 1, 1), Arrays.asList(lines));
+    }
+
+    private static List<String> terms(List<KeywordMatcher.Match> matches) {
+        List<String> terms = new ArrayList<>();
+        for (KeywordMatcher.Match match : matches) {
+            terms.add(match.getTerm());
+        }
+        return terms;
+    }
+
+    @Test
+    public void foldsCaseAndDiacritics() throws IOException {
+        assertEquals("creme fraiche 2", TextFolding.fold("  CRÈME-fraîche, (2) "));
+        assertEquals(Arrays.asList("Crème fraîche", "Dulergina"),
+                terms(matcher().find("creme FRAICHE and dULERGINA")));
+    }
+
+    @Test
+    public void matchesWholeWordsOnly() throws IOException {
+        KeywordMatcher matcher = matcher();
+        assertEquals(Collections.singletonList("pain"), terms(matcher.find("no pain")));
+        assertTrue(matcher.find("painkiller spain").isEmpty());
+    }
+
+    @Test
+    public void toleratesOcrErrorsInLongKeywords() throws IOException {
+        KeywordMatcher matcher = matcher();
+        List<KeywordMatcher.Match> matches = matcher.find("Paracetam0l 500mg Du1ergina");
+        assertEquals(Arrays.asList("Paracetamol", "Dulergina"), terms(matches));
+        assertEquals(1, matches.get(0).getEdits());
+        assertEquals(1, matches.get(1).getEdits());
+        // a word split in two by the OCR
+        assertEquals(Collections.singletonList("Dulergina"), terms(matcher.find("Duler gina")));
+        // too far, and short keywords have to be exact
+        assertTrue(matcher.find("Dxlxrgxna pian").isEmpty());
+    }
+
+    @Test
+    public void highlightsKeywordsAcrossElementsAndLines() throws IOException {
+        RecognizedText.Element tree = element("Tree");
+        RecognizedText.Element nuts = element("nuts.");
+        RecognizedText.Element contains = element("Contains");
+        RecognizedText.Element drug = element("DULERGINA");
+        RecognizedText.Element other = element("tablets");
+        RecognizedText text = new RecognizedText("", Arrays.asList(
+                block(line(contains, tree), line(nuts)),
+                block(line(drug, other))));
+
+        Highlights highlights = matcher().highlight(text, YELLOW);
+
+        assertEquals(ORANGE, highlights.boxColorFor(tree));
+        assertEquals(ORANGE, highlights.boxColorFor(nuts));
+        assertEquals(RED, highlights.boxColorFor(drug));
+        assertEquals(YELLOW, highlights.boxColorFor(contains));
+        assertFalse(highlights.isHighlighted(other));
+    }
+
+    @Test
+    public void doesNotMatchAcrossBlocks() throws IOException {
+        RecognizedText text = new RecognizedText("", Arrays.asList(
+                block(line(element("tree"))), block(line(element("nuts")))));
+        assertTrue(matcher().highlight(text, YELLOW).getMatches().isEmpty());
+    }
+
+    @Test
+    public void largeDictionaryFindsTheSameMatches() throws IOException {
+        KeywordDictionary dictionary = new KeywordDictionary();
+        for (int i = 0; i < 5000; i++) {
+            dictionary.add("generated", YELLOW, "term" + Integer.toString(i, 36) + "x");
+        }
+        dictionary.add("drugs", RED, "Dulergina");
+        KeywordMatcher matcher = KeywordMatcher.compile(dictionary, 2);
+
+        assertEquals(5001, matcher.size());
+        List<KeywordMatcher.Match> matches = matcher.find("take dulergina and term2sx");
+        assertEquals(Arrays.asList("Dulergina", "term2sx"), terms(matches));
+        assertEquals(RED, matches.get(0).getColor());
+    }
+
+    @Test
+    public void deletionHashesMatchTheDeletedStrings() {
+        DeletionIndex.Scratch scratch = new DeletionIndex.Scratch(8);
+        DeletionIndex.hashes("abde".toCharArray(), 0, 4, 0, scratch);
+        long abde = scratch.hashes[0];
+        DeletionIndex.hashes("xabdex".toCharArray(), 1, 4, 0, scratch);
+        assertEquals(abde, scratch.hashes[0]);
+
+        // "abcde" -> 1 + 5 single + 10 double deletions, "abde" among the singles
+        assertEquals(16, DeletionIndex.hashes("abcde".toCharArray(), 0, 5, 2, scratch));
+        assertEquals(abde, scratch.hashes[1 + 2]);
+        DeletionIndex.hashes("ae".toCharArray(), 0, 2, 0, scratch);
+        long ae = scratch.hashes[0];
+        DeletionIndex.hashes("abde".toCharArray(), 0, 4, 2, scratch);
+        boolean found = false;
+        for (int i = 0; i < 1 + 4 + 6; i++) {
+            found |= scratch.hashes[i] == ae;
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void parsesCategoryColors() throws IOException {
+        KeywordDictionary dictionary = KeywordDictionary.parse(new StringReader(
+                "orphan\n@a #80112233\nx\n@b\ny\n"));
+        assertEquals(3, dictionary.getCategories().size());
+        assertEquals(KeywordDictionary.DEFAULT_COLOR, dictionary.getCategories().get(0).getColor());
+        assertEquals(0x80112233, dictionary.getCategories().get(1).getColor());
+        assertEquals(3, dictionary.size());
+    }
+
+    @Test
+    public void highlighterKeepsTheLatestTwoResults() throws IOException {
+        ResultHighlighter highlighter = new ResultHighlighter(YELLOW);
+        RecognizedText.Element drug = element("Paracetamol");
+        RecognizedText text = new RecognizedText("", Collections.singletonList(block(line(drug))));
+        DetectionResult first = new DetectionResult.Builder(1).setText(text).build();
+        DetectionResult second = new DetectionResult.Builder(2).setText(text).build();
+        DetectionResult third = new DetectionResult.Builder(3).setText(text).build();
+
+        // no dictionary yet
+        highlighter.onResult(first);
+        assertNull(highlighter.get(first));
+
+        highlighter.setMatcher(matcher());
+        highlighter.onResult(first);
+        highlighter.onResult(second);
+        assertEquals(RED, highlighter.get(first).boxColorFor(drug));
+        highlighter.onResult(third);
+        assertNull(highlighter.get(first));
+        assertEquals(RED, highlighter.get(second).boxColorFor(drug));
+        assertEquals(RED, highlighter.get(third).boxColorFor(drug));
+
+        highlighter.setEnabled(false);
+        assertNull(highlighter.get(third));
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.cameramlkit.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.Frame;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+public class FrameMetricsTest {
+
+    private long now;
+    private final FrameMetrics metrics = new FrameMetrics(() -> now);
+
+    private static Frame frame(long timestampNanos) {
+        return new Frame.Builder(8, 4)
+                .setTimestampNanos(timestampNanos)
+                .setLuma(ByteBuffer.allocate(32), 8, 1)
+                .build();
+    }
+
+    private void runFrame(long timestamp, long captureMs, long inferMs, long postMs, long presentMs) {
+        Frame frame = frame(timestamp);
+        DetectionResult result = DetectionResult.empty(timestamp);
+        now = timestamp + captureMs * 1_000_000L;
+        metrics.onFrameStarted(frame);
+        now += inferMs * 1_000_000L;
+        metrics.onDetectorDone(frame, result);
+        now += postMs * 1_000_000L;
+        metrics.onResultProcessed(result);
+        now += presentMs * 1_000_000L;
+        metrics.onFramePresented(timestamp);
+    }
+
+    @Test
+    public void bucketBoundsCoverEveryValue() {
+        for (long micros : new long[]{0, 1, 63, 64, 65, 1000, 33_333, 1L << 30}) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(micros <= LatencyHistogram.upperBoundOf(bucket));
+            if (bucket > 0) {
+                assertTrue(micros > LatencyHistogram.upperBoundOf(bucket - 1));
+            }
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesStayWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.recordNanos(ms * 1_000_000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(50, snapshot.getPercentileMillis(50), 50 * 0.04);
+        assertEquals(99, snapshot.getPercentileMillis(99), 99 * 0.04);
+        assertEquals(100, snapshot.getMaxMillis(), 0.001);
+        assertEquals(50.5, snapshot.getMeanMillis(), 0.001);
+    }
+
+    @Test
+    public void stagesAreTimedPerFrame() {
+        for (int i = 1; i <= 10; i++) {
+            runFrame(i * 33_000_000L, 5, 20, 2, 8);
+        }
+
+        assertEquals(10, metrics.getAnalyzedFrames());
+        assertEquals(10, metrics.getPresentedFrames());
+        assertEquals(5, metrics.getCaptureLatency().snapshot().getPercentileMillis(50), 0.2);
+        assertEquals(20, metrics.getInferenceLatency().snapshot().getPercentileMillis(50), 0.7);
+        assertEquals(2, metrics.getPostProcessingLatency().snapshot().getPercentileMillis(50), 0.1);
+        assertEquals(8, metrics.getPresentationLatency().snapshot().getPercentileMillis(50), 0.3);
+        assertEquals(35, metrics.getEndToEndLatency().snapshot().getPercentileMillis(50), 1.2);
+        assertEquals(0, metrics.getCameraDroppedFrames());
+    }
+
+    @Test
+    public void timestampGapsCountAsCameraDrops() {
+        long[] timestamps = {33, 66, 99, 198, 231};
+        for (long ms : timestamps) {
+            runFrame(ms * 1_000_000L, 1, 1, 1, 1);
+        }
+        assertEquals(2, metrics.getCameraDroppedFrames());
+    }
+
+    @Test
+    public void supersededResultsAreReportedAsUnpresented() {
+        for (int i = 1; i <= 3; i++) {
+            long timestamp = i * 33_000_000L;
+            Frame frame = frame(timestamp);
+            now = timestamp;
+            metrics.onFrameStarted(frame);
+            metrics.onDetectorDone(frame, DetectionResult.empty(timestamp));
+            metrics.onResultProcessed(DetectionResult.empty(timestamp));
+        }
+        metrics.onFramePresented(3 * 33_000_000L);
+
+        assertEquals(2, metrics.getUnpresentedResults());
+    }
+
+    @Test
+    public void jsonEscapesInfoAndListsEveryStage() {
+        runFrame(33_000_000L, 1, 1, 1, 1);
+        String json = metrics.toJson(Collections.singletonMap("screen", "a \"b\"\n"));
+
+        assertTrue(json.startsWith("{\"info\":{\"screen\":\"a \\\"b\\\"\\n\"}"));
+        for (String stage : new String[]{"capture", "inference", "postProcessing", "presentation", "endToEnd"}) {
+            assertTrue(stage, json.contains("\"" + stage + "\":{\"count\":1,"));
+        }
+    }
+
+    @Test
+    public void reportsTheBackendBreakdownWhenSet() {
+        BackendTimings backend = new BackendTimings("tflite");
+        metrics.setBackendTimings(backend);
+        backend.record(2_000_000L, 20_000_000L, -1);
+
+        assertTrue(metrics.toHudText().contains(" model"));
+        String json = metrics.toJson(Collections.<String, String>emptyMap());
+        assertTrue(json, json.contains("\"backend\":{\"name\":\"tflite\",\"latencyMs\":{\"preprocessing\":{\"count\":1,"));
+        assertTrue(json, json.contains("\"decoding\":{\"count\":0,"));
+        assertTrue(json, json.endsWith("}}}"));
+    }
+}
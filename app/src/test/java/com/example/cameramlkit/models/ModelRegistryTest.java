@@ -0,0 +1,101 @@
+package com.example.cameramlkit.models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.inference.ModelDescription;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class ModelRegistryTest {
+
+    // the bundled model: a quantized 160x160 MobileNet with 1001 packed labels
+    private static final File BUNDLED = new File("src/main/assets/1.tflite");
+
+    private File bundled;
+    private File downloaded;
+    private ModelRegistry registry;
+
+    @Before
+    public void setUp() throws IOException {
+        bundled = Files.createTempDirectory("bundled").toFile();
+        downloaded = Files.createTempDirectory("downloaded").toFile();
+        Files.copy(BUNDLED.toPath(), new File(bundled, "1.tflite").toPath());
+        Files.copy(BUNDLED.toPath(), new File(bundled, "2.tflite").toPath());
+        registry = new ModelRegistry(Arrays.<ModelSource>asList(
+                new DirectoryModelSource("assets", bundled),
+                new DirectoryModelSource("files", downloaded)));
+    }
+
+    @After
+    public void tearDown() {
+        for (File directory : new File[]{bundled, downloaded}) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void describesModelsWithoutAnInterpreter() {
+        registry.refresh();
+        ModelFile model = registry.get("1.tflite");
+
+        ModelDescription description = model.getDescription();
+        assertArrayEquals(new int[]{1, 160, 160, 3}, description.getInputShape());
+        assertEquals(ModelDescription.TensorType.UINT8, description.getInputType());
+        assertArrayEquals(new int[]{1, 1001}, description.getOutputShape());
+        assertEquals(1001, description.getLabels().size());
+        assertEquals("background", description.getLabels().get(0));
+        assertEquals(BUNDLED.length(), model.getMappedBytes());
+        assertEquals(160 * 160 * 3 + 1001, model.getTensorBytes());
+        assertEquals(ModelRegistry.DEFAULT_CONFIDENCE_THRESHOLD, model.getConfidenceThreshold(), 0f);
+        assertTrue(model.getLoadNanos() > 0);
+    }
+
+    @Test
+    public void storageOverridesAssetsAndSettingsApply() throws IOException {
+        Files.copy(BUNDLED.toPath(), new File(downloaded, "2.tflite").toPath());
+        Files.write(new File(downloaded, "2.tflite.properties").toPath(),
+                "confidenceThreshold=0.7\nmaxLabels=5\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(downloaded, "broken.tflite").toPath(), new byte[64]);
+
+        registry.refresh();
+
+        assertEquals(2, registry.getModels().size());
+        ModelFile overridden = registry.get("2.tflite");
+        assertEquals("files", overridden.getSourceName());
+        assertFalse(overridden.isAsset());
+        assertEquals(0.7f, overridden.getConfidenceThreshold(), 0f);
+        assertEquals(5, overridden.getMaxLabels());
+        assertNull(registry.get("broken.tflite"));
+        assertEquals(1, registry.getErrors().size());
+        assertTrue(registry.getErrors().get(0).startsWith("files/broken.tflite"));
+    }
+
+    @Test
+    public void refreshKeepsLoadedModelsAndNextWrapsAround() {
+        registry.refresh();
+        ModelFile first = registry.get("1.tflite");
+
+        registry.refresh();
+
+        assertSame(first, registry.get("1.tflite"));
+        assertEquals("2.tflite", registry.next("1.tflite").getName());
+        assertEquals("1.tflite", registry.next("2.tflite").getName());
+        assertEquals("1.tflite", registry.next(null).getName());
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.cameramlkit.overlay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class OverlayBuffersTest {
+
+    @Test
+    public void percentMatchesTheOldStringFormatting() {
+        float[] confidences = {0f, 0.5f, 0.875f, 0.8753f, 0.12345f, 0.999999f, 1f, 0.0101f, 0.07f};
+        BoxBuffer buffer = new BoxBuffer();
+        for (float confidence : confidences) {
+            buffer.reset();
+            buffer.add(0, 0, 1, 1, 0, 0).appendPercent(confidence);
+            assertEquals(String.valueOf(Math.round(confidence * 10000) / 100.f), buffer.getLabel(0));
+        }
+    }
+
+    @Test
+    public void objectsBecomeOneCaptionedBoxPerLabel() {
+        DetectedBox object = new DetectedBox(new Bounds(1, 2, 3, 4), 5, Arrays.asList(
+                new ScoredLabel(0, "Food", 0.875f),
+                new ScoredLabel(1, "Plant", 0.5f)));
+        BoxBuffer buffer = new BoxBuffer();
+        BoxModelBuilder.addObjects(buffer, Collections.singletonList(object), 0xFFFF0000, 0xFF000000);
+
+        assertEquals(2, buffer.size());
+        assertEquals("Food: 87.5%", buffer.getLabel(0));
+        assertEquals("Plant: 50.0%", buffer.getLabel(1));
+        assertEquals(3f, buffer.getRight(1), 0f);
+        assertEquals(0xFFFF0000, buffer.getBoxColor(0));
+    }
+
+    @Test
+    public void buffersStopGrowingOnceLargeEnough() {
+        BoxBuffer buffer = new BoxBuffer();
+        for (int frame = 0; frame < 3; frame++) {
+            buffer.reset();
+            for (int i = 0; i < 500; i++) {
+                buffer.add(i, i, i + 1, i + 1, 0, 0).appendLabel("element").appendPercent(0.5f);
+            }
+        }
+        char[] labels = buffer.getLabelChars();
+        int capacity = buffer.capacity();
+        buffer.reset();
+        for (int i = 0; i < 500; i++) {
+            buffer.add(i, i, i + 1, i + 1, 0, 0).appendLabel("element").appendPercent(0.5f);
+        }
+        assertSame(labels, buffer.getLabelChars());
+        assertEquals(capacity, buffer.capacity());
+    }
+
+    @Test
+    public void readerAlwaysSeesTheNewestPublishedFrame() {
+        OverlayBuffers buffers = new OverlayBuffers();
+        assertEquals(0, buffers.acquireFront().size());
+
+        buffers.beginFrame(1).add(0, 0, 1, 1, 0, 0);
+        buffers.publish();
+        buffers.beginFrame(2).add(0, 0, 1, 1, 0, 0).add(0, 0, 2, 2, 0, 0);
+        buffers.publish();
+
+        BoxBuffer front = buffers.acquireFront();
+        assertEquals(2, front.getTimestampNanos());
+        assertEquals(2, front.size());
+        assertEquals(1, buffers.getOverwritten());
+        assertSame(front, buffers.acquireFront());
+
+        BoxBuffer writing = buffers.beginFrame(3);
+        assertNotSame(front, writing);
+        writing.add(0, 0, 1, 1, 0, 0);
+        buffers.publish();
+        assertEquals(3, buffers.acquireFront().getTimestampNanos());
+        assertEquals(1, buffers.getOverwritten());
+        assertEquals(3, buffers.getPublished());
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.cameramlkit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AnalysisGovernorTest {
+
+    private static final long FRAME_NANOS = 33_000_000L;
+
+    private long now;
+    private final Random jitter = new Random(42);
+    private final List<String> changes = new ArrayList<>();
+
+    private AnalysisGovernor governor(long budgetMillis) {
+        return new AnalysisGovernor.Builder(budgetMillis)
+                .setLevels(AnalysisGovernor.defaultLevels(true))
+                .setStartLevel(1)
+                .setClock(() -> now)
+                .setListener((previous, current) -> changes.add(previous + " -> " + current))
+                .build();
+    }
+
+    /**
+     * Simulated detector: latency scales with the analyzed pixels, the fast detector takes 60%
+     * of the accurate one, and {@code accurateVgaMillis} is the cost at 640x480.
+     */
+    private static long latencyNanos(AnalysisGovernor.Level level, double accurateVgaMillis) {
+        double millis = accurateVgaMillis * level.getWidth() * level.getHeight() / (640.0 * 480.0);
+        if (level.isFastDetector()) {
+            millis *= 0.6;
+        }
+        return (long) (millis * 1_000_000);
+    }
+
+    private void run(AnalysisGovernor governor, long seconds, double accurateVgaMillis) {
+        run(governor, seconds, accurateVgaMillis, 0);
+    }
+
+    /**
+     * Feeds the governor with one sample per analyzed frame for the given simulated time,
+     * each latency randomly off by up to {@code jitterFraction}.
+     */
+    private void run(AnalysisGovernor governor, long seconds, double accurateVgaMillis, double jitterFraction) {
+        long end = now + TimeUnit.SECONDS.toNanos(seconds);
+        while (now < end) {
+            double noise = 1 + jitterFraction * (2 * jitter.nextDouble() - 1);
+            long latency = (long) (latencyNanos(governor.getLevel(), accurateVgaMillis) * noise);
+            now += Math.max(FRAME_NANOS, latency);
+            governor.onInferenceLatency(latency);
+        }
+    }
+
+    @Test
+    public void slowDetectorStepsDownToTheFirstLevelWithinBudget() {
+        AnalysisGovernor governor = governor(80);
+
+        run(governor, 30, 120);
+
+        // 640x480 accurate takes 120 ms, the fast detector 72 ms
+        assertEquals(2, governor.getLevelIndex());
+        assertTrue(governor.getLevel().isFastDetector());
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    public void climbsBackWhenTheLoadGoesAway() {
+        AnalysisGovernor governor = governor(80);
+        run(governor, 20, 300);
+        int loaded = governor.getLevelIndex();
+
+        run(governor, 60, 10);
+
+        assertTrue(loaded >= 3);
+        assertEquals(0, governor.getLevelIndex());
+    }
+
+    @Test
+    public void levelJustOverBudgetDoesNotOscillate() {
+        // 82 ms accurate at 640x480 is over budget; the fast detector's 49 ms sits right at
+        // the upshift threshold (48 ms), so the noisy average keeps dipping under it
+        AnalysisGovernor governor = governor(80);
+        run(governor, 60, 82, 0.15);
+        int before = governor.getChangeCount();
+
+        run(governor, 300, 82, 0.15);
+
+        // probing every 3 s would mean about 200 changes in 5 minutes
+        int changed = governor.getChangeCount() - before;
+        assertTrue("changes: " + changed, changed <= 30);
+        assertTrue(governor.getLevelIndex() >= 1);
+    }
+
+    @Test
+    public void thermalStatusCapsTheRichestLevel() {
+        AnalysisGovernor governor = governor(80);
+
+        governor.onThermalStatus(AnalysisGovernor.THERMAL_SEVERE);
+        assertEquals(governor.getLevels().size() - 2, governor.getLevelIndex());
+
+        run(governor, 60, 5);
+        assertEquals(governor.getLevels().size() - 2, governor.getLevelIndex());
+
+        governor.onThermalStatus(AnalysisGovernor.THERMAL_NONE);
+        run(governor, 60, 5);
+        assertEquals(0, governor.getLevelIndex());
+    }
+
+    @Test
+    public void frameFilterSkipsFramesAtTheLevelStride() {
+        AnalysisGovernor governor = new AnalysisGovernor.Builder(80)
+                .setLevels(AnalysisGovernor.defaultLevels(false))
+                .setStartLevel(AnalysisGovernor.defaultLevels(false).size() - 1)
+                .setClock(() -> now)
+                .build();
+        AtomicInteger released = new AtomicInteger();
+        List<DetectionResult> results = new ArrayList<>();
+        DetectionPipeline pipeline = new DetectionPipeline.Builder()
+                .setDetector(new DetectionPipelineTest.FakeDetector())
+                .addListener(governor)
+                .setFrameFilter(governor)
+                .setSink(results::add)
+                .build();
+
+        for (int i = 0; i < 9; i++) {
+            now += FRAME_NANOS;
+            pipeline.accept(DetectionPipelineTest.syntheticFrame(i, released));
+        }
+
+        assertEquals(3, governor.getLevel().getFrameStride());
+        assertEquals(3, results.size());
+        assertEquals(6, pipeline.getFramesSkipped());
+        assertEquals(9, released.get());
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.cameramlkit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class DetectionPipelineTest {
+
+    static Frame syntheticFrame(long sequence, AtomicInteger released) {
+        return new Frame.Builder(8, 4)
+                .setSequence(sequence)
+                .setTimestampNanos(sequence * 33_000_000L)
+                .setLuma(ByteBuffer.allocate(32), 8, 1)
+                .setReleaser(released::incrementAndGet)
+                .build();
+    }
+
+    /** Reports one box per frame whose left edge is the frame sequence. */
+    static final class FakeDetector implements DetectorStage {
+        boolean closed;
+
+        @Override
+        public void detect(Frame frame, Callback callback) {
+            DetectionResult result = new DetectionResult.Builder(frame.getTimestampNanos())
+                    .addObject(new DetectedBox(new Bounds(frame.getSequence(), 0, 10, 10), 7,
+                            Collections.singletonList(new ScoredLabel(1, "Food", 0.9f))))
+                    .build();
+            frame.release();
+            callback.onResult(frame, result);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    static final class ListSource implements FrameSource {
+        final List<Frame> frames;
+        boolean stopped;
+
+        ListSource(List<Frame> frames) {
+            this.frames = frames;
+        }
+
+        @Override
+        public void start(Consumer<Frame> consumer) {
+            for (Frame frame : frames) {
+                consumer.accept(frame);
+            }
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+    }
+
+    @Test
+    public void framesFlowThroughProcessorsToSink() {
+        AtomicInteger released = new AtomicInteger();
+        List<Frame> frames = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            frames.add(syntheticFrame(i, released));
+        }
+        List<DetectionResult> results = new ArrayList<>();
+        ListSource source = new ListSource(frames);
+        FakeDetector detector = new FakeDetector();
+
+        DetectionPipeline pipeline = new DetectionPipeline.Builder()
+                .setFrameSource(source)
+                .setDetector(detector)
+                .addProcessor(result -> result.getObjects().get(0).getBounds().getLeft() == 2 ? null : result)
+                .setSink(results::add)
+                .build();
+        pipeline.start();
+
+        assertEquals(4, results.size());
+        assertEquals(5, released.get());
+        assertEquals(5, pipeline.getFramesReceived());
+        assertEquals(4, pipeline.getResultsDelivered());
+        assertEquals(3 * 33_000_000L, results.get(2).getTimestampNanos());
+
+        pipeline.close();
+        assertTrue(source.stopped);
+        assertTrue(detector.closed);
+    }
+
+    @Test
+    public void closedPipelineReleasesFramesWithoutDetecting() {
+        AtomicInteger released = new AtomicInteger();
+        FakeDetector detector = new FakeDetector();
+        List<DetectionResult> results = new ArrayList<>();
+        DetectionPipeline pipeline = new DetectionPipeline.Builder()
+                .setDetector(detector)
+                .setSink(results::add)
+                .build();
+        pipeline.close();
+
+        Frame frame = syntheticFrame(1, released);
+        pipeline.accept(frame);
+        frame.release();
+
+        assertTrue(results.isEmpty());
+        assertEquals(1, released.get());
+    }
+
+    @Test
+    public void detectorFailureIsReportedAndFrameReleased() {
+        AtomicInteger released = new AtomicInteger();
+        List<Throwable> errors = new ArrayList<>();
+        DetectionPipeline pipeline = new DetectionPipeline.Builder()
+                .setDetector(new DetectorStage() {
+                    @Override
+                    public void detect(Frame frame, Callback callback) {
+                        throw new IllegalStateException("boom");
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                })
+                .setSink(result -> {
+                })
+                .setErrorListener(errors::add)
+                .build();
+
+        pipeline.accept(syntheticFrame(0, released));
+
+        assertEquals(1, errors.size());
+        assertEquals(1, pipeline.getErrors());
+        assertEquals(1, released.get());
+    }
+
+    @Test
+    public void executorsAreSharedAndShutDownWithTheLastOwner() {
+        PipelineExecutors first = PipelineExecutors.acquire();
+        PipelineExecutors second = PipelineExecutors.acquire();
+        assertSame(first, second);
+
+        first.release();
+        assertFalse(second.isShutdown());
+        second.release();
+        assertTrue(first.isShutdown());
+        assertEquals(0, PipelineExecutors.ownerCount());
+    }
+}
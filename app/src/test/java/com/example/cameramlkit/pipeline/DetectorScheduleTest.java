@@ -0,0 +1,113 @@
+package com.example.cameramlkit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class DetectorScheduleTest {
+
+    @Test
+    public void eachDetectorRunsOncePerPeriod() {
+        DetectorSchedule schedule = new DetectorSchedule(1, 2, 3, 4);
+        int[] runs = new int[4];
+        for (int frame = 0; frame < 120; frame++) {
+            int mask = schedule.maskFor(frame);
+            for (int i = 0; i < 4; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    runs[i]++;
+                }
+            }
+        }
+        assertEquals(120, runs[0]);
+        assertEquals(60, runs[1]);
+        assertEquals(40, runs[2]);
+        assertEquals(30, runs[3]);
+    }
+
+    @Test
+    public void detectorsWithTheSamePeriodAreStaggered() {
+        DetectorSchedule schedule = new DetectorSchedule(4, 4, 4, 4);
+        for (int frame = 0; frame < 16; frame++) {
+            assertEquals(1, Integer.bitCount(schedule.maskFor(frame)));
+        }
+    }
+
+    @Test
+    public void slowDetectorsAvoidEachOther() {
+        DetectorSchedule schedule = new DetectorSchedule(1, 2, 4);
+        for (int frame = 0; frame < 8; frame++) {
+            // the every-frame detector plus at most one of the others
+            assertTrue(Integer.bitCount(schedule.maskFor(frame)) <= 2);
+        }
+    }
+
+    @Test
+    public void fusedResultsKeepFreshPartialsOnly() {
+        FusedResults fused = new FusedResults(3, 100);
+        DetectedBox box = new DetectedBox(new Bounds(0, 0, 1, 1), DetectedBox.NO_TRACKING_ID,
+                Collections.singletonList(new ScoredLabel(0, "Food", 0.9f)));
+        RecognizedText text = new RecognizedText("hi", Collections.<RecognizedText.Block>emptyList());
+
+        fused.put(0, new DetectionResult.Builder(1_000).addObject(box).build());
+        fused.put(1, new DetectionResult.Builder(1_000).addLabel(new ScoredLabel(1, "Cup", 0.5f)).build());
+        fused.put(2, new DetectionResult.Builder(990).setText(text).build());
+        DetectionResult merged = fused.assemble(1_000);
+
+        assertEquals(1_000, merged.getTimestampNanos());
+        assertEquals(1, merged.getObjects().size());
+        assertEquals("Cup", merged.getLabels().get(0).getText());
+        assertEquals(text, merged.getText());
+
+        fused.put(0, new DetectionResult.Builder(1_080).build());
+        merged = fused.assemble(1_080);
+        assertTrue(merged.getObjects().isEmpty());
+        assertEquals(text, merged.getText());
+
+        assertNull(fused.assemble(1_100).getText());
+    }
+
+    @Test
+    public void lensSwitchToASmallerTimeBaseDropsTheOldLensPartials() {
+        FusedResults fused = new FusedResults(2, 100);
+        RecognizedText text = new RecognizedText("old", Collections.<RecognizedText.Block>emptyList());
+        fused.put(0, new DetectionResult.Builder(10_000).addLabel(new ScoredLabel(0, "Old", 0.9f)).build());
+        int oldLens = fused.getGeneration();
+
+        fused.reset();
+        // the old lens's text, recognized while the switch went on
+        fused.put(1, new DetectionResult.Builder(10_050).setText(text).build(), oldLens);
+        fused.put(0, new DetectionResult.Builder(1_000).addLabel(new ScoredLabel(0, "New", 0.8f)).build(),
+                fused.getGeneration());
+        DetectionResult merged = fused.assemble(1_000);
+
+        assertEquals(1, merged.getLabels().size());
+        assertEquals("New", merged.getLabels().get(0).getText());
+        assertNull(merged.getText());
+    }
+
+    @Test
+    public void switchingStageResetsBothStages() {
+        int[] resets = new int[1];
+        DetectorStage stage = new DetectorStage() {
+            @Override
+            public void detect(Frame frame, Callback callback) {
+                frame.release();
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public void reset() {
+                resets[0]++;
+            }
+        };
+        new SwitchingDetectorStage(stage, stage).reset();
+        assertEquals(2, resets[0]);
+    }
+}
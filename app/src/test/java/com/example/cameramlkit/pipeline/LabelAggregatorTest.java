@@ -0,0 +1,112 @@
+package com.example.cameramlkit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class LabelAggregatorTest {
+
+    private static final long FRAME = 33_333_333L;
+
+    private static ScoredLabel label(int index, float confidence) {
+        return new ScoredLabel(index, "label" + index, confidence);
+    }
+
+    private static List<Integer> indexes(List<ScoredLabel> labels) {
+        List<Integer> indexes = new ArrayList<>();
+        for (ScoredLabel label : labels) {
+            indexes.add(label.getIndex());
+        }
+        return indexes;
+    }
+
+    @Test
+    public void flickeringLabelsChangeTheShownSetRarely() {
+        LabelAggregator aggregator = new LabelAggregator(3, 400, 0.5f, 0.35f);
+        Random random = new Random(11);
+        int rawChanges = 0;
+        List<Integer> previous = Collections.emptyList();
+        for (int i = 0; i < 300; i++) {
+            // two solid labels, one borderline that the labeler drops every other frame or so
+            List<ScoredLabel> frame = new ArrayList<>();
+            frame.add(label(1, 0.9f));
+            frame.add(label(2, 0.75f + 0.1f * (float) random.nextGaussian()));
+            if (random.nextFloat() < 0.55f) {
+                frame.add(label(3, 0.8f));
+            }
+            if (random.nextFloat() < 0.1f) {
+                frame.add(label(100 + random.nextInt(50), 0.6f));
+            }
+            List<Integer> raw = indexes(frame);
+            if (!raw.equals(previous)) {
+                rawChanges++;
+            }
+            previous = raw;
+            aggregator.update(frame, i * FRAME);
+        }
+        assertEquals(Arrays.asList(1, 2), indexes(aggregator.getShownLabels()).subList(0, 2));
+        assertTrue("changes " + aggregator.getChanges() + " raw " + rawChanges,
+                aggregator.getChanges() * 10 < rawChanges);
+    }
+
+    @Test
+    public void labelsEnterAndLeaveWithHysteresis() {
+        LabelAggregator aggregator = new LabelAggregator(3, 100, 0.5f, 0.35f);
+        long t = 0;
+        aggregator.update(Collections.singletonList(label(1, 0.9f)), t);
+        assertEquals(Collections.singletonList(1), indexes(aggregator.getShownLabels()));
+
+        // decays towards 0 without the label: still shown while above 0.35
+        aggregator.update(Collections.<ScoredLabel>emptyList(), t += 50_000_000L);
+        assertEquals(0.9f * Math.exp(-0.5), aggregator.getScore(1), 1e-3);
+        assertFalse(aggregator.getShownLabels().isEmpty());
+        aggregator.update(Collections.<ScoredLabel>emptyList(), t += 50_000_000L);
+        assertTrue(aggregator.getShownLabels().isEmpty());
+    }
+
+    @Test
+    public void strongerLabelDisplacesTheWeakestOnlyByAMargin() {
+        LabelAggregator aggregator = new LabelAggregator(1, 100, 0.5f, 0.35f);
+        long t = 0;
+        aggregator.update(Collections.singletonList(label(1, 0.6f)), t);
+        for (int i = 0; i < 20; i++) {
+            assertFalse(aggregator.update(Arrays.asList(label(1, 0.6f), label(2, 0.65f)), t += FRAME));
+        }
+        assertEquals(Collections.singletonList(1), indexes(aggregator.getShownLabels()));
+        for (int i = 0; i < 20; i++) {
+            aggregator.update(Arrays.asList(label(1, 0.6f), label(2, 0.95f)), t += FRAME);
+        }
+        assertEquals(Collections.singletonList(2), indexes(aggregator.getShownLabels()));
+    }
+
+    @Test
+    public void shownListIsStableBetweenChanges() {
+        LabelAggregator aggregator = new LabelAggregator(3, 400, 0.5f, 0.35f);
+        aggregator.update(Collections.singletonList(label(1, 0.9f)), 0);
+        List<ScoredLabel> first = aggregator.process(new DetectionResult.Builder(FRAME)
+                .addLabel(label(1, 0.7f)).build()).getLabels();
+        List<ScoredLabel> second = aggregator.process(new DetectionResult.Builder(2 * FRAME)
+                .addLabel(label(1, 0.8f)).build()).getLabels();
+        assertTrue(LabelAggregator.sameLabels(first, second));
+        assertEquals(2, aggregator.getUpdates() - aggregator.getChanges());
+    }
+
+    @Test
+    public void forgetsFadedLabels() {
+        LabelAggregator aggregator = new LabelAggregator(3, 50, 0.5f, 0.35f);
+        long t = 0;
+        for (int i = 0; i < 1000; i++) {
+            aggregator.update(Collections.singletonList(label(i, 0.2f)), t += FRAME);
+        }
+        assertEquals(0f, aggregator.getScore(3), 0f);
+        assertTrue(aggregator.getScore(999) > 0);
+    }
+}
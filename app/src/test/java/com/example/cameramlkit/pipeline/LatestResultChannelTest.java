@@ -0,0 +1,75 @@
+package com.example.cameramlkit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LatestResultChannelTest {
+
+    /** Collects posted callbacks and runs them when the test "vsyncs". */
+    static final class ManualScheduler implements LatestResultChannel.FrameScheduler {
+        final List<Runnable> posted = new ArrayList<>();
+
+        @Override
+        public void postFrameCallback(Runnable callback) {
+            posted.add(callback);
+        }
+
+        void vsync() {
+            List<Runnable> callbacks = new ArrayList<>(posted);
+            posted.clear();
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        }
+    }
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final List<DetectionResult> delivered = new ArrayList<>();
+    private final LatestResultChannel<DetectionResult> channel =
+            LatestResultChannel.forResults(scheduler, delivered::add);
+
+    @Test
+    public void burstBetweenVsyncsDeliversOnlyTheNewest() {
+        for (int i = 1; i <= 4; i++) {
+            channel.offer(DetectionResult.empty(i));
+        }
+        assertEquals(1, scheduler.posted.size());
+
+        scheduler.vsync();
+        assertEquals(1, delivered.size());
+        assertEquals(4, delivered.get(0).getTimestampNanos());
+        assertEquals(3, channel.getCoalesced());
+        assertEquals(1, channel.getDelivered());
+
+        scheduler.vsync();
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void resultsOlderThanTheDeliveredOneAreDropped() {
+        channel.offer(DetectionResult.empty(10));
+        scheduler.vsync();
+        channel.offer(DetectionResult.empty(5));
+        scheduler.vsync();
+
+        assertEquals(1, delivered.size());
+        assertEquals(1, channel.getDropped());
+        assertTrue(scheduler.posted.isEmpty());
+    }
+
+    @Test
+    public void closedChannelDeliversNothing() {
+        channel.offer(DetectionResult.empty(1));
+        channel.close();
+        scheduler.vsync();
+        channel.offer(DetectionResult.empty(2));
+
+        assertTrue(delivered.isEmpty());
+        assertEquals(1, channel.getOffered());
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.cameramlkit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LensSwitchGateTest {
+
+    private long now;
+    private final List<Long> switchLatencies = new ArrayList<>();
+    private final LensSwitchGate gate = new LensSwitchGate(() -> now, 500, switchLatencies::add);
+
+    /** Answers frames only when told to, like a detector with frames in flight. */
+    private static final class DeferredDetector implements DetectorStage {
+        final List<Runnable> inFlight = new ArrayList<>();
+
+        @Override
+        public void detect(Frame frame, Callback callback) {
+            inFlight.add(() -> callback.onResult(frame, DetectionResult.empty(frame.getTimestampNanos())));
+        }
+
+        @Override
+        public void close() {
+        }
+
+        void finishAll() {
+            for (Runnable result : inFlight) {
+                result.run();
+            }
+            inFlight.clear();
+        }
+    }
+
+    private DetectionPipeline pipeline(DeferredDetector detector, List<DetectionResult> sink) {
+        return new DetectionPipeline.Builder()
+                .setDetector(detector)
+                .addListener(gate)
+                .setFrameFilter(gate)
+                .addProcessor(gate)
+                .setSink(result -> {
+                    if (gate.admit(result)) {
+                        sink.add(result);
+                    }
+                })
+                .build();
+    }
+
+    @Test
+    public void resultsOfThePreviousLensNeverReachTheSink() {
+        AtomicInteger released = new AtomicInteger();
+        DeferredDetector detector = new DeferredDetector();
+        List<DetectionResult> delivered = new ArrayList<>();
+        DetectionPipeline pipeline = pipeline(detector, delivered);
+
+        pipeline.accept(DetectionPipelineTest.syntheticFrame(1, released));
+        pipeline.accept(DetectionPipelineTest.syntheticFrame(2, released));
+        now = 1_000_000_000L;
+        gate.beginSwitch();
+        assertTrue(gate.isSwitching());
+        // the back camera's frames in flight finish after the switch
+        detector.finishAll();
+        assertTrue(delivered.isEmpty());
+        assertEquals(2, gate.getDroppedResults());
+
+        // no new transform yet: the frame would be mapped for the old lens
+        pipeline.accept(DetectionPipelineTest.syntheticFrame(3, released));
+        assertEquals(1, pipeline.getFramesSkipped());
+        assertEquals(1, released.get());
+
+        now += 80_000_000L;
+        gate.onTransformChanged();
+        pipeline.accept(DetectionPipelineTest.syntheticFrame(4, released));
+        now += 40_000_000L;
+        detector.finishAll();
+        assertEquals(1, delivered.size());
+        assertEquals(4 * 33_000_000L, delivered.get(0).getTimestampNanos());
+        assertFalse(gate.isSwitching());
+        assertEquals(1, switchLatencies.size());
+        assertEquals(120_000_000L, (long) switchLatencies.get(0));
+
+        // reported once per switch
+        pipeline.accept(DetectionPipelineTest.syntheticFrame(5, released));
+        detector.finishAll();
+        assertEquals(2, delivered.size());
+        assertEquals(1, switchLatencies.size());
+    }
+
+    @Test
+    public void staleResultIsCaughtAtPresentationAndAnalysisResumesWithoutTransform() {
+        AtomicInteger released = new AtomicInteger();
+        DeferredDetector detector = new DeferredDetector();
+        List<DetectionResult> processed = new ArrayList<>();
+        DetectionPipeline pipeline = new DetectionPipeline.Builder()
+                .setDetector(detector)
+                .addListener(gate)
+                .setFrameFilter(gate)
+                .addProcessor(gate)
+                .setSink(processed::add)
+                .build();
+
+        pipeline.accept(DetectionPipelineTest.syntheticFrame(1, released));
+        detector.finishAll();
+        // still waiting for the display frame when the lens switches
+        gate.beginSwitch();
+        assertFalse(gate.admit(processed.get(0)));
+
+        pipeline.accept(DetectionPipelineTest.syntheticFrame(2, released));
+        assertEquals(1, pipeline.getFramesSkipped());
+        // the transform did not change: analysis resumes after the settle time
+        now += 500_000_000L;
+        pipeline.accept(DetectionPipelineTest.syntheticFrame(3, released));
+        detector.finishAll();
+        assertEquals(2, processed.size());
+        assertTrue(gate.admit(processed.get(1)));
+        assertEquals(1, gate.getSwitches());
+        assertEquals(500_000_000L, (long) switchLatencies.get(0));
+    }
+}
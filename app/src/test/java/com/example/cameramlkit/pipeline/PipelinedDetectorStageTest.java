@@ -0,0 +1,135 @@
+package com.example.cameramlkit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PipelinedDetectorStageTest {
+
+    private final ExecutorService workers = Executors.newFixedThreadPool(3);
+    private final ExecutorService delivery = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        workers.shutdownNow();
+        delivery.shutdownNow();
+    }
+
+    /** Slots are counters; later frames finish first, frame 2 fails. */
+    static final class SlowFirstBackend implements PipelinedDetectorStage.Backend<AtomicInteger> {
+        final AtomicInteger busy = new AtomicInteger();
+        final AtomicInteger mostBusy = new AtomicInteger();
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+
+        @Override
+        public AtomicInteger createSlot() {
+            created.incrementAndGet();
+            return new AtomicInteger();
+        }
+
+        @Override
+        public boolean prepare(AtomicInteger slot, Frame frame) {
+            assertTrue(!frame.isReleased());
+            slot.set((int) frame.getSequence());
+            return frame.getSequence() != 5;
+        }
+
+        @Override
+        public DetectionResult infer(AtomicInteger slot, Frame frame) throws Exception {
+            int now = busy.incrementAndGet();
+            mostBusy.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(40 - 5 * (slot.get() % 4));
+                if (slot.get() == 2) {
+                    throw new IllegalStateException("frame 2");
+                }
+                return DetectionResult.empty(frame.getTimestampNanos());
+            } finally {
+                busy.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void closeSlot(AtomicInteger slot) {
+            closed.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void publishesInFrameOrderWithBoundedFramesInFlight() throws Exception {
+        SlowFirstBackend backend = new SlowFirstBackend();
+        CountDownLatch idle = new CountDownLatch(1);
+        PipelinedDetectorStage<AtomicInteger> stage = new PipelinedDetectorStage<>(backend, 3, workers, delivery, idle::countDown);
+        List<Long> published = Collections.synchronizedList(new ArrayList<Long>());
+        CountDownLatch done = new CountDownLatch(9);
+        DetectorStage.Callback callback = new DetectorStage.Callback() {
+            @Override
+            public void onResult(Frame frame, DetectionResult result) {
+                assertEquals(frame.getTimestampNanos(), result.getTimestampNanos());
+                published.add(frame.getSequence());
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Frame frame, Throwable error) {
+                published.add(-frame.getSequence());
+                done.countDown();
+            }
+        };
+
+        AtomicInteger released = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            stage.detect(DetectionPipelineTest.syntheticFrame(i, released), callback);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        // frame 5 was skipped by the backend, frame 2 failed
+        assertEquals(Arrays.asList(0L, 1L, -2L, 3L, 4L, 6L, 7L, 8L, 9L), published);
+        assertEquals(10, released.get());
+        assertEquals(3, backend.mostBusy.get());
+        assertEquals(9, stage.getCompletedFrames());
+
+        stage.close();
+        assertTrue(idle.await(1, TimeUnit.SECONDS));
+        assertEquals(3, backend.closed.get());
+    }
+
+    @Test
+    public void closeWaitsForFramesInFlight() throws Exception {
+        SlowFirstBackend backend = new SlowFirstBackend();
+        CountDownLatch idle = new CountDownLatch(1);
+        PipelinedDetectorStage<AtomicInteger> stage = new PipelinedDetectorStage<>(backend, 2, workers, delivery, idle::countDown);
+        DetectorStage.Callback ignore = new DetectorStage.Callback() {
+            @Override
+            public void onResult(Frame frame, DetectionResult result) {
+            }
+
+            @Override
+            public void onError(Frame frame, Throwable error) {
+            }
+        };
+        AtomicInteger released = new AtomicInteger();
+        stage.detect(DetectionPipelineTest.syntheticFrame(0, released), ignore);
+        stage.close();
+        assertEquals(1, idle.getCount());
+
+        assertTrue(idle.await(1, TimeUnit.SECONDS));
+        assertEquals(2, backend.closed.get());
+        // later frames are released untouched
+        stage.detect(DetectionPipelineTest.syntheticFrame(1, released), ignore);
+        assertEquals(2, released.get());
+    }
+}
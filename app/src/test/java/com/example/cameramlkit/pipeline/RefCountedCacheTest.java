@@ -0,0 +1,74 @@
+package com.example.cameramlkit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RefCountedCacheTest {
+
+    private long now;
+    private final List<String> closed = new ArrayList<>();
+    private final RefCountedCache<String, StringBuilder> cache = new RefCountedCache<>(
+            key -> {
+                now += 5;
+                return new StringBuilder(key);
+            },
+            value -> closed.add(value.toString()),
+            100,
+            () -> now);
+
+    @Test
+    public void secondAcquireIsAHitAndSharesTheValue() {
+        RefCountedCache.Lease<String, StringBuilder> first = cache.acquire("text");
+        RefCountedCache.Lease<String, StringBuilder> second = cache.acquire("text");
+
+        assertSame(first.get(), second.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(5, cache.loadNanos("text"));
+        assertEquals(2, cache.refCount("text"));
+    }
+
+    @Test
+    public void idleValuesAreClosedOnlyAfterTheTimeout() {
+        RefCountedCache.Lease<String, StringBuilder> lease = cache.acquire("labels");
+        lease.close();
+        lease.close();
+        assertEquals(0, cache.refCount("labels"));
+
+        now += 99;
+        assertEquals(0, cache.evictIdle());
+        now += 1;
+        assertEquals(1, cache.evictIdle());
+        assertEquals("labels", closed.get(0));
+        assertFalse(cache.contains("labels"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void leasedValuesAreNeverEvicted() {
+        cache.acquire("objects");
+        now += 1_000;
+        assertEquals(0, cache.evictIdle());
+        assertTrue(cache.contains("objects"));
+    }
+
+    @Test
+    public void reacquireBeforeTimeoutKeepsTheWarmValue() {
+        RefCountedCache.Lease<String, StringBuilder> lease = cache.acquire("custom");
+        StringBuilder value = lease.get();
+        lease.close();
+        now += 50;
+
+        RefCountedCache.Lease<String, StringBuilder> again = cache.acquire("custom");
+        now += 500;
+        assertEquals(0, cache.evictIdle());
+        assertSame(value, again.get());
+    }
+}
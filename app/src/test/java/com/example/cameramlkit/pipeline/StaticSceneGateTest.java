@@ -0,0 +1,137 @@
+package com.example.cameramlkit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StaticSceneGateTest {
+
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final long FRAME_NANOS = 33_000_000L;
+
+    private long now;
+    private long sequence;
+    private final AtomicInteger detections = new AtomicInteger();
+    private final AtomicInteger released = new AtomicInteger();
+
+    private final StaticSceneGate gate = new StaticSceneGate.Builder()
+            .setRefreshMillis(1000)
+            .setClock(() -> now)
+            .build();
+    private final List<DetectionResult> delivered = new ArrayList<>();
+    private final DetectionPipeline pipeline = new DetectionPipeline.Builder()
+            .setDetector(new DetectorStage() {
+                @Override
+                public void detect(Frame frame, Callback callback) {
+                    // labels the scene with the number of inferences so far
+                    DetectionResult result = new DetectionResult.Builder(frame.getTimestampNanos())
+                            .addLabel(new ScoredLabel(detections.incrementAndGet(), "scene", 0.8f))
+                            .build();
+                    frame.release();
+                    callback.onResult(frame, result);
+                }
+
+                @Override
+                public void close() {
+                }
+            })
+            .setResultReuse(gate)
+            .addListener(gate)
+            .setSink(delivered::add)
+            .build();
+
+    /** A horizontal gradient with an optional bright square, the object that may move. */
+    private static ByteBuffer scene(int squareX, int brightness, int noiseSeed) {
+        ByteBuffer luma = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        Random noise = new Random(noiseSeed);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int value = 40 + x + brightness + noise.nextInt(5) - 2;
+                if (squareX >= 0 && x >= squareX && x < squareX + 12 && y >= 50 && y < 62) {
+                    value = 250;
+                }
+                luma.put(y * WIDTH + x, (byte) Math.max(0, Math.min(255, value)));
+            }
+        }
+        return luma;
+    }
+
+    private void feed(ByteBuffer luma) {
+        now += FRAME_NANOS;
+        pipeline.accept(new Frame.Builder(WIDTH, HEIGHT)
+                .setSequence(sequence++)
+                .setTimestampNanos(now)
+                .setLuma(luma, WIDTH, 1)
+                .setReleaser(released::incrementAndGet)
+                .build());
+    }
+
+    @Test
+    public void unchangedFramesReuseTheLastResultUntilTheRefresh() {
+        feed(scene(20, 0, 1));
+        // sensor noise alone is no change
+        for (int i = 2; i <= 10; i++) {
+            feed(scene(20, 0, i));
+        }
+        assertEquals(1, detections.get());
+        assertEquals(10, delivered.size());
+        assertEquals(10, released.get());
+        // reused results carry their own frame's time
+        DetectionResult last = delivered.get(9);
+        assertEquals(now, last.getTimestampNanos());
+        assertEquals(1, last.getLabels().size());
+        assertEquals(1, last.getLabels().get(0).getIndex());
+        assertEquals(9, gate.getReusedFrames());
+        assertEquals(0.9, gate.getSkippedFraction(), 1e-9);
+        assertEquals(9, pipeline.getFramesReused());
+
+        // the refresh interval forces a new inference of the same scene
+        while (detections.get() == 1) {
+            feed(scene(20, 0, 0));
+        }
+        assertTrue(now > 1_000_000_000L);
+    }
+
+    @Test
+    public void smallObjectsMovingAndExposureChangesCount() {
+        feed(scene(20, 0, 1));
+        // the square moves by a cell
+        feed(scene(30, 0, 2));
+        assertEquals(2, detections.get());
+        feed(scene(30, 0, 3));
+        assertEquals(2, detections.get());
+        // the whole frame a little brighter
+        feed(scene(30, 6, 4));
+        assertEquals(3, detections.get());
+
+        gate.reset();
+        feed(scene(30, 6, 5));
+        assertEquals(4, detections.get());
+    }
+
+    @Test
+    public void signaturesOfOneSceneMatchAcrossStrides() {
+        int[] packed = new int[StaticSceneGate.COLUMNS * StaticSceneGate.ROWS];
+        int[] strided = new int[packed.length];
+        ByteBuffer luma = scene(20, 0, 1);
+        ByteBuffer interleaved = ByteBuffer.allocate((WIDTH * 2 + 16) * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                interleaved.put(y * (WIDTH * 2 + 16) + x * 2, luma.get(y * WIDTH + x));
+            }
+        }
+        StaticSceneGate.computeSignature(luma, WIDTH, HEIGHT, WIDTH, 1, packed);
+        StaticSceneGate.computeSignature(interleaved, WIDTH, HEIGHT, WIDTH * 2 + 16, 2, strided);
+        for (int i = 0; i < packed.length; i++) {
+            assertEquals(packed[i], strided[i]);
+        }
+    }
+}
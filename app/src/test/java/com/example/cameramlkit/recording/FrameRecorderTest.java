@@ -0,0 +1,135 @@
+package com.example.cameramlkit.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+import com.example.cameramlkit.replay.RecordedSequence;
+import com.example.cameramlkit.replay.ReplayFrameSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FrameRecorderTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("frames", ".cmlog").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /** 640x480 frame, interleaved like a camera plane (pixel stride 2), luma = sequence. */
+    private static Frame cameraFrame(long sequence) {
+        byte[] plane = new byte[640 * 2 * 480];
+        Arrays.fill(plane, (byte) sequence);
+        return new Frame.Builder(640, 480)
+                .setSequence(sequence)
+                .setTimestampNanos(1_000L + sequence * 33_333_333L)
+                .setRotationDegrees(90)
+                .setLuma(ByteBuffer.wrap(plane), 640 * 2, 2)
+                .build();
+    }
+
+    private static DetectionResult result(Frame frame) {
+        return new DetectionResult.Builder(frame.getTimestampNanos())
+                .addObject(new DetectedBox(new Bounds(frame.getSequence(), 2.5f, 30, 40), 11,
+                        Arrays.asList(new ScoredLabel(3, "Plante", 0.625f), new ScoredLabel(4, "Pflanze ü", 0.25f))))
+                .addLabel(new ScoredLabel(9, "Leaf", 0.5f))
+                .build();
+    }
+
+    @Test
+    public void recordedFramesAndResultsReadBackForReplay() throws Exception {
+        FrameRecorder recorder = FrameRecorder.open(file, 1024 * 1024);
+        // as many frames as the recorder pools, so none is dropped however slow the writer
+        for (int i = 0; i < 4; i++) {
+            Frame frame = cameraFrame(i);
+            recorder.onFrameStarted(frame);
+            recorder.onDetectorDone(frame, result(frame));
+        }
+        recorder.close();
+        assertEquals(4, recorder.getRecordedFrames());
+        assertEquals(4, recorder.getRecordedResults());
+        assertEquals(1024 * 1024, file.length());
+
+        FrameLogReader log = FrameLogReader.read(file);
+        assertEquals(4, log.getFrames().size());
+        FrameLogReader.FrameRecord third = log.getFrames().get(2);
+        assertEquals(320, third.getWidth());
+        assertEquals(240, third.getHeight());
+        assertEquals(2, third.getScale());
+        assertEquals(2, third.getLuma()[320 * 240 - 1]);
+        DetectionResult back = log.getResults().get(1_000L + 2 * 33_333_333L);
+        DetectedBox object = back.getObjects().get(0);
+        assertEquals(new Bounds(2, 2.5f, 30, 40), object.getBounds());
+        assertEquals(11, object.getTrackingId());
+        assertEquals("Pflanze ü", object.getLabels().get(1).getText());
+        assertEquals(0.625f, object.getLabels().get(0).getConfidence(), 0f);
+        assertEquals("Leaf", back.getLabels().get(0).getText());
+
+        RecordedSequence sequence = log.toSequence();
+        List<Frame> replayed = new ArrayList<>();
+        new ReplayFrameSource.Builder(sequence).setDecoder(log.decoder()).build().start(replayed::add);
+        assertEquals(4, replayed.size());
+        assertEquals(90, replayed.get(3).getRotationDegrees());
+        assertEquals(3, replayed.get(3).getLuma().get(0));
+    }
+
+    @Test
+    public void fullLogKeepsTheNewestRecords() throws Exception {
+        byte[] luma = new byte[100 * 100];
+        FrameLogWriter writer = FrameLogWriter.create(file, 256 * 1024);
+        for (int i = 0; i < 100; i++) {
+            Arrays.fill(luma, (byte) i);
+            writer.appendFrame(i * 1000L, i, 100, 100, 0, 1, luma);
+            writer.appendResult(DetectionResult.empty(i * 1000L));
+        }
+        writer.close();
+        assertEquals(256 * 1024, file.length());
+
+        FrameLogReader log = FrameLogReader.read(file);
+        List<FrameLogReader.FrameRecord> frames = log.getFrames();
+        // about 25 frames of 10 KB fit
+        assertTrue(frames.size() > 20 && frames.size() < 26);
+        FrameLogReader.FrameRecord last = frames.get(frames.size() - 1);
+        assertEquals(99, last.getSequence());
+        assertEquals(99, last.getLuma()[9999]);
+        for (int i = 1; i < frames.size(); i++) {
+            assertEquals(frames.get(i - 1).getSequence() + 1, frames.get(i).getSequence());
+        }
+        assertEquals(99_000L, (long) log.getResults().lastKey());
+    }
+
+    @Test
+    public void downscaleAveragesBlocks() {
+        ByteBuffer luma = ByteBuffer.wrap(new byte[]{
+                0, 10, 20, 30, 0,
+                2, 12, 22, 32, 0,
+                40, 40, 50, 54, 0,
+                40, 40, 50, 54, 0});
+        byte[] out = new byte[4];
+
+        FrameRecorder.downscale(luma, 5, 1, 2, 2, 2, out, null);
+
+        assertTrue(Arrays.equals(new byte[]{6, 26, 40, 52}, out));
+        assertEquals(3, FrameRecorder.scaleFor(1280, 720, 480));
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.cameramlkit.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.overlay.BoxBuffer;
+import com.example.cameramlkit.overlay.BoxModelBuilder;
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.RecognizedText;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+public class ReplayHarnessTest {
+
+    private static final long FRAME = 33_333_333L;
+    private static final long RECORDED_AT = 5_000_000_000L;
+
+    private final long[] now = {1_000_000_000L};
+    private final LongSupplier clock = () -> now[0];
+    private final Sleeper sleeper = nanos -> now[0] += nanos;
+    private File directory;
+
+    @After
+    public void tearDown() {
+        if (directory != null) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /** One recorded object per frame; its left edge is ten times the frame index. */
+    private static String recordedLog(int frames) throws IOException {
+        StringBuilder log = new StringBuilder("# recorded on device\n");
+        for (int i = 0; i < frames; i++) {
+            ResultLog.write(new DetectionResult.Builder(RECORDED_AT + i * FRAME)
+                    .addObject(new DetectedBox(new Bounds(i * 10, 20, i * 10 + 50, 90), 3,
+                            Collections.singletonList(new ScoredLabel(1, "Food", 0.75f))))
+                    .build(), log);
+        }
+        return log.toString();
+    }
+
+    @Test
+    public void resultLogRoundTripsEveryField() throws IOException {
+        RecognizedText.Element dose = new RecognizedText.Element("5\tmg", new Bounds(1, 2, 3, 4), 0.5f);
+        RecognizedText.Element name = new RecognizedText.Element("Dulergina", new Bounds(5, 2, 9, 4), 0.875f);
+        RecognizedText text = new RecognizedText("Dulergina 5\tmg\nback\\slash", Collections.singletonList(
+                new RecognizedText.Block("Dulergina 5\tmg", new Bounds(1, 2, 9, 4), Collections.singletonList(
+                        new RecognizedText.Line("Dulergina 5\tmg", new Bounds(1, 2, 9, 4), 0.7f,
+                                Arrays.asList(name, dose))))));
+        DetectionResult result = new DetectionResult.Builder(42)
+                .addObject(new DetectedBox(new Bounds(0.1f, 0.2f, 10.3f, 20.4f), DetectedBox.NO_TRACKING_ID,
+                        Arrays.asList(new ScoredLabel(0, "Home good", 0.6f), new ScoredLabel(2, "a:b", 0.3f))))
+                .addLabel(new ScoredLabel(7, "Dog", 0.9f))
+                .setText(text)
+                .build();
+        StringBuilder log = new StringBuilder();
+        ResultLog.write(result, log);
+        ResultLog.write(DetectionResult.empty(43), log);
+
+        NavigableMap<Long, DetectionResult> read = ResultLog.read(new StringReader(log.toString()));
+
+        assertEquals(2, read.size());
+        assertTrue(read.get(43L).getObjects().isEmpty());
+        DetectionResult back = read.get(42L);
+        DetectedBox object = back.getObjects().get(0);
+        assertEquals(new Bounds(0.1f, 0.2f, 10.3f, 20.4f), object.getBounds());
+        assertEquals(DetectedBox.NO_TRACKING_ID, object.getTrackingId());
+        assertEquals("a:b", object.getLabels().get(1).getText());
+        assertEquals(0.6f, object.getLabels().get(0).getConfidence(), 0f);
+        assertEquals("Dog", back.getLabels().get(0).getText());
+        assertEquals(text.getText(), back.getText().getText());
+        RecognizedText.Line line = back.getText().getBlocks().get(0).getLines().get(0);
+        assertEquals(0.7f, line.getConfidence(), 0f);
+        assertEquals("5\tmg", line.getElements().get(1).getText());
+        assertEquals(new Bounds(5, 2, 9, 4), line.getElements().get(0).getBounds());
+    }
+
+    @Test
+    public void replayedResultsReachTheOverlayAsRecorded() throws Exception {
+        NavigableMap<Long, DetectionResult> recorded = ResultLog.read(new StringReader(recordedLog(10)));
+        RecordedSequence sequence = RecordedSequence.ofTimestamps(recorded.keySet(), 640, 480);
+        ReplayFrameSource source = new ReplayFrameSource.Builder(sequence)
+                .setClock(clock, sleeper)
+                .build();
+        ReplayDetectorStage detector = new ReplayDetectorStage.Builder(sequence, recorded)
+                .setLatency(20_000_000L, sleeper)
+                .build();
+        BoxBuffer boxes = new BoxBuffer();
+        List<String> drawn = new ArrayList<>();
+        ReplayReport report = new ReplayHarness.Builder(source, detector)
+                .setClock(clock)
+                .setSink(result -> {
+                    boxes.reset();
+                    BoxModelBuilder.addObjects(boxes, result.getObjects(), 0xFFFF0000, 0xFFFFFFFF);
+                    drawn.add(boxes.getLeft(0) + " " + boxes.getLabel(0));
+                })
+                .build()
+                .run(1, TimeUnit.SECONDS);
+
+        assertTrue(report.isComplete());
+        assertEquals(10, report.getFramesDelivered());
+        assertEquals(10, report.getResults().size());
+        assertEquals(0, report.getFramesOutstanding());
+        assertEquals(0, detector.getMisses());
+        assertEquals("0.0 Food: 75.0%", drawn.get(0));
+        assertEquals("90.0 Food: 75.0%", drawn.get(9));
+        // as fast as possible: every frame costs exactly the simulated inference time
+        assertEquals(200_000_000L, report.getElapsedNanos());
+        assertEquals(50.0, report.getThroughputFps(), 1e-9);
+        assertEquals(20.0, report.getMetrics().getEndToEndLatency().snapshot().getMeanMillis(), 0.5);
+    }
+
+    @Test
+    public void realTimeReplayDropsFramesTheDetectorCannotKeepUpWith() throws Exception {
+        NavigableMap<Long, DetectionResult> recorded = ResultLog.read(new StringReader(recordedLog(9)));
+        RecordedSequence sequence = RecordedSequence.ofTimestamps(recorded.keySet(), 640, 480);
+        ReplayFrameSource source = new ReplayFrameSource.Builder(sequence)
+                .setRealTime(true)
+                .setClock(clock, sleeper)
+                .build();
+        ReplayDetectorStage detector = new ReplayDetectorStage.Builder(sequence, recorded)
+                .setLatency(50_000_000L, sleeper)
+                .build();
+
+        ReplayReport report = new ReplayHarness.Builder(source, detector)
+                .setClock(clock)
+                .build()
+                .run(1, TimeUnit.SECONDS);
+
+        // 50 ms per frame at 30 fps: every third frame is due only after the next one
+        assertEquals(2, report.getFramesDropped());
+        assertEquals(7, report.getFramesDelivered());
+        List<DetectionResult> results = report.getResults();
+        assertEquals(7, results.size());
+        assertEquals(30f, results.get(2).getObjects().get(0).getBounds().getLeft(), 0f);
+        assertEquals(1_000_000_000L + 3 * FRAME, results.get(2).getTimestampNanos());
+        assertEquals(0, report.getFramesOutstanding());
+    }
+
+    @Test
+    public void yuvDumpsAreReplayedWithTheirLumaAndRotation() throws Exception {
+        directory = Files.createTempDirectory("replay").toFile();
+        byte[] frame = new byte[4 * 2 * 3 / 2];
+        for (int i = 0; i < 2; i++) {
+            Arrays.fill(frame, (byte) (100 + i));
+            Files.write(new File(directory, "frame" + i + ".yuv").toPath(), frame);
+        }
+        Files.write(new File(directory, RecordedSequence.INDEX_FILE).toPath(), (
+                "# timestamp, file, width, height, rotation\n"
+                        + "1000, frame0.yuv, 4, 2, 90\n"
+                        + "34333, frame1.yuv, 4, 2, 90\n").getBytes(StandardCharsets.UTF_8));
+        RecordedSequence sequence = RecordedSequence.read(directory);
+        ReplayFrameSource source = new ReplayFrameSource.Builder(sequence)
+                .setDecoder(new YuvFrameDecoder())
+                .setLoops(2)
+                .setClock(clock, sleeper)
+                .build();
+        List<Frame> frames = new ArrayList<>();
+
+        source.start(frames::add);
+
+        assertEquals(4, frames.size());
+        assertEquals(3, frames.get(3).getSequence());
+        assertEquals(90, frames.get(1).getRotationDegrees());
+        assertEquals(8, frames.get(1).getLuma().remaining());
+        assertEquals(101, frames.get(3).getLuma().get(7));
+        assertEquals(4, source.getFramesOutstanding());
+        for (Frame f : frames) {
+            f.release();
+        }
+        assertEquals(0, source.getFramesOutstanding());
+    }
+}
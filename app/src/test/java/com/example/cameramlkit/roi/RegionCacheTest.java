@@ -0,0 +1,87 @@
+package com.example.cameramlkit.roi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.RecognizedText;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RegionCacheTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    /** A gradient with a dark "word" on it, brightened by {@code offset}. */
+    private static ByteBuffer label(int offset) {
+        ByteBuffer luma = ByteBuffer.allocate(WIDTH * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean word = x >= 16 && x < 28 && y >= 16 && y < 32;
+                luma.put(y * WIDTH + x, (byte) ((word ? 20 : 60 + 2 * x) + offset));
+            }
+        }
+        return luma;
+    }
+
+    private final RegionCache cache = new RegionCache(0.6f, 6f, 10);
+    private final Bounds region = new Bounds(8, 8, 40, 40);
+    private final RecognizedText text = new RecognizedText("SALE", Collections.<RecognizedText.Block>emptyList());
+
+    @Test
+    public void unchangedRegionReusesItsText() {
+        List<RegionCache.Region> first = cache.match(Collections.singletonList(region), label(0), WIDTH, 1, 0);
+        assertTrue(first.get(0).needsRecognition());
+        cache.store(first.get(0), text, 0);
+
+        // slightly moved and brighter (auto exposure), same content
+        Bounds moved = new Bounds(9, 8, 41, 40);
+        List<RegionCache.Region> second = cache.match(Collections.singletonList(moved), label(20), WIDTH, 1, 1);
+
+        assertFalse(second.get(0).needsRecognition());
+        assertEquals(text, second.get(0).getText());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void changedContentIsRecognizedAgain() {
+        cache.store(cache.match(Collections.singletonList(region), label(0), WIDTH, 1, 0).get(0), text, 0);
+
+        ByteBuffer flat = ByteBuffer.allocate(WIDTH * HEIGHT);
+        Arrays.fill(flat.array(), (byte) 100);
+
+        assertTrue(cache.match(Collections.singletonList(region), flat, WIDTH, 1, 1).get(0).needsRecognition());
+    }
+
+    @Test
+    public void regionsNotSeenForLongAreForgotten() {
+        cache.store(cache.match(Collections.singletonList(region), label(0), WIDTH, 1, 0).get(0), text, 0);
+
+        assertTrue(cache.match(Collections.singletonList(region), label(0), WIDTH, 1, 11).get(0).needsRecognition());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void plannerPadsClampsAndMergesCandidates() {
+        RegionPlanner planner = new RegionPlanner(0.1f, 8f);
+        List<Bounds> regions = planner.plan(Arrays.asList(
+                new Bounds(0, 0, 20, 20),
+                new Bounds(18, 5, 30, 25),
+                new Bounds(50, 40, 53, 43)), WIDTH, HEIGHT);
+
+        // the first two overlap and merge, the tiny one is dropped
+        assertEquals(1, regions.size());
+        Bounds merged = regions.get(0);
+        assertEquals(0, merged.getLeft(), 1e-3);
+        assertEquals(0, merged.getTop(), 1e-3);
+        assertEquals(31.2f, merged.getRight(), 1e-3);
+        assertEquals(27f, merged.getBottom(), 1e-3);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.cameramlkit.roi;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.cameramlkit.pipeline.Bounds;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class RegionCropTest {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    /** Luma value encodes the pixel position: 4 * x + y is unique for the test sizes. */
+    private static ByteBuffer positionLuma() {
+        ByteBuffer luma = ByteBuffer.allocate(WIDTH * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                luma.put(y * WIDTH + x, (byte) (x * 4 + y));
+            }
+        }
+        return luma;
+    }
+
+    private static void assertBounds(Bounds expected, Bounds actual) {
+        assertEquals(expected.getLeft(), actual.getLeft(), 1e-3);
+        assertEquals(expected.getTop(), actual.getTop(), 1e-3);
+        assertEquals(expected.getRight(), actual.getRight(), 1e-3);
+        assertEquals(expected.getBottom(), actual.getBottom(), 1e-3);
+    }
+
+    @Test
+    public void uprightBoxesMapBackToTheBuffer() {
+        // a 40x30 buffer rotated 90 degrees is 30x40 upright; its upright top-left corner is
+        // the buffer's bottom-left one
+        assertBounds(new Bounds(0, 20, 10, 30),
+                RegionCrop.uprightToBuffer(new Bounds(0, 0, 10, 10), 90, WIDTH, HEIGHT));
+        assertBounds(new Bounds(30, 20, 40, 30),
+                RegionCrop.uprightToBuffer(new Bounds(0, 0, 10, 10), 180, WIDTH, HEIGHT));
+        assertBounds(new Bounds(30, 0, 40, 10),
+                RegionCrop.uprightToBuffer(new Bounds(0, 0, 10, 10), 270, WIDTH, HEIGHT));
+        assertBounds(new Bounds(5, 6, 7, 8),
+                RegionCrop.uprightToBuffer(new Bounds(5, 6, 7, 8), 0, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void cropIsRotatedUprightAndScaled() {
+        RegionCrop crop = new RegionCrop(new Bounds(10, 4, 20, 10), 90, 2f);
+        // a 10x6 buffer region becomes 6x10 upright, 12x20 scaled
+        assertEquals(12, crop.getOutputWidth());
+        assertEquals(20, crop.getOutputHeight());
+
+        byte[] nv21 = new byte[crop.nv21Size()];
+        crop.copyTo(positionLuma(), WIDTH, 1, WIDTH, HEIGHT, nv21);
+
+        // the crop's top-left pixel comes from the buffer region's bottom-left corner
+        int topLeft = nv21[0] & 0xff;
+        assertEquals(10 * 4 + 9, topLeft, 2);
+        // its top-right pixel from the region's top-left corner
+        int topRight = nv21[crop.getOutputWidth() - 1] & 0xff;
+        assertEquals(10 * 4 + 4, topRight, 2);
+        assertEquals(128, nv21[nv21.length - 1] & 0xff);
+
+        // a box around the crop's top-left quarter lands in the region's bottom-left
+        assertBounds(new Bounds(10, 7, 15, 10), crop.toBuffer(new Bounds(0, 0, 6, 10)));
+    }
+
+    @Test
+    public void onlySmallRegionsAreUpscaled() {
+        assertEquals(3f, RegionCrop.upscaleFor(new Bounds(0, 0, 200, 50), 320, 3), 1e-6);
+        assertEquals(2f, RegionCrop.upscaleFor(new Bounds(0, 0, 200, 160), 320, 3), 1e-6);
+        assertEquals(1f, RegionCrop.upscaleFor(new Bounds(0, 0, 640, 480), 320, 3), 1e-6);
+    }
+}
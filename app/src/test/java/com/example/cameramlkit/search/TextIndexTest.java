@@ -0,0 +1,158 @@
+package com.example.cameramlkit.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TextIndexTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("index").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private TextIndex open(int flushDocuments) throws Exception {
+        return new TextIndex.Builder(directory).setFlushDocuments(flushDocuments).open();
+    }
+
+    private static List<String> names(List<TextIndex.Hit> hits) {
+        List<String> names = new ArrayList<>();
+        for (TextIndex.Hit hit : hits) {
+            names.add(hit.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void exactPrefixAndFuzzyTermsAllMustMatch() throws Exception {
+        try (TextIndex index = open(2)) {
+            index.add("IMG_1", "Grocery receipt: Milk 1.20, Bread 2.10");
+            index.add("IMG_2", "Parking ticket, receipt nr 42");
+            index.add("IMG_3", "Crème brûlée recipe");
+            index.add("IMG_4", "Dulergina 5 mg, keep out of reach of children");
+
+            assertEquals(2, index.search("receipt", 10).size());
+            assertEquals(Arrays.asList("IMG_1"), names(index.search("RECEIPT milk", 10)));
+            // folded like the OCR text
+            assertEquals(Arrays.asList("IMG_3"), names(index.search("creme brulee", 10)));
+            // "rec" begins receipt and recipe; a completion scores below the term itself
+            assertEquals(3, index.search("rec*", 10).size());
+            assertTrue(index.search("recipe*", 10).get(0).getScore()
+                    > index.search("recip*", 10).get(0).getScore());
+            // one edit for a short term, two for a long one
+            assertEquals(Arrays.asList("IMG_4"), names(index.search("dulergima~", 10)));
+            assertEquals(Arrays.asList("IMG_4"), names(index.search("dulrgima~", 10)));
+            assertTrue(index.search("dulergima", 10).isEmpty());
+            assertEquals(1, index.search("recipt~ bread", 10).size());
+            assertTrue(index.search("receipt children", 10).isEmpty());
+            assertEquals(1, index.search("receipt", 1).size());
+        }
+    }
+
+    @Test
+    public void documentsSurviveReopeningWithOrWithoutFlush() throws Exception {
+        TextIndex index = open(4);
+        for (int i = 0; i < 5; i++) {
+            index.add("IMG_" + i, "label number " + i);
+        }
+        index.remove("IMG_1");
+        index.add("IMG_2", "relabelled");
+        // not closed: the process died with two documents only in the journal
+        assertEquals(1, index.getSegmentCount());
+
+        TextIndex reopened = open(4);
+        assertEquals(4, reopened.getDocumentCount());
+        assertTrue(reopened.contains("IMG_4"));
+        assertFalse(reopened.contains("IMG_1"));
+        assertEquals(Arrays.asList("IMG_4", "IMG_3", "IMG_0"), names(reopened.search("number", 10)));
+        assertEquals(Arrays.asList("IMG_2"), names(reopened.search("relabelled", 10)));
+        reopened.flush();
+        reopened.close();
+        index.close();
+
+        // the removal is in a segment now and still hides the older document
+        try (TextIndex third = open(4)) {
+            assertEquals(4, third.getDocumentCount());
+            assertTrue(third.search("1", 10).isEmpty());
+        }
+    }
+
+    @Test
+    public void tornJournalTailIsCutOff() throws Exception {
+        try (TextIndex index = open(100)) {
+            index.add("IMG_1", "first");
+            index.add("IMG_2", "second");
+        }
+        File journal = new File(directory, TextIndex.JOURNAL);
+        try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        try (TextIndex index = open(100)) {
+            assertEquals(1, index.getDocumentCount());
+            index.add("IMG_3", "third");
+        }
+        try (TextIndex index = open(100)) {
+            assertEquals(Arrays.asList("IMG_1"), names(index.search("first", 10)));
+            assertEquals(Arrays.asList("IMG_3"), names(index.search("third", 10)));
+        }
+    }
+
+    @Test
+    public void segmentsMergeAndDropRemovedDocuments() throws Exception {
+        try (TextIndex index = open(4)) {
+            for (int i = 0; i < 64; i++) {
+                index.add("IMG_" + i, (i % 2 == 0 ? "even" : "odd") + " page " + i);
+            }
+            // 16 flushes, merged 4 at a time into 4 and then into 1
+            assertEquals(1, index.getSegmentCount());
+            assertEquals(5, index.getMerges());
+            for (int i = 0; i < 64; i += 2) {
+                index.remove("IMG_" + i);
+            }
+            // the segment of mostly removed documents is rewritten with the rest
+            index.flush();
+            assertEquals(6, index.getMerges());
+            assertEquals(32, index.search("page", 100).size());
+            assertTrue(index.search("even", 100).isEmpty());
+        }
+        // the manifest, the journal, the merged segment and the one with the removals
+        assertEquals(4, directory.list().length);
+        try (TextIndex index = open(4)) {
+            assertEquals(32, index.getDocumentCount());
+            assertEquals(Arrays.asList("IMG_63"), names(index.search("63", 10)));
+            assertTrue(index.search("62", 10).isEmpty());
+        }
+    }
+
+    @Test
+    public void boundedDistanceStopsEarly() {
+        int[][] rows = new int[2][16];
+        assertEquals(2, TextIndex.boundedDistance("receipt", "reciept", 3, rows));
+        assertEquals(0, TextIndex.boundedDistance("milk", "milk", 1, rows));
+        assertEquals(2, TextIndex.boundedDistance("milk", "bread", 1, rows));
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.cameramlkit.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.cameramlkit.overlay.BoxBuffer;
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ObjectTrackerTest {
+
+    private static final long FRAME = 33_333_333L;
+    private static final List<ScoredLabel> FOOD = Collections.singletonList(new ScoredLabel(0, "Food", 0.8f));
+
+    private static DetectedBox box(float left, float top, int trackingId, List<ScoredLabel> labels) {
+        return new DetectedBox(new Bounds(left, top, left + 100, top + 80), trackingId, labels);
+    }
+
+    private static DetectedBox box(float left, float top) {
+        return box(left, top, DetectedBox.NO_TRACKING_ID, FOOD);
+    }
+
+    @Test
+    public void confirmsTracksBeforeDrawingThem() {
+        ObjectTracker tracker = new ObjectTracker.Builder().build();
+        tracker.update(Collections.singletonList(box(0, 0)), 0);
+        assertTrue(tracker.predict(0).isEmpty());
+        tracker.update(Collections.singletonList(box(2, 0)), FRAME);
+        assertEquals(1, tracker.predict(FRAME).size());
+    }
+
+    @Test
+    public void smoothsJitter() {
+        ObjectTracker tracker = new ObjectTracker.Builder().build();
+        Random random = new Random(3);
+        float rawError = 0;
+        float smoothedError = 0;
+        for (int i = 0; i < 120; i++) {
+            float noise = (float) random.nextGaussian() * 6f;
+            tracker.update(Collections.singletonList(box(200 + noise, 100)), i * FRAME);
+            if (i >= 20) {
+                rawError += Math.abs(noise);
+                smoothedError += Math.abs(tracker.predict(i * FRAME).get(0).getBounds().getLeft() - 200);
+            }
+        }
+        assertTrue("smoothed " + smoothedError + " raw " + rawError, smoothedError < rawError * 0.75f);
+    }
+
+    @Test
+    public void extrapolatesBetweenDetections() {
+        ObjectTracker tracker = new ObjectTracker.Builder().build();
+        // 300 px/s to the right, detected every third frame
+        for (int i = 0; i < 30; i += 3) {
+            tracker.update(Collections.singletonList(box(i * 10f, 50)), i * FRAME);
+        }
+        long between = 28 * FRAME;
+        float left = tracker.predict(between).get(0).getBounds().getLeft();
+        assertEquals(280f, left, 3f);
+    }
+
+    @Test
+    public void capsExtrapolationAndCoastsUntilDropped() {
+        ObjectTracker tracker = new ObjectTracker.Builder()
+                .setMaxExtrapolationMillis(100)
+                .setMaxCoastMillis(300)
+                .build();
+        for (int i = 0; i < 10; i++) {
+            tracker.update(Collections.singletonList(box(i * 10f, 50)), i * FRAME);
+        }
+        long last = 9 * FRAME;
+        float capped = tracker.predict(last + 250_000_000L).get(0).getBounds().getLeft();
+        assertEquals(90f + 30f, capped, 2f);
+        // still drawn while coasting, gone after
+        assertEquals(1, tracker.predict(last + 290_000_000L).size());
+        assertTrue(tracker.predict(last + 310_000_000L).isEmpty());
+        tracker.update(Collections.<DetectedBox>emptyList(), last + 310_000_000L);
+        assertTrue(tracker.getTracks().isEmpty());
+    }
+
+    @Test
+    public void associatesByDetectorIdThenOverlap() {
+        ObjectTracker tracker = new ObjectTracker.Builder().build();
+        tracker.update(Arrays.asList(box(0, 0, 7, FOOD), box(400, 0)), 0);
+        tracker.update(Arrays.asList(box(400, 2), box(300, 0, 7, FOOD)), FRAME);
+
+        List<DetectedBox> boxes = tracker.predict(FRAME);
+        assertEquals(2, tracker.getTracks().size());
+        assertEquals(2, boxes.size());
+        // the id keeps the far jump on its track, the overlap the other
+        for (Track track : tracker.getTracks()) {
+            assertEquals(2, track.getHits());
+        }
+        assertEquals(7, tracker.getTracks().get(0).getDetectorId());
+    }
+
+    @Test
+    public void keepsLabelsThroughEmptyClassifications() {
+        ObjectTracker tracker = new ObjectTracker.Builder().build();
+        tracker.update(Collections.singletonList(box(0, 0)), 0);
+        tracker.update(Collections.singletonList(box(0, 0, DetectedBox.NO_TRACKING_ID,
+                Collections.<ScoredLabel>emptyList())), FRAME);
+        assertEquals("Food", tracker.predict(FRAME).get(0).getLabels().get(0).getText());
+    }
+
+    @Test
+    public void predictsIntoTheOverlayBufferAsPredictDoes() {
+        ObjectTracker tracker = new ObjectTracker.Builder().build();
+        for (int i = 0; i < 6; i += 3) {
+            tracker.update(Arrays.asList(box(i * 10f, 50), box(400, 300 + i)), i * FRAME);
+        }
+        long between = 4 * FRAME;
+        List<DetectedBox> predicted = tracker.predict(between);
+        BoxBuffer boxes = new BoxBuffer();
+        tracker.predictInto(boxes, between, 0xFFFF0000, 0xFF000000);
+
+        assertEquals(2, boxes.size());
+        for (int i = 0; i < predicted.size(); i++) {
+            Bounds bounds = predicted.get(i).getBounds();
+            assertEquals(bounds.getLeft(), boxes.getLeft(i), 0f);
+            assertEquals(bounds.getBottom(), boxes.getBottom(i), 0f);
+            assertEquals("Food: 80.0%", boxes.getLabel(i));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.cameramlkit.benchmark;
+
+import com.example.cameramlkit.capture.LumaSharpness;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring a 10-frame best-of burst: the sharpness of ten 1280x720 Y planes, read in place
+ * from direct buffers, with the rows split over {@code strips} threads. The score is the time
+ * of the whole burst.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BestFrameBenchmark {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int FRAMES = 10;
+
+    @Param({"1", "4"})
+    public int strips;
+
+    private ExecutorService pool;
+    private ByteBuffer[] planes;
+
+    @Setup
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(Math.max(1, strips - 1));
+        Random random = new Random(7);
+        planes = new ByteBuffer[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            ByteBuffer plane = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+            byte[] pixels = new byte[WIDTH * HEIGHT];
+            random.nextBytes(pixels);
+            plane.put(pixels).clear();
+            planes[i] = plane;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public double scoreBurst() {
+        double best = 0;
+        for (ByteBuffer plane : planes) {
+            best = Math.max(best, LumaSharpness.variance(plane, WIDTH, HEIGHT, WIDTH, 1, 1, pool, strips));
+        }
+        return best;
+    }
+}
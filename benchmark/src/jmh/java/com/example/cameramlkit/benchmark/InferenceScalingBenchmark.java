@@ -0,0 +1,112 @@
+package com.example.cameramlkit.benchmark;
+
+import com.example.cameramlkit.inference.YuvTensorConverter;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.DetectorStage;
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.pipeline.PipelinedDetectorStage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained frame rate of {@link PipelinedDetectorStage} against the number of slots: the real
+ * 640x480 -> 160x160 conversion on the calling thread, and a fixed amount of arithmetic over
+ * the input standing in for the model on the workers. Run on a multi-core machine, the scores
+ * of the {@code slots} values are the scaling curve (frames per second).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InferenceScalingBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int slots;
+
+    /** Passes over the input per inference, about 0.1 ms each on a desktop core. */
+    @Param({"20"})
+    public int modelPasses;
+
+    private ExecutorService workers;
+    private ExecutorService delivery;
+    private PipelinedDetectorStage<ByteBuffer> stage;
+    private Frame frame;
+    private final DetectorStage.Callback callback = new DetectorStage.Callback() {
+        @Override
+        public void onResult(Frame frame, DetectionResult result) {
+        }
+
+        @Override
+        public void onError(Frame frame, Throwable error) {
+        }
+    };
+
+    @Setup
+    public void setUp() throws Exception {
+        workers = Executors.newFixedThreadPool(slots);
+        delivery = Executors.newSingleThreadExecutor();
+        YuvTensorConverter converter = new YuvTensorConverter(160, YuvTensorConverter.TensorType.UINT8, 0f, 1f, true);
+        converter.configure(640, 480, 640, 1, 640, 2, 90);
+        ByteBuffer y = ByteBuffer.allocateDirect(640 * 480);
+        ByteBuffer chroma = ByteBuffer.allocateDirect(640 * 240);
+        ByteBuffer v = chroma.duplicate();
+        chroma.position(1);
+        ByteBuffer u = chroma.slice();
+
+        stage = new PipelinedDetectorStage<>(new PipelinedDetectorStage.Backend<ByteBuffer>() {
+            @Override
+            public ByteBuffer createSlot() {
+                return converter.allocateInput();
+            }
+
+            @Override
+            public boolean prepare(ByteBuffer input, Frame frame) {
+                converter.convert(y, u, v, input);
+                return true;
+            }
+
+            @Override
+            public DetectionResult infer(ByteBuffer input, Frame frame) {
+                int sum = 0;
+                for (int pass = 0; pass < modelPasses; pass++) {
+                    for (int i = 0; i < input.limit(); i++) {
+                        sum = sum * 31 + input.get(i);
+                    }
+                }
+                return sum == 42 ? null : DetectionResult.empty(frame.getTimestampNanos());
+            }
+
+            @Override
+            public void closeSlot(ByteBuffer input) {
+            }
+        }, slots, workers, delivery, null);
+        frame = new Frame.Builder(640, 480).setLuma(y, 640, 1).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        stage.close();
+        workers.shutdownNow();
+        delivery.shutdownNow();
+    }
+
+    /**
+     * One camera frame; waits like the analysis thread does when every slot is busy.
+     */
+    @Benchmark
+    public void frame() {
+        stage.detect(frame, callback);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.cameramlkit.benchmark;
+
+import com.example.cameramlkit.keywords.Highlights;
+import com.example.cameramlkit.keywords.KeywordDictionary;
+import com.example.cameramlkit.keywords.KeywordMatcher;
+import com.example.cameramlkit.overlay.BoxBuffer;
+import com.example.cameramlkit.overlay.BoxModelBuilder;
+import com.example.cameramlkit.overlay.OverlayBuffers;
+import com.example.cameramlkit.pipeline.RecognizedText;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyword highlighting of one OCR result, the text screen's UI sink. The cost should barely
+ * depend on the dictionary size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class KeywordBenchmark {
+
+    private static final int YELLOW = 0xFFFFFF00;
+    private static final int BLACK = 0xFF000000;
+
+    @Param({"10", "5000"})
+    public int dictionarySize;
+
+    @Param({"0", "2"})
+    public int maxEdits;
+
+    private final OverlayBuffers buffers = new OverlayBuffers();
+    private KeywordMatcher matcher;
+    private RecognizedText text;
+
+    @Setup
+    public void setUp() {
+        KeywordDictionary dictionary = new KeywordDictionary()
+                .add("drugs", 0xFFFF0000, "Dulergina")
+                .add("warnings", 0xFFE040FB, "keep out of reach of children");
+        for (int i = 2; i < dictionarySize; i++) {
+            dictionary.add("generated", 0xFF00FF00, "term" + Integer.toString(i, 36) + "x");
+        }
+        matcher = KeywordMatcher.compile(dictionary, maxEdits);
+        text = SyntheticResults.text(4, 3, 6, 2);
+    }
+
+    @Benchmark
+    public Highlights highlight() {
+        return matcher.highlight(text, YELLOW);
+    }
+
+    @Benchmark
+    public BoxBuffer highlightedTextBoxes() {
+        BoxBuffer boxes = buffers.beginFrame(0);
+        BoxModelBuilder.addTextElements(boxes, text, matcher.highlight(text, YELLOW), BLACK);
+        buffers.publish();
+        return buffers.acquireFront();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.cameramlkit.benchmark;
+
+import com.example.cameramlkit.overlay.BoxBuffer;
+import com.example.cameramlkit.overlay.BoxModelBuilder;
+import com.example.cameramlkit.overlay.LabelFormatter;
+import com.example.cameramlkit.overlay.OverlayBuffers;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.RecognizedText;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result to overlay model conversion as done by the object, text and label screens' UI sinks.
+ * The box model paths are meant to allocate nothing once warm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OverlayModelBenchmark {
+
+    private static final int RED = 0xFFFF0000;
+    private static final int YELLOW = 0xFFFFFF00;
+    private static final int BLACK = 0xFF000000;
+    private static final BoxModelBuilder.TextColorizer COLORIZER = element -> YELLOW;
+
+    @Param({"5", "20"})
+    public int objectCount;
+
+    private final OverlayBuffers buffers = new OverlayBuffers();
+    private final StringBuilder labelText = new StringBuilder();
+    private List<DetectedBox> objects;
+    private RecognizedText text;
+    private List<ScoredLabel> labels;
+    private long timestamp;
+
+    @Setup
+    public void setUp() {
+        objects = SyntheticResults.objects(objectCount, 1);
+        text = SyntheticResults.text(4, 3, 6, 2);
+        labels = SyntheticResults.labels(5, 3);
+    }
+
+    @Benchmark
+    public BoxBuffer objectBoxes() {
+        BoxBuffer boxes = buffers.beginFrame(++timestamp);
+        BoxModelBuilder.addObjects(boxes, objects, RED, BLACK);
+        buffers.publish();
+        return buffers.acquireFront();
+    }
+
+    @Benchmark
+    public BoxBuffer textBoxes() {
+        BoxBuffer boxes = buffers.beginFrame(++timestamp);
+        BoxModelBuilder.addTextElements(boxes, text, COLORIZER, BLACK);
+        buffers.publish();
+        return buffers.acquireFront();
+    }
+
+    @Benchmark
+    public StringBuilder labelTextReused() {
+        return LabelFormatter.format(labels, labelText);
+    }
+
+    /**
+     * What the label screen did before the builder was reused.
+     */
+    @Benchmark
+    public StringBuilder labelTextFresh() {
+        return LabelFormatter.format(labels, new StringBuilder());
+    }
+}
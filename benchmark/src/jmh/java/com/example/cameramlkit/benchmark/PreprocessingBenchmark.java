@@ -0,0 +1,52 @@
+package com.example.cameramlkit.benchmark;
+
+import com.example.cameramlkit.inference.YuvTensorConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TFLite backend's preprocessing: a 640x480 camera frame (interleaved chroma, turned
+ * upright) into the 160x160 input of the bundled model.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreprocessingBenchmark {
+
+    @Param({"UINT8", "FLOAT32"})
+    public YuvTensorConverter.TensorType type;
+
+    private YuvTensorConverter converter;
+    private ByteBuffer y;
+    private ByteBuffer u;
+    private ByteBuffer v;
+    private ByteBuffer input;
+
+    @Setup
+    public void setUp() {
+        y = ByteBuffer.allocateDirect(640 * 480);
+        ByteBuffer chroma = ByteBuffer.allocateDirect(640 * 240);
+        v = chroma.duplicate();
+        chroma.position(1);
+        u = chroma.slice();
+        converter = new YuvTensorConverter(160, type, 127.5f, 127.5f, true);
+        converter.configure(640, 480, 640, 1, 640, 2, 90);
+        input = converter.allocateInput();
+    }
+
+    @Benchmark
+    public ByteBuffer convert() {
+        converter.convert(y, u, v, input);
+        return input;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.cameramlkit.benchmark;
+
+import com.example.cameramlkit.pipeline.Frame;
+import com.example.cameramlkit.recording.FrameRecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What recording costs the analysis thread per frame: the downscaled copy and the handoff to
+ * the writer thread. Frames the writer cannot keep up with are dropped, so this stays bounded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecordingBenchmark {
+
+    @Param({"1", "2"})
+    public int pixelStride;
+
+    private File file;
+    private FrameRecorder recorder;
+    private Frame frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("recording", ".cmlog");
+        recorder = FrameRecorder.open(file, 64L * 1024 * 1024);
+        ByteBuffer plane = ByteBuffer.allocateDirect(640 * pixelStride * 480);
+        frame = new Frame.Builder(640, 480)
+                .setLuma(plane, 640 * pixelStride, pixelStride)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        recorder.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public FrameRecorder recordFrame() {
+        recorder.onFrameStarted(frame);
+        return recorder;
+    }
+}
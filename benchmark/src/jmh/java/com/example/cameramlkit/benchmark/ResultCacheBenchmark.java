@@ -0,0 +1,89 @@
+package com.example.cameramlkit.benchmark;
+
+import com.example.cameramlkit.cache.ImageHash;
+import com.example.cameramlkit.cache.ResultCache;
+import com.example.cameramlkit.pipeline.DetectionResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a batch run pays per image before it knows whether the detectors must run: hashing a
+ * thumbnail-sized decode and looking the hash up. Results are those of a full gallery photo:
+ * a few objects and labels and a label screen's OCR.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResultCacheBenchmark {
+
+    private static final long DETECTORS = ResultCache.detectorsKey("objects", "custom", "labels", "text");
+
+    @Param({"1000", "20000"})
+    public int images;
+
+    private File directory;
+    private ResultCache cache;
+    private int[] thumbnail;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cache").toFile();
+        cache = new ResultCache.Builder(directory).setMaxBytes(256L * 1024 * 1024).open();
+        for (int i = 0; i < images; i++) {
+            DetectionResult result = new DetectionResult.Builder(0)
+                    .addObjects(SyntheticResults.objects(3, i))
+                    .addLabels(SyntheticResults.labels(5, i))
+                    .setText(SyntheticResults.text(2, 3, 5, i))
+                    .build();
+            cache.put(i, 4000, 3000, DETECTORS, result);
+        }
+        Random random = new Random(5);
+        thumbnail = new int[250 * 188];
+        for (int i = 0; i < thumbnail.length; i++) {
+            thumbnail[i] = 0xFF000000 | random.nextInt(1 << 24);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        cache.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public long hashThumbnail() {
+        return ImageHash.of(thumbnail, 250, 188);
+    }
+
+    @Benchmark
+    public DetectionResult hit() throws IOException {
+        next = (next + 7919) % images;
+        return cache.get(next, 4000, 3000, DETECTORS);
+    }
+
+    @Benchmark
+    public DetectionResult miss() throws IOException {
+        return cache.get(-1 - next++, 4000, 3000, DETECTORS);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.cameramlkit.benchmark;
+
+import com.example.cameramlkit.pipeline.Bounds;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.RecognizedText;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Detector output shaped like what ML Kit gives for a 1280x720 view, reproducible by seed.
+ */
+final class SyntheticResults {
+
+    private static final String[] OBJECT_LABELS = {"Food", "Fashion good", "Home good", "Place", "Plant"};
+    private static final String[] WORDS = {"Dulergina", "tablets", "20", "mg", "take", "one", "daily",
+            "with", "water", "keep", "out", "of", "reach", "children", "Lot:", "A1234", "EXP", "12/2027"};
+
+    private SyntheticResults() {
+    }
+
+    static List<DetectedBox> objects(int count, long seed) {
+        Random random = new Random(seed);
+        List<DetectedBox> objects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float left = random.nextFloat() * 1000;
+            float top = random.nextFloat() * 500;
+            objects.add(new DetectedBox(new Bounds(left, top, left + 80 + random.nextFloat() * 200,
+                    top + 80 + random.nextFloat() * 200), i,
+                    Arrays.asList(new ScoredLabel(i % OBJECT_LABELS.length, OBJECT_LABELS[i % OBJECT_LABELS.length],
+                            0.5f + random.nextFloat() * 0.5f))));
+        }
+        return objects;
+    }
+
+    /**
+     * The same objects moved by {@code frame} steps of a few pixels, for the tracker.
+     */
+    static List<DetectedBox> moved(List<DetectedBox> objects, int frame) {
+        List<DetectedBox> moved = new ArrayList<>(objects.size());
+        for (int i = 0; i < objects.size(); i++) {
+            DetectedBox object = objects.get(i);
+            Bounds b = object.getBounds();
+            float dx = ((i % 5) - 2) * 3f * frame;
+            float dy = ((i % 3) - 1) * 2f * frame;
+            moved.add(object.withBounds(new Bounds(b.getLeft() + dx, b.getTop() + dy, b.getRight() + dx, b.getBottom() + dy)));
+        }
+        return moved;
+    }
+
+    static List<ScoredLabel> labels(int count, long seed) {
+        Random random = new Random(seed);
+        List<ScoredLabel> labels = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = random.nextInt(400);
+            labels.add(new ScoredLabel(index, "Label " + index, 0.5f + random.nextFloat() * 0.5f));
+        }
+        return labels;
+    }
+
+    static RecognizedText text(int blocks, int linesPerBlock, int wordsPerLine, long seed) {
+        Random random = new Random(seed);
+        StringBuilder all = new StringBuilder();
+        List<RecognizedText.Block> blockList = new ArrayList<>(blocks);
+        for (int b = 0; b < blocks; b++) {
+            List<RecognizedText.Line> lines = new ArrayList<>(linesPerBlock);
+            for (int l = 0; l < linesPerBlock; l++) {
+                List<RecognizedText.Element> elements = new ArrayList<>(wordsPerLine);
+                StringBuilder line = new StringBuilder();
+                float x = 20;
+                float y = 40 + (b * linesPerBlock + l) * 36;
+                for (int w = 0; w < wordsPerLine; w++) {
+                    String word = WORDS[random.nextInt(WORDS.length)];
+                    float width = word.length() * 14;
+                    elements.add(new RecognizedText.Element(word, new Bounds(x, y, x + width, y + 30), 0.9f));
+                    x += width + 10;
+                    line.append(w == 0 ? "" : " ").append(word);
+                }
+                lines.add(new RecognizedText.Line(line.toString(), new Bounds(20, y, x, y + 30), 0.9f, elements));
+                all.append(line).append('\n');
+            }
+            blockList.add(new RecognizedText.Block("", new Bounds(20, 40, 1200, 700), lines));
+        }
+        return new RecognizedText(all.toString(), blockList);
+    }
+}
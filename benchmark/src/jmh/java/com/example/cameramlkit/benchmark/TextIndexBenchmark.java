@@ -0,0 +1,75 @@
+package com.example.cameramlkit.benchmark;
+
+import com.example.cameramlkit.search.TextIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching the index of captured photos. Each document is a label screen's OCR plus a lot
+ * number of its own, so the dictionary grows with the documents like real captures do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextIndexBenchmark {
+
+    @Param({"1000", "20000"})
+    public int documents;
+
+    private File directory;
+    private TextIndex index;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("index").toFile();
+        index = new TextIndex.Builder(directory).setFlushDocuments(512).open();
+        Random random = new Random(7);
+        for (int i = 0; i < documents; i++) {
+            String text = SyntheticResults.text(2, 3, 5, i).getText();
+            index.add("IMG_" + i, text + "lot " + Integer.toString(random.nextInt(1 << 30), 36));
+        }
+        index.flush();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        index.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public List<TextIndex.Hit> commonTerms() {
+        return index.search("dulergina tablets", 20);
+    }
+
+    @Benchmark
+    public List<TextIndex.Hit> prefix() {
+        return index.search("lot a*", 20);
+    }
+
+    @Benchmark
+    public List<TextIndex.Hit> fuzzy() {
+        return index.search("dulergimma~", 20);
+    }
+}
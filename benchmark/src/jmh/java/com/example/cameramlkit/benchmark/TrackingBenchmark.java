@@ -0,0 +1,98 @@
+package com.example.cameramlkit.benchmark;
+
+import com.example.cameramlkit.overlay.BoxBuffer;
+import com.example.cameramlkit.pipeline.DetectedBox;
+import com.example.cameramlkit.pipeline.DetectionResult;
+import com.example.cameramlkit.pipeline.LabelAggregator;
+import com.example.cameramlkit.pipeline.ScoredLabel;
+import com.example.cameramlkit.tracking.ObjectTracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-result and per-vsync work of the object tracker, and the label aggregator's
+ * per-result work.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TrackingBenchmark {
+
+    private static final long FRAME = 33_333_333L;
+    private static final int SEQUENCE = 64;
+    private static final int RED = 0xFFFF0000;
+    private static final int BLACK = 0xFF000000;
+
+    @Param({"5", "20"})
+    public int objectCount;
+
+    private final List<List<DetectedBox>> detections = new ArrayList<>();
+    private final List<DetectionResult> labelResults = new ArrayList<>();
+    private final BoxBuffer boxes = new BoxBuffer();
+    private ObjectTracker tracker;
+    private LabelAggregator aggregator;
+    private int frame;
+    private long timestamp;
+
+    @Setup
+    public void setUp() {
+        List<DetectedBox> objects = SyntheticResults.objects(objectCount, 1);
+        for (int i = 0; i < SEQUENCE; i++) {
+            // the objects wander off and come back, so the tracker keeps associating
+            detections.add(SyntheticResults.moved(objects, i < SEQUENCE / 2 ? i : SEQUENCE - i));
+            List<ScoredLabel> labels = SyntheticResults.labels(5, i % 7);
+            labelResults.add(new DetectionResult.Builder(0).addLabels(labels).build());
+        }
+        tracker = new ObjectTracker.Builder().build();
+        aggregator = new LabelAggregator(5, 400, 0.5f, 0.35f);
+        // confirmed tracks for the vsync benchmark
+        for (int i = 0; i < 4; i++) {
+            trackerUpdate();
+        }
+    }
+
+    @Benchmark
+    public ObjectTracker trackerUpdate() {
+        timestamp += FRAME;
+        tracker.update(detections.get(frame++ % SEQUENCE), timestamp);
+        return tracker;
+    }
+
+    /**
+     * Two vsyncs drawn per detection, as at 60 Hz with the detector at 30 fps.
+     */
+    @Benchmark
+    public int trackerUpdateAndPredict() {
+        timestamp += FRAME;
+        tracker.update(detections.get(frame++ % SEQUENCE), timestamp);
+        return tracker.predict(timestamp + FRAME / 4).size() + tracker.predict(timestamp + FRAME * 3 / 4).size();
+    }
+
+    /**
+     * One vsync between detections, drawn into the overlay's buffer as TrackingOverlay does.
+     */
+    @Benchmark
+    public BoxBuffer trackerPredictInto() {
+        boxes.reset();
+        tracker.predictInto(boxes, timestamp + FRAME / 2, RED, BLACK);
+        return boxes;
+    }
+
+    @Benchmark
+    public DetectionResult labelAggregation() {
+        timestamp += FRAME;
+        DetectionResult raw = labelResults.get(frame++ % SEQUENCE);
+        return aggregator.process(new DetectionResult.Builder(timestamp).addLabels(raw.getLabels()).build());
+    }
+}